@@ -29,12 +29,11 @@ import sexpression.ASExpression;
 import sexpression.ListExpression;
 import sexpression.lexer.Lexer;
 import sexpression.parser.Parser;
-import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEParallelReader;
 import sexpression.stream.InvalidVerbatimStreamException;
 
 import java.io.CharArrayReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -84,8 +83,13 @@ public class Dag {
      */
     public void build() throws IOException, InvalidVerbatimStreamException, IncorrectFormatException {
 
-        /* Read the file in as an ASE */
-        ASEInputStreamReader reader = new ASEInputStreamReader(new FileInputStream(new File(filename)));
+        /* Read the file in as ASEs, parsed in parallel but handed back one by one */
+        try (ASEParallelReader reader = new ASEParallelReader(new File(filename))) {
+            build(reader);
+        }
+    }
+
+    private void build(ASEParallelReader reader) throws IOException, InvalidVerbatimStreamException, IncorrectFormatException {
 
         /* Read in the ASEs contained in the file, one by one */
         ASExpression message;
@@ -0,0 +1,78 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.loganalysis;
+
+import sexpression.ASExpression;
+import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Convert a log file between the verbatim encoding and the compact binary
+ * encoding. The input may be in any encoding (or a mix of them), since the
+ * reader detects the format of each message. Converting a binary log back to
+ * verbatim reproduces the original log byte for byte, so binary logs lose
+ * nothing for auditing purposes.<br>
+ * <br>
+ * Usage: LogConverter (binary|verbatim) [input log] [output log]
+ */
+public class LogConverter {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3 || !(args[0].equals( "binary" ) || args[0].equals( "verbatim" ))) {
+            System.err.println( "Usage: LogConverter (binary|verbatim) [input log] [output log]" );
+            System.exit( 1 );
+        }
+
+        boolean binary = args[0].equals( "binary" );
+        long count = 0;
+
+        ASEInputStreamReader in = new ASEInputStreamReader(
+                new BufferedInputStream( new FileInputStream( args[1] ) ) );
+
+        try (OutputStream out = new BufferedOutputStream( new FileOutputStream( args[2] ) )) {
+            ASEWriter writer = new ASEWriter( out );
+            ASExpression read;
+
+            while ((read = in.read()) != null) {
+                if (binary)
+                    writer.writeASEBinary( read );
+                else
+                    writer.writeASE( read );
+
+                count++;
+            }
+        }
+
+        long before = new File( args[1] ).length();
+        long after = new File( args[2] ).length();
+
+        System.out.println( count + " messages, " + before + " bytes -> " + after + " bytes" );
+    }
+}
@@ -27,10 +27,10 @@ import sexpression.ASExpression;
 import sexpression.ListExpression;
 import sexpression.lexer.Lexer;
 import sexpression.parser.Parser;
-import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEParallelReader;
 
 import java.io.CharArrayReader;
-import java.io.FileInputStream;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -59,8 +59,7 @@ public class LogCounter {
 
     public static void main(String[] args) throws Exception {
         long count = 0;
-        ASEInputStreamReader rd = new ASEInputStreamReader(
-                new FileInputStream( args[0] ) );
+        ASEParallelReader rd = new ASEParallelReader( new File( args[0] ) );
         HashMap<String, ArrayList<Integer>> map = new HashMap<>();
         int[] branches = new int[1000];
 
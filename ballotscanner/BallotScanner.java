@@ -269,6 +269,7 @@ public class  BallotScanner{
             public void startUpload(StartUploadEvent startUploadEvent) {}
             public void completedUpload(CompletedUploadEvent completedUploadEvent) {}
             public void uploadBallots(BallotUploadEvent ballotUploadEvent) {}
+            public void ballotChunk(BallotChunkEvent ballotChunkEvent) {}
 
             public void ballotPrinting(BallotPrintingEvent ballotPrintingEvent) {}
             public void pinEntered(PINEnteredEvent event) {}
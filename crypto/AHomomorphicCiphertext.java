@@ -12,6 +12,8 @@ import java.util.List;
  */
 public abstract class AHomomorphicCiphertext<T extends AHomomorphicCiphertext<T>> implements Provable, Serializable {
 
+    private static final long serialVersionUID = 1897197611110544277L;
+
     protected int size;
 
     public AHomomorphicCiphertext(int size){
@@ -40,6 +42,35 @@ public abstract class AHomomorphicCiphertext<T extends AHomomorphicCiphertext<T>
      */
     public abstract T operateIndependent(T operand, IPublicKey PEK);
 
+    /**
+     * Will perform the same operation as {@link #operateIndependent(AHomomorphicCiphertext, IPublicKey)} between this
+     * object and each of the operands in turn, but only proves the final result, rather than every intermediate one
+     * (as when many ballots are tallied).
+     *
+     * @param operands  the ciphertexts to "add" yourself to
+     * @return          the result of computing the arity two function between this object and all the operands
+     */
+    public abstract T operateIndependent(List<T> operands, IPublicKey PEK);
+
+    /**
+     * Will perform the same operation as {@link #operateIndependent(List, IPublicKey)}, but without proving the
+     * result, for a partial result that is itself operated into a proven one later (as when ballots are tallied in
+     * partitions). The result has no proof, so it should go no further than that.
+     *
+     * @param operands  the ciphertexts to "add" yourself to
+     * @return          the unproven result of the arity two function between this object and all the operands
+     */
+    public abstract T operateUnproven(List<T> operands, IPublicKey PEK);
+
+    /**
+     * Checks whether this and another ciphertext are the same, ignoring their proofs (which are randomized, so two
+     * computations of the same sum will not have the same one).
+     *
+     * @param other     the other ciphertext
+     * @return          true if the two are the same ciphertext of the same size
+     */
+    public abstract boolean matches(T other);
+
     /**
      * @return  the amount of ciphertexts operated into this one
      */
@@ -0,0 +1,155 @@
+package crypto;
+
+import crypto.adder.AdderPublicKey;
+import crypto.adder.MembershipProofBatch;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies the proofs of many race selections together, as when a precinct
+ * is closed and every cast ballot is checked before it is tallied.
+ *
+ * Race selections are queued with {@link #add}, and the first call to
+ * {@link #verify} checks everything queued in one batch (see
+ * {@link MembershipProofBatch}). If the batch fails it is split in half and
+ * each half checked again, down to single race selections, so a bad ballot
+ * costs a few more batches rather than a verification of every ballot.
+ * Whatever the batch cannot vouch for (a bad race selection, or one whose
+ * ciphertexts can't be batched) is verified on its own by {@link #verify},
+ * so the answers are the same as {@link EncryptedRaceSelection#verify}'s.
+ */
+public class BatchVerifier<T extends AHomomorphicCiphertext<T>> {
+
+    /** The public key used for the proofs */
+    private final IPublicKey PEK;
+
+    /** The batch of ciphertext proofs, or null if this key's proofs can't be batched */
+    private final MembershipProofBatch batch;
+
+    /** Race selections queued for the next batch, with their ranges, and where their proofs end in the batch */
+    private final List<EncryptedRaceSelection<T>> pending = new ArrayList<>();
+    private final List<int[]> pendingRanges = new ArrayList<>();
+    private final List<Integer> ends = new ArrayList<>();
+
+    /** Race selections the batch has verified, with the range they were verified for */
+    private final Map<EncryptedRaceSelection<T>, int[]> verified = new IdentityHashMap<>();
+
+    /**
+     * @param PEK   the public encryption key used in verifying the race selections
+     */
+    public BatchVerifier(IPublicKey PEK) {
+        this.PEK = PEK;
+
+        MembershipProofBatch b = PEK instanceof AdderPublicKey ? new MembershipProofBatch((AdderPublicKey) PEK) : null;
+        batch = b != null && b.isUsable() ? b : null;
+    }
+
+    /**
+     * Queues a race selection to be verified in the next batch.
+     *
+     * @param rs    the race selection
+     * @param min   the minimum value for an individual ciphertext
+     * @param max   the maximum value for an individual ciphertext
+     */
+    public void add(EncryptedRaceSelection<T> rs, int min, int max) {
+        if (batch == null)
+            return;
+
+        int mark = batch.size();
+
+        try {
+
+            List<Integer> domain = new ArrayList<>();
+            for (int i = min; i <= max; i++)
+                domain.add(i);
+
+            List<T> ciphertexts = new ArrayList<>(rs.getRaceSelectionsMap().values());
+
+            /* The proof of the sum is made here rather than sent, but it's checked the same way */
+            ciphertexts.add(rs.sum(rs.getRaceSelectionsMap(), PEK));
+
+            List<Integer> sumDomain = new ArrayList<>();
+            for (int i = 0; i <= max; i++)
+                sumDomain.add(i);
+
+            for (int i = 0; i < ciphertexts.size(); i++) {
+                T ciphertext = ciphertexts.get(i);
+
+                if (!(ciphertext instanceof ExponentialElGamalCiphertext)
+                    || !batch.add((ExponentialElGamalCiphertext) ciphertext, i < ciphertexts.size() - 1 ? domain : sumDomain)) {
+                    batch.truncate(mark);
+                    return;
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            /* Malformed; leave it to be verified (and reported) on its own */
+            batch.truncate(mark);
+            return;
+        }
+
+        pending.add(rs);
+        pendingRanges.add(new int[]{ min, max });
+        ends.add(batch.size());
+    }
+
+    /**
+     * Verifies a race selection, from the batch if it was queued and the batch
+     * vouches for it, otherwise on its own.
+     *
+     * @param rs    the race selection
+     * @param min   the minimum value for an individual ciphertext
+     * @param max   the maximum value for an individual ciphertext
+     *
+     * @return      whether the race selection verifies, as {@link EncryptedRaceSelection#verify}
+     */
+    public boolean verify(EncryptedRaceSelection<T> rs, int min, int max) {
+        if (!pending.isEmpty())
+            flush();
+
+        int[] range = verified.get(rs);
+
+        if (range != null && range[0] == min && range[1] == max)
+            return true;
+
+        return rs.verify(min, max, PEK);
+    }
+
+    /**
+     * Checks every queued race selection, bisecting on failure.
+     */
+    private void flush() {
+        check(0, pending.size());
+
+        pending.clear();
+        pendingRanges.clear();
+        ends.clear();
+        batch.truncate(0);
+    }
+
+    /**
+     * Checks the queued race selections in [lo, hi) in one batch, and each half
+     * of them if that fails.
+     */
+    private void check(int lo, int hi) {
+        int from = lo == 0 ? 0 : ends.get(lo - 1);
+
+        if (batch.verify(from, ends.get(hi - 1))) {
+            for (int i = lo; i < hi; i++)
+                verified.put(pending.get(i), pendingRanges.get(i));
+
+            return;
+        }
+
+        if (hi - lo == 1)
+            return;
+
+        int mid = (lo + hi) >>> 1;
+
+        check(lo, mid);
+        check(mid, hi);
+    }
+}
@@ -3,6 +3,7 @@ package crypto;
 import crypto.adder.AdderInteger;
 import crypto.adder.AdderPublicKey;
 import crypto.adder.EEGMembershipProof;
+import crypto.ec.ECPublicKey;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
@@ -22,6 +23,9 @@ public class CiphertextFactory {
 
     public static AHomomorphicCiphertext identity(Class<? extends AHomomorphicCiphertext> c, IPublicKey PEK){
 
+        if (PEK instanceof ECPublicKey)
+            return ECExponentialElGamalCiphertext.identity((ECPublicKey) PEK);
+
         AdderPublicKey publicKey = (AdderPublicKey) PEK;
 
         /* This has a null proof because it will force return for multiply. Always use this as operand */
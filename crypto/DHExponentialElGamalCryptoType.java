@@ -15,7 +15,10 @@ import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -26,9 +29,18 @@ import java.util.stream.Collectors;
  */
 public class DHExponentialElGamalCryptoType implements ICryptoType<ExponentialElGamalCiphertext> {
 
+    /** The values a single vote can take */
+    public static final List<AdderInteger> VOTE_DOMAIN = Collections.unmodifiableList(Arrays.asList(AdderInteger.ZERO, AdderInteger.ONE));
+
     private List<AdderPrivateKeyShare> privateKeyShares;
     private AdderPublicKey PEK;
 
+    /** Precomputed encryptions to use, if any */
+    private RandomnessPool randomnessPool;
+
+    /** The Lagrange coefficients for each set of authorities decrypted with, by the prime and the authorities' indices */
+    private final Map<List<BigInteger>, List<AdderInteger>> lagrangeCache = new ConcurrentHashMap<>();
+
     /**
      * Decrypts the AHomomorphicCiphertext
      *
@@ -82,8 +94,7 @@ public class DHExponentialElGamalCryptoType implements ICryptoType<ExponentialEl
 
     	*/
 
-        Polynomial poly = new Polynomial(PEK.getP(), PEK.getG(), PEK.getF(), coeffs);
-        List<AdderInteger> lagrangeCoeffs = poly.lagrange();
+        List<AdderInteger> lagrangeCoeffs = lagrange(coeffs);
 
         /* Use this to multiply all the values together */
         AdderInteger total = AdderInteger.ONE;
@@ -98,44 +109,44 @@ public class DHExponentialElGamalCryptoType implements ICryptoType<ExponentialEl
         /* total = h^y, H = h' = h^y * f^m, so this is f^m */
         AdderInteger mappedPlaintext = ctext.getH().divide(total);
 
-        AdderInteger f = PEK.getF();
-        AdderInteger p = PEK.getP();
-        AdderInteger q = PEK.getQ();
+        /* Find n with f^n = f^m, walking the powers of f for small totals and by baby-step giant-step for large ones */
+        int votes = DiscreteLog.forKey(PEK).solve(mappedPlaintext, ctext.size);
 
-        /* Indicates if we have successfully resolved the ciphertext */
-        boolean gotResult = false;
+        /* Keep track of found result, otherwise error */
+        if (votes >= 0) return ByteBuffer.allocate(4).putInt(votes).array();
+        else throw new SearchSpaceExhaustedException("The decryption could not find a number of votes " +
+                                                     "within the probable search space for " + mappedPlaintext + "!");
 
-        AdderInteger j = new AdderInteger(0, q);
+    }
 
-        /* Iterate over the number of votes to try to guess n */
-        for (int k = 0; k <= ctext.size; k++) {
+    /**
+     * Gets the Lagrange coefficients for a set of authorities. These depend only on which authorities take part, so
+     * they are computed once for each set rather than for every ciphertext.
+     *
+     * @param coeffs    the indices of the authorities taking part
+     * @return          their Lagrange coefficients
+     */
+    private List<AdderInteger> lagrange(List<AdderInteger> coeffs) {
 
-            /* Create a guess */
-            j = new AdderInteger(k, q);
+        List<BigInteger> authoritySet = new ArrayList<>(coeffs.size() + 1);
+        authoritySet.add(PEK.getP().bigintValue());
 
-            /* Check the guess and get out when found */
-            if (f.pow(j).equals(mappedPlaintext)) {
-                gotResult = true;
-                break;
-            }
-        }
-
-        /* Keep track of found result, otherwise error */
-        if (gotResult) return ByteBuffer.allocate(4).putInt(j.intValue()).array();
-        else throw new SearchSpaceExhaustedException("The decryption could not find a number of votes " +
-                                                     "within the probable search space for " + mappedPlaintext + "!");
+        for (AdderInteger coeff : coeffs)
+            authoritySet.add(coeff.bigintValue());
 
+        return lagrangeCache.computeIfAbsent(authoritySet, k -> new Polynomial(PEK.getP(), PEK.getG(), PEK.getF(), coeffs).lagrange());
     }
 
     /**
-     * Partially decrypts the ciphertext for each private key share and then returns them
+     * Partially decrypts the ciphertext for each private key share and then returns them. Each is a full
+     * exponentiation, and they are independent, so they are done in parallel.
      * @param ciphertext    the ciphertext to be partially decrypted
      *
-     * @return              the list of partial decryptions
+     * @return              the list of partial decryptions, in the order of the private key shares
      */
     public List<AdderInteger> partialDecrypt(ExponentialElGamalCiphertext ciphertext) {
 
-        return privateKeyShares.stream().map(pks -> pks.partialDecrypt(ciphertext)).collect(Collectors.toList());
+        return privateKeyShares.parallelStream().map(pks -> pks.partialDecrypt(ciphertext)).collect(Collectors.toList());
     }
 
     /**
@@ -157,8 +168,15 @@ public class DHExponentialElGamalCryptoType implements ICryptoType<ExponentialEl
 
         AdderInteger plaintextValue = new AdderInteger(new BigInteger(plainText));
 
+        /* Use a precomputed encryption if there is one for this key, or compute everything now */
+        PrecomputedEncryption pre = null;
+        RandomnessPool pool = randomnessPool;
+
+        if (pool != null && pool.getDomain().equals(VOTE_DOMAIN) && (pool.getKey() == PEK || pool.getKey().equals(PEK)))
+            pre = pool.take();
+
         /* Encrypt our plaintext and store as ExponentialElGamalCiphertext */
-        ExponentialElGamalCiphertext ctext = PEK.encrypt(plaintextValue, Arrays.asList(AdderInteger.ZERO, AdderInteger.ONE));
+        ExponentialElGamalCiphertext ctext = PEK.encrypt(plaintextValue, VOTE_DOMAIN, pre);
 
         /* Verify the ciphertext */
         if (!ctext.verify(0,1,PEK))
@@ -232,6 +250,16 @@ public class DHExponentialElGamalCryptoType implements ICryptoType<ExponentialEl
         this.PEK = publicKey;
     }
 
+    /**
+     * Sets the pool of precomputed encryptions to take from when encrypting; a pool for a key
+     * other than the one loaded is ignored.
+     *
+     * @param randomnessPool    the pool, or null to compute every encryption on demand
+     */
+    public void setRandomnessPool(RandomnessPool randomnessPool) {
+        this.randomnessPool = randomnessPool;
+    }
+
     /**
      * Loads all the keys
      * @param filePaths     the array of file paths from which to load the PEK and private key shares
@@ -0,0 +1,233 @@
+package crypto;
+
+import crypto.ec.ECCurve;
+import crypto.ec.ECDiscreteLog;
+import crypto.ec.ECMembershipProof;
+import crypto.ec.ECPoint;
+import crypto.ec.ECPublicKey;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An exponential ElGamal ciphertext on an elliptic curve, \f$\langle A, B
+ * \rangle = \langle rG, rH + mG \rangle\f$, the counterpart of
+ * {@link ExponentialElGamalCiphertext}: ciphertexts are combined by adding
+ * them component-wise, which adds the messages.
+ *
+ * @see crypto.ec.ECPublicKey#encrypt(int, List)
+ */
+public class ECExponentialElGamalCiphertext extends AHomomorphicCiphertext<ECExponentialElGamalCiphertext> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The randomness component, rG */
+    private ECPoint a;
+
+    /** The message component, rH + mG */
+    private ECPoint b;
+
+    /** The randomness r, if known (0 otherwise) */
+    private BigInteger r;
+
+    /** A proof that the message is in range */
+    private ECMembershipProof proof;
+
+    public ECExponentialElGamalCiphertext(ECPoint a, ECPoint b, BigInteger r, ECMembershipProof proof, int size) {
+        super(size);
+        this.a = a;
+        this.b = b;
+        this.r = r;
+        this.proof = proof;
+    }
+
+    public ECExponentialElGamalCiphertext(ECPoint a, ECPoint b, ECMembershipProof proof, int size) {
+        this(a, b, BigInteger.ZERO, proof, size);
+    }
+
+    /**
+     * @param PEK   the public key
+     * @return      the additive identity, an encryption of 0 with no randomness and size 0
+     */
+    public static ECExponentialElGamalCiphertext identity(ECPublicKey PEK) {
+        ECMembershipProof proof = new ECMembershipProof(ECPoint.INFINITY, ECPoint.INFINITY, BigInteger.ZERO, PEK, 0, Collections.singletonList(0));
+
+        return new ECExponentialElGamalCiphertext(ECPoint.INFINITY, ECPoint.INFINITY, BigInteger.ZERO, proof, 0);
+    }
+
+    /**
+     * Adds this and ciphertexts from the same choice set (so that their values sum to the size of one of them).
+     *
+     * @param operands  the ciphertexts to "add" yourself to
+     * @return          the sum, with a proof of its value
+     */
+    public ECExponentialElGamalCiphertext operateDependent(List<ECExponentialElGamalCiphertext> operands, IPublicKey PEK) {
+        List<ECExponentialElGamalCiphertext> all = new ArrayList<>(operands.size() + 1);
+        all.add(this);
+        all.addAll(operands);
+
+        return sum(all, operands.get(0).size, (ECPublicKey) PEK);
+    }
+
+    /**
+     * Adds this and a ciphertext from a different choice set (so that their values sum to at most the sum of their
+     * sizes).
+     *
+     * @param operand   the ciphertext to "add" yourself to
+     * @return          the sum, with a proof of its value
+     */
+    public ECExponentialElGamalCiphertext operateIndependent(ECExponentialElGamalCiphertext operand, IPublicKey PEK) {
+        List<ECExponentialElGamalCiphertext> both = new ArrayList<>(2);
+        both.add(this);
+        both.add(operand);
+
+        return sum(both, this.size + operand.size, (ECPublicKey) PEK);
+    }
+
+    /**
+     * Adds this and a list of ciphertexts, each from a different choice set, with only the sum proved.
+     *
+     * @param operands  the ciphertexts to "add" yourself to
+     * @return          the sum, with a proof of its value
+     */
+    public ECExponentialElGamalCiphertext operateIndependent(List<ECExponentialElGamalCiphertext> operands, IPublicKey PEK) {
+        List<ECExponentialElGamalCiphertext> all = all(operands);
+
+        return sum(all, size(all), (ECPublicKey) PEK);
+    }
+
+    /**
+     * Adds this and a list of ciphertexts, each from a different choice set, and their randomness, without proving
+     * the sum.
+     *
+     * @param operands  the ciphertexts to "add" yourself to
+     * @return          the sum, with no proof
+     */
+    public ECExponentialElGamalCiphertext operateUnproven(List<ECExponentialElGamalCiphertext> operands, IPublicKey PEK) {
+        List<ECExponentialElGamalCiphertext> all = all(operands);
+
+        return add(all, size(all), ((ECPublicKey) PEK).getCurve());
+    }
+
+    /**
+     * @return  this followed by the operands
+     */
+    private List<ECExponentialElGamalCiphertext> all(List<ECExponentialElGamalCiphertext> operands) {
+        List<ECExponentialElGamalCiphertext> all = new ArrayList<>(operands.size() + 1);
+        all.add(this);
+        all.addAll(operands);
+
+        return all;
+    }
+
+    /**
+     * @return  the sum of the sizes of the ciphertexts
+     */
+    private static int size(List<ECExponentialElGamalCiphertext> ciphertexts) {
+        int size = 0;
+
+        for (ECExponentialElGamalCiphertext ciphertext : ciphertexts)
+            size += ciphertext.size;
+
+        return size;
+    }
+
+    /**
+     * Sums ciphertexts and their randomness, finds the value of the sum from the randomness, and proves it is in
+     * [0, size]. Without the randomness (e.g. ciphertexts that weren't encrypted here) the value can't be found, and
+     * the sum has no proof.
+     */
+    private static ECExponentialElGamalCiphertext sum(List<ECExponentialElGamalCiphertext> ciphertexts, int size, ECPublicKey key) {
+        ECCurve curve = key.getCurve();
+
+        ECExponentialElGamalCiphertext sum = add(ciphertexts, size, curve);
+
+        ECPoint a = sum.a;
+        ECPoint b = sum.b;
+        BigInteger r = sum.r;
+
+        /* B = rH + mG, so the value m is the logarithm of B - rH */
+        int value = ECDiscreteLog.forCurve(curve).solve(curve.subtract(b, key.multiplyH(r)), size);
+
+        ECMembershipProof proof = null;
+
+        if (value >= 0) {
+            List<Integer> domain = new ArrayList<>(size + 1);
+
+            for (int i = 0; i <= size; i++)
+                domain.add(i);
+
+            proof = new ECMembershipProof(a, b, r, key, value, domain);
+        }
+
+        return new ECExponentialElGamalCiphertext(a, b, r, proof, size);
+    }
+
+    /**
+     * Sums ciphertexts and their randomness, leaving the sum without a proof.
+     */
+    private static ECExponentialElGamalCiphertext add(List<ECExponentialElGamalCiphertext> ciphertexts, int size, ECCurve curve) {
+        List<ECPoint> as = new ArrayList<>(ciphertexts.size());
+        List<ECPoint> bs = new ArrayList<>(ciphertexts.size());
+        BigInteger r = BigInteger.ZERO;
+
+        for (ECExponentialElGamalCiphertext ciphertext : ciphertexts) {
+            as.add(ciphertext.a);
+            bs.add(ciphertext.b);
+            r = r.add(ciphertext.r);
+        }
+
+        return new ECExponentialElGamalCiphertext(curve.sum(as), curve.sum(bs), r.mod(curve.getOrder()), null, size);
+    }
+
+    /**
+     * @return  the randomness component, rG
+     */
+    public ECPoint getA() {
+        return a;
+    }
+
+    /**
+     * @return  the message component, rH + mG
+     */
+    public ECPoint getB() {
+        return b;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public ECMembershipProof getProof() {
+        return proof;
+    }
+
+    /**
+     * @see AHomomorphicCiphertext#matches(AHomomorphicCiphertext)
+     */
+    public boolean matches(ECExponentialElGamalCiphertext other) {
+        return other != null && a.equals(other.a) && b.equals(other.b) && size == other.size;
+    }
+
+    /**
+     * Verifies this ciphertext encodes a value between min and max and was encrypted with this PEK
+     * @param min   the minimum acceptable value for this ciphertext
+     * @param max   the maximum acceptable value for this ciphertext
+     * @param PEK   the public encryption key used in the verification process
+     *
+     * @return      true if this ciphertext encrypts a value between min and max, false otherwise
+     */
+    public boolean verify(int min, int max, IPublicKey PEK) {
+        if (proof == null)
+            return false;
+
+        List<Integer> domain = new ArrayList<>();
+
+        for (int i = min; i <= max; i++)
+            domain.add(i);
+
+        return proof.verify(this, PEK, domain);
+    }
+}
@@ -0,0 +1,236 @@
+package crypto;
+
+import crypto.adder.InvalidRaceSelectionException;
+import crypto.adder.SearchSpaceExhaustedException;
+import crypto.ec.ECCurve;
+import crypto.ec.ECDiscreteLog;
+import crypto.ec.ECPoint;
+import crypto.ec.ECPrivateKeyShare;
+import crypto.ec.ECPublicKey;
+import crypto.ec.ECThresholdKeys;
+import crypto.exceptions.BadKeyException;
+import crypto.exceptions.CiphertextException;
+import crypto.exceptions.KeyNotLoadedException;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The crypto-type for exponential ElGamal on an elliptic curve, the
+ * counterpart of {@link DHExponentialElGamalCryptoType}: the same
+ * ciphertexts, proofs and threshold decryption, with points on a prime-order
+ * curve (NIST P-256, for 128-bit security) in place of a subgroup of the
+ * integers mod a prime, so that keys and ciphertexts are a fraction of the
+ * size.
+ *
+ * @see crypto.ec.ECThresholdKeys
+ */
+public class ECExponentialElGamalCryptoType implements ICryptoType<ECExponentialElGamalCiphertext> {
+
+    /** The values a single vote can take */
+    public static final List<Integer> VOTE_DOMAIN = Collections.unmodifiableList(Arrays.asList(0, 1));
+
+    private List<ECPrivateKeyShare> privateKeyShares;
+    private ECPublicKey PEK;
+
+    /**
+     * Decrypts a ciphertext, combining the partial decryptions of the loaded private key shares.
+     *
+     * @param ciphertext    the encrypted plaintext for a single vote-candidate value (or a sum of them)
+     *
+     * @see crypto.ICryptoType#decrypt(AHomomorphicCiphertext)
+     *
+     * @return              the decrypted value, as a 4-byte int
+     *
+     * @throws KeyNotLoadedException if the private key shares haven't been loaded
+     */
+    public byte[] decrypt(ECExponentialElGamalCiphertext ciphertext) throws InvalidKeyException, KeyNotLoadedException, CipherException, CiphertextException {
+
+        if (privateKeyShares == null)
+            throw new KeyNotLoadedException("The private key shares have not yet been loaded! [Decryption]");
+
+        ECCurve curve = PEK.getCurve();
+
+        /* Combine the partial decryptions into rH, and take it off B = rH + mG */
+        List<Integer> indices = privateKeyShares.stream().map(ECPrivateKeyShare::getIndex).collect(Collectors.toList());
+        ECPoint rH = ECThresholdKeys.combine(curve, indices, partialDecrypt(ciphertext));
+        ECPoint mG = curve.subtract(ciphertext.getB(), rH);
+
+        int votes = ECDiscreteLog.forCurve(curve).solve(mG, ciphertext.getSize());
+
+        if (votes >= 0) return ByteBuffer.allocate(4).putInt(votes).array();
+        else throw new SearchSpaceExhaustedException("The decryption could not find a number of votes " +
+                                                     "within the probable search space for " + mG + "!");
+    }
+
+    /**
+     * Partially decrypts the ciphertext for each private key share, in parallel.
+     *
+     * @param ciphertext    the ciphertext to be partially decrypted
+     * @return              the list of partial decryptions, in the order of the private key shares
+     */
+    public List<ECPoint> partialDecrypt(ECExponentialElGamalCiphertext ciphertext) {
+        return privateKeyShares.parallelStream().map(pks -> pks.partialDecrypt(ciphertext)).collect(Collectors.toList());
+    }
+
+    /**
+     * Encrypts a plaintext (formatted as a byte[]), which must be 0 or 1.
+     *
+     * @param plainText     a byte array to be encrypted
+     *
+     * @see crypto.ICryptoType#encrypt(byte[])
+     *
+     * @return              the encrypted plaintext
+     *
+     * @throws KeyNotLoadedException if the public key hasn't been loaded
+     */
+    public ECExponentialElGamalCiphertext encrypt(byte[] plainText) throws CipherException, InvalidKeyException, KeyNotLoadedException {
+
+        if (PEK == null)
+            throw new KeyNotLoadedException("The public key has not yet been loaded! [Encryption]");
+
+        int plaintextValue = new BigInteger(plainText).intValue();
+
+        if (!VOTE_DOMAIN.contains(plaintextValue))
+            throw new InvalidRaceSelectionException("We got a bad plaintext!");
+
+        ECExponentialElGamalCiphertext ctext = PEK.encrypt(plaintextValue, VOTE_DOMAIN);
+
+        /* Verify the ciphertext */
+        if (!ctext.verify(0, 1, PEK))
+            throw new InvalidRaceSelectionException("We got a bad plaintext!");
+
+        return ctext;
+    }
+
+    /**
+     * Loads the private key shares from a file path.
+     *
+     * @param filePath      the file path of the file from which to load the private key shares
+     *
+     * @throws FileNotFoundException
+     */
+    public void loadPrivateKeyShares(String filePath) throws FileNotFoundException {
+
+        FileInputStream fileInputStream = new FileInputStream(filePath);
+
+        try {
+
+            ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
+
+            loadPrivateKeyShares((ECPrivateKeyShare[]) objectInputStream.readObject());
+
+        } catch (ClassNotFoundException | IOException e) { e.printStackTrace(); }
+    }
+
+    /**
+     * Loads the private key shares (at least the threshold of them, each from a different authority).
+     *
+     * @param privateKey      the array of ECPrivateKeyShares to be loaded
+     */
+    public void loadPrivateKeyShares(ECPrivateKeyShare[] privateKey) {
+        this.privateKeyShares = Arrays.asList(privateKey);
+    }
+
+    /**
+     * Loads the public key from a file path
+     *
+     * @param filePath      the file path of the file from which to load the PEK
+     *
+     * @throws FileNotFoundException
+     */
+    public void loadPublicKey(String filePath) throws FileNotFoundException {
+
+        FileInputStream fileInputStream = new FileInputStream(filePath);
+
+        try {
+
+            ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
+
+            loadPublicKey((ECPublicKey) objectInputStream.readObject());
+
+        } catch (ClassNotFoundException | IOException e) { e.printStackTrace(); }
+    }
+
+    /**
+     * Loads the PEK
+     * @param publicKey     the ECPublicKey to be loaded
+     */
+    public void loadPublicKey(ECPublicKey publicKey) {
+        this.PEK = publicKey;
+    }
+
+    /**
+     * @return  the loaded PEK, or null if none has been
+     */
+    public ECPublicKey getPublicKey() {
+        return PEK;
+    }
+
+    /**
+     * Loads all the keys: the PEK first, then the private key shares, one per file.
+     *
+     * @param filePaths     the array of file paths from which to load the PEK and private key shares
+     *
+     * @see ICryptoType#loadAllKeys(String[])
+     */
+    public void loadAllKeys(String[] filePaths) throws FileNotFoundException {
+
+        List<Key> keys = new ArrayList<>();
+
+        for (String path : filePaths) {
+
+            try {
+
+                FileInputStream fileInputStream = new FileInputStream(path);
+                ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
+                keys.add((Key) objectInputStream.readObject());
+
+            }
+            catch (ClassNotFoundException | IOException e) { e.printStackTrace(); }
+
+        }
+
+        try { loadAllKeys(keys); }
+        catch (BadKeyException e) { e.printStackTrace(); }
+    }
+
+    /**
+     * Loads a list of keys, the PEK first and then the private key shares.
+     *
+     * @param keys      the keys
+     *
+     * @throws BadKeyException if the keys aren't a PEK followed by at least one share
+     */
+    private void loadAllKeys(List<Key> keys) throws BadKeyException {
+
+        if (keys.size() < 2)
+            throw new BadKeyException("Not enough private key shares found!");
+
+        if (!(keys.get(0) instanceof ECPublicKey))
+            throw new BadKeyException("Public key didn't come first!");
+
+        List<ECPrivateKeyShare> shares = new ArrayList<>();
+
+        for (Key key : keys.subList(1, keys.size())) {
+            if (!(key instanceof ECPrivateKeyShare))
+                throw new BadKeyException("Expected only private key shares after the public key!");
+
+            shares.add((ECPrivateKeyShare) key);
+        }
+
+        PEK = (ECPublicKey) keys.get(0);
+        privateKeyShares = shares;
+    }
+}
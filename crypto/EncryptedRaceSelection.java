@@ -9,6 +9,8 @@ import java.util.*;
  */
 public class EncryptedRaceSelection<T extends AHomomorphicCiphertext<T>> extends ARaceSelection implements Provable, Serializable {
 
+    private static final long serialVersionUID = 3583051413193931543L;
+
     private Map<String, T> selectionsMap;
 
     /**
@@ -82,6 +84,92 @@ public class EncryptedRaceSelection<T extends AHomomorphicCiphertext<T>> extends
         return new EncryptedRaceSelection<>(resultMap, getTitle(), this.size+other.size);
     }
 
+    /**
+     * Combines this vote with a list of others, as {@link #operate(EncryptedRaceSelection, IPublicKey)} would one at a
+     * time, but with a single proof for each candidate's combined ciphertext instead of one for every step.
+     *
+     * @param others    the other votes to be combined with this one
+     * @return the result of the operation
+     */
+    public EncryptedRaceSelection<T> operate(List<EncryptedRaceSelection<T>> others, IPublicKey PEK) {
+        return operate(others, PEK, true);
+    }
+
+    /**
+     * Combines this vote with a list of others, as {@link #operate(List, IPublicKey)} would, but without proving any
+     * candidate's combined ciphertext, for a partial result that is itself combined into a proven one later.
+     *
+     * @param others    the other votes to be combined with this one
+     * @return the unproven result of the operation
+     */
+    public EncryptedRaceSelection<T> operateUnproven(List<EncryptedRaceSelection<T>> others, IPublicKey PEK) {
+        return operate(others, PEK, false);
+    }
+
+    /**
+     * Combines this vote with a list of others, proving each candidate's combined ciphertext or not.
+     */
+    private EncryptedRaceSelection<T> operate(List<EncryptedRaceSelection<T>> others, IPublicKey PEK, boolean prove) {
+
+        Map<String, T> resultMap = new HashMap<>(this.selectionsMap);
+        Map<String, List<T>> operandsMap = new HashMap<>();
+
+        int size = this.size;
+
+        /* Gather each candidate's ciphertexts from all the other selection maps */
+        for (EncryptedRaceSelection<T> other : others) {
+            for (Map.Entry<String, T> entry : other.selectionsMap.entrySet()) {
+                List<T> operands = operandsMap.get(entry.getKey());
+
+                if (operands == null) {
+                    operands = new ArrayList<>();
+                    operandsMap.put(entry.getKey(), operands);
+                }
+
+                operands.add(entry.getValue());
+            }
+
+            size += other.size;
+        }
+
+        /* Add each candidate's ciphertexts together, starting from this one's if it has the candidate */
+        for (Map.Entry<String, List<T>> entry : operandsMap.entrySet()) {
+            List<T> operands = entry.getValue();
+            T first = this.selectionsMap.get(entry.getKey());
+
+            if (first == null) {
+                first = operands.remove(0);
+
+                if (operands.isEmpty()) {
+                    resultMap.put(entry.getKey(), first);
+                    continue;
+                }
+            }
+
+            resultMap.put(entry.getKey(), prove ? first.operateIndependent(operands, PEK) : first.operateUnproven(operands, PEK));
+        }
+
+        return new EncryptedRaceSelection<>(resultMap, getTitle(), size);
+    }
+
+    /**
+     * Checks whether this and another race selection hold the same ciphertexts, whatever their proofs.
+     *
+     * @param other     the other race selection
+     * @return          true if the two have the same title and size, and the same ciphertext for each candidate
+     */
+    public boolean matches(EncryptedRaceSelection<T> other) {
+        if (other == null || !getTitle().equals(other.getTitle()) || size != other.size
+            || !selectionsMap.keySet().equals(other.selectionsMap.keySet()))
+            return false;
+
+        for (Map.Entry<String, T> entry : selectionsMap.entrySet())
+            if (!entry.getValue().matches(other.selectionsMap.get(entry.getKey())))
+                return false;
+
+        return true;
+    }
+
     /**
      * @return  the race title
      */
@@ -95,8 +183,18 @@ public class EncryptedRaceSelection<T extends AHomomorphicCiphertext<T>> extends
      *
      * @return  true if the number of 'for' votes (including abstentions) is within a range, false otherwise
      */
-    @SuppressWarnings("unchecked")
     private boolean verifySum(Map<String, T> selectionsMap, int value, IPublicKey PEK) {
+        return sum(selectionsMap, PEK).verify(0, value, PEK);
+    }
+
+    /**
+     * Sums the selections, with a proof for the summed ciphertext
+     * @param   selectionsMap the map of candidate IDs to ciphertext values for this race
+     *
+     * @return  the summed ciphertext
+     */
+    @SuppressWarnings("unchecked")
+    T sum(Map<String, T> selectionsMap, IPublicKey PEK) {
 
         /* Should each Ciphertext have proofs inside or just have all their proofs inside VoteProof (or both)? */
         /* Should each Vote have to pass itself to its sumProof for verification? */
@@ -111,9 +209,7 @@ public class EncryptedRaceSelection<T extends AHomomorphicCiphertext<T>> extends
         /* Create an identity for T */
         T summed = (T)CiphertextFactory.identity(arbitraryCiphertext.getClass(),PEK);
 
-        summed = summed.operateDependent(new ArrayList<>(selectionsMap.values()), PEK);
-
-        return summed.verify(0, value, PEK);
+        return summed.operateDependent(new ArrayList<>(selectionsMap.values()), PEK);
     }
 
     /**
@@ -2,15 +2,25 @@ package crypto;
 
 import crypto.adder.AdderInteger;
 import crypto.adder.AdderPublicKey;
+import crypto.adder.DiscreteLog;
 import crypto.adder.EEGMembershipProof;
-
+import crypto.adder.FixedWidthCodec;
+import crypto.adder.InvalidElgamalCiphertextException;
+import crypto.adder.ModAccumulator;
+import sexpression.BinaryEncodable;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by Matthew Kindy II on 12/1/2014.
  */
-public class ExponentialElGamalCiphertext extends AHomomorphicCiphertext<ExponentialElGamalCiphertext> {
+public class ExponentialElGamalCiphertext extends AHomomorphicCiphertext<ExponentialElGamalCiphertext> implements BinaryEncodable {
+
+    private static final long serialVersionUID = 8318032617925281229L;
 
     /** A generator for the ElGamal keys, is the generator of the group mod p */
     private AdderInteger g;
@@ -27,6 +37,9 @@ public class ExponentialElGamalCiphertext extends AHomomorphicCiphertext<Exponen
     /** A proof of the membership of an element to group G */
     private EEGMembershipProof proof;
 
+    /** The version of the binary form written by {@link #toBytes()} */
+    private static final int ENCODING = 1;
+
     public ExponentialElGamalCiphertext(AdderInteger g, AdderInteger h, AdderInteger r, AdderInteger p, EEGMembershipProof proof, int size) {
         super(size);
         this.p = p;
@@ -130,6 +143,85 @@ public class ExponentialElGamalCiphertext extends AHomomorphicCiphertext<Exponen
         return new ExponentialElGamalCiphertext(g, h, r, p, proof, this.size+operand.size);
     }
 
+    /**
+     * Multiply this and a list of other ciphertexts, each from a different choice set, together. The product is the
+     * one folding {@link #operateIndependent(ExponentialElGamalCiphertext, IPublicKey)} over the list gives, but only
+     * the product gets a proof: the r values are summed along with the ciphertexts, the value of the product is found
+     * from them, and a single proof is computed for it over the domain [0, the sum of the sizes].
+     *
+     * @param operands  the ciphertexts to "add" yourself to
+     * @return          the result of the homomorphic operation on all the ciphertexts
+     */
+    public ExponentialElGamalCiphertext operateIndependent(List<ExponentialElGamalCiphertext> operands, IPublicKey PEK) {
+        AdderPublicKey publicKey = (AdderPublicKey) PEK;
+
+        ExponentialElGamalCiphertext product = operateUnproven(operands, PEK);
+
+        AdderInteger g = product.g;
+        AdderInteger h = product.h;
+        AdderInteger r = product.r;
+        int size = product.size;
+
+        /* h = h^r * f^m, so the value m is the d in the domain with f^d = h / h^r */
+        AdderInteger fm = h.divide(publicKey.powH(r));
+        int value = DiscreteLog.forKey(publicKey).solve(fm, size);
+
+        /* Without the r values (e.g. ciphertexts that weren't encrypted here) there is nothing to prove with */
+        if (value < 0) {
+
+            /* and without the operands' proofs (e.g. unproven products), nothing to carry a proof along from */
+            if (proof == null || operands.stream().anyMatch(operand -> operand.proof == null))
+                return product;
+
+            ExponentialElGamalCiphertext total = this;
+
+            for (ExponentialElGamalCiphertext operand : operands)
+                total = total.operateIndependent(operand, PEK);
+
+            return total;
+        }
+
+        List<AdderInteger> domain = new ArrayList<>();
+
+        for(int i=0; i<=size; i++){
+            domain.add(new AdderInteger(i));
+        }
+
+        /* Compute a single proof for the product */
+        EEGMembershipProof proof = new EEGMembershipProof(g, h, r, publicKey, new AdderInteger(value), domain);
+
+        /* Create a new ciphertext with the updated values and proof */
+        return new ExponentialElGamalCiphertext(g, h, r, p, proof, size);
+    }
+
+    /**
+     * Multiply this and a list of other ciphertexts, each from a different choice set, together, summing the r values
+     * along with them, as {@link #operateIndependent(List, IPublicKey)} does, but leave the product without a proof.
+     *
+     * @param operands  the ciphertexts to "add" yourself to
+     * @return          the unproven result of the homomorphic operation on all the ciphertexts
+     */
+    public ExponentialElGamalCiphertext operateUnproven(List<ExponentialElGamalCiphertext> operands, IPublicKey PEK) {
+        AdderPublicKey publicKey = (AdderPublicKey) PEK;
+
+        /* Get the requisite numbers and multiply, without a new AdderInteger for every product */
+        BigInteger q = publicKey.getQ().bigintValue();
+
+        ModAccumulator gProduct = new ModAccumulator(p).set(this.g.bigintValue());
+        ModAccumulator hProduct = new ModAccumulator(p).set(this.h.bigintValue());
+        BigInteger rSum = this.r.bigintValue();
+        int size = this.size;
+
+        for (ExponentialElGamalCiphertext operand : operands) {
+            gProduct.multiply(operand.g);
+            hProduct.multiply(operand.h);
+            rSum = rSum.add(operand.r.bigintValue());
+            size += operand.size;
+        }
+
+        return new ExponentialElGamalCiphertext(gProduct.adderValue(), hProduct.adderValue(), new AdderInteger(rSum, q), p, null, size);
+    }
+
     /**
      * Returns the generator <tt>g</tt>.
      *
@@ -156,6 +248,13 @@ public class ExponentialElGamalCiphertext extends AHomomorphicCiphertext<Exponen
         return proof;
     }
 
+    /**
+     * @see AHomomorphicCiphertext#matches(AHomomorphicCiphertext)
+     */
+    public boolean matches(ExponentialElGamalCiphertext other) {
+        return other != null && g.equals(other.g) && h.equals(other.h) && size == other.size;
+    }
+
     /**
      * Verifies this ciphertext encodes a value between min and max and was encrypted with this PEK
      * @param min   the minimum acceptable value for this ciphertext
@@ -178,4 +277,71 @@ public class ExponentialElGamalCiphertext extends AHomomorphicCiphertext<Exponen
         return proof.verify(this, PEK, domain);
     }
 
+    /**
+     * Returns the binary form of this ciphertext: its size, p, g and h in the width of p, r (with its modulus, as it
+     * need not be mod anything in particular) and the binary form of the proof, if there is one.
+     *
+     * @return the binary form of this ciphertext
+     * @see FixedWidthCodec
+     */
+    public byte[] toBytes() {
+        return FixedWidthCodec.encode(ENCODING, out -> {
+            out.writeInt(size);
+            FixedWidthCodec.writeModulus(out, p.bigintValue());
+            FixedWidthCodec.write(out, g, p.bigintValue());
+            FixedWidthCodec.write(out, h, p.bigintValue());
+            FixedWidthCodec.writeInteger(out, r);
+
+            out.writeBoolean(proof != null);
+
+            if (proof != null) {
+                byte[] proofBytes = proof.toBytes();
+
+                out.writeInt(proofBytes.length);
+                out.write(proofBytes);
+            }
+        });
+    }
+
+    /**
+     * Creates a ciphertext from the binary form written by {@link #toBytes()}.
+     *
+     * @param bytes     the binary form of a ciphertext
+     * @return          a ciphertext with the encoded values
+     */
+    public static ExponentialElGamalCiphertext fromBytes(byte[] bytes) {
+        try {
+            DataInputStream in = FixedWidthCodec.open(bytes, ENCODING);
+
+            int size = in.readInt();
+            BigInteger p = FixedWidthCodec.readModulus(in);
+
+            AdderInteger g = FixedWidthCodec.read(in, p);
+            AdderInteger h = FixedWidthCodec.read(in, p);
+            AdderInteger r = FixedWidthCodec.readInteger(in);
+
+            if (g == null || h == null)
+                throw new IOException("Missing ciphertext component");
+
+            EEGMembershipProof proof = null;
+
+            if (in.readBoolean()) {
+                int length = in.readInt();
+
+                if (length < 0 || length > in.available())
+                    throw new IOException("Proof longer than its encoding");
+
+                byte[] proofBytes = new byte[length];
+                in.readFully(proofBytes);
+
+                proof = EEGMembershipProof.fromBytes(proofBytes);
+            }
+
+            FixedWidthCodec.end(in);
+
+            return new ExponentialElGamalCiphertext(g, h, r, new AdderInteger(p), proof, size);
+        } catch (IOException e) {
+            throw new InvalidElgamalCiphertextException(e.getMessage());
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package crypto;
 
+import crypto.ec.ECCurve;
+import crypto.ec.ECThresholdKeys;
 import crypto.exceptions.KeyGenerationException;
 
 import java.io.File;
@@ -31,6 +33,9 @@ public class KeyGenerator {
             case ELGAMAL:
                 return generateElGamalKeyPair(directory);
 
+            case ECC:
+                return generateECKeyPair(directory);
+
             default:
                 throw new KeyGenerationException("Couldn't find the correct cryptographic protocol!");
         }
@@ -70,6 +75,33 @@ public class KeyGenerator {
 
     }
 
+    /**
+     * Generates an exponential ElGamal key on P-256, held by a single authority.
+     */
+    private KeyPair generateECKeyPair(String directory) throws KeyGenerationException {
+
+        try {
+            ObjectOutputStream publicOut = new ObjectOutputStream(new FileOutputStream(directory + File.separator+ "ECPublic.key"));
+            ObjectOutputStream privateOut = new ObjectOutputStream(new FileOutputStream(directory + File.separator+ "ECPrivate.key"));
+
+            ECThresholdKeys keys = ECThresholdKeys.generate(ECCurve.P256, 1, 1);
+
+            PublicKey pubKey = keys.getPublicKey();
+            PrivateKey privKey = keys.getShares().get(0);
 
+            publicOut.writeObject(pubKey);
+            privateOut.writeObject(privKey);
+
+            publicOut.close();
+            privateOut.close();
+
+            return new KeyPair(pubKey, privKey);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new KeyGenerationException("Error during key generation.");
+        }
+
+    }
 
 }
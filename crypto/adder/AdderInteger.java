@@ -14,6 +14,8 @@ import java.math.BigInteger;
  * @since 0.0.1
  */
 public class AdderInteger implements Comparable, Serializable {
+    private static final long serialVersionUID = 2922334911780572183L;
+
     /**
      * The AdderInteger constant zero.
      */
@@ -201,6 +203,24 @@ public class AdderInteger implements Comparable, Serializable {
         this(b.toString(), mod);
     }
 
+    /**
+     * Makes an AdderInteger with exactly the given value and modulus, without
+     * reducing the value, for decoding values (such as the sums
+     * {@link #subtract} leaves) that were never reduced.
+     *
+     * @param val       the value
+     * @param mod       the modulus
+     * @return          the AdderInteger
+     */
+    static AdderInteger unreduced(BigInteger val, BigInteger mod) {
+        AdderInteger c = new AdderInteger();
+
+        c.val = val;
+        c.mod = mod;
+
+        return c;
+    }
+
 
     /**
      * Returns whether this AdderInteger is value is divisible by the given
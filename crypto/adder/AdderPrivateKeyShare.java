@@ -2,7 +2,11 @@ package crypto.adder;
 
 import crypto.EncryptedRaceSelection;
 import crypto.ExponentialElGamalCiphertext;
+import sexpression.BinaryEncodable;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
 import java.util.*;
 
 /**
@@ -12,10 +16,13 @@ import java.util.*;
  * @version $LastChangedRevision$ $LastChangedDate$
  * @since 0.0.1
  */
-public class AdderPrivateKeyShare extends AdderKey {
+public class AdderPrivateKeyShare extends AdderKey implements BinaryEncodable {
 
     private AdderInteger x;
 
+    /** The version of the binary form written by {@link #toBytes()} */
+    private static final int ENCODING = 1;
+
     /**
      * Creates a new PrivateKey with the specified parameter values.
      *
@@ -180,4 +187,48 @@ public class AdderPrivateKeyShare extends AdderKey {
 
     }
 
+    /**
+     * Returns the binary form of this private key: <tt>p</tt>, then
+     * <tt>g</tt> and <tt>f</tt> in its width and <tt>x</tt> in that of <tt>q</tt>.
+     *
+     * @return the binary form of this private key
+     * @see FixedWidthCodec
+     */
+    public byte[] toBytes() {
+        return FixedWidthCodec.encode(ENCODING, out -> {
+            FixedWidthCodec.writeModulus(out, p.bigintValue());
+            FixedWidthCodec.write(out, g, p.bigintValue());
+            FixedWidthCodec.write(out, x, q.bigintValue());
+            FixedWidthCodec.write(out, f, p.bigintValue());
+        });
+    }
+
+    /**
+     * Creates a <tt>PrivateKey</tt> from the binary form written by
+     * {@link #toBytes()}.
+     *
+     * @param  bytes the binary form of a <tt>PrivateKey</tt>
+     * @return a <tt>PrivateKey</tt> with the encoded values
+     */
+    public static AdderPrivateKeyShare fromBytes(byte[] bytes) {
+        try {
+            DataInputStream in = FixedWidthCodec.open(bytes, ENCODING);
+
+            BigInteger p = FixedWidthCodec.readModulus(in);
+            BigInteger q = p.subtract(BigInteger.ONE).shiftRight(1);
+
+            AdderInteger g = FixedWidthCodec.read(in, p);
+            AdderInteger x = FixedWidthCodec.read(in, q);
+            AdderInteger f = FixedWidthCodec.read(in, p);
+
+            FixedWidthCodec.end(in);
+
+            if (g == null || x == null || f == null)
+                throw new IOException("Missing key component");
+
+            return new AdderPrivateKeyShare(new AdderInteger(p), g, x, f);
+        } catch (IOException e) {
+            throw new InvalidPrivateKeyException(e.getMessage());
+        }
+    }
 }
@@ -2,8 +2,12 @@ package crypto.adder;
 
 import crypto.ExponentialElGamalCiphertext;
 import crypto.IPublicKey;
+import sexpression.BinaryEncodable;
 
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.math.BigInteger;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
@@ -34,10 +38,20 @@ import java.util.StringTokenizer;
  * @version $LastChangedRevision$ $LastChangedDate$
  * @since 0.0.1
  */
-public class AdderPublicKey extends AdderKey implements IPublicKey, Serializable {
+public class AdderPublicKey extends AdderKey implements IPublicKey, Serializable, BinaryEncodable {
+
+    private static final long serialVersionUID = -4473044749903178963L;
 
     private AdderInteger h;
 
+    /** Fixed-base tables for g, h and f, built on first use (and never serialized) */
+    private transient FixedBaseTable hTable, fTable;
+    private transient AdderInteger fInverse;
+    private transient volatile FixedBaseTable gTable;
+
+    /** The version of the binary form written by {@link #toBytes()} */
+    private static final int ENCODING = 1;
+
     /**
      * Creates a new PublicKey with the specified parameter values.
      *
@@ -86,14 +100,51 @@ public class AdderPublicKey extends AdderKey implements IPublicKey, Serializable
      */
     public ExponentialElGamalCiphertext encrypt(AdderInteger m, List<AdderInteger> domain) {
         AdderInteger r = AdderInteger.random(q);
-        AdderInteger bigG = g.pow(r);
-        AdderInteger bigH = h.pow(r).multiply(f.pow(m));
+        AdderInteger bigG = powG(r);
+        AdderInteger bigH = powH(r).multiply(powF(m));
 
         EEGMembershipProof proof = new EEGMembershipProof(bigG, bigH, r, this, m, domain);
 
         return new ExponentialElGamalCiphertext(bigG, bigH, r, p, proof);
     }
 
+    /**
+     * Does the exponentiations of an encryption that don't depend on the
+     * message, so that {@link #encrypt(AdderInteger, List, PrecomputedEncryption)}
+     * can be done quickly later.
+     *
+     * @param domain    the messages that could be encrypted
+     * @return          the precomputed values, to be used for one encryption
+     */
+    public PrecomputedEncryption precompute(List<AdderInteger> domain) {
+        return new PrecomputedEncryption(this, domain);
+    }
+
+    /**
+     * Encrypts a message as {@link #encrypt(AdderInteger, List)} does, but
+     * with the randomness (and the exponentiations that go with it) worked
+     * out ahead of time.
+     *
+     * @param m         the message
+     * @param domain    the messages that could have been encrypted
+     * @param pre       values from {@link #precompute(List)} with this key and domain,
+     *                  never used before; or null to compute everything now
+     * @return          the encrypted message
+     */
+    public ExponentialElGamalCiphertext encrypt(AdderInteger m, List<AdderInteger> domain, PrecomputedEncryption pre) {
+        if (pre == null)
+            return encrypt(m, domain);
+
+        if (!pre.getDomain().equals(domain) || (pre.getKey() != this && !pre.getKey().equals(this)))
+            throw new IllegalArgumentException("Precomputed encryption is for a different key or domain");
+
+        AdderInteger bigH = pre.hR.multiply(powF(m));
+
+        EEGMembershipProof proof = new EEGMembershipProof(pre.bigG, bigH, pre, this, m);
+
+        return new ExponentialElGamalCiphertext(pre.bigG, bigH, pre.r, p, proof);
+    }
+
 
     /**
      * Encrypts a polynomial value destined for an authority. The
@@ -107,14 +158,94 @@ public class AdderPublicKey extends AdderKey implements IPublicKey, Serializable
     public ExponentialElGamalCiphertext encryptPoly(AdderInteger m) {
 
         AdderInteger r = AdderInteger.random(q);
-        AdderInteger bigG = g.pow(r);
+        AdderInteger bigG = powG(r);
         AdderInteger mPlusOne = new AdderInteger(m.add(AdderInteger.ONE), p);
-        AdderInteger bigH = h.pow(r).multiply(mPlusOne.pow(AdderInteger.TWO));
+        AdderInteger bigH = powH(r).multiply(mPlusOne.pow(AdderInteger.TWO));
 
         return new ExponentialElGamalCiphertext(bigG, bigH, r, p, null);
     }
 
 
+    /**
+     * Raises the generator <tt>g</tt> (taken mod <tt>p</tt>) to the given
+     * power, using a precomputed fixed-base table.
+     *
+     * @param exponent  the exponent
+     * @return          <tt>g<sup>exponent</sup></tt> mod <tt>p</tt>
+     */
+    public AdderInteger powG(AdderInteger exponent) {
+        if (gTable == null) buildTables();
+        return gTable.pow(exponent);
+    }
+
+    /**
+     * Raises the public value <tt>h</tt> to the given power, using a
+     * precomputed fixed-base table.
+     *
+     * @param exponent  the exponent
+     * @return          <tt>h<sup>exponent</sup></tt>
+     */
+    public AdderInteger powH(AdderInteger exponent) {
+        if (gTable == null) buildTables();
+        return hTable != null ? hTable.pow(exponent) : h.pow(exponent);
+    }
+
+    /**
+     * Raises the message base <tt>f</tt> to the given power, using a
+     * precomputed fixed-base table.
+     *
+     * @param exponent  the exponent
+     * @return          <tt>f<sup>exponent</sup></tt>
+     */
+    public AdderInteger powF(AdderInteger exponent) {
+        if (gTable == null) buildTables();
+        return fTable != null ? fTable.pow(exponent) : f.pow(exponent);
+    }
+
+    /**
+     * Divides a value by a power of the message base, as
+     * <tt>x.divide(f.pow(exponent))</tt> would, but by multiplying with a
+     * power of a cached <tt>f<sup>-1</sup></tt> rather than computing a
+     * modular inverse every time.
+     *
+     * @param x         the value to divide
+     * @param exponent  the power of <tt>f</tt> to divide by (usually a small domain value)
+     * @return          <tt>x / f<sup>exponent</sup></tt>
+     */
+    public AdderInteger divideByPowF(AdderInteger x, AdderInteger exponent) {
+        if (gTable == null) buildTables();
+
+        if (fInverse == null || !isModP(x))
+            return x.divide(powF(exponent));
+
+        return x.multiply(fInverse.pow(exponent));
+    }
+
+    /**
+     * Builds the fixed-base tables the first time they are needed. A base
+     * only gets a table if it is already reduced mod <tt>p</tt>, so that the
+     * results are exactly those of {@link AdderInteger#pow(AdderInteger)}.
+     */
+    private synchronized void buildTables() {
+        if (gTable != null)
+            return;
+
+        if (h != null && isModP(h))
+            hTable = new FixedBaseTable(h);
+
+        if (isModP(f)) {
+            fTable = new FixedBaseTable(f);
+            fInverse = new AdderInteger(f.bigintValue().modInverse(p.bigintValue()), p.bigintValue());
+        }
+
+        /* Written last, since it is what marks the tables as built */
+        gTable = new FixedBaseTable(new AdderInteger(g, p));
+    }
+
+    private boolean isModP(AdderInteger x) {
+        return x.getModulus().bigintValue().equals(p.bigintValue());
+    }
+
     /**
      * Returns the prime <tt>p</tt>.
      *
@@ -245,4 +376,45 @@ public class AdderPublicKey extends AdderKey implements IPublicKey, Serializable
         return o instanceof AdderPublicKey && o.toString().equals(toString());
 
     }
+
+    /**
+     * Returns the binary form of this public key: <tt>p</tt>, then
+     * <tt>g</tt>, <tt>h</tt> and <tt>f</tt> in its width.
+     *
+     * @return the binary form of this public key
+     * @see FixedWidthCodec
+     */
+    public byte[] toBytes() {
+        return FixedWidthCodec.encode(ENCODING, out -> {
+            FixedWidthCodec.writeModulus(out, p.bigintValue());
+            FixedWidthCodec.write(out, g, p.bigintValue());
+            FixedWidthCodec.write(out, h, p.bigintValue());
+            FixedWidthCodec.write(out, f, p.bigintValue());
+        });
+    }
+
+    /**
+     * Creates a <tt>PublicKey</tt> from the binary form written by
+     * {@link #toBytes()}.
+     *
+     * @param  bytes the binary form of a <tt>PublicKey</tt>
+     * @return a <tt>PublicKey</tt> with the encoded values
+     */
+    public static AdderPublicKey fromBytes(byte[] bytes) {
+        try {
+            DataInputStream in = FixedWidthCodec.open(bytes, ENCODING);
+
+            BigInteger p = FixedWidthCodec.readModulus(in);
+
+            AdderInteger g = FixedWidthCodec.read(in, p);
+            AdderInteger h = FixedWidthCodec.read(in, p);
+            AdderInteger f = FixedWidthCodec.read(in, p);
+
+            FixedWidthCodec.end(in);
+
+            return new AdderPublicKey(new AdderInteger(p), g, h, f);
+        } catch (IOException e) {
+            throw new InvalidPublicKeyException(e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package crypto.adder;
+
+import java.math.BigInteger;
+
+/**
+ * Barrett reduction modulo a fixed odd modulus: <tt>x mod p</tt> is
+ * computed from a precomputed \f$\mu = \lfloor 4^k / p \rfloor\f$ with
+ * multiplications and shifts rather than a long division, which makes it
+ * cheaper than {@link BigInteger#mod(BigInteger)} for the many products
+ * of table lookups and multi-exponentiations.
+ *
+ * @see FixedBaseTable
+ * @see MultiExponentiation
+ */
+final class Barrett {
+
+    private final BigInteger p;
+
+    /** Barrett's constant, floor(4^k / p) for a k-bit p */
+    private final BigInteger mu;
+    private final int k;
+
+    /**
+     * @param p     the modulus
+     */
+    Barrett(BigInteger p) {
+        if (p.signum() <= 0)
+            throw new IllegalArgumentException("Barrett reduction needs a positive modulus");
+
+        this.p = p;
+        k = p.bitLength();
+        mu = BigInteger.ONE.shiftLeft(2 * k).divide(p);
+    }
+
+    /**
+     * @param x     a non-negative value less than p<sup>2</sup>
+     * @return      <tt>x mod p</tt>
+     */
+    BigInteger reduce(BigInteger x) {
+        BigInteger estimate = x.shiftRight(k - 1).multiply(mu).shiftRight(k + 1);
+        BigInteger r = x.subtract(estimate.multiply(p));
+
+        /* The estimate is at most two short */
+        while (r.compareTo(p) >= 0)
+            r = r.subtract(p);
+
+        return r;
+    }
+
+    /**
+     * @param a     a value in [0, p)
+     * @param b     a value in [0, p)
+     * @return      <tt>a b mod p</tt>
+     */
+    BigInteger multiply(BigInteger a, BigInteger b) {
+        return reduce(a.multiply(b));
+    }
+}
@@ -0,0 +1,294 @@
+package crypto.adder;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Discrete logarithms to the base <tt>f</tt> of a public key, for turning
+ * a decrypted tally \f$f^m\f$ back into the number of votes \f$m\f$.
+ *
+ * Small totals are found by walking \f$f^0, f^1, \ldots\f$ one modular
+ * multiplication at a time. Larger ones use baby-step giant-step: a table
+ * of \f$f^j\f$ for \f$0 \le j < n\f$ is looked up with \f$y f^{-in}\f$ for
+ * \f$i = 0, 1, \ldots\f$, so once the table is built a total of up to
+ * \f$N\f$ costs about \f$N/n\f$ multiplications, rather than \f$N\f$ (or,
+ * as it once was, \f$N\f$ exponentiations). The table holds only the low
+ * 64 bits of each power, a match being confirmed with a full
+ * exponentiation; it is at most {@link #MAX_TABLE_SIZE} powers, made
+ * about \f$\sqrt{N}\f$ long for the largest total asked for so far; and it
+ * is kept for each key, and can be {@link #store stored} and
+ * {@link #load loaded} so that it need not be built again.
+ *
+ * @see crypto.DHExponentialElGamalCryptoType
+ */
+public final class DiscreteLog {
+
+    /** Totals below this are found by walking the powers of f */
+    public static final int LINEAR_LIMIT = 1024;
+
+    /** The most powers of f a table holds (24 MB or so, with its hash slots); larger totals take more giant steps */
+    public static final int MAX_TABLE_SIZE = 1 << 20;
+
+    /** Marks a stored table */
+    private static final int MAGIC = 0x444c4f47;
+
+    /** The solver for each key, by p and f */
+    private static final Map<String, DiscreteLog> SOLVERS = new HashMap<>();
+
+    /** The baby steps: the low bits of f^j, hashed, and the giant step f^-size */
+    private static final class Table {
+        private final int size;
+        private final long[] keys;
+        private final int[] slots;
+        private final BigInteger next, giant;
+
+        private Table(int size, long[] keys, BigInteger next, BigInteger giant) {
+            this.size = size;
+            this.keys = keys;
+            this.next = next;
+            this.giant = giant;
+
+            /* Open addressing, at most half full; each slot holds j + 1, or 0 if it is empty */
+            slots = new int[Integer.highestOneBit(Math.max(size, 1)) << 2];
+
+            for (int j = 0; j < size; j++) {
+                int slot = index(keys[j], slots.length);
+
+                while (slots[slot] != 0)
+                    slot = (slot + 1) & (slots.length - 1);
+
+                slots[slot] = j + 1;
+            }
+        }
+    }
+
+    private final BigInteger p, f;
+    private final Barrett barrett;
+
+    /** The table, replaced (never changed) when a larger one is needed */
+    private volatile Table table;
+
+    /**
+     * @param p     the modulus
+     * @param f     the base
+     */
+    private DiscreteLog(BigInteger p, BigInteger f) {
+        this.p = p;
+        this.f = f.mod(p);
+        this.barrett = new Barrett(p);
+    }
+
+    /**
+     * @param key   a public key
+     * @return      the solver for logarithms to the key's base <tt>f</tt>, shared by everything using the key
+     */
+    public static DiscreteLog forKey(AdderPublicKey key) {
+        return forBase(key.getP().bigintValue(), key.getF().bigintValue());
+    }
+
+    /**
+     * @return      the solver for logarithms to base f mod p
+     */
+    private static synchronized DiscreteLog forBase(BigInteger p, BigInteger f) {
+        String id = p.toString(16) + ":" + f.mod(p).toString(16);
+        DiscreteLog solver = SOLVERS.get(id);
+
+        if (solver == null) {
+            solver = new DiscreteLog(p, f);
+            SOLVERS.put(id, solver);
+        }
+
+        return solver;
+    }
+
+    /**
+     * Finds the logarithm of y to the base f, if it is no more than max.
+     *
+     * @param y     a power of f mod p
+     * @param max   the largest logarithm to look for
+     * @return      the m in [0, max] with <tt>f<sup>m</sup> = y</tt>, or -1 if there is none
+     */
+    public int solve(AdderInteger y, int max) {
+        BigInteger target = y.bigintValue().mod(p);
+
+        if (max < 0)
+            return -1;
+
+        if (max < LINEAR_LIMIT) {
+            BigInteger power = BigInteger.ONE;
+
+            for (int m = 0; m <= max; m++, power = barrett.multiply(power, f))
+                if (power.equals(target))
+                    return m;
+
+            return -1;
+        }
+
+        Table t = table((int) Math.min(MAX_TABLE_SIZE, (long) Math.ceil(Math.sqrt(max + 1.0))));
+
+        BigInteger gamma = target;
+
+        for (long i = 0; i * t.size <= max; i++, gamma = barrett.multiply(gamma, t.giant)) {
+            long key = gamma.longValue();
+
+            for (int slot = index(key, t.slots.length); t.slots[slot] != 0; slot = (slot + 1) & (t.slots.length - 1)) {
+                int j = t.slots[slot] - 1;
+                long m = i * t.size + j;
+
+                /* Only the low bits are in the table, so confirm the match */
+                if (t.keys[j] == key && m <= max && f.modPow(BigInteger.valueOf(m), p).equals(target))
+                    return (int) m;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param size  the number of baby steps wanted
+     * @return      a table of at least that many (or the largest allowed)
+     */
+    private Table table(int size) {
+        Table t = table;
+
+        if (t != null && t.size >= size)
+            return t;
+
+        synchronized (this) {
+            t = table;
+
+            if (t != null && t.size >= size)
+                return t;
+
+            /* Grow geometrically, so a run of ever larger totals doesn't rebuild the table each time */
+            int newSize = t == null ? size : (int) Math.min(MAX_TABLE_SIZE, Math.max(size, 2L * t.size));
+
+            return table = extend(t, newSize);
+        }
+    }
+
+    /**
+     * @return      the table t (or an empty one) extended to the given size
+     */
+    private Table extend(Table t, int size) {
+        long[] keys = new long[size];
+        int from = 0;
+        BigInteger power = BigInteger.ONE;
+
+        if (t != null) {
+            System.arraycopy(t.keys, 0, keys, 0, t.size);
+            from = t.size;
+            power = t.next;
+        }
+
+        for (int j = from; j < size; j++, power = barrett.multiply(power, f))
+            keys[j] = power.longValue();
+
+        return new Table(size, keys, power, power.modInverse(p));
+    }
+
+    /**
+     * Writes the table out, so that it can be {@link #load loaded} rather than built the next time.
+     *
+     * @param filePath      the file to write it to
+     * @throws IOException  if it can't be written
+     */
+    public void store(String filePath) throws IOException {
+        Table t = table;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            out.writeInt(MAGIC);
+            writeBigInteger(out, p);
+            writeBigInteger(out, f);
+
+            out.writeInt(t == null ? 0 : t.size);
+
+            if (t != null) {
+                writeBigInteger(out, t.next);
+
+                for (int j = 0; j < t.size; j++)
+                    out.writeLong(t.keys[j]);
+            }
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #store}, and gives it to the solver for its key (unless that has a larger one).
+     *
+     * @param filePath      the file to read it from
+     * @return              the solver for the table's key
+     * @throws IOException  if it can't be read, or isn't a table
+     */
+    public static DiscreteLog load(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a discrete logarithm table: " + filePath);
+
+            BigInteger p = readBigInteger(in);
+            BigInteger f = readBigInteger(in);
+            int size = in.readInt();
+
+            if (p.signum() <= 0 || size < 0 || size > MAX_TABLE_SIZE)
+                throw new IOException("Bad discrete logarithm table: " + filePath);
+
+            DiscreteLog solver = forBase(p, f);
+
+            if (size == 0)
+                return solver;
+
+            BigInteger next = readBigInteger(in);
+            long[] keys = new long[size];
+
+            for (int j = 0; j < size; j++)
+                keys[j] = in.readLong();
+
+            /* A cheap check that the table is for this base: the last power it holds, times f, must be the next */
+            BigInteger last = next.multiply(solver.f.modInverse(p)).mod(p);
+
+            if (last.longValue() != keys[size - 1] || !solver.f.modPow(BigInteger.valueOf(size), p).equals(next))
+                throw new IOException("Discrete logarithm table doesn't match its key: " + filePath);
+
+            synchronized (solver) {
+                if (solver.table == null || solver.table.size < size)
+                    solver.table = new Table(size, keys, next, next.modInverse(p));
+            }
+
+            return solver;
+        }
+    }
+
+    /**
+     * @return      the number of powers in the table (0 if none has been built)
+     */
+    public int getTableSize() {
+        Table t = table;
+        return t == null ? 0 : t.size;
+    }
+
+    /**
+     * @return      the slot in a table of the given length where a key's search starts
+     */
+    private static int index(long key, int length) {
+        return (int) (key ^ (key >>> 32)) & (length - 1);
+    }
+
+    private static void writeBigInteger(DataOutputStream out, BigInteger x) throws IOException {
+        byte[] bytes = x.toByteArray();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static BigInteger readBigInteger(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length <= 0 || length > 1 << 16)
+            throw new IOException("Bad number in discrete logarithm table");
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new BigInteger(bytes);
+    }
+}
@@ -3,7 +3,11 @@ package crypto.adder;
 import crypto.ExponentialElGamalCiphertext;
 import crypto.IProof;
 import crypto.IPublicKey;
+import sexpression.BinaryEncodable;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -68,7 +72,9 @@ import java.util.StringTokenizer;
  *  @version $LastChangedRevision$ $LastChangedDate$
  *  @since 0.0.1
  */
-public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext> {
+public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>, BinaryEncodable {
+
+    private static final long serialVersionUID = 2913289107975961836L;
 
     private AdderInteger p;
     private AdderInteger q;
@@ -90,6 +96,21 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
         compute(bigG, bigH, r, pubKey, value, domain);
     }
 
+    /**
+     * Constructs the proof of an encryption made from precomputed values.
+     *
+     * @see AdderPublicKey#encrypt(AdderInteger, List, PrecomputedEncryption)
+     */
+    EEGMembershipProof(AdderInteger bigG, AdderInteger bigH, PrecomputedEncryption pre, AdderPublicKey pubKey, AdderInteger value) {
+
+        yList = new ArrayList<>();
+        zList = new ArrayList<>();
+        sList = new ArrayList<>();
+        cList = new ArrayList<>();
+
+        compute(bigG, bigH, pre, pubKey, value);
+    }
+
     /**
      * Constructs a new <code>MembershipProof</code> object with the specified
      * prime.
@@ -172,10 +193,9 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
         this.p = pubKey.getP();
         this.q = pubKey.getQ();
 
-        /* Get g, h, and f */
+        /* Get g and h; powers of g, h and f come from the key's fixed-base tables */
         AdderInteger g = new AdderInteger(pubKey.getG(), this.p);
         AdderInteger h = pubKey.getH();
-        AdderInteger f = pubKey.getF();
 
         /* bigG (g^r), bigH (g^(rx) * f^m), and r */
         AdderInteger bigG = ctext1.getG().multiply(ctext2.getG());
@@ -197,11 +217,24 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
         /* Reshape the proof lists to fit the new domain */
         reviseProofs(ctext1.getProof(), domain1, ctext2.getProof(), domain2, newDomain, q);
 
+        int size = newDomain.size();
+        BigInteger modulus = this.p.bigintValue();
+
+        /* If H / f^d = h^(r1 + r2), then this means that d=m */
+        AdderInteger bigHr = pubKey.powH(r1.add(r2));
+        boolean[] isValue = new boolean[size];
+
+        /*
+         * y' and z' are each a quotient, so rather than a modular inverse for
+         * every one, collect the numerators and denominators first and invert
+         * all the denominators together
+         */
+        List<BigInteger> numerators = new ArrayList<>(2 * size);
+        List<BigInteger> denominators = new ArrayList<>(2 * size);
+
         /* Iterate over the domain */
-        for (int i = 0; i < newDomain.size(); i++) {
+        for (int i = 0; i < size; i++) {
 
-            AdderInteger y;
-            AdderInteger z;
             AdderInteger d = newDomain.get(i);
 
             AdderInteger s1 = ctext1.getProof().sList.get(i);
@@ -220,32 +253,44 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
             AdderInteger negC1 = c1.negate();
             AdderInteger negC2 = c2.negate();
 
-            /* This is essentially the message corresponding to domain member d mapped into G */
-            AdderInteger fpow = f.pow(d);
-
             /* Compute a group member y = g^s * (g^r)^(-c) = g^(s - r*c) */
-            AdderInteger y1 = g.pow(s1).multiply(ctext1.getG().pow(negC1));
-            AdderInteger y2 = g.pow(s2).multiply(ctext2.getG().pow(negC2));
+            AdderInteger y1 = pubKey.powG(s1).multiply(ctext1.getG().pow(negC1));
+            AdderInteger y2 = pubKey.powG(s2).multiply(ctext2.getG().pow(negC2));
 
-            /* Now this is y1*y2 / [g^(r2*c1+r1*c2)] = g^(s'-r'c') = y(s',r',c') = y' */
-            y = y1.multiply(y2).divide(g.pow(r2.multiply(c1).add(r1.multiply(c2))));
+            /* y' will be y1*y2 / [g^(r2*c1+r1*c2)] = g^(s'-r'c') = y(s',r',c') */
+            numerators.add(y1.multiply(y2).bigintValue());
+            denominators.add(pubKey.powG(r2.multiply(c1).add(r1.multiply(c2))).bigintValue());
 
             /* Compute a cipher, of the form z = g^xs * [(g^rx * f^m)/f^d]^(-c_i) = g^[x(s - rc_i)] * f^[c_i*(d - m)] */
-            AdderInteger z1 = h.pow(s1).multiply(ctext1.getH().divide(fpow).pow(negC1));
-            AdderInteger z2 = h.pow(s2).multiply(ctext2.getH().divide(fpow).pow(negC2));
+            AdderInteger z1 = pubKey.powH(s1).multiply(pubKey.divideByPowF(ctext1.getH(), d).pow(negC1));
+            AdderInteger z2 = pubKey.powH(s2).multiply(pubKey.divideByPowF(ctext2.getH(), d).pow(negC2));
+
+            /* z' will be z1*z2 / [f^(m2*c1+m1*c2)] = z1*z2 / [ bigH2^c1 * bigH1^c2 ] = z(y', s',c') */
+            numerators.add(z1.multiply(z2).bigintValue());
+            denominators.add(ctext2.getH().pow(c1).multiply(ctext1.getH().pow(c2)).bigintValue());
+
+            isValue[i] = pubKey.divideByPowF(bigH, d).equals(bigHr);
+        }
+
+        BigInteger[] inverses = ModAccumulator.invertAll(denominators, modulus);
 
-            /* Now this is z1*z2 / [f^(m2*c1+m1*c2)] = z1*z2 / [ bigH2^c1 * bigH1^c2 ] = z(y', s',c') = z' */
-            z = z1.multiply(z2).divide(ctext2.getH().pow(c1).multiply(ctext1.getH().pow(c2)));
+        for (int i = 0; i < size; i++) {
 
-            /* If this is true, then this means that d=m */
-            if (bigH.divide(fpow).equals(h.pow(r1.add(r2)))) {
+            AdderInteger y;
+            AdderInteger z;
 
-                y = g.pow(t);
-                z = h.pow(t);
+            if (isValue[i]) {
+
+                y = pubKey.powG(t);
+                z = pubKey.powH(t);
                 cList.set(i,AdderInteger.ZERO);
                 sList.set(i,AdderInteger.ZERO);
                 indexInDomain = i;
             }
+            else {
+                y = new AdderInteger(numerators.get(2 * i).multiply(inverses[2 * i]), modulus);
+                z = new AdderInteger(numerators.get(2 * i + 1).multiply(inverses[2 * i + 1]), modulus);
+            }
 
             /* Add our random ciphers and members to their respective lists */
             yList.add(y);
@@ -339,10 +384,9 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
         this.p = pubKey.getP();
         this.q = pubKey.getQ();
 
-        /* Get g, h, and f */
+        /* Get g and h; powers of g, h and f come from the key's fixed-base tables */
         AdderInteger g = new AdderInteger(pubKey.getG(), this.p);
         AdderInteger h = pubKey.getH();
-        AdderInteger f = pubKey.getF();
 
         /* bigG (g^r), bigH (g^(rx) * f^m), and r */
 
@@ -381,10 +425,10 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
                 cList.add(AdderInteger.ZERO);
 
                 /* Compute random group member */
-                y = g.pow(t);
+                y = pubKey.powG(t);
 
                 /* compute a random cipher, as part of the commitment process */
-                z = h.pow(t);
+                z = pubKey.powH(t);
 
                 /* Record the index of the valid value */
                 indexInDomain = i;
@@ -399,14 +443,11 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
                 /* This will be needed for computing z_i */
                 AdderInteger negC = c.negate();
 
-			    /* This is essentially the message corresponding to domain member d mapped into G */
-                AdderInteger fpow = f.pow(d);
-
                 /* Compute a group member g^s * (g^r)^(-c_i) = g^(s - r*c_i) */
-                y = g.pow(s).multiply(bigG.pow(negC));
+                y = pubKey.powG(s).multiply(bigG.pow(negC));
 
                 /* Compute a cipher, of the form g^xs * [(g^rx * f^m)/f^d]^(-c_i) = g^[x(s - rc_i)] * f^[c_i*(d - m)] */
-                z = h.pow(s).multiply(bigH.divide(fpow).pow(negC));
+                z = pubKey.powH(s).multiply(pubKey.divideByPowF(bigH, d).pow(negC));
             }
 
             /* Add our random ciphers and members to their respective lists */
@@ -418,6 +459,83 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
             sb.append(z);
         }
 
+        respond(sb, r, t, indexInDomain);
+    }
+
+    /**
+     * Computes the proof of an encryption from its precomputed parts: the
+     * simulated commitments only need a power of <tt>f</tt> for the value
+     * actually encrypted, and the real one needs no exponentiation at all.
+     * The proof is the same as the one {@link #compute} would make with the
+     * same random values.
+     *
+     * @see PrecomputedEncryption
+     */
+    private void compute(AdderInteger bigG, AdderInteger bigH, PrecomputedEncryption pre, AdderPublicKey pubKey, AdderInteger value) {
+
+        /* Get p and q from the key */
+        this.p = pubKey.getP();
+        this.q = pubKey.getQ();
+
+        AdderInteger g = new AdderInteger(pubKey.getG(), this.p);
+        AdderInteger h = pubKey.getH();
+
+        /* The commitment string, as in compute */
+        StringBuilder sb = new StringBuilder(4096);
+
+        sb.append(g);
+        sb.append(h);
+        sb.append(bigG);
+        sb.append(bigH);
+
+        int indexInDomain = 0;
+
+        for (int i = 0; i < pre.getDomain().size(); i++) {
+
+            AdderInteger y;
+            AdderInteger z;
+            AdderInteger d = pre.getDomain().get(i);
+
+            if (d.equals(value)) {
+                sList.add(AdderInteger.ZERO);
+                cList.add(AdderInteger.ZERO);
+
+                y = pre.gT;
+                z = pre.hT;
+
+                indexInDomain = i;
+            } else {
+                AdderInteger c = pre.cList.get(i);
+
+                sList.add(pre.sList.get(i));
+                cList.add(c);
+
+                /* g^(s - rc), and h^(s - rc) * f^[c(d - m)] */
+                y = pre.gList.get(i);
+                z = pre.hList.get(i).multiply(pubKey.powF(c.multiply(d.subtract(value)).mod(q)));
+            }
+
+            yList.add(y);
+            zList.add(z);
+
+            sb.append(y);
+            sb.append(z);
+        }
+
+        respond(sb, pre.r, pre.t, indexInDomain);
+    }
+
+    /**
+     * Finishes a proof: hashes the commitments, and fills in the real
+     * challenge and response so that the challenges sum to the hash.
+     *
+     * @param sb            the commitment string
+     * @param r             the randomness of the encryption
+     * @param t             the real commitment
+     * @param indexInDomain the index of the value encrypted
+     */
+    private void respond(StringBuilder sb, AdderInteger r, AdderInteger t, int indexInDomain) {
+
         /* Hash the commitment string */
         String s = sb.toString();
         String cHash = Util.sha1(s);
@@ -456,7 +574,6 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
         q = pubKey.getQ();
         AdderInteger g = pubKey.getG();
         AdderInteger h = pubKey.getH();
-        AdderInteger f = pubKey.getF();
 
         /* Get the cipher's randomness and encrypted value*/
         /* bigG (g^r), bigH (g^(rx) * f^m) */
@@ -483,10 +600,6 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
                 /* Get out the domain value (i.e. the possible message m) */
                 AdderInteger d = new AdderInteger(domain.get(i));
 
-                /* Map the value into the group via f */
-                AdderInteger fpow = f.pow(d);
-
-
                 /* extract the commit value and cr + t (or the random values) */
                 AdderInteger s = sList.get(i);
                 AdderInteger c = cList.get(i);
@@ -504,10 +617,10 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
                 cChoices = cChoices.add(c);
 
                 /* Compute the y-values used in the commit string */
-                sb.append(g.pow(s).multiply(bigG.pow(negC)));
+                sb.append(pubKey.powG(s).multiply(bigG.pow(negC)));
 
                 /* Compute the z-values used in the commit string */
-                sb.append(h.pow(s).multiply(bigH.divide(fpow).pow(negC)));
+                sb.append(pubKey.powH(s).multiply(pubKey.divideByPowF(bigH, d).pow(negC)));
             }
 
             /* Now take the hash of the commit string and convert it to a number */
@@ -526,6 +639,34 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
         }
     }
 
+    /**
+     * @return the committed group members y_i, as sent by the prover
+     */
+    List<AdderInteger> getYList() {
+        return yList;
+    }
+
+    /**
+     * @return the committed ciphers z_i, as sent by the prover
+     */
+    List<AdderInteger> getZList() {
+        return zList;
+    }
+
+    /**
+     * @return the responses s_i
+     */
+    List<AdderInteger> getSList() {
+        return sList;
+    }
+
+    /**
+     * @return the challenges c_i
+     */
+    List<AdderInteger> getCList() {
+        return cList;
+    }
+
     /**
      * Creates a <tt>MembershipProof</tt> from the string standard representation
      * as described in the {@link #toString} method.
@@ -643,5 +784,54 @@ public class EEGMembershipProof implements IProof<ExponentialElGamalCiphertext>
         return sb.toString();
     }
 
+    /** The version of the binary form written by {@link #toBytes()} */
+    private static final int ENCODING = 1;
+
+    /**
+     * Returns the binary form of this proof: <tt>p</tt> and <tt>q</tt>, then
+     * the lists, each element in the width of its modulus (<tt>p</tt> for the
+     * <tt>y</tt> and <tt>z</tt>, <tt>q</tt> for the <tt>s</tt> and <tt>c</tt>).
+     *
+     * @return the binary form of this proof
+     * @see FixedWidthCodec
+     */
+    public byte[] toBytes() {
+        return FixedWidthCodec.encode(ENCODING, out -> {
+            FixedWidthCodec.writeModulus(out, p.bigintValue());
+            FixedWidthCodec.writeModulus(out, q.bigintValue());
+
+            FixedWidthCodec.writeList(out, yList, p.bigintValue());
+            FixedWidthCodec.writeList(out, zList, p.bigintValue());
+            FixedWidthCodec.writeList(out, sList, q.bigintValue());
+            FixedWidthCodec.writeList(out, cList, q.bigintValue());
+        });
+    }
+
+    /**
+     * Creates a <tt>MembershipProof</tt> from the binary form written by
+     * {@link #toBytes}.
+     *
+     * @param bytes the binary form of a <tt>MembershipProof</tt>
+     * @return      a <tt>MembershipProof</tt> with the encoded values
+     */
+    public static EEGMembershipProof fromBytes(byte[] bytes) {
+        try {
+            DataInputStream in = FixedWidthCodec.open(bytes, ENCODING);
+
+            BigInteger p = FixedWidthCodec.readModulus(in);
+            BigInteger q = FixedWidthCodec.readModulus(in);
+
+            List<AdderInteger> yList = FixedWidthCodec.readList(in, p);
+            List<AdderInteger> zList = FixedWidthCodec.readList(in, p);
+            List<AdderInteger> sList = FixedWidthCodec.readList(in, q);
+            List<AdderInteger> cList = FixedWidthCodec.readList(in, q);
+
+            FixedWidthCodec.end(in);
+
+            return new EEGMembershipProof(new AdderInteger(p), new AdderInteger(q), yList, zList, sList, cList);
+        } catch (IOException e) {
+            throw new InvalidMembershipProofException(e.getMessage());
+        }
+    }
 }
 
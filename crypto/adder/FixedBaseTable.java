@@ -0,0 +1,145 @@
+package crypto.adder;
+
+import java.math.BigInteger;
+
+/**
+ * Precomputed powers of a fixed base, for fast modular exponentiation.
+ *
+ * The exponent is split into <i>w</i>-bit digits \f$e = \sum_i e_i
+ * 2^{wi}\f$, and the table holds \f$b^{j 2^{wi}}\f$ for every row
+ * \f$i\f$ and digit \f$j\f$, so that \f$b^e = \prod_i T[i][e_i]\f$ costs
+ * one modular multiplication per digit and no squarings at all. Those
+ * multiplications are reduced with Barrett's method, which needs only
+ * multiplications and shifts rather than a long division. The table
+ * is built once per base and covers exponents up to the bit length it was
+ * made for; anything else (negative or longer exponents) falls back to
+ * {@link AdderInteger#pow(AdderInteger)}.
+ *
+ * @see AdderPublicKey
+ */
+public final class FixedBaseTable {
+
+    /** The default digit width, in bits, for moduli of up to 1024 bits; larger ones use two less */
+    public static final int DEFAULT_WIDTH = 8;
+
+    private final AdderInteger base;
+    private final BigInteger p;
+    private final Barrett barrett;
+
+    private final int width;
+    private final int bits;
+    private final BigInteger[][] table;
+
+    /**
+     * Builds the table for a base, covering exponents of up to the bit
+     * length of the modulus.
+     *
+     * @param base      the fixed base, with its modulus set
+     */
+    public FixedBaseTable(AdderInteger base) {
+        this(base, base.getModulus().bigintValue().bitLength(),
+             base.getModulus().bigintValue().bitLength() <= 1024 ? DEFAULT_WIDTH : DEFAULT_WIDTH - 2);
+    }
+
+    /**
+     * Builds the table for a base.
+     *
+     * @param base      the fixed base, with its modulus set
+     * @param bits      the largest exponent length (in bits) to cover
+     * @param width     the digit width in bits; each row of the table has 2^width entries
+     */
+    public FixedBaseTable(AdderInteger base, int bits, int width) {
+        if (width < 1 || width > 16)
+            throw new IllegalArgumentException("bad digit width: " + width);
+
+        this.base = base;
+        this.p = base.getModulus().bigintValue();
+        this.width = width;
+        this.bits = bits;
+
+        if (p.signum() == 0)
+            throw new IllegalArgumentException("a fixed-base table needs a modulus");
+
+        barrett = new Barrett(p);
+
+        int rows = (bits + width - 1) / width;
+        int columns = 1 << width;
+
+        table = new BigInteger[rows][columns];
+
+        /* Row i is b_i^0, ..., b_i^(2^w - 1), where b_i = b^(2^(wi)) */
+        BigInteger b = base.bigintValue().mod(p);
+
+        for (int i = 0; i < rows; i++) {
+            BigInteger[] row = table[i];
+
+            row[0] = BigInteger.ONE;
+            for (int j = 1; j < columns; j++)
+                row[j] = barrett.multiply(row[j - 1], b);
+
+            b = barrett.multiply(row[columns - 1], b);
+        }
+    }
+
+    /**
+     * Raises the fixed base to the given power.
+     *
+     * @param exponent      the exponent
+     * @return              <tt>base<sup>exponent</sup></tt>, with the base's modulus
+     */
+    public AdderInteger pow(AdderInteger exponent) {
+        BigInteger e = exponent.bigintValue();
+
+        if (e.signum() < 0 || e.bitLength() > bits)
+            return base.pow(exponent);
+
+        return new AdderInteger(pow(e), p);
+    }
+
+    /**
+     * Raises the fixed base to the given power.
+     *
+     * @param e     a non-negative exponent of at most the table's bit length
+     * @return      <tt>base<sup>e</sup> mod p</tt>
+     */
+    private BigInteger pow(BigInteger e) {
+        byte[] mag = e.toByteArray();
+        int length = e.bitLength();
+
+        BigInteger result = null;
+        int mask = (1 << width) - 1;
+
+        for (int i = 0, bit = 0; bit < length; i++, bit += width) {
+            int digit = bits(mag, bit) & mask;
+
+            if (digit == 0)
+                continue;
+
+            result = result == null ? table[i][digit] : barrett.multiply(result, table[i][digit]);
+        }
+
+        return result == null ? BigInteger.ONE.mod(p) : result;
+    }
+
+    /**
+     * @param mag       a big-endian two's-complement magnitude, as from BigInteger.toByteArray()
+     * @param bit       the index of the lowest bit wanted
+     * @return          the (up to) 24 bits of mag starting at the given bit
+     */
+    static int bits(byte[] mag, int bit) {
+        int index = mag.length - 1 - (bit >>> 3);
+        int value = 0;
+
+        for (int k = 0; k < 4 && index - k >= 0; k++)
+            value |= (mag[index - k] & 0xff) << (8 * k);
+
+        return value >>> (bit & 7);
+    }
+
+    /**
+     * @return the fixed base
+     */
+    public AdderInteger getBase() {
+        return base;
+    }
+}
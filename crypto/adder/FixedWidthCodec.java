@@ -0,0 +1,299 @@
+package crypto.adder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-width binary encoding of group elements, for the compact forms of
+ * keys, ciphertexts and proofs (see {@link sexpression.BinaryEncodable}).
+ *
+ * Every element mod \f$p\f$ (or exponent mod \f$q < p\f$) is written
+ * big-endian, unsigned, in exactly as many bytes as \f$p\f$ takes, so a
+ * 1024-bit element is 128 bytes, where its decimal string (with its
+ * modulus, as the reflective encoding writes it) is several times that,
+ * and reading it back needs no decimal conversion. The modulus itself is
+ * written once, with its length in front; everything else about an
+ * encoding (versions, counts, flags) is up to the class using it. The few
+ * values that aren't reduced mod anything (as in some sums of proofs), or
+ * that carry a different modulus from the one given, are written with
+ * their own width and modulus, and read back without being reduced, so
+ * nothing is changed by a round trip.
+ */
+public final class FixedWidthCodec {
+
+    /** How an element (or list of them) is written: missing, in the fixed width, or with its own width and modulus */
+    private static final int MISSING = 0, FIXED = 1, LOOSE = 2;
+
+    /** Don't instantiate me! */
+    private FixedWidthCodec() { }
+
+    /**
+     * @param modulus   a modulus
+     * @return          the number of bytes an element mod it takes
+     */
+    public static int width(BigInteger modulus) {
+        return (modulus.bitLength() + 7) / 8;
+    }
+
+    /**
+     * Writes a modulus, with its width in front.
+     */
+    public static void writeModulus(DataOutputStream out, BigInteger modulus) throws IOException {
+        int width = width(modulus);
+
+        out.writeShort(width);
+        write(out, modulus, width);
+    }
+
+    /**
+     * @return  a modulus written by {@link #writeModulus}
+     * @throws IOException if it is not a positive number
+     */
+    public static BigInteger readModulus(DataInputStream in) throws IOException {
+        int width = in.readUnsignedShort();
+
+        if (width == 0)
+            throw new IOException("Bad modulus width");
+
+        BigInteger modulus = read(in, width);
+
+        if (modulus.signum() <= 0)
+            throw new IOException("Bad modulus");
+
+        return modulus;
+    }
+
+    /**
+     * Writes a non-negative number in exactly width bytes.
+     *
+     * @throws IllegalArgumentException if it is negative or doesn't fit
+     */
+    public static void write(DataOutputStream out, BigInteger x, int width) throws IOException {
+        if (x.signum() < 0 || x.bitLength() > 8 * width)
+            throw new IllegalArgumentException("Value doesn't fit in " + width + " bytes");
+
+        byte[] bytes = x.toByteArray();
+        int copy = Math.min(bytes.length, width);
+
+        for (int i = copy; i < width; i++)
+            out.write(0);
+
+        out.write(bytes, bytes.length - copy, copy);
+    }
+
+    /**
+     * @return  a non-negative number read from exactly width bytes
+     */
+    public static BigInteger read(DataInputStream in, int width) throws IOException {
+        byte[] bytes = new byte[width];
+        in.readFully(bytes);
+
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     * Writes an element, which may be null. One that isn't in [0, modulus) (such as the unreduced sums some proofs
+     * hold), or whose own modulus isn't the one given, is written with its own width and modulus instead, so it reads
+     * back as it was.
+     */
+    public static void write(DataOutputStream out, AdderInteger x, BigInteger modulus) throws IOException {
+        if (x == null)
+            out.writeByte(MISSING);
+        else if (fits(x, modulus)) {
+            out.writeByte(FIXED);
+            write(out, x.bigintValue(), width(modulus));
+        }
+        else {
+            out.writeByte(LOOSE);
+            writeLoose(out, x);
+        }
+    }
+
+    /**
+     * @return  an element written by {@link #write(DataOutputStream, AdderInteger, BigInteger)}, mod the given
+     *          modulus if it was in range
+     */
+    public static AdderInteger read(DataInputStream in, BigInteger modulus) throws IOException {
+        switch (in.readUnsignedByte()) {
+            case MISSING:   return null;
+            case FIXED:     return new AdderInteger(read(in, width(modulus)), modulus);
+            case LOOSE:     return readLoose(in);
+            default:        throw new IOException("Bad element tag");
+        }
+    }
+
+    /**
+     * Writes a list of elements, which may be null, with its length in front. If any element isn't in [0, modulus)
+     * with that modulus, they are all written with their own widths and moduli.
+     */
+    public static void writeList(DataOutputStream out, List<AdderInteger> list, BigInteger modulus) throws IOException {
+        if (list == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        boolean fixed = true;
+
+        for (AdderInteger x : list)
+            fixed &= x != null && fits(x, modulus);
+
+        out.writeInt(list.size());
+        out.writeByte(fixed ? FIXED : LOOSE);
+
+        int width = width(modulus);
+
+        for (AdderInteger x : list) {
+            if (fixed)
+                write(out, x.bigintValue(), width);
+            else
+                write(out, x, modulus);
+        }
+    }
+
+    /**
+     * @return  a list written by {@link #writeList}, its elements mod the given modulus if they were in range
+     * @throws IOException if its length is impossible
+     */
+    public static List<AdderInteger> readList(DataInputStream in, BigInteger modulus) throws IOException {
+        int size = in.readInt();
+
+        if (size < 0)
+            return null;
+
+        int tag = in.readUnsignedByte();
+        int width = width(modulus);
+
+        if (tag != FIXED && tag != LOOSE)
+            throw new IOException("Bad list tag");
+
+        /* Don't let a bad length allocate more than the input could hold */
+        if ((long) size * (tag == FIXED ? width : 1) > in.available())
+            throw new IOException("List longer than its encoding");
+
+        List<AdderInteger> list = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++)
+            list.add(tag == FIXED ? new AdderInteger(read(in, width), modulus) : read(in, modulus));
+
+        return list;
+    }
+
+    /**
+     * Writes a number that isn't an element of a known group (e.g. one with its own, or no, modulus), which may be
+     * null, along with its modulus. Its width is written in front, as its value is not bounded.
+     */
+    public static void writeInteger(DataOutputStream out, AdderInteger x) throws IOException {
+        out.writeBoolean(x != null);
+
+        if (x != null)
+            writeLoose(out, x);
+    }
+
+    /**
+     * @return  a number written by {@link #writeInteger}
+     */
+    public static AdderInteger readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readLoose(in) : null;
+    }
+
+    /**
+     * @return  whether x is in [0, modulus), with that modulus, so it reads back the same in the fixed width
+     */
+    private static boolean fits(AdderInteger x, BigInteger modulus) {
+        return x.bigintValue().signum() >= 0 && x.bigintValue().compareTo(modulus) < 0
+               && x.getModulus().bigintValue().equals(modulus);
+    }
+
+    private static void writeLoose(DataOutputStream out, AdderInteger x) throws IOException {
+        writeSigned(out, x.bigintValue());
+        writeSigned(out, x.getModulus().bigintValue());
+    }
+
+    private static AdderInteger readLoose(DataInputStream in) throws IOException {
+        BigInteger val = readSigned(in);
+        BigInteger mod = readSigned(in);
+
+        if (mod.signum() < 0)
+            throw new IOException("Bad modulus");
+
+        return AdderInteger.unreduced(val, mod);
+    }
+
+    private static void writeSigned(DataOutputStream out, BigInteger x) throws IOException {
+        byte[] bytes = x.toByteArray();
+
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static BigInteger readSigned(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+
+        if (bytes.length == 0)
+            throw new IOException("Bad number width");
+
+        in.readFully(bytes);
+
+        return new BigInteger(bytes);
+    }
+
+    /** Writes the body of an encoding */
+    public interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * @param version   the version of the encoding, written first
+     * @param body      writes the rest of it
+     * @return          the encoding
+     */
+    public static byte[] encode(int version, Writer body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeByte(version);
+            body.write(out);
+            out.flush();
+        }
+        catch (IOException e) {
+            /* Writing to memory doesn't fail */
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Starts reading an encoding, checking its version byte.
+     *
+     * @throws IOException if the version isn't the one expected
+     */
+    public static DataInputStream open(byte[] bytes, int version) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        int found = in.readUnsignedByte();
+
+        if (found != version)
+            throw new IOException("Unknown encoding version " + found);
+
+        return in;
+    }
+
+    /**
+     * Finishes reading an encoding.
+     *
+     * @throws IOException if there is anything left over
+     */
+    public static void end(DataInputStream in) throws IOException {
+        if (in.available() > 0)
+            throw new IOException("Trailing bytes after encoding");
+    }
+}
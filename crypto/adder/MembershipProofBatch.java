@@ -0,0 +1,313 @@
+package crypto.adder;
+
+import crypto.ExponentialElGamalCiphertext;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies many {@link EEGMembershipProof}s at once with the small
+ * exponents test.
+ *
+ * Each proof is first checked cheaply on its own: the challenges must sum
+ * to the hash of the commitments \f$y_i, z_i\f$ exactly as the prover sent
+ * them. What remains is that every commitment is the one the verification
+ * equations give, i.e. \f$g^{s_i} = y_i G^{c_i}\f$ and \f$h^{s_i}
+ * f^{c_i d_i} = z_i H^{c_i}\f$. Rather than evaluate these one by one
+ * (two full exponentiations per domain element), each equation is raised
+ * to a fresh random 64-bit power and all of them are multiplied together,
+ * so that a whole batch is a single multi-exponentiation: the long
+ * exponents of \f$G\f$ and \f$H\f$ collapse to one per ciphertext and those
+ * of \f$g, h, f\f$ to one per batch, and only the short random ones are
+ * left per element. If any equation fails, the product holds with
+ * probability at most \f$2^{-64}\f$.
+ *
+ * That bound needs every element to lie in the subgroup of prime order
+ * \f$q\f$. Its complement in \f$Z_p^*\f$ is \f$\{\pm 1\}\f$, and a factor of
+ * -1 survives the random powers half the time. So the key must be a safe
+ * prime group with \f$g, h, f\f$ quadratic residues, and a batch only
+ * passes if every \f$G\f$ and \f$H\f$ in it is a quadratic residue too
+ * (tested with Jacobi symbols of random subset products, which is much
+ * cheaper than a Jacobi symbol each). Then a batch that passes shows every
+ * commitment equal to the one recomputed by
+ * {@link EEGMembershipProof#verify}, up to a sign that does not affect
+ * what the proof shows about the ciphertext.
+ *
+ * Anything that cannot be batched is refused by {@link #add}, and a batch
+ * that fails says nothing about which proof is bad; either way the caller
+ * falls back to verifying proofs one at a time.
+ *
+ * @see crypto.BatchVerifier
+ */
+public class MembershipProofBatch {
+
+    /** Bits in each random exponent; this is the soundness of the batch */
+    private static final int EXPONENT_BITS = 64;
+
+    /** A proof's values, checked and ready to be combined into a batch */
+    private static final class Entry {
+        private final BigInteger bigG, bigH;
+        private final BigInteger[] y, z, s, c, d;
+
+        private Entry(BigInteger bigG, BigInteger bigH, int n) {
+            this.bigG = bigG;
+            this.bigH = bigH;
+
+            y = new BigInteger[n];
+            z = new BigInteger[n];
+            s = new BigInteger[n];
+            c = new BigInteger[n];
+            d = new BigInteger[n];
+        }
+    }
+
+    private final AdderPublicKey key;
+    private final BigInteger p, q, g, h, f;
+
+    /** Whether the key's group is one where the small exponents test is sound */
+    private final boolean usable;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param key   the public key all the proofs are made with
+     */
+    public MembershipProofBatch(AdderPublicKey key) {
+        this.key = key;
+
+        p = key.getP().bigintValue();
+        q = key.getQ().bigintValue();
+        g = key.getG().bigintValue();
+        h = key.getH().bigintValue();
+        f = key.getF().bigintValue();
+
+        usable = p.equals(q.shiftLeft(1).add(BigInteger.ONE)) && q.isProbablePrime(64)
+                 && isResidue(g) && isResidue(h) && isResidue(f);
+    }
+
+    /**
+     * @return whether proofs made with this key can be batched at all
+     */
+    public boolean isUsable() {
+        return usable;
+    }
+
+    /**
+     * @return the number of proofs in the batch
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops the proofs added after the first <tt>size</tt>.
+     *
+     * @param size      the number of proofs to keep
+     */
+    public void truncate(int size) {
+        entries.subList(size, entries.size()).clear();
+    }
+
+    /**
+     * Checks a ciphertext's proof as far as it can be checked on its own,
+     * and adds it to the batch.
+     *
+     * @param ciphertext    the ciphertext
+     * @param domain        the domain it is verified over, as for {@link EEGMembershipProof#verify}
+     * @return              true if the proof was added; false if it fails, or can't be batched
+     */
+    public boolean add(ExponentialElGamalCiphertext ciphertext, List<Integer> domain) {
+        EEGMembershipProof proof = ciphertext.getProof();
+
+        if (!usable || proof == null)
+            return false;
+
+        List<AdderInteger> yList = proof.getYList(), zList = proof.getZList();
+        List<AdderInteger> sList = proof.getSList(), cList = proof.getCList();
+        int n = cList.size();
+
+        if (n == 0 || n > domain.size() || n > sList.size() || n > yList.size() || n > zList.size())
+            return false;
+
+        Entry entry = new Entry(ciphertext.getG().bigintValue(), ciphertext.getH().bigintValue(), n);
+
+        if (!isElement(entry.bigG) || !isElement(entry.bigH))
+            return false;
+
+        /* The same commitment string as verify() builds, but from the commitments sent */
+        StringBuilder sb = new StringBuilder(4096);
+
+        sb.append(key.getG());
+        sb.append(key.getH());
+        sb.append(ciphertext.getG());
+        sb.append(ciphertext.getH());
+
+        BigInteger sum = BigInteger.ZERO;
+
+        for (int i = 0; i < n; i++) {
+            entry.y[i] = yList.get(i).bigintValue();
+            entry.z[i] = zList.get(i).bigintValue();
+            entry.s[i] = sList.get(i).bigintValue().mod(q);
+            entry.c[i] = cList.get(i).bigintValue().mod(q);
+            entry.d[i] = BigInteger.valueOf(domain.get(i)).mod(q);
+
+            if (!isElement(entry.y[i]) || !isElement(entry.z[i]))
+                return false;
+
+            sb.append(entry.y[i]);
+            sb.append(entry.z[i]);
+
+            sum = sum.add(entry.c[i]);
+        }
+
+        if (!sum.mod(q).equals(new BigInteger(Util.sha1(sb.toString()), 16).mod(q)))
+            return false;
+
+        entries.add(entry);
+        return true;
+    }
+
+    /**
+     * Verifies the verification equations of a range of the proofs in the
+     * batch, all at once.
+     *
+     * @param from      the first proof to check
+     * @param to        one past the last proof to check
+     * @return          true if all of them hold (but for a chance of 2<sup>-64</sup>), false if any does not
+     */
+    public boolean verify(int from, int to) {
+        List<BigInteger> ciphertexts = new ArrayList<>();
+
+        for (Entry entry : entries.subList(from, to)) {
+            ciphertexts.add(entry.bigG);
+            ciphertexts.add(entry.bigH);
+        }
+
+        if (!allResidues(ciphertexts))
+            return false;
+
+        List<BigInteger> bases = new ArrayList<>();
+        List<BigInteger> exponents = new ArrayList<>();
+
+        BigInteger eg = BigInteger.ZERO, eh = BigInteger.ZERO, ef = BigInteger.ZERO;
+
+        for (Entry entry : entries.subList(from, to)) {
+            BigInteger eBigG = BigInteger.ZERO, eBigH = BigInteger.ZERO;
+
+            for (int i = 0; i < entry.c.length; i++) {
+                BigInteger rho = new BigInteger(EXPONENT_BITS, random);
+                BigInteger sigma = new BigInteger(EXPONENT_BITS, random);
+
+                /* (y G^c / g^s)^rho */
+                bases.add(entry.y[i]);
+                exponents.add(rho);
+                eBigG = eBigG.add(rho.multiply(entry.c[i]));
+                eg = eg.add(rho.multiply(entry.s[i]));
+
+                /* (z H^c / h^s f^cd)^sigma */
+                BigInteger sigmaC = sigma.multiply(entry.c[i]);
+
+                bases.add(entry.z[i]);
+                exponents.add(sigma);
+                eBigH = eBigH.add(sigmaC);
+                eh = eh.add(sigma.multiply(entry.s[i]));
+                ef = ef.add(sigmaC.multiply(entry.d[i]));
+            }
+
+            bases.add(entry.bigG);
+            exponents.add(eBigG.mod(q));
+            bases.add(entry.bigH);
+            exponents.add(eBigH.mod(q));
+        }
+
+        /* Dividing by g^eg h^eh f^ef is multiplying by them to the q - e, as they have order q */
+        bases.add(g);
+        exponents.add(q.subtract(eg.mod(q)));
+        bases.add(h);
+        exponents.add(q.subtract(eh.mod(q)));
+        bases.add(f);
+        exponents.add(q.subtract(ef.mod(q)));
+
+        return MultiExponentiation.product(bases, exponents, p).equals(BigInteger.ONE);
+    }
+
+    /**
+     * Tests that every one of a list of values is a quadratic residue. The
+     * Legendre symbol is multiplicative, so the product of a random subset
+     * of the values is a residue if they all are, and is not with
+     * probability 1/2 if any is not; 64 such subsets, each tested with one
+     * Jacobi symbol, leave a chance of 2<sup>-64</sup>. The subset
+     * products are found together: the subsets are taken <i>w</i> at a
+     * time, each value is multiplied into the bucket named by its <i>w</i>
+     * membership bits, and each subset's product is then folded out of the
+     * buckets.
+     *
+     * @param values    nonzero values mod p
+     * @return          true if they are all quadratic residues (but for a chance of 2<sup>-64</sup>)
+     */
+    private boolean allResidues(List<BigInteger> values) {
+        Barrett barrett = new Barrett(p);
+
+        int n = values.size();
+        long[] subsets = new long[n];
+
+        for (int i = 0; i < n; i++)
+            subsets[i] = random.nextLong();
+
+        /* One multiplication per value per group of w subsets, and two per bucket per group */
+        int w = 1;
+        for (int c = 2; c <= 12; c++)
+            if ((long) n * EXPONENT_BITS / c + (EXPONENT_BITS / c + 1) * (2L << c) < (long) n * EXPONENT_BITS / w + (EXPONENT_BITS / w + 1) * (2L << w))
+                w = c;
+
+        for (int group = 0; group < EXPONENT_BITS; group += w) {
+            BigInteger[] buckets = new BigInteger[1 << w];
+
+            for (int i = 0; i < n; i++) {
+                int v = (int) (subsets[i] >>> group) & ((1 << w) - 1);
+
+                if (v != 0)
+                    buckets[v] = buckets[v] == null ? values.get(i) : barrett.multiply(buckets[v], values.get(i));
+            }
+
+            /* Bucket v holds the values whose membership bits (so far folded down to j + 1 of them) are v */
+            for (int j = w - 1; j >= 0; j--) {
+                int half = 1 << j;
+                BigInteger product = null;
+
+                for (int v = half; v < 2 * half; v++) {
+                    if (buckets[v] == null)
+                        continue;
+
+                    product = product == null ? buckets[v] : barrett.multiply(product, buckets[v]);
+
+                    buckets[v - half] = buckets[v - half] == null ? buckets[v] : barrett.multiply(buckets[v - half], buckets[v]);
+                }
+
+                if (group + j < EXPONENT_BITS && product != null && Util.jacobi(product, p) != 1)
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param x     a value
+     * @return      whether x is a nonzero value mod p
+     */
+    private boolean isElement(BigInteger x) {
+        return x.signum() > 0 && x.compareTo(p) < 0;
+    }
+
+    /**
+     * @param x     a value
+     * @return      whether x is a nonzero quadratic residue mod p, i.e. in the subgroup of order q
+     */
+    private boolean isResidue(BigInteger x) {
+        return isElement(x) && Util.jacobi(x, p) == 1;
+    }
+}
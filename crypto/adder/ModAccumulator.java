@@ -0,0 +1,313 @@
+package crypto.adder;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A mutable product modulo a fixed odd modulus, for the inner loops of
+ * tallying and proofs, which would otherwise make a new
+ * {@link AdderInteger} (and {@link BigInteger}s) for every multiplication
+ * and run a modular inverse for every division.
+ *
+ * The product is kept in 32-bit limbs and multiplied in with Montgomery's
+ * method, into buffers made once, so a multiplication allocates nothing
+ * but the limbs of the factor. Montgomery multiplication computes
+ * \f$a b R^{-1}\f$ rather than \f$a b\f$ (with \f$R = 2^{32n}\f$), so rather
+ * than converting every factor into Montgomery form, the accumulator
+ * counts the factors of \f$R^{-1}\f$ it has picked up and removes them all
+ * at once when its {@link #value() value} is read. Divisors are collected
+ * into a second product, so a run of divisions costs one modular inverse
+ * when the value is read. {@link #invertAll} inverts many values with a
+ * single modular inverse (Montgomery's trick) for loops that need each
+ * quotient as they go.
+ *
+ * This is an internal helper: values go in and come out as
+ * {@link BigInteger}s or {@link AdderInteger}s, which stay the public,
+ * immutable type.
+ *
+ * @see Barrett
+ */
+public final class ModAccumulator {
+
+    private static final long MASK = 0xffffffffL;
+
+    private final BigInteger modulus;
+    private final int n;
+    private final int[] p;
+
+    /** -p<sup>-1</sup> mod 2<sup>32</sup> */
+    private final int pInverse;
+
+    /** R mod p */
+    private final BigInteger r;
+
+    /** The product and the product of the divisors, each times R<sup>-k</sup> */
+    private final int[] product, divisor;
+    private int productK, divisorK;
+    private boolean dividing;
+
+    /** Scratch space: a factor's limbs, and a Montgomery product in progress */
+    private final int[] factor, t;
+
+    /**
+     * Makes an accumulator holding 1.
+     *
+     * @param modulus   an odd modulus greater than 1
+     */
+    public ModAccumulator(BigInteger modulus) {
+        if (modulus.compareTo(BigInteger.ONE) <= 0 || !modulus.testBit(0))
+            throw new IllegalArgumentException("Montgomery multiplication needs an odd modulus");
+
+        this.modulus = modulus;
+
+        n = (modulus.bitLength() + 31) >>> 5;
+        p = new int[n];
+        toLimbs(modulus, p);
+
+        pInverse = modulus.modInverse(BigInteger.ONE.shiftLeft(32)).negate().intValue();
+        r = BigInteger.ONE.shiftLeft(32 * n).mod(modulus);
+
+        product = new int[n];
+        divisor = new int[n];
+        factor = new int[n];
+        t = new int[n + 2];
+
+        reset();
+    }
+
+    /**
+     * @param modulus   an odd modulus greater than 1
+     */
+    public ModAccumulator(AdderInteger modulus) {
+        this(modulus.bigintValue());
+    }
+
+    /**
+     * Sets the accumulator back to 1.
+     *
+     * @return  this accumulator
+     */
+    public ModAccumulator reset() {
+        Arrays.fill(product, 0);
+        product[0] = 1;
+        productK = 0;
+
+        Arrays.fill(divisor, 0);
+        divisor[0] = 1;
+        divisorK = 0;
+        dividing = false;
+
+        return this;
+    }
+
+    /**
+     * Sets the accumulator to a value.
+     *
+     * @param x     the value
+     * @return      this accumulator
+     */
+    public ModAccumulator set(BigInteger x) {
+        reset();
+        toLimbs(reduce(x), product);
+        return this;
+    }
+
+    /**
+     * Multiplies a value in.
+     *
+     * @param x     the value
+     * @return      this accumulator
+     */
+    public ModAccumulator multiply(BigInteger x) {
+        toLimbs(reduce(x), factor);
+        montgomery(product, factor);
+        productK++;
+        return this;
+    }
+
+    /**
+     * @see #multiply(BigInteger)
+     */
+    public ModAccumulator multiply(AdderInteger x) {
+        return multiply(x.bigintValue());
+    }
+
+    /**
+     * Divides by a value; the inverse is only taken, for all the divisors
+     * together, when the value is read.
+     *
+     * @param x     the value, which must be invertible
+     * @return      this accumulator
+     */
+    public ModAccumulator divide(BigInteger x) {
+        toLimbs(reduce(x), factor);
+        montgomery(divisor, factor);
+        divisorK++;
+        dividing = true;
+        return this;
+    }
+
+    /**
+     * @see #divide(BigInteger)
+     */
+    public ModAccumulator divide(AdderInteger x) {
+        return divide(x.bigintValue());
+    }
+
+    /**
+     * @return      the value of the accumulator
+     * @throws ArithmeticException if it was divided by something not invertible
+     */
+    public BigInteger value() {
+        BigInteger value = fromLimbs(product).multiply(r.modPow(BigInteger.valueOf(productK), modulus)).mod(modulus);
+
+        if (!dividing)
+            return value;
+
+        BigInteger divisorValue = fromLimbs(divisor).multiply(r.modPow(BigInteger.valueOf(divisorK), modulus)).mod(modulus);
+
+        return value.multiply(divisorValue.modInverse(modulus)).mod(modulus);
+    }
+
+    /**
+     * @return      the value of the accumulator, as an AdderInteger with the accumulator's modulus
+     */
+    public AdderInteger adderValue() {
+        return new AdderInteger(value(), modulus);
+    }
+
+    /**
+     * Inverts every one of a list of values with one modular inverse, by
+     * Montgomery's trick: the inverse of the product of all of them, times
+     * the product of all but one, is the inverse of that one.
+     *
+     * @param values    values to invert, all invertible
+     * @param modulus   the modulus
+     * @return          the inverses, in the same order
+     * @throws ArithmeticException if any value is not invertible
+     */
+    public static BigInteger[] invertAll(List<BigInteger> values, BigInteger modulus) {
+        int count = values.size();
+        BigInteger[] inverses = new BigInteger[count];
+
+        if (count == 0)
+            return inverses;
+
+        Barrett barrett = new Barrett(modulus);
+
+        /* inverses[i] holds the product of the first i + 1 values until the inverse is known */
+        inverses[0] = values.get(0).mod(modulus);
+
+        for (int i = 1; i < count; i++)
+            inverses[i] = barrett.multiply(inverses[i - 1], values.get(i).mod(modulus));
+
+        BigInteger inverse = inverses[count - 1].modInverse(modulus);
+
+        for (int i = count - 1; i > 0; i--) {
+            BigInteger value = values.get(i).mod(modulus);
+
+            inverses[i] = barrett.multiply(inverse, inverses[i - 1]);
+            inverse = barrett.multiply(inverse, value);
+        }
+
+        inverses[0] = inverse;
+
+        return inverses;
+    }
+
+    /**
+     * Sets a to a b R<sup>-1</sup> mod p, for a and b less than p (coarsely
+     * integrated operand scanning).
+     */
+    private void montgomery(int[] a, int[] b) {
+        Arrays.fill(t, 0);
+
+        for (int i = 0; i < n; i++) {
+
+            /* t += a b[i] */
+            long bi = b[i] & MASK;
+            long carry = 0;
+
+            for (int j = 0; j < n; j++) {
+                long s = (t[j] & MASK) + (a[j] & MASK) * bi + carry;
+                t[j] = (int) s;
+                carry = s >>> 32;
+            }
+
+            long s = (t[n] & MASK) + carry;
+            t[n] = (int) s;
+            t[n + 1] = (int) (s >>> 32);
+
+            /* t = (t + m p) / 2^32, with m chosen so the low limb is zero */
+            long m = (t[0] * pInverse) & MASK;
+
+            s = (t[0] & MASK) + m * (p[0] & MASK);
+            carry = s >>> 32;
+
+            for (int j = 1; j < n; j++) {
+                s = (t[j] & MASK) + m * (p[j] & MASK) + carry;
+                t[j - 1] = (int) s;
+                carry = s >>> 32;
+            }
+
+            s = (t[n] & MASK) + carry;
+            t[n - 1] = (int) s;
+            t[n] = t[n + 1] + (int) (s >>> 32);
+        }
+
+        /* t < 2p, so at most one subtraction */
+        if (t[n] != 0 || compare(t, p) >= 0) {
+            long borrow = 0;
+
+            for (int j = 0; j < n; j++) {
+                long s = (t[j] & MASK) - (p[j] & MASK) - borrow;
+                t[j] = (int) s;
+                borrow = (s >>> 63);
+            }
+        }
+
+        System.arraycopy(t, 0, a, 0, n);
+    }
+
+    /**
+     * @return      the sign of x - y, comparing their low n limbs
+     */
+    private int compare(int[] x, int[] y) {
+        for (int j = n - 1; j >= 0; j--)
+            if (x[j] != y[j])
+                return Integer.compareUnsigned(x[j], y[j]);
+
+        return 0;
+    }
+
+    /**
+     * @return      x mod the modulus
+     */
+    private BigInteger reduce(BigInteger x) {
+        return x.signum() >= 0 && x.compareTo(modulus) < 0 ? x : x.mod(modulus);
+    }
+
+    /**
+     * Writes the limbs of a value less than 2<sup>32n</sup>, least significant first.
+     */
+    private void toLimbs(BigInteger x, int[] limbs) {
+        byte[] bytes = x.toByteArray();
+        Arrays.fill(limbs, 0);
+
+        for (int i = 0, b = bytes.length - 1; b >= 0 && i < 4 * n; i++, b--)
+            limbs[i >>> 2] |= (bytes[b] & 0xff) << (8 * (i & 3));
+    }
+
+    /**
+     * @return      the value of the limbs
+     */
+    private BigInteger fromLimbs(int[] limbs) {
+        byte[] bytes = new byte[4 * n];
+
+        for (int i = 0; i < 4 * n; i++)
+            bytes[bytes.length - 1 - i] = (byte) (limbs[i >>> 2] >>> (8 * (i & 3)));
+
+        return new BigInteger(1, bytes);
+    }
+}
@@ -0,0 +1,125 @@
+package crypto.adder;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Products of many powers, \f$\prod_i b_i^{e_i} \bmod p\f$, computed
+ * together with Pippenger's bucket method.
+ *
+ * The exponents are cut into <i>c</i>-bit digits. For each digit position,
+ * from the top down, every base is multiplied into the bucket named by its
+ * digit, and the buckets are then combined as \f$\prod_j B_j^j\f$ with two
+ * running products; the partial result is squared <i>c</i> times between
+ * positions. So each base costs one multiplication per digit, whatever the
+ * number of bases, and the squarings and bucket sums are shared by all of
+ * them. With thousands of bases this is several times cheaper than
+ * exponentiating each on its own, and short exponents cost proportionally
+ * less than long ones.
+ */
+final class MultiExponentiation {
+
+    /** Don't instantiate me! */
+    private MultiExponentiation() { }
+
+    /**
+     * @param bases         the bases, each in [0, p)
+     * @param exponents     the (non-negative) exponents, one per base
+     * @param p             the modulus
+     * @return              <tt>prod bases[i]<sup>exponents[i]</sup> mod p</tt>
+     */
+    static BigInteger product(List<BigInteger> bases, List<BigInteger> exponents, BigInteger p) {
+        int n = bases.size();
+
+        if (n != exponents.size())
+            throw new IllegalArgumentException("need one exponent per base");
+
+        Barrett barrett = new Barrett(p);
+
+        byte[][] mags = new byte[n][];
+        int[] lengths = new int[n];
+        int maxLength = 0;
+        long totalLength = 0;
+
+        for (int i = 0; i < n; i++) {
+            BigInteger e = exponents.get(i);
+
+            if (e.signum() < 0)
+                throw new IllegalArgumentException("negative exponent");
+
+            mags[i] = e.toByteArray();
+            lengths[i] = e.bitLength();
+            maxLength = Math.max(maxLength, lengths[i]);
+            totalLength += lengths[i];
+        }
+
+        int c = width(n, totalLength, maxLength);
+        int mask = (1 << c) - 1;
+        int positions = (maxLength + c - 1) / c;
+
+        BigInteger result = null;
+        BigInteger[] buckets = new BigInteger[1 << c];
+
+        for (int position = positions - 1; position >= 0; position--) {
+            int bit = position * c;
+
+            if (result != null)
+                for (int i = 0; i < c; i++)
+                    result = barrett.multiply(result, result);
+
+            for (int i = 0; i < n; i++) {
+                if (lengths[i] <= bit)
+                    continue;
+
+                int digit = FixedBaseTable.bits(mags[i], bit) & mask;
+
+                if (digit != 0)
+                    buckets[digit] = buckets[digit] == null ? bases.get(i) : barrett.multiply(buckets[digit], bases.get(i));
+            }
+
+            /* prod_j B_j^j, as the product of the running products B_top * ... * B_j */
+            BigInteger running = null, sum = null;
+
+            for (int j = mask; j > 0; j--) {
+                if (buckets[j] != null) {
+                    running = running == null ? buckets[j] : barrett.multiply(running, buckets[j]);
+                    buckets[j] = null;
+                }
+
+                if (running != null)
+                    sum = sum == null ? running : barrett.multiply(sum, running);
+            }
+
+            if (sum != null)
+                result = result == null ? sum : barrett.multiply(result, sum);
+        }
+
+        return result == null ? BigInteger.ONE.mod(p) : result;
+    }
+
+    /**
+     * Picks the digit width that minimises the number of multiplications:
+     * one per digit of every exponent, plus two per bucket per position.
+     *
+     * @param n             the number of bases
+     * @param totalLength   the total length of the exponents, in bits
+     * @param maxLength     the length of the longest exponent, in bits
+     * @return              the digit width, in bits
+     */
+    private static int width(int n, long totalLength, int maxLength) {
+        int best = 1;
+        double bestCost = Double.MAX_VALUE;
+
+        for (int c = 1; c <= 16; c++) {
+            int positions = (maxLength + c - 1) / c;
+            double cost = (double) totalLength / c + n + 2.0 * positions * (1 << c);
+
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = c;
+            }
+        }
+
+        return best;
+    }
+}
@@ -1,5 +1,6 @@
 package crypto.adder;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -107,16 +108,15 @@ public class Polynomial {
      * @return          the value of the polynomial evaluated at the given point
      */
     public AdderInteger evaluate(AdderInteger x) {
-        AdderInteger evalSum = new AdderInteger(AdderInteger.ZERO, q);
+        BigInteger modulus = q.bigintValue();
+        BigInteger point = x.bigintValue().mod(modulus);
+        BigInteger evalSum = BigInteger.ZERO;
 
-        int size = coeffs.size();
-
-        for (int i = 0; i < size; i++) {
-            AdderInteger c = coeffs.get(i);
-            evalSum = evalSum.add(c.multiply(new AdderInteger(x, q).pow(i)));
-        }
+        /* Horner's rule, rather than a power of x for each coefficient */
+        for (int i = coeffs.size() - 1; i >= 0; i--)
+            evalSum = evalSum.multiply(point).add(coeffs.get(i).bigintValue()).mod(modulus);
 
-        return evalSum;
+        return new AdderInteger(evalSum, modulus);
     }
 
     /**
@@ -125,29 +125,37 @@ public class Polynomial {
      * @return the list of Lagrange coefficients of this polynomial
      */
     public List<AdderInteger> lagrange() {
+        BigInteger modulus = q.bigintValue();
+        int size = coeffs.size();
+
+        List<BigInteger> numerators = new ArrayList<>(size);
+        List<BigInteger> denominators = new ArrayList<>(size);
 
-        List<AdderInteger> lagrangeCoeffs = new ArrayList<>(coeffs.size());
+        ModAccumulator numerator = new ModAccumulator(modulus);
+        ModAccumulator denominator = new ModAccumulator(modulus);
 
         for (AdderInteger ai : coeffs) {
-            AdderInteger numerator = new AdderInteger(AdderInteger.ONE, q);
+            numerator.reset();
+            denominator.reset();
 
             for (AdderInteger aj : coeffs) {
                 if (!ai.equals(aj)) {
-                    numerator = numerator.multiply(q.subtract(aj));
+                    numerator.multiply(q.subtract(aj).bigintValue());
+                    denominator.multiply(ai.subtract(aj).bigintValue());
                 }
             }
 
-            AdderInteger denominator = new AdderInteger(AdderInteger.ONE, q);
+            numerators.add(numerator.value());
+            denominators.add(denominator.value());
+        }
 
-            for (AdderInteger aj : coeffs) {
-                if (!ai.equals(aj)) {
-                    denominator = denominator.multiply(ai.subtract(aj));
-                }
-            }
+        /* One inverse for all the denominators */
+        BigInteger[] inverses = ModAccumulator.invertAll(denominators, modulus);
 
-            lagrangeCoeffs.add(numerator.divide(denominator));
-        }
+        List<AdderInteger> lagrangeCoeffs = new ArrayList<>(size);
 
+        for (int i = 0; i < size; i++)
+            lagrangeCoeffs.add(new AdderInteger(numerators.get(i).multiply(inverses[i]), modulus));
 
         return lagrangeCoeffs;
     }
@@ -0,0 +1,94 @@
+package crypto.adder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The part of an encryption (and its membership proof) that doesn't depend
+ * on the value encrypted, worked out ahead of time so that encrypting a
+ * value costs a hash and a few small exponentiations of <tt>f</tt>.
+ *
+ * For the randomness \f$r\f$ this holds \f$G = g^r\f$ and \f$h^r\f$, so
+ * that \f$H = h^r f^m\f$; for the proof's real commitment \f$t\f$, \f$g^t\f$
+ * and \f$h^t\f$; and for each domain value \f$d\f$, a simulated proof's
+ * \f$s_d\f$ and \f$c_d\f$, with \f$g^{s_d - r c_d}\f$ and \f$h^{s_d - r
+ * c_d}\f$. Since \f$g\f$, \f$h\f$ and \f$f\f$ all lie in the subgroup of
+ * order \f$q\f$, the simulated commitments for a value \f$m\f$ are then
+ * \f$y_d = g^{s_d - r c_d}\f$ and \f$z_d = h^{s_d - r c_d} f^{c_d (d -
+ * m)}\f$, exactly those {@link EEGMembershipProof} would compute from
+ * \f$G\f$ and \f$H\f$.
+ *
+ * An instance must be used for one encryption only, since using the same
+ * randomness twice gives the plaintexts away.
+ *
+ * @see AdderPublicKey#precompute(List)
+ * @see AdderPublicKey#encrypt(AdderInteger, List, PrecomputedEncryption)
+ */
+public final class PrecomputedEncryption {
+
+    private final AdderPublicKey key;
+    private final List<AdderInteger> domain;
+
+    /** The randomness, g^r and h^r */
+    final AdderInteger r, bigG, hR;
+
+    /** The real commitment, g^t and h^t */
+    final AdderInteger t, gT, hT;
+
+    /** For each domain value, a simulated proof's s and c, and g^(s - rc) and h^(s - rc) */
+    final List<AdderInteger> sList, cList, gList, hList;
+
+    /**
+     * Does the exponentiations for one encryption.
+     *
+     * @param key       the key to encrypt with
+     * @param domain    the values that could be encrypted
+     */
+    PrecomputedEncryption(AdderPublicKey key, List<AdderInteger> domain) {
+        AdderInteger q = key.getQ();
+
+        this.key = key;
+        this.domain = Collections.unmodifiableList(new ArrayList<>(domain));
+
+        r = AdderInteger.random(q);
+        bigG = key.powG(r);
+        hR = key.powH(r);
+
+        t = AdderInteger.random(q);
+        gT = key.powG(t);
+        hT = key.powH(t);
+
+        sList = new ArrayList<>(domain.size());
+        cList = new ArrayList<>(domain.size());
+        gList = new ArrayList<>(domain.size());
+        hList = new ArrayList<>(domain.size());
+
+        for (int i = 0; i < domain.size(); i++) {
+            AdderInteger s = AdderInteger.random(q);
+            AdderInteger c = AdderInteger.random(q);
+
+            /* s - rc mod q */
+            AdderInteger e = s.subtract(r.multiply(c)).mod(q);
+
+            sList.add(s);
+            cList.add(c);
+            gList.add(key.powG(e));
+            hList.add(key.powH(e));
+        }
+    }
+
+    /**
+     * @return  the key this was worked out for
+     */
+    public AdderPublicKey getKey() {
+        return key;
+    }
+
+    /**
+     * @return  the values that can be encrypted with this
+     */
+    public List<AdderInteger> getDomain() {
+        return domain;
+    }
+}
@@ -65,12 +65,8 @@ public class Race<T extends AHomomorphicCiphertext<T>> {
         /* Create a new multiplicative identity */
         EncryptedRaceSelection<T> total = EncryptedRaceSelection.identity(v, PEK);
 
-        /* Multiply all the raceSelections together and recompute proof */
-        for (EncryptedRaceSelection<T> rs : raceSelections) {
-            total = rs.operate(total, PEK);
-        }
-
-        return total;
+        /* Multiply all the raceSelections together, with one proof for the total rather than one per step */
+        return total.operate(raceSelections, PEK);
     }
 
 }
@@ -0,0 +1,198 @@
+package crypto.adder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A pool of {@link PrecomputedEncryption}s for one key, filled on a
+ * background thread, so that a booth can do the expensive part of
+ * encrypting a ballot while the voter is still reading it.
+ *
+ * The pool is filled up to its {@link #setCapacity capacity} (usually the
+ * number of ciphertexts on a ballot or two) whenever it isn't
+ * {@link #pause paused}, and each encryption {@link #take takes} one out.
+ * If the pool is empty, the encryption is done the slow way, and counted
+ * as a miss.
+ *
+ * @see crypto.DHExponentialElGamalCryptoType#setRandomnessPool(RandomnessPool)
+ */
+public class RandomnessPool {
+
+    /** The key the pool is for */
+    private final AdderPublicKey key;
+
+    /** The messages that can be encrypted */
+    private final List<AdderInteger> domain;
+
+    /** The precomputed encryptions ready to use */
+    private final Deque<PrecomputedEncryption> pool = new ArrayDeque<>();
+
+    /** The number of precomputed encryptions to keep ready */
+    private int capacity;
+
+    /** Whether filling is held off, and whether the pool has been closed */
+    private boolean paused, closed;
+
+    /** Encryptions that found something in the pool, and those that didn't */
+    private long hits, misses;
+
+    /** The thread filling the pool */
+    private final Thread filler;
+
+    /**
+     * Makes an empty pool, and starts filling it.
+     *
+     * @param key       the key to encrypt with
+     * @param domain    the messages that can be encrypted
+     * @param capacity  the number of encryptions to keep ready
+     */
+    public RandomnessPool(AdderPublicKey key, List<AdderInteger> domain, int capacity) {
+        this.key = key;
+        this.domain = Collections.unmodifiableList(new ArrayList<>(domain));
+        this.capacity = capacity;
+
+        filler = new Thread(this::fill, "RandomnessPool");
+        filler.setDaemon(true);
+        filler.setPriority(Thread.MIN_PRIORITY);
+        filler.start();
+    }
+
+    /**
+     * @return  the key the pool is for
+     */
+    public AdderPublicKey getKey() {
+        return key;
+    }
+
+    /**
+     * @return  the messages that can be encrypted with the pool's values
+     */
+    public List<AdderInteger> getDomain() {
+        return domain;
+    }
+
+    /**
+     * Takes a precomputed encryption out of the pool.
+     *
+     * @return  a precomputed encryption, or null if the pool is empty
+     */
+    public synchronized PrecomputedEncryption take() {
+        PrecomputedEncryption pre = pool.pollFirst();
+
+        if (pre != null)
+            hits++;
+        else
+            misses++;
+
+        notifyAll();
+
+        return pre;
+    }
+
+    /**
+     * @param capacity  the number of encryptions to keep ready
+     */
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+
+        while (pool.size() > capacity)
+            pool.pollLast();
+
+        notifyAll();
+    }
+
+    /**
+     * @return  the number of encryptions kept ready
+     */
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return  the number of encryptions ready now
+     */
+    public synchronized int getSize() {
+        return pool.size();
+    }
+
+    /**
+     * Stops filling the pool (after the encryption in progress, if any), so
+     * that encrypting a ballot doesn't compete with it.
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Starts filling the pool again.
+     */
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Stops filling the pool for good, and empties it.
+     */
+    public synchronized void close() {
+        closed = true;
+        pool.clear();
+        notifyAll();
+    }
+
+    /**
+     * @return  the number of encryptions that took a value from the pool
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return  the number of encryptions that found the pool empty
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return  the fraction of encryptions that took a value from the pool (0 if there have been none)
+     */
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * Fills the pool whenever it isn't full or paused, until it is closed.
+     */
+    private void fill() {
+        while (true) {
+            synchronized (this) {
+                while (!closed && (paused || pool.size() >= capacity)) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (closed)
+                    return;
+            }
+
+            PrecomputedEncryption pre = key.precompute(domain);
+
+            synchronized (this) {
+                if (!closed && pool.size() < capacity)
+                    pool.addLast(pre);
+            }
+        }
+    }
+
+    public String toString() {
+        return "RandomnessPool: " + getSize() + "/" + getCapacity() + " ready, " + getHits() + " hits, " + getMisses() + " misses";
+    }
+}
@@ -1,6 +1,7 @@
 package crypto.adder;
 
 import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -64,4 +65,49 @@ public final class Util {
         return ((c >= '0' && c <= '9')
                 || ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')));
     }
+
+    /**
+     * Computes the Jacobi symbol \f$(a/n)\f$. For a prime <tt>n</tt> this
+     * is the Legendre symbol, which is 1 exactly when <tt>a</tt> is a
+     * nonzero quadratic residue mod <tt>n</tt>; it costs a handful of
+     * shifts and reductions rather than the exponentiation of Euler's
+     * criterion.
+     *
+     * @param a the value
+     * @param n an odd positive modulus
+     * @return 1, -1, or 0 if <tt>a</tt> and <tt>n</tt> are not coprime
+     */
+    public static int jacobi(BigInteger a, BigInteger n) {
+        if (n.signum() <= 0 || !n.testBit(0)) {
+            throw new IllegalArgumentException("the modulus must be odd and positive");
+        }
+
+        a = a.mod(n);
+        int t = 1;
+
+        while (a.signum() != 0) {
+
+            /* (2/n) is -1 when n is 3 or 5 mod 8 */
+            int z = a.getLowestSetBit();
+            a = a.shiftRight(z);
+
+            int n8 = n.intValue() & 7;
+            if ((z & 1) == 1 && (n8 == 3 || n8 == 5)) {
+                t = -t;
+            }
+
+            /* Quadratic reciprocity */
+            BigInteger swap = a;
+            a = n;
+            n = swap;
+
+            if ((a.intValue() & 3) == 3 && (n.intValue() & 3) == 3) {
+                t = -t;
+            }
+
+            a = a.mod(n);
+        }
+
+        return n.equals(BigInteger.ONE) ? t : 0;
+    }
 }
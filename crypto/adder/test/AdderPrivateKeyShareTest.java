@@ -1,11 +1,13 @@
 package crypto.adder.test;
 
 import crypto.adder.AdderPrivateKeyShare;
+import crypto.adder.InvalidPrivateKeyException;
 import junit.framework.TestCase;
 import org.apache.commons.codec.binary.Base64;
 import supervisor.model.AuthorityManager;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * Created by Matthew Kindy II on 7/21/2015.
@@ -30,6 +32,32 @@ public class AdderPrivateKeyShareTest extends TestCase {
         assertEquals(prks, stringToKey(keyToString(prks)));
     }
 
+    public void testBinaryForm() throws Exception {
+
+        AuthorityManager.SESSION.newSession(2,1,3);
+        AdderPrivateKeyShare prks = AuthorityManager.SESSION.generateAuthorityKeySharePair("1");
+
+        assertEquals(prks, AdderPrivateKeyShare.fromBytes(prks.toBytes()));
+
+        /* A different version, or anything left over, is rejected */
+        byte[] bytes = prks.toBytes();
+        bytes[0]++;
+
+        try {
+            AdderPrivateKeyShare.fromBytes(bytes);
+            fail();
+        } catch (InvalidPrivateKeyException ignored) {
+
+        }
+
+        try {
+            AdderPrivateKeyShare.fromBytes(Arrays.copyOf(prks.toBytes(), prks.toBytes().length + 1));
+            fail();
+        } catch (InvalidPrivateKeyException ignored) {
+
+        }
+    }
+
     private String keyToString(AdderPrivateKeyShare key){
         try {
 
@@ -108,6 +108,31 @@ public class AdderPublicKeyTest extends TestCase {
         }
     }
 
+    /**
+     * Tests the binary form of a public key.
+     */
+    public void testBinaryForm() {
+        AdderInteger p = new AdderInteger("23");
+        AdderPublicKey publicKey = new AdderPublicKey(p, new AdderInteger("4", p), new AdderInteger("9", p),
+                                                      new AdderInteger("2", p));
+
+        AdderPublicKey copy = AdderPublicKey.fromBytes(publicKey.toBytes());
+
+        assertEquals(publicKey, copy);
+        assertEquals(publicKey.getQ(), copy.getQ());
+
+        /* A partial key has no h yet */
+        AdderPublicKey partial = new AdderPublicKey(p, new AdderInteger("4", p), new AdderInteger("2", p));
+        assertNull(AdderPublicKey.fromBytes(partial.toBytes()).getH());
+
+        try {
+            AdderPublicKey.fromBytes(new byte[]{1, 0, 1});
+            fail();
+        } catch (InvalidPublicKeyException ignored) {
+
+        }
+    }
+
     /**
      * The main method.
      *
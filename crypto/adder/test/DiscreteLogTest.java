@@ -0,0 +1,96 @@
+package crypto.adder.test;
+
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.AdderPublicKeyShare;
+import crypto.adder.DiscreteLog;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Discrete logarithm test: the solver must find exactly the totals the old
+ * exhaustive search found, small ones and large ones, report those out of
+ * range, and give the same answers from a stored and reloaded table.
+ */
+public class DiscreteLogTest extends TestCase {
+
+    private static AdderPublicKey key;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        if (key == null) {
+            AdderPublicKeyShare share = AdderPublicKeyShare.makePublicKeyShare(512);
+            key = new AdderPublicKey(share.getP(), share.getG(), share.getG().pow(AdderInteger.random(share.getQ())), share.getF());
+        }
+    }
+
+    public void testSmallTotals() {
+        DiscreteLog solver = DiscreteLog.forKey(key);
+
+        for (int m = 0; m < 50; m++)
+            assertEquals(m, solver.solve(key.getF().pow(m), 50));
+
+        assertEquals(-1, solver.solve(key.getF().pow(51), 50));
+        assertEquals(-1, solver.solve(key.getG(), 50));
+    }
+
+    public void testLargeTotals() {
+        DiscreteLog solver = DiscreteLog.forKey(key);
+        Random random = new Random(37);
+
+        int max = 500000;
+
+        for (int i = 0; i < 20; i++) {
+            int m = random.nextInt(max + 1);
+            assertEquals(m, solver.solve(key.getF().pow(m), max));
+        }
+
+        assertEquals(0, solver.solve(key.getF().pow(0), max));
+        assertEquals(max, solver.solve(key.getF().pow(max), max));
+        assertEquals(-1, solver.solve(key.getF().pow(max + 1), max));
+        assertTrue(solver.getTableSize() >= Math.sqrt(max));
+
+        /* A larger total grows the table */
+        int size = solver.getTableSize();
+        assertEquals(4000000, solver.solve(key.getF().pow(4000000), 5000000));
+        assertTrue(solver.getTableSize() > size);
+    }
+
+    public void testStoreAndLoad() throws Exception {
+        DiscreteLog solver = DiscreteLog.forKey(key);
+        solver.solve(key.getF().pow(12345), 100000);
+
+        File file = File.createTempFile("dlog", ".table");
+        file.deleteOnExit();
+
+        solver.store(file.getPath());
+
+        assertSame(solver, DiscreteLog.load(file.getPath()));
+        assertEquals(12345, solver.solve(key.getF().pow(12345), 100000));
+    }
+
+    public void testLatency() {
+        DiscreteLog solver = DiscreteLog.forKey(key);
+        int m = 20000;
+        AdderInteger y = key.getF().pow(m);
+
+        long start = System.nanoTime();
+
+        /* The search it replaces */
+        for (int k = 0; k <= m; k++)
+            if (key.getF().pow(new AdderInteger(k, key.getQ())).equals(y))
+                break;
+
+        long exhaustive = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertEquals(m, solver.solve(y, 100000));
+        long bsgs = System.nanoTime() - start;
+
+        System.out.println("Discrete log of f^" + m + ", exhaustive:           " + exhaustive / 1000000 + " ms");
+        System.out.println("Discrete log of f^" + m + ", baby-step giant-step: " + bsgs / 1000000 + " ms");
+    }
+}
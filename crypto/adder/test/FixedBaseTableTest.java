@@ -0,0 +1,110 @@
+package crypto.adder.test;
+
+import crypto.ExponentialElGamalCiphertext;
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.AdderPublicKeyShare;
+import crypto.adder.FixedBaseTable;
+import junit.framework.TestCase;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-base exponentiation test: the tables (and the cached inverse of f)
+ * must agree with {@link AdderInteger#pow(AdderInteger)} and
+ * {@link AdderInteger#divide(AdderInteger)} everywhere, and the key's
+ * encryptions and proofs must still verify.
+ */
+public class FixedBaseTableTest extends TestCase {
+
+    /** A typical STAR ballot: this many races, each with this many candidates */
+    private static final int RACES = 8, CANDIDATES = 5;
+
+    /** Shared across tests, since generating a safe prime is slow */
+    private static AdderPublicKey key;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        if (key != null)
+            return;
+
+        AdderPublicKeyShare share = AdderPublicKeyShare.makePublicKeyShare(512);
+        AdderInteger x = AdderInteger.random(share.getQ());
+
+        key = new AdderPublicKey(share.getP(), share.getG(), share.getG().pow(x), share.getF());
+    }
+
+    public void testAgreesWithPow() {
+        AdderInteger p = key.getP();
+        AdderInteger q = key.getQ();
+        AdderInteger g = new AdderInteger(key.getG(), p);
+
+        for (int width = 1; width <= 8; width++) {
+            FixedBaseTable table = new FixedBaseTable(g, p.bigintValue().bitLength(), width);
+
+            for (int i = 0; i < 50; i++) {
+                AdderInteger e = AdderInteger.random(q);
+                assertEquals(g.pow(e), table.pow(e));
+            }
+        }
+
+        FixedBaseTable table = new FixedBaseTable(g);
+
+        /* Edge cases, and exponents too long for the table */
+        for (AdderInteger e : Arrays.asList(AdderInteger.ZERO, AdderInteger.ONE, AdderInteger.TWO, q, p,
+                                            p.subtract(AdderInteger.ONE), new AdderInteger(p.bigintValue().shiftLeft(70))))
+            assertEquals(g.pow(e), table.pow(e));
+
+        for (int i = 0; i < 100; i++) {
+            AdderInteger e = new AdderInteger(i);
+            assertEquals(key.getF().pow(e), key.powF(e));
+            assertEquals(key.getH().pow(e), key.powH(e));
+            assertEquals(g.pow(e), key.powG(e));
+
+            AdderInteger x = key.powG(AdderInteger.random(q));
+            assertEquals(x.divide(key.getF().pow(e)), key.divideByPowF(x, e));
+        }
+
+        assertEquals(BigInteger.ONE, table.pow(AdderInteger.ZERO).bigintValue());
+    }
+
+    public void testNoModulusFallsBack() {
+        AdderPublicKey plain = new AdderPublicKey(new AdderInteger("123"), new AdderInteger("135"),
+                                                  new AdderInteger("246"), new AdderInteger("234"));
+
+        /* Bases without a modulus behave as they always have */
+        assertEquals(new AdderInteger("246").pow(3), plain.powH(new AdderInteger(3)));
+        assertEquals(new AdderInteger("234").pow(3), plain.powF(new AdderInteger(3)));
+        assertEquals(new AdderInteger("234").pow(3).divide(new AdderInteger("234")),
+                     plain.divideByPowF(new AdderInteger("234").pow(3), AdderInteger.ONE));
+    }
+
+    public void testEncryptionLatency() {
+        List<AdderInteger> domain = Arrays.asList(AdderInteger.ZERO, AdderInteger.ONE);
+        List<Integer> intDomain = Arrays.asList(0, 1);
+
+        /* Warm up, which also builds the tables */
+        for (int i = 0; i < RACES * CANDIDATES; i++)
+            key.encrypt(AdderInteger.ONE, domain);
+
+        long encrypt = 0, verify = 0;
+
+        for (int ballot = 0; ballot < 5; ballot++) {
+            for (int i = 0; i < RACES * CANDIDATES; i++) {
+                long start = System.nanoTime();
+                ExponentialElGamalCiphertext c = key.encrypt(new AdderInteger(i % CANDIDATES == 0 ? 1 : 0), domain);
+                encrypt += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                assertTrue(c.getProof().verify(c, key, intDomain));
+                verify += System.nanoTime() - start;
+            }
+        }
+
+        System.out.println("Encrypt + prove, per ballot: " + encrypt / 5 / 1000000 + " ms");
+        System.out.println("Verify, per ballot:          " + verify / 5 / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,165 @@
+package crypto.adder.test;
+
+import crypto.adder.AdderInteger;
+import crypto.adder.ModAccumulator;
+import junit.framework.TestCase;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Modular accumulator test: products and quotients must be exactly those
+ * of AdderInteger, for moduli of one limb up to the size of real keys, and
+ * batched inverses exactly those of modInverse.
+ */
+public class ModAccumulatorTest extends TestCase {
+
+    private static final int[] BITS = { 31, 32, 33, 64, 512, 1024, 2048 };
+
+    public void testMultiply() {
+        Random random = new Random(39);
+
+        for (int bits : BITS) {
+            BigInteger p = BigInteger.probablePrime(bits, random);
+            ModAccumulator accumulator = new ModAccumulator(p);
+            AdderInteger expected = new AdderInteger(BigInteger.ONE, p);
+
+            assertEquals(BigInteger.ONE, accumulator.value());
+
+            for (int i = 0; i < 100; i++) {
+                /* Values out of range, negative ones, and the edges */
+                BigInteger x = new BigInteger(bits + 8, random);
+
+                if (i % 7 == 0) x = x.negate();
+                if (i == 50) x = p.subtract(BigInteger.ONE);
+                if (i == 51) x = BigInteger.ONE;
+
+                accumulator.multiply(x);
+                expected = expected.multiply(new AdderInteger(x, p));
+
+                assertEquals(expected.bigintValue(), accumulator.value());
+            }
+
+            assertEquals(expected, accumulator.adderValue());
+
+            accumulator.multiply(p);
+            assertEquals(BigInteger.ZERO, accumulator.value());
+
+            accumulator.set(BigInteger.valueOf(5));
+            assertEquals(BigInteger.valueOf(5), accumulator.value());
+
+            assertEquals(BigInteger.ONE, accumulator.reset().value());
+        }
+    }
+
+    public void testDivide() {
+        Random random = new Random(40);
+
+        for (int bits : BITS) {
+            BigInteger p = BigInteger.probablePrime(bits, random);
+            ModAccumulator accumulator = new ModAccumulator(p);
+            AdderInteger expected = new AdderInteger(BigInteger.ONE, p);
+
+            for (int i = 0; i < 50; i++) {
+                BigInteger x = new BigInteger(bits - 1, random).add(BigInteger.ONE);
+                BigInteger y = new BigInteger(bits - 1, random).add(BigInteger.ONE);
+
+                accumulator.multiply(x).divide(y);
+                expected = expected.multiply(new AdderInteger(x, p)).divide(new AdderInteger(y, p));
+            }
+
+            assertEquals(expected.bigintValue(), accumulator.value());
+
+            accumulator.divide(p);
+
+            try {
+                accumulator.value();
+                fail();
+            }
+            catch (ArithmeticException ignored) {
+
+            }
+        }
+
+        try {
+            new ModAccumulator(BigInteger.valueOf(1024));
+            fail();
+        }
+        catch (IllegalArgumentException ignored) {
+
+        }
+    }
+
+    public void testInvertAll() {
+        Random random = new Random(41);
+        BigInteger p = BigInteger.probablePrime(1024, random);
+
+        List<BigInteger> values = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++)
+            values.add(new BigInteger(1030, random).add(BigInteger.ONE));
+
+        BigInteger[] inverses = ModAccumulator.invertAll(values, p);
+
+        for (int i = 0; i < values.size(); i++)
+            assertEquals(values.get(i).modInverse(p), inverses[i]);
+
+        assertEquals(0, ModAccumulator.invertAll(new ArrayList<>(), p).length);
+
+        values.set(37, p.shiftLeft(1));
+
+        try {
+            ModAccumulator.invertAll(values, p);
+            fail();
+        }
+        catch (ArithmeticException ignored) {
+
+        }
+    }
+
+    public void testSpeed() {
+        Random random = new Random(42);
+        BigInteger p = BigInteger.probablePrime(1024, random);
+
+        List<BigInteger> values = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++)
+            values.add(new BigInteger(1023, random).add(BigInteger.ONE));
+
+        long adder = 0, accumulated = 0, inverted = 0, batched = 0;
+
+        /* The last of a few rounds, so that both have been compiled */
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+
+            AdderInteger product = new AdderInteger(BigInteger.ONE, p);
+            for (BigInteger x : values) product = product.multiply(new AdderInteger(x, p));
+
+            adder = System.nanoTime() - start;
+            start = System.nanoTime();
+
+            ModAccumulator accumulator = new ModAccumulator(p);
+            for (BigInteger x : values) accumulator.multiply(x);
+            assertEquals(product.bigintValue(), accumulator.value());
+
+            accumulated = System.nanoTime() - start;
+            start = System.nanoTime();
+
+            for (BigInteger x : values.subList(0, 200)) x.modInverse(p);
+
+            inverted = System.nanoTime() - start;
+            start = System.nanoTime();
+
+            ModAccumulator.invertAll(values.subList(0, 200), p);
+
+            batched = System.nanoTime() - start;
+        }
+
+        System.out.println("2000 products mod a 1024-bit prime, AdderInteger:  " + adder / 1000 + " us");
+        System.out.println("2000 products mod a 1024-bit prime, accumulator:   " + accumulated / 1000 + " us");
+        System.out.println("200 inverses, one at a time:                       " + inverted / 1000 + " us");
+        System.out.println("200 inverses, batched:                             " + batched / 1000 + " us");
+    }
+}
@@ -0,0 +1,105 @@
+package crypto.adder.test;
+
+import crypto.*;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.Race;
+import junit.framework.TestCase;
+import supervisor.model.AuthorityManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Race test: summing the race selections with a single proof for the total
+ * must give the same ciphertexts as folding {@link EncryptedRaceSelection#operate}
+ * over them (which proves every intermediate sum), and a total that verifies
+ * just the same.
+ */
+public class RaceTest extends TestCase {
+
+    /** Race selections to sum, and candidates in each */
+    private static final int SELECTIONS = 16, CANDIDATES = 3;
+
+    private AdderPublicKey PEK;
+    private List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> selections;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        AuthorityManager.SESSION.newSession(1, 1, 2);
+        AuthorityManager.SESSION.generateAuthorityKeySharePair("1");
+        AuthorityManager.SESSION.generateAuthorityPolynomialValues("1");
+        AuthorityManager.SESSION.generateRealPrivateKeyShare("1");
+        PEK = AuthorityManager.SESSION.generatePublicEncryptionKey();
+
+        DHExponentialElGamalCryptoType cryptoType = new DHExponentialElGamalCryptoType();
+        cryptoType.loadPublicKey(PEK);
+
+        RaceSelectionCrypto<ExponentialElGamalCiphertext> crypto = new RaceSelectionCrypto<>(cryptoType);
+
+        selections = new ArrayList<>();
+
+        for (int i = 0; i < SELECTIONS; i++) {
+            Map<String, Integer> voteMap = new HashMap<>();
+
+            /* Candidate0 gets the most votes, Candidate2 none */
+            for (int j = 0; j < CANDIDATES; j++)
+                voteMap.put("Candidate" + j, j == (i % 3 == 2 ? 1 : 0) ? 1 : 0);
+
+            selections.add(crypto.encrypt(new PlaintextRaceSelection(voteMap, "Race", 1)));
+        }
+    }
+
+    public void testSumMatchesFold() {
+        long start = System.nanoTime();
+
+        EncryptedRaceSelection<ExponentialElGamalCiphertext> folded = EncryptedRaceSelection.identity(selections.get(0), PEK);
+
+        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : selections)
+            folded = rs.operate(folded, PEK);
+
+        long fold = System.nanoTime() - start;
+
+        start = System.nanoTime();
+
+        Race<ExponentialElGamalCiphertext> race = new Race<>(PEK, new ArrayList<>(selections.get(0).getRaceSelectionsMap().keySet()));
+
+        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : selections)
+            race.castRaceSelection(rs);
+
+        EncryptedRaceSelection<ExponentialElGamalCiphertext> summed = race.sumRaceSelections();
+
+        long sum = System.nanoTime() - start;
+
+        assertEquals(folded.getSize(), summed.getSize());
+        assertEquals(folded.getRaceSelectionsMap().keySet(), summed.getRaceSelectionsMap().keySet());
+
+        for (Map.Entry<String, ExponentialElGamalCiphertext> entry : folded.getRaceSelectionsMap().entrySet()) {
+            ExponentialElGamalCiphertext c = summed.getRaceSelectionsMap().get(entry.getKey());
+
+            assertEquals(entry.getValue().getG(), c.getG());
+            assertEquals(entry.getValue().getH(), c.getH());
+            assertEquals(entry.getValue().getSize(), c.getSize());
+        }
+
+        assertTrue(folded.verify(0, SELECTIONS, PEK));
+        assertTrue(summed.verify(0, SELECTIONS, PEK));
+        assertEquals(folded.verify(0, SELECTIONS - 1, PEK), summed.verify(0, SELECTIONS - 1, PEK));
+        assertEquals(folded.verify(1, SELECTIONS, PEK), summed.verify(1, SELECTIONS, PEK));
+
+        System.out.println("Sum " + SELECTIONS + " race selections, proving every step: " + fold / 1000000 + " ms");
+        System.out.println("Sum " + SELECTIONS + " race selections, proving the total:   " + sum / 1000000 + " ms");
+    }
+
+    public void testSumOfOne() {
+        Race<ExponentialElGamalCiphertext> race = new Race<>(PEK, new ArrayList<>(selections.get(0).getRaceSelectionsMap().keySet()));
+        race.castRaceSelection(selections.get(0));
+
+        EncryptedRaceSelection<ExponentialElGamalCiphertext> summed = race.sumRaceSelections();
+
+        assertEquals(1, summed.getSize());
+        assertTrue(summed.verify(0, 1, PEK));
+    }
+}
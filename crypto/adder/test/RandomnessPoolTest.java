@@ -0,0 +1,150 @@
+package crypto.adder.test;
+
+import crypto.DHExponentialElGamalCryptoType;
+import crypto.ExponentialElGamalCiphertext;
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPrivateKeyShare;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.AdderPublicKeyShare;
+import crypto.adder.RandomnessPool;
+import junit.framework.TestCase;
+import supervisor.model.AuthorityManager;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Randomness pool test: encryptions made from precomputed values must
+ * verify and decrypt like any others, an empty pool must fall back to
+ * computing them on demand, and the hits and misses must be counted.
+ */
+public class RandomnessPoolTest extends TestCase {
+
+    private static final byte[] ZERO = ByteBuffer.allocate(4).putInt(0).array();
+    private static final byte[] ONE = ByteBuffer.allocate(4).putInt(1).array();
+
+    private DHExponentialElGamalCryptoType cryptoType;
+    private AdderPublicKey PEK;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        AuthorityManager.SESSION.newSession(1, 1, 2);
+        AuthorityManager.SESSION.generateAuthorityKeySharePair("1");
+        AuthorityManager.SESSION.generateAuthorityPolynomialValues("1");
+        AdderPrivateKeyShare privateKey = AuthorityManager.SESSION.generateRealPrivateKeyShare("1");
+        PEK = AuthorityManager.SESSION.generatePublicEncryptionKey();
+
+        cryptoType = new DHExponentialElGamalCryptoType();
+        cryptoType.loadPrivateKeyShares(new AdderPrivateKeyShare[] { privateKey });
+        cryptoType.loadPublicKey(PEK);
+    }
+
+    public void testPooledEncryption() throws Exception {
+        RandomnessPool pool = new RandomnessPool(PEK, DHExponentialElGamalCryptoType.VOTE_DOMAIN, 3);
+        cryptoType.setRandomnessPool(pool);
+
+        awaitFull(pool);
+
+        ExponentialElGamalCiphertext zero = cryptoType.encrypt(ZERO);
+        ExponentialElGamalCiphertext one = cryptoType.encrypt(ONE);
+        ExponentialElGamalCiphertext one2 = cryptoType.encrypt(ONE);
+
+        assertEquals(3, pool.getHits());
+        assertEquals(0, pool.getMisses());
+
+        assertTrue(zero.verify(0, 1, PEK));
+        assertTrue(one.verify(0, 1, PEK));
+        assertEquals(0, ByteBuffer.wrap(cryptoType.decrypt(zero)).getInt());
+        assertEquals(1, ByteBuffer.wrap(cryptoType.decrypt(one)).getInt());
+
+        /* The randomness is never reused */
+        assertFalse(one.getG().equals(one2.getG()));
+
+        ExponentialElGamalCiphertext two = zero.operateIndependent(Arrays.asList(one, one2), PEK);
+        assertTrue(two.verify(0, 3, PEK));
+        assertEquals(2, ByteBuffer.wrap(cryptoType.decrypt(two)).getInt());
+
+        /* An empty pool falls back to encrypting on demand */
+        pool.pause();
+        pool.setCapacity(0);
+
+        ExponentialElGamalCiphertext onDemand = cryptoType.encrypt(ONE);
+
+        assertTrue(onDemand.verify(0, 1, PEK));
+        assertEquals(1, ByteBuffer.wrap(cryptoType.decrypt(onDemand)).getInt());
+        assertEquals(3, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0.75, pool.getHitRate(), 1e-9);
+
+        pool.close();
+    }
+
+    public void testOtherKey() throws Exception {
+        AdderPublicKeyShare share = AdderPublicKeyShare.makePublicKeyShare(128);
+        AdderPublicKey other = new AdderPublicKey(share.getP(), share.getG(), share.getG().pow(AdderInteger.random(share.getQ())), share.getF());
+
+        /* A pool for another key is left alone */
+        RandomnessPool pool = new RandomnessPool(other, DHExponentialElGamalCryptoType.VOTE_DOMAIN, 1);
+        cryptoType.setRandomnessPool(pool);
+
+        awaitFull(pool);
+
+        assertTrue(cryptoType.encrypt(ONE).verify(0, 1, PEK));
+        assertEquals(0, pool.getHits() + pool.getMisses());
+        assertEquals(1, pool.getSize());
+
+        try {
+            PEK.encrypt(AdderInteger.ONE, DHExponentialElGamalCryptoType.VOTE_DOMAIN, pool.take());
+            fail();
+        }
+        catch (IllegalArgumentException ignored) {
+
+        }
+
+        pool.close();
+    }
+
+    public void testLatency() throws Exception {
+        int votes = 12;
+
+        RandomnessPool pool = new RandomnessPool(PEK, DHExponentialElGamalCryptoType.VOTE_DOMAIN, votes);
+        awaitFull(pool);
+        pool.pause();
+
+        /* Warm up, and build the key's tables */
+        PEK.encrypt(AdderInteger.ONE, DHExponentialElGamalCryptoType.VOTE_DOMAIN);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < votes; i++)
+            PEK.encrypt(i == 0 ? AdderInteger.ONE : AdderInteger.ZERO, DHExponentialElGamalCryptoType.VOTE_DOMAIN);
+
+        long onDemand = System.nanoTime() - start;
+        start = System.nanoTime();
+
+        for (int i = 0; i < votes; i++)
+            PEK.encrypt(i == 0 ? AdderInteger.ONE : AdderInteger.ZERO, DHExponentialElGamalCryptoType.VOTE_DOMAIN, pool.take());
+
+        long pooled = System.nanoTime() - start;
+
+        assertEquals(votes, pool.getHits());
+
+        System.out.println("Encrypt " + votes + " votes, on demand:  " + onDemand / 1000 + " us");
+        System.out.println("Encrypt " + votes + " votes, from pool:  " + pooled / 1000 + " us");
+
+        pool.close();
+    }
+
+    /**
+     * Waits for a pool to fill up.
+     */
+    private static void awaitFull(RandomnessPool pool) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60000;
+
+        while (pool.getSize() < pool.getCapacity()) {
+            assertTrue("Pool never filled", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
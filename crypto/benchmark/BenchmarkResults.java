@@ -0,0 +1,215 @@
+package crypto.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of a {@link CryptoBenchmark} run, as a tab-separated file with one line per benchmark and set of
+ * parameters, so that a run on one commit can be compared with a run on another:
+ *
+ * <pre>
+ * # benchmark  bits  candidates  ballots  iterations  mean-us  stddev-us  min-us
+ * </pre>
+ *
+ * Lines starting with # are comments; the first few record the machine and JVM the run was on.
+ */
+public class BenchmarkResults {
+
+    /** The column headers, written as the last comment line */
+    private static final String HEADER = "# benchmark\tbits\tcandidates\tballots\titerations\tmean-us\tstddev-us\tmin-us";
+
+    /** The results, keyed by {@link Result#key()}, in the order they were run */
+    private final Map<String, Result> results = new LinkedHashMap<>();
+
+    /** One benchmark's timings, in microseconds per operation */
+    public static class Result {
+
+        private final String benchmark;
+        private final int bits, candidates, ballots, iterations;
+        private final double mean, stddev, min;
+
+        public Result(String benchmark, int bits, int candidates, int ballots, int iterations,
+                      double mean, double stddev, double min) {
+            this.benchmark = benchmark;
+            this.bits = bits;
+            this.candidates = candidates;
+            this.ballots = ballots;
+            this.iterations = iterations;
+            this.mean = mean;
+            this.stddev = stddev;
+            this.min = min;
+        }
+
+        /**
+         * @param benchmark     the name of the benchmark
+         * @param bits          the size of the modulus
+         * @param candidates    the candidates per race
+         * @param ballots       the number of ballots
+         * @param samples       the time each iteration took per operation, in microseconds
+         * @return              the result summing up the samples
+         */
+        public static Result of(String benchmark, int bits, int candidates, int ballots, double[] samples) {
+            double sum = 0, min = Double.MAX_VALUE;
+
+            for (double sample : samples) {
+                sum += sample;
+                min = Math.min(min, sample);
+            }
+
+            double mean = sum / samples.length, squares = 0;
+
+            for (double sample : samples)
+                squares += (sample - mean) * (sample - mean);
+
+            double stddev = samples.length > 1 ? Math.sqrt(squares / (samples.length - 1)) : 0;
+
+            return new Result(benchmark, bits, candidates, ballots, samples.length, mean, stddev, min);
+        }
+
+        /**
+         * @return  what identifies the benchmark and its parameters, to match it with another run's
+         */
+        public String key() {
+            return benchmark + "\t" + bits + "\t" + candidates + "\t" + ballots;
+        }
+
+        public String getBenchmark() { return benchmark; }
+        public int getBits() { return bits; }
+        public int getCandidates() { return candidates; }
+        public int getBallots() { return ballots; }
+        public int getIterations() { return iterations; }
+        public double getMean() { return mean; }
+        public double getStddev() { return stddev; }
+        public double getMin() { return min; }
+
+        /**
+         * @param baseline  the same benchmark in an earlier run
+         * @param tolerance the slowdown allowed, as a fraction of the baseline's mean
+         * @return          whether this is slower than the baseline by more than the tolerance, and by more than
+         *                  the two runs' noise
+         */
+        public boolean isRegressionFrom(Result baseline, double tolerance) {
+            double slowdown = mean - baseline.mean;
+
+            return slowdown > tolerance * baseline.mean && slowdown > stddev + baseline.stddev;
+        }
+
+        public String toString() {
+            return String.format("%s\t%d\t%.1f\t%.1f\t%.1f", key(), iterations, mean, stddev, min);
+        }
+
+        /**
+         * @param line  a line written by {@link #toString()}
+         * @return      the result on it
+         */
+        public static Result parse(String line) {
+            String[] fields = line.split("\t");
+
+            if (fields.length != 8)
+                throw new IllegalArgumentException("Expected 8 fields in benchmark result: " + line);
+
+            return new Result(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                              Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), Double.parseDouble(fields[5]),
+                              Double.parseDouble(fields[6]), Double.parseDouble(fields[7]));
+        }
+    }
+
+    /**
+     * @param result    a result to add, replacing any for the same benchmark and parameters
+     */
+    public void add(Result result) {
+        results.put(result.key(), result);
+    }
+
+    /**
+     * @return  the results, in the order they were added
+     */
+    public List<Result> getResults() {
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * @param key   a result's {@link Result#key()}
+     * @return      the result for it, or null if there is none
+     */
+    public Result get(String key) {
+        return results.get(key);
+    }
+
+    /**
+     * Writes the results, with the machine and JVM they were measured on.
+     */
+    public void write(PrintStream out) {
+        out.println("# java " + System.getProperty("java.version") + " (" + System.getProperty("java.vm.name") + ")");
+        out.println("# " + System.getProperty("os.name") + " " + System.getProperty("os.arch") + ", "
+                    + Runtime.getRuntime().availableProcessors() + " processors");
+        out.println(HEADER);
+
+        for (Result result : results.values())
+            out.println(result);
+    }
+
+    /**
+     * @param file  a file written by {@link #write}
+     * @return      the results in it
+     * @throws IOException if it can't be read
+     */
+    public static BenchmarkResults read(File file) throws IOException {
+        BenchmarkResults results = new BenchmarkResults();
+
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+            if (!line.isEmpty() && !line.startsWith("#"))
+                results.add(Result.parse(line));
+
+        return results;
+    }
+
+    /**
+     * Prints how these results compare with a baseline, benchmark by benchmark.
+     *
+     * @param baseline  the results of an earlier run
+     * @param tolerance the slowdown allowed, as a fraction of the baseline's mean
+     * @param out       where to print the comparison
+     * @return          the results that regressed from the baseline
+     */
+    public List<Result> compare(BenchmarkResults baseline, double tolerance, PrintStream out) {
+        List<Result> regressions = new ArrayList<>();
+
+        out.println(String.format("%-40s %12s %12s %8s", "benchmark", "baseline us", "now us", "change"));
+
+        for (Result result : results.values()) {
+            Result old = baseline.get(result.key());
+
+            if (old == null) {
+                out.println(String.format("%-40s %12s %12.1f %8s", label(result), "-", result.getMean(), "new"));
+                continue;
+            }
+
+            boolean regressed = result.isRegressionFrom(old, tolerance);
+
+            if (regressed)
+                regressions.add(result);
+
+            out.println(String.format("%-40s %12.1f %12.1f %+7.1f%%%s", label(result), old.getMean(), result.getMean(),
+                                      100 * (result.getMean() - old.getMean()) / old.getMean(),
+                                      regressed ? "  REGRESSION" : ""));
+        }
+
+        return regressions;
+    }
+
+    /**
+     * @return  a short label for a result's benchmark and parameters
+     */
+    private static String label(Result result) {
+        return result.getBenchmark() + " " + result.getBits() + "b " + result.getCandidates() + "c "
+               + result.getBallots() + "n";
+    }
+}
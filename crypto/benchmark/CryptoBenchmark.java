@@ -0,0 +1,319 @@
+package crypto.benchmark;
+
+import crypto.*;
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPrivateKeyShare;
+import crypto.adder.AdderPublicKey;
+import sim.utils.ArgParse;
+import supervisor.model.AuthorityManager;
+import supervisor.model.Ballot;
+import supervisor.model.WebServerTallier;
+
+import javax.crypto.interfaces.DHPublicKey;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidParameterException;
+import java.security.KeyPairGenerator;
+import java.util.*;
+
+/**
+ * Benchmarks of the election crypto, from key generation to the decryption of a tally: authority key generation
+ * (through {@link AuthorityManager}), the encryption of one race and of a full ballot with their proofs, the
+ * verification of a ballot's proofs, the homomorphic tally of a number of ballots, and the partial and full
+ * decryption of the tally. It is run as a program, with its parameters given as key=value arguments (lists are
+ * comma-separated):
+ *
+ * <pre>
+ * bits=512,2048        the sizes of the modulus
+ * candidates=3,8       the candidates in each race
+ * ballots=10,100       the numbers of ballots tallied
+ * races=4              the races on a full ballot
+ * warmup=2             the iterations run before measuring, for the JIT
+ * iterations=5         the iterations measured
+ * time=200             the least time an iteration runs for, in milliseconds
+ * out=file             where to write the results (by default, standard output)
+ * baseline=file        the results of an earlier run to compare with
+ * tolerance=0.1        the slowdown from the baseline allowed, as a fraction
+ * </pre>
+ *
+ * Each iteration repeats its operation until it has run for at least the given time, and the time per operation is
+ * recorded. The results are written as {@link BenchmarkResults}; given a baseline, the program exits with status 1
+ * if any benchmark has got slower than it allows.
+ */
+public class CryptoBenchmark {
+
+    /** The authorities generating the key, and the number needed to decrypt */
+    private static final int AUTHORITIES = 3, THRESHOLD = 2;
+
+    private final int[] bits, candidates, ballots;
+    private final int races, warmup, iterations;
+    private final long minIterationNanos;
+
+    /** Where progress is reported */
+    private final PrintStream log;
+
+    /**
+     * @param opts  the parameters, as described above
+     * @param log   where to report progress
+     */
+    public CryptoBenchmark(Map<String, Object> opts, PrintStream log) {
+        this.bits = ints(opts, "bits", "512,2048");
+        this.candidates = ints(opts, "candidates", "3,8");
+        this.ballots = ints(opts, "ballots", "10,100");
+        this.races = ints(opts, "races", "4")[0];
+        this.warmup = ints(opts, "warmup", "2")[0];
+        this.iterations = ints(opts, "iterations", "5")[0];
+        this.minIterationNanos = ints(opts, "time", "200")[0] * 1000000L;
+        this.log = log;
+
+        if (races < 1 || warmup < 0 || iterations < 1)
+            throw new IllegalArgumentException("Need at least one race and one measured iteration");
+    }
+
+    /** An operation being benchmarked */
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs every benchmark, for every combination of the parameters.
+     *
+     * @return  the results
+     * @throws Exception if any of the crypto fails
+     */
+    public BenchmarkResults run() throws Exception {
+        BenchmarkResults results = new BenchmarkResults();
+
+        for (int b : bits) {
+            AdderInteger p = safePrime(b);
+
+            results.add(measure("keygen", b, 0, 0, () -> generateKeys(p)));
+
+            /* The keys from the last run are the ones the rest use */
+            AdderPrivateKeyShare[] shares = generateKeys(p);
+            AdderPublicKey PEK = AuthorityManager.SESSION.generatePublicEncryptionKey();
+
+            DHExponentialElGamalCryptoType cryptoType = new DHExponentialElGamalCryptoType();
+            cryptoType.loadPublicKey(PEK);
+            cryptoType.loadPrivateKeyShares(shares);
+
+            RaceSelectionCrypto<ExponentialElGamalCiphertext> raceCrypto = new RaceSelectionCrypto<>(cryptoType);
+            BallotCrypter<ExponentialElGamalCiphertext> ballotCrypter = new BallotCrypter<>(cryptoType);
+
+            for (int c : candidates) {
+                Ballot<PlaintextRaceSelection> plaintext = ballot("0", c, 0);
+
+                results.add(measure("encrypt-race", b, c, 0, () -> raceCrypto.encrypt(plaintext.getRaceSelections().get(0))));
+                results.add(measure("encrypt-ballot", b, c, 0, () -> ballotCrypter.encrypt(plaintext)));
+
+                Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> encrypted = ballotCrypter.encrypt(plaintext);
+
+                results.add(measure("verify-ballot", b, c, 0, () -> {
+                    for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : encrypted.getRaceSelections())
+                        if (!rs.verify(0, 1, PEK))
+                            throw new IllegalStateException("A ballot failed verification");
+                }));
+
+                /* Enough ballots for the largest tally; the smaller ones take the first of them */
+                List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> cast = new ArrayList<>();
+
+                for (int i = 0; i < max(ballots); i++)
+                    cast.add(ballotCrypter.encrypt(ballot("" + i, c, i)));
+
+                for (int n : ballots) {
+                    List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> toSum = cast.subList(0, n);
+
+                    results.add(measure("tally", b, c, n, () -> WebServerTallier.tally("total", toSum, PEK)));
+
+                    Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> total = WebServerTallier.tally("total", toSum, PEK);
+
+                    if (total == null)
+                        throw new IllegalStateException("The tally failed");
+
+                    results.add(measure("partial-decrypt", b, c, n, () -> {
+                        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : total.getRaceSelections())
+                            for (ExponentialElGamalCiphertext ciphertext : rs.getRaceSelectionsMap().values())
+                                cryptoType.partialDecrypt(ciphertext);
+                    }));
+
+                    results.add(measure("decrypt", b, c, n, () -> ballotCrypter.decrypt(total)));
+
+                    checkTotal(ballotCrypter.decrypt(total), n);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Times an operation: calibrates how many times to run it per iteration, warms it up, then measures it.
+     *
+     * @return  its result
+     */
+    private BenchmarkResults.Result measure(String name, int bits, int candidates, int ballots, Operation operation)
+            throws Exception {
+
+        long start = System.nanoTime();
+        operation.run();
+        long once = Math.max(1, System.nanoTime() - start);
+
+        int ops = (int) Math.max(1, Math.min(Integer.MAX_VALUE, minIterationNanos / once));
+
+        for (int i = 0; i < warmup; i++)
+            time(operation, ops);
+
+        double[] samples = new double[iterations];
+
+        for (int i = 0; i < iterations; i++)
+            samples[i] = time(operation, ops) / 1000.0 / ops;
+
+        BenchmarkResults.Result result = BenchmarkResults.Result.of(name, bits, candidates, ballots, samples);
+        log.println(result);
+
+        return result;
+    }
+
+    /**
+     * @return  the time it takes to run the operation the given number of times, in nanoseconds
+     */
+    private static long time(Operation operation, int ops) throws Exception {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < ops; i++)
+            operation.run();
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Runs the authorities' key generation through to their private key shares.
+     *
+     * @param p     the safe prime of the group
+     * @return      the authorities' private key shares
+     */
+    private static AdderPrivateKeyShare[] generateKeys(AdderInteger p) throws Exception {
+        AuthorityManager.SESSION.newSession(THRESHOLD, THRESHOLD, AUTHORITIES, p);
+
+        AdderPrivateKeyShare[] shares = new AdderPrivateKeyShare[AUTHORITIES];
+
+        for (int i = 1; i <= AUTHORITIES; i++)
+            AuthorityManager.SESSION.generateAuthorityKeySharePair("" + i);
+
+        for (int i = 1; i <= AUTHORITIES; i++)
+            AuthorityManager.SESSION.generateAuthorityPolynomialValues("" + i);
+
+        for (int i = 1; i <= AUTHORITIES; i++)
+            shares[i - 1] = AuthorityManager.SESSION.generateRealPrivateKeyShare("" + i);
+
+        AuthorityManager.SESSION.generatePublicEncryptionKey();
+
+        return shares;
+    }
+
+    /**
+     * @param bid           the ballot's ID
+     * @param candidates    the candidates in each race
+     * @param choice        which candidate to vote for (mod the number of them)
+     * @return              a ballot with one vote in each race
+     */
+    private Ballot<PlaintextRaceSelection> ballot(String bid, int candidates, int choice) {
+        List<PlaintextRaceSelection> selections = new ArrayList<>();
+
+        for (int r = 0; r < races; r++) {
+            Map<String, Integer> voteMap = new HashMap<>();
+
+            for (int i = 0; i < candidates; i++)
+                voteMap.put("Race" + r + "Candidate" + i, i == choice % candidates ? 1 : 0);
+
+            selections.add(new PlaintextRaceSelection(voteMap, "Race" + r, 1));
+        }
+
+        return new Ballot<>(bid, selections, bid);
+    }
+
+    /**
+     * Checks that a decrypted tally has a vote from every ballot in every race, so a broken operation can't pass
+     * for a fast one.
+     */
+    private void checkTotal(Ballot<PlaintextRaceSelection> total, int ballots) {
+        for (PlaintextRaceSelection rs : total.getRaceSelections()) {
+            int votes = 0;
+
+            for (int count : rs.getRaceSelectionsMap().values())
+                votes += count;
+
+            if (votes != ballots)
+                throw new IllegalStateException("Tally of " + ballots + " ballots decrypted to " + votes + " votes");
+        }
+    }
+
+    /**
+     * @param bits  the size of the modulus
+     * @return      a safe prime of that size: the JDK's standard Diffie-Hellman group (from RFC 3526 and the like)
+     *              if it is safe, since generating a large one takes a long time, or a new one if not
+     */
+    static AdderInteger safePrime(int bits) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("DH");
+            generator.initialize(bits);
+
+            BigInteger p = ((DHPublicKey) generator.generateKeyPair().getPublic()).getParams().getP();
+
+            if (p.bitLength() == bits && p.shiftRight(1).isProbablePrime(40))
+                return new AdderInteger(p);
+        }
+        catch (GeneralSecurityException | InvalidParameterException ignored) { }
+
+        return AdderInteger.safePrime(bits);
+    }
+
+    private static int[] ints(Map<String, Object> opts, String key, String def) {
+        String[] values = opts.getOrDefault(key, def).toString().split(",");
+        int[] ints = new int[values.length];
+
+        for (int i = 0; i < values.length; i++)
+            ints[i] = Integer.parseInt(values[i].trim());
+
+        return ints;
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+
+        for (int value : values)
+            max = Math.max(max, value);
+
+        return max;
+    }
+
+    public static void main(String[] args) throws Exception {
+        SortedMap<String, Object> opts = ArgParse.parseArgs(args);
+
+        BenchmarkResults results = new CryptoBenchmark(opts, System.err).run();
+
+        if (opts.containsKey("out")) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(opts.get("out").toString()))) {
+                results.write(out);
+            }
+        }
+        else
+            results.write(System.out);
+
+        if (opts.containsKey("baseline")) {
+            BenchmarkResults baseline;
+
+            try { baseline = BenchmarkResults.read(new File(opts.get("baseline").toString())); }
+            catch (IOException e) { throw new IOException("Could not read the baseline " + opts.get("baseline"), e); }
+
+            double tolerance = Double.parseDouble(opts.getOrDefault("tolerance", "0.1").toString());
+
+            if (!results.compare(baseline, tolerance, System.err).isEmpty())
+                System.exit(1);
+        }
+    }
+}
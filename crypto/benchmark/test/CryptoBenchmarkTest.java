@@ -0,0 +1,82 @@
+package crypto.benchmark.test;
+
+import crypto.benchmark.BenchmarkResults;
+import crypto.benchmark.CryptoBenchmark;
+import junit.framework.TestCase;
+import sim.utils.ArgParse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests that the benchmark runs every benchmark for every set of parameters, and that its results read back and
+ * compare as they should.
+ */
+public class CryptoBenchmarkTest extends TestCase {
+
+    public void testSmallRun() throws Exception {
+        String[] args = { "bits=256", "candidates=2,3", "ballots=1,3", "races=2", "warmup=0", "iterations=2", "time=1" };
+
+        BenchmarkResults results = new CryptoBenchmark(ArgParse.parseArgs(args), new PrintStream(new ByteArrayOutputStream())).run();
+
+        Set<String> benchmarks = new HashSet<>();
+
+        for (BenchmarkResults.Result result : results.getResults()) {
+            benchmarks.add(result.getBenchmark());
+            assertEquals(2, result.getIterations());
+            assertTrue(result.getMin() <= result.getMean());
+        }
+
+        /* keygen once; encrypt and verify for each candidate count; tally and decryption for each ballot count too */
+        assertEquals(1 + 2 * 3 + 2 * 2 * 3, results.getResults().size());
+        assertTrue(benchmarks.containsAll(Arrays.asList("keygen", "encrypt-race", "encrypt-ballot",
+                                                                  "verify-ballot", "tally", "partial-decrypt", "decrypt")));
+    }
+
+    public void testReadBack() throws Exception {
+        BenchmarkResults results = new BenchmarkResults();
+        results.add(BenchmarkResults.Result.of("tally", 512, 3, 10, new double[] { 100, 110, 90 }));
+        results.add(BenchmarkResults.Result.of("decrypt", 512, 3, 10, new double[] { 50 }));
+
+        File file = File.createTempFile("benchmark", ".tsv");
+        file.deleteOnExit();
+
+        try (PrintStream out = new PrintStream(file)) { results.write(out); }
+
+        assertTrue(new String(Files.readAllBytes(file.toPath())).startsWith("#"));
+
+        BenchmarkResults read = BenchmarkResults.read(file);
+        assertEquals(2, read.getResults().size());
+
+        BenchmarkResults.Result tally = read.get("tally\t512\t3\t10");
+        assertEquals(100.0, tally.getMean(), 0.1);
+        assertEquals(10.0, tally.getStddev(), 0.1);
+        assertEquals(90.0, tally.getMin(), 0.1);
+    }
+
+    public void testCompare() {
+        BenchmarkResults baseline = new BenchmarkResults();
+        baseline.add(BenchmarkResults.Result.of("tally", 512, 3, 10, new double[] { 100, 101, 99 }));
+        baseline.add(BenchmarkResults.Result.of("decrypt", 512, 3, 10, new double[] { 100, 140, 60 }));
+
+        BenchmarkResults now = new BenchmarkResults();
+        now.add(BenchmarkResults.Result.of("tally", 512, 3, 10, new double[] { 130, 131, 129 }));
+        now.add(BenchmarkResults.Result.of("decrypt", 512, 3, 10, new double[] { 130, 170, 90 }));
+        now.add(BenchmarkResults.Result.of("keygen", 512, 0, 0, new double[] { 1000 }));
+
+        List<BenchmarkResults.Result> regressions = now.compare(baseline, 0.1, new PrintStream(new ByteArrayOutputStream()));
+
+        /* The tally is 30% slower, well beyond its noise; decryption is as much slower, but within its noise */
+        assertEquals(1, regressions.size());
+        assertEquals("tally", regressions.get(0).getBenchmark());
+
+        /* Nothing regresses within a generous enough tolerance */
+        assertTrue(now.compare(baseline, 0.5, new PrintStream(new ByteArrayOutputStream())).isEmpty());
+    }
+}
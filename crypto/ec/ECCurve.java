@@ -0,0 +1,417 @@
+package crypto.ec;
+
+import crypto.adder.ModAccumulator;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A prime-order elliptic curve \f$y^2 = x^3 + ax + b\f$ over the field of
+ * integers mod a prime \f$p\f$, with a generator \f$G\f$ of order \f$n\f$.
+ *
+ * Points are handed out in affine coordinates, but sums and multiples are
+ * worked out (with {@link ECField}'s Montgomery arithmetic) in Jacobian
+ * coordinates \f$(X, Y, Z)\f$, standing for \f$(X / Z^2, Y / Z^3)\f$, so
+ * that a point operation needs no inverse; the few inverses needed to get
+ * back to affine coordinates are taken together, with
+ * {@link ModAccumulator#invertAll}. Multiples of a point use a 4-bit window;
+ * multiples of a point used over and over (like \f$G\f$, or a public key)
+ * can use a {@link ECFixedBaseTable}, which needs no doublings.
+ *
+ * Curves are referred to by name (as keys refer to them), and there is
+ * currently one, NIST P-256.
+ */
+public final class ECCurve {
+
+    /** The curves, by name */
+    private static final Map<String, ECCurve> CURVES = new HashMap<>();
+
+    /** NIST P-256 (secp256r1), from FIPS 186-4 */
+    public static final ECCurve P256 = new ECCurve("P-256",
+            new BigInteger("ffffffff00000001000000000000000000000000ffffffffffffffffffffffff", 16),
+            new BigInteger("ffffffff00000001000000000000000000000000fffffffffffffffffffffffc", 16),
+            new BigInteger("5ac635d8aa3a93e7b3ebbd55769886bc651d06b0cc53b0f63bce3c3e27d2604b", 16),
+            new BigInteger("6b17d1f2e12c4247f8bce6e563a440f277037d812deb33a0f4a13945d898c296", 16),
+            new BigInteger("4fe342e2fe1a7f9b8ee7eb4a7c0f9e162bce33576b315ececbb6406837bf51f5", 16),
+            new BigInteger("ffffffff00000000ffffffffffffffffbce6faada7179e84f3b9cac2fc632551", 16));
+
+    static {
+        CURVES.put(P256.getName(), P256);
+    }
+
+    private final String name;
+    private final BigInteger p, a, b, n;
+    private final ECPoint g;
+
+    /** Arithmetic mod p, and a in it */
+    private final ECField field;
+    private final int[] aM;
+
+    /** Whether a = -3, which saves two multiplications in a doubling */
+    private final boolean aIsMinus3;
+
+    /** The fixed-base table for g, built on first use */
+    private volatile ECFixedBaseTable gTable;
+
+    /**
+     * @param name  the curve's name
+     * @param p     the field prime
+     * @param a     the coefficient of x
+     * @param b     the constant coefficient
+     * @param gx    the generator's x coordinate
+     * @param gy    the generator's y coordinate
+     * @param n     the (prime) order of the generator, which is the order of the curve
+     */
+    private ECCurve(String name, BigInteger p, BigInteger a, BigInteger b, BigInteger gx, BigInteger gy, BigInteger n) {
+        this.name = name;
+        this.p = p;
+        this.a = a;
+        this.b = b;
+        this.n = n;
+        this.g = new ECPoint(gx, gy);
+
+        field = new ECField(p);
+        aM = field.fromBigInteger(a);
+        aIsMinus3 = a.add(BigInteger.valueOf(3)).equals(p);
+    }
+
+    /**
+     * @param name  a curve's name
+     * @return      the curve
+     * @throws IllegalArgumentException if there is no such curve
+     */
+    public static ECCurve forName(String name) {
+        ECCurve curve = CURVES.get(name);
+
+        if (curve == null)
+            throw new IllegalArgumentException("Unknown curve: " + name);
+
+        return curve;
+    }
+
+    /**
+     * @return  the curve's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return  the field prime
+     */
+    public BigInteger getP() {
+        return p;
+    }
+
+    /**
+     * @return  the order of the group of points
+     */
+    public BigInteger getOrder() {
+        return n;
+    }
+
+    /**
+     * @return  the generator
+     */
+    public ECPoint getG() {
+        return g;
+    }
+
+    /**
+     * @return  the length of a field element, in bytes
+     */
+    public int getFieldLength() {
+        return (p.bitLength() + 7) / 8;
+    }
+
+    /**
+     * @param point     a point
+     * @return          true if it is on the curve (or is the point at infinity)
+     */
+    public boolean isOnCurve(ECPoint point) {
+        if (point.isInfinity())
+            return true;
+
+        BigInteger x = point.getX(), y = point.getY();
+
+        if (x.signum() < 0 || x.compareTo(p) >= 0 || y.signum() < 0 || y.compareTo(p) >= 0)
+            return false;
+
+        return y.multiply(y).subtract(x.multiply(x).add(a).multiply(x)).subtract(b).mod(p).signum() == 0;
+    }
+
+    /**
+     * @return  the sum of two points
+     */
+    public ECPoint add(ECPoint p1, ECPoint p2) {
+        return toAffine(addAffine(toJacobian(toField(p1)), toField(p2)));
+    }
+
+    /**
+     * @return  the negation of a point
+     */
+    public ECPoint negate(ECPoint point) {
+        return point.isInfinity() ? point : new ECPoint(point.getX(), p.subtract(point.getY()).mod(p));
+    }
+
+    /**
+     * @return  p1 - p2
+     */
+    public ECPoint subtract(ECPoint p1, ECPoint p2) {
+        return add(p1, negate(p2));
+    }
+
+    /**
+     * @param points    some points
+     * @return          their sum
+     */
+    public ECPoint sum(List<ECPoint> points) {
+        int[][] total = infinity();
+
+        for (ECPoint point : points)
+            total = addAffine(total, toField(point));
+
+        return toAffine(total);
+    }
+
+    /**
+     * Multiplies a point by a scalar, with a 4-bit window.
+     *
+     * @param point     the point
+     * @param k         the scalar (taken mod the order)
+     * @return          kP
+     */
+    public ECPoint multiply(ECPoint point, BigInteger k) {
+        k = k.mod(n);
+
+        if (point.isInfinity() || k.signum() == 0)
+            return ECPoint.INFINITY;
+
+        /* P, 2P, ..., 15P */
+        int[][] base = toField(point);
+        List<int[][]> multiples = new ArrayList<>(15);
+        int[][] multiple = toJacobian(base);
+        multiples.add(multiple);
+
+        for (int j = 2; j < 16; j++)
+            multiples.add(multiple = addAffine(multiple, base));
+
+        int[][][] table = normalize(multiples);
+
+        int[][] result = infinity();
+
+        for (int i = (k.bitLength() + 3) / 4 - 1; i >= 0; i--) {
+            for (int d = 0; d < 4; d++)
+                result = twice(result);
+
+            int digit = nibble(k, i);
+
+            if (digit != 0)
+                result = addAffine(result, table[digit - 1]);
+        }
+
+        return toAffine(result);
+    }
+
+    /**
+     * @param k     a scalar (taken mod the order)
+     * @return      kG
+     */
+    public ECPoint multiplyG(BigInteger k) {
+        ECFixedBaseTable table = gTable;
+
+        if (table == null)
+            gTable = table = new ECFixedBaseTable(this, g);
+
+        return table.multiply(k);
+    }
+
+    /**
+     * @return  the i-th 4-bit digit of k
+     */
+    static int nibble(BigInteger k, int i) {
+        int digit = 0;
+
+        for (int bit = 3; bit >= 0; bit--)
+            digit = (digit << 1) | (k.testBit(4 * i + bit) ? 1 : 0);
+
+        return digit;
+    }
+
+    /*
+     * Internally, a point in affine coordinates is a pair {x, y} of field
+     * elements in Montgomery form (null for the point at infinity), and one
+     * in Jacobian coordinates a triple {X, Y, Z}, with Z = 0 for the point
+     * at infinity.
+     */
+
+    /**
+     * @return  a point's coordinates in Montgomery form
+     */
+    int[][] toField(ECPoint point) {
+        return point.isInfinity() ? null : new int[][] { field.fromBigInteger(point.getX()), field.fromBigInteger(point.getY()) };
+    }
+
+    /**
+     * @return  a point (in affine coordinates in Montgomery form) as an ECPoint
+     */
+    ECPoint fromField(int[][] point) {
+        return point == null ? ECPoint.INFINITY : new ECPoint(field.toBigInteger(point[0]), field.toBigInteger(point[1]));
+    }
+
+    /**
+     * @return  a point in affine coordinates in Jacobian ones
+     */
+    int[][] toJacobian(int[][] point) {
+        return point == null ? infinity() : new int[][] { point[0], point[1], field.fromBigInteger(BigInteger.ONE) };
+    }
+
+    /**
+     * @return  the point at infinity in Jacobian coordinates
+     */
+    int[][] infinity() {
+        return new int[][] { field.zero(), field.zero(), field.zero() };
+    }
+
+    /**
+     * @return  a point in Jacobian coordinates as an ECPoint
+     */
+    ECPoint toAffine(int[][] point) {
+        if (field.isZero(point[2]))
+            return ECPoint.INFINITY;
+
+        return fromField(toAffine(point, field.invert(point[2])));
+    }
+
+    /**
+     * Converts many points to affine coordinates, with one modular inverse.
+     *
+     * @param points    points in Jacobian coordinates
+     * @return          the points in affine coordinates (in Montgomery form)
+     */
+    int[][][] normalize(List<int[][]> points) {
+        List<BigInteger> zs = new ArrayList<>(points.size());
+
+        /* The point at infinity has no inverse to take, so stand in 1 for it */
+        for (int[][] point : points)
+            zs.add(field.isZero(point[2]) ? BigInteger.ONE : field.toBigInteger(point[2]));
+
+        BigInteger[] inverses = ModAccumulator.invertAll(zs, p);
+        int[][][] affine = new int[points.size()][][];
+
+        for (int i = 0; i < affine.length; i++) {
+            int[][] point = points.get(i);
+
+            if (!field.isZero(point[2]))
+                affine[i] = toAffine(point, field.fromBigInteger(inverses[i]));
+        }
+
+        return affine;
+    }
+
+    /**
+     * @return  true if a point in Jacobian coordinates is the given one in affine coordinates, without an inverse
+     */
+    boolean matches(int[][] point, int[][] other) {
+        if (field.isZero(point[2]))
+            return other == null;
+
+        if (other == null)
+            return false;
+
+        int[] zz = field.square(point[2]);
+
+        return Arrays.equals(point[0], field.multiply(other[0], zz))
+            && Arrays.equals(point[1], field.multiply(other[1], field.multiply(zz, point[2])));
+    }
+
+    /**
+     * @return  (X / Z^2, Y / Z^3), given the inverse of Z
+     */
+    private int[][] toAffine(int[][] point, int[] zInverse) {
+        int[] zInverse2 = field.square(zInverse);
+
+        return new int[][] { field.multiply(point[0], zInverse2), field.multiply(point[1], field.multiply(zInverse2, zInverse)) };
+    }
+
+    /**
+     * Doubles a point in Jacobian coordinates.
+     */
+    int[][] twice(int[][] point) {
+        int[] x = point[0], y = point[1], z = point[2];
+
+        if (field.isZero(z) || field.isZero(y))
+            return infinity();
+
+        ECField f = field;
+
+        int[] yy = f.square(y);
+        int[] xyy = f.multiply(x, yy);
+        int[] s = f.add(f.add(xyy, xyy), f.add(xyy, xyy));
+        int[] zz = f.square(z);
+
+        /* m = 3 x^2 + a z^4, which is 3 (x - z^2)(x + z^2) when a = -3 */
+        int[] m;
+
+        if (aIsMinus3) {
+            int[] t = f.multiply(f.subtract(x, zz), f.add(x, zz));
+            m = f.add(f.add(t, t), t);
+        }
+        else {
+            int[] xx = f.square(x);
+            m = f.add(f.add(f.add(xx, xx), xx), f.multiply(aM, f.square(zz)));
+        }
+
+        int[] yyyy = f.square(yy);
+        int[] yyyy2 = f.add(yyyy, yyyy);
+        int[] yyyy4 = f.add(yyyy2, yyyy2);
+        int[] yz = f.multiply(y, z);
+
+        int[] x3 = f.subtract(f.square(m), f.add(s, s));
+        int[] y3 = f.subtract(f.multiply(m, f.subtract(s, x3)), f.add(yyyy4, yyyy4));
+        int[] z3 = f.add(yz, yz);
+
+        return new int[][] { x3, y3, z3 };
+    }
+
+    /**
+     * Adds a point in affine coordinates to one in Jacobian coordinates.
+     */
+    int[][] addAffine(int[][] point, int[][] other) {
+        if (other == null)
+            return point;
+
+        if (field.isZero(point[2]))
+            return toJacobian(other);
+
+        ECField f = field;
+        int[] x1 = point[0], y1 = point[1], z1 = point[2];
+
+        int[] z1z1 = f.square(z1);
+        int[] u2 = f.multiply(other[0], z1z1);
+        int[] s2 = f.multiply(other[1], f.multiply(z1, z1z1));
+        int[] h = f.subtract(u2, x1);
+        int[] r = f.subtract(s2, y1);
+
+        if (f.isZero(h))
+            return f.isZero(r) ? twice(point) : infinity();
+
+        int[] hh = f.square(h);
+        int[] hhh = f.multiply(h, hh);
+        int[] v = f.multiply(x1, hh);
+
+        int[] x3 = f.subtract(f.subtract(f.square(r), hhh), f.add(v, v));
+        int[] y3 = f.subtract(f.multiply(r, f.subtract(v, x3)), f.multiply(y1, hhh));
+        int[] z3 = f.multiply(z1, h);
+
+        return new int[][] { x3, y3, z3 };
+    }
+
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,180 @@
+package crypto.ec;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Discrete logarithms to the base \f$G\f$ of a curve, for turning a
+ * decrypted tally \f$mG\f$ back into the number of votes \f$m\f$.
+ *
+ * As with {@link crypto.adder.DiscreteLog}, small totals are found by
+ * walking \f$0, G, 2G, \ldots\f$ (one point addition at a time, compared
+ * without leaving Jacobian coordinates), and larger ones by baby-step
+ * giant-step, with a table of the x coordinates of \f$jG\f$ for \f$0 < j <
+ * s\f$, about \f$\sqrt{N}\f$ long for the largest total \f$N\f$ asked for
+ * so far, kept for each curve. Since \f$jG\f$ and \f$-jG\f$ share an x
+ * coordinate, a match is confirmed with a multiplication.
+ */
+public final class ECDiscreteLog {
+
+    /** Totals below this are found by walking the multiples of G */
+    public static final int LINEAR_LIMIT = 1024;
+
+    /** The most multiples of G a table holds; larger totals take more giant steps */
+    public static final int MAX_TABLE_SIZE = 1 << 20;
+
+    /** Baby steps are converted to affine coordinates this many at a time */
+    private static final int BATCH = 1024;
+
+    /** The solver for each curve, by name */
+    private static final Map<String, ECDiscreteLog> SOLVERS = new HashMap<>();
+
+    /** The baby steps: j for the low bits of the x coordinate of jG, and the giant step -sG */
+    private static final class Table {
+        private final int size;
+        private final Map<Long, Integer> steps;
+        private final int[][] giant;
+
+        private Table(int size, Map<Long, Integer> steps, int[][] giant) {
+            this.size = size;
+            this.steps = steps;
+            this.giant = giant;
+        }
+    }
+
+    private final ECCurve curve;
+
+    /** The table, replaced (never changed) when a larger one is needed */
+    private volatile Table table;
+
+    private ECDiscreteLog(ECCurve curve) {
+        this.curve = curve;
+    }
+
+    /**
+     * @param curve     a curve
+     * @return          the solver for logarithms to the curve's G, shared by everything using the curve
+     */
+    public static synchronized ECDiscreteLog forCurve(ECCurve curve) {
+        ECDiscreteLog solver = SOLVERS.get(curve.getName());
+
+        if (solver == null) {
+            solver = new ECDiscreteLog(curve);
+            SOLVERS.put(curve.getName(), solver);
+        }
+
+        return solver;
+    }
+
+    /**
+     * Finds the logarithm of y to the base G, if it is no more than max.
+     *
+     * @param y     a multiple of G
+     * @param max   the largest logarithm to look for
+     * @return      the m in [0, max] with <tt>mG = y</tt>, or -1 if there is none
+     */
+    public int solve(ECPoint y, int max) {
+        if (max < 0)
+            return -1;
+
+        if (y.isInfinity())
+            return 0;
+
+        int[][] target = curve.toField(y);
+        int[][] g = curve.toField(curve.getG());
+
+        if (max < LINEAR_LIMIT) {
+            int[][] multiple = curve.toJacobian(g);
+
+            for (int m = 1; m <= max; m++, multiple = curve.addAffine(multiple, g))
+                if (curve.matches(multiple, target))
+                    return m;
+
+            return -1;
+        }
+
+        Table t = table((int) Math.min(MAX_TABLE_SIZE, (long) Math.ceil(Math.sqrt(max + 1.0))));
+
+        /* gamma = y - i s G */
+        int[][] gamma = curve.toJacobian(target);
+
+        for (long i = 0; i * t.size <= max; i++, gamma = curve.addAffine(gamma, t.giant)) {
+            ECPoint point = curve.toAffine(gamma);
+
+            if (point.isInfinity())
+                return i * t.size <= max ? (int) (i * t.size) : -1;
+
+            Integer j = t.steps.get(point.getX().longValue());
+
+            /* The table can't tell jG from -jG (or from a point with the same low bits), so confirm the match */
+            if (j != null) {
+                long m = i * t.size + j;
+
+                if (m <= max && curve.multiplyG(BigInteger.valueOf(m)).equals(y))
+                    return (int) m;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return  the number of multiples in the table (0 if none has been built)
+     */
+    public int getTableSize() {
+        Table t = table;
+        return t == null ? 0 : t.size;
+    }
+
+    /**
+     * @param size  the number of baby steps wanted
+     * @return      a table of at least that many (or the largest allowed)
+     */
+    private Table table(int size) {
+        Table t = table;
+
+        if (t != null && t.size >= size)
+            return t;
+
+        synchronized (this) {
+            t = table;
+
+            if (t != null && t.size >= size)
+                return t;
+
+            /* Grow geometrically, so a run of ever larger totals doesn't rebuild the table each time */
+            int newSize = t == null ? size : (int) Math.min(MAX_TABLE_SIZE, Math.max(size, 2L * t.size));
+
+            return table = build(newSize);
+        }
+    }
+
+    /**
+     * @return  a table of the given size
+     */
+    private Table build(int size) {
+        Map<Long, Integer> steps = new HashMap<>(2 * size);
+        int[][] g = curve.toField(curve.getG());
+        int[][] multiple = curve.infinity();
+
+        for (int from = 1; from < size; from += BATCH) {
+            int to = Math.min(size, from + BATCH);
+            List<int[][]> batch = new ArrayList<>(to - from);
+
+            for (int j = from; j < to; j++)
+                batch.add(multiple = curve.addAffine(multiple, g));
+
+            int[][][] affine = curve.normalize(batch);
+
+            for (int j = from; j < to; j++)
+                steps.putIfAbsent(curve.fromField(affine[j - from]).getX().longValue(), j);
+        }
+
+        ECPoint giant = curve.negate(curve.multiplyG(BigInteger.valueOf(size)));
+
+        return new Table(size, steps, curve.toField(giant));
+    }
+}
@@ -0,0 +1,234 @@
+package crypto.ec;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Arithmetic mod the field prime of a curve, on elements in Montgomery form
+ * (\f$x R \bmod p\f$, with \f$R = 2^{32n}\f$) held in \f$n\f$ 32-bit limbs,
+ * least significant first. A multiplication is one pass of Montgomery's
+ * method over the limbs, rather than a BigInteger product and division;
+ * elements are converted from and to BigIntegers only at the edges, when a
+ * point is made or handed out.
+ *
+ * @see crypto.adder.ModAccumulator
+ */
+final class ECField {
+
+    private static final long MASK = 0xffffffffL;
+
+    private final BigInteger modulus;
+    private final int n;
+    private final int[] p;
+
+    /** -p<sup>-1</sup> mod 2<sup>32</sup> */
+    private final int pInverse;
+
+    /** R<sup>2</sup> mod p, for converting into Montgomery form, and 1 (not in Montgomery form), for converting out */
+    private final int[] r2, one;
+
+    /**
+     * @param modulus   an odd prime
+     */
+    ECField(BigInteger modulus) {
+        this.modulus = modulus;
+
+        n = (modulus.bitLength() + 31) >>> 5;
+        p = toLimbs(modulus);
+
+        pInverse = modulus.modInverse(BigInteger.ONE.shiftLeft(32)).negate().intValue();
+
+        r2 = toLimbs(BigInteger.ONE.shiftLeft(64 * n).mod(modulus));
+        one = toLimbs(BigInteger.ONE);
+    }
+
+    /**
+     * @return  x (taken mod p) in Montgomery form
+     */
+    int[] fromBigInteger(BigInteger x) {
+        return multiply(toLimbs(x.mod(modulus)), r2);
+    }
+
+    /**
+     * @return  the value of an element in Montgomery form
+     */
+    BigInteger toBigInteger(int[] a) {
+        int[] x = multiply(a, one);
+        byte[] bytes = new byte[4 * n];
+
+        for (int i = 0; i < 4 * n; i++)
+            bytes[bytes.length - 1 - i] = (byte) (x[i >>> 2] >>> (8 * (i & 3)));
+
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     * @return  a b (for a and b in Montgomery form, a b R<sup>-1</sup> mod p)
+     */
+    int[] multiply(int[] a, int[] b) {
+        int[] t = new int[n + 2];
+
+        for (int i = 0; i < n; i++) {
+
+            /* t += a b[i] */
+            long bi = b[i] & MASK;
+            long carry = 0;
+
+            for (int j = 0; j < n; j++) {
+                long s = (t[j] & MASK) + (a[j] & MASK) * bi + carry;
+                t[j] = (int) s;
+                carry = s >>> 32;
+            }
+
+            long s = (t[n] & MASK) + carry;
+            t[n] = (int) s;
+            t[n + 1] = (int) (s >>> 32);
+
+            /* t = (t + m p) / 2^32, with m chosen so the low limb is zero */
+            long m = (t[0] * pInverse) & MASK;
+
+            s = (t[0] & MASK) + m * (p[0] & MASK);
+            carry = s >>> 32;
+
+            for (int j = 1; j < n; j++) {
+                s = (t[j] & MASK) + m * (p[j] & MASK) + carry;
+                t[j - 1] = (int) s;
+                carry = s >>> 32;
+            }
+
+            s = (t[n] & MASK) + carry;
+            t[n - 1] = (int) s;
+            t[n] = t[n + 1] + (int) (s >>> 32);
+        }
+
+        int[] result = Arrays.copyOf(t, n);
+
+        /* t < 2p, so at most one subtraction */
+        if (t[n] != 0 || compare(result, p) >= 0)
+            subtractP(result);
+
+        return result;
+    }
+
+    /**
+     * @return  a<sup>2</sup>
+     */
+    int[] square(int[] a) {
+        return multiply(a, a);
+    }
+
+    /**
+     * @return  a + b mod p
+     */
+    int[] add(int[] a, int[] b) {
+        int[] result = new int[n];
+        long carry = 0;
+
+        for (int j = 0; j < n; j++) {
+            long s = (a[j] & MASK) + (b[j] & MASK) + carry;
+            result[j] = (int) s;
+            carry = s >>> 32;
+        }
+
+        if (carry != 0 || compare(result, p) >= 0)
+            subtractP(result);
+
+        return result;
+    }
+
+    /**
+     * @return  a - b mod p
+     */
+    int[] subtract(int[] a, int[] b) {
+        int[] result = new int[n];
+        long borrow = 0;
+
+        for (int j = 0; j < n; j++) {
+            long s = (a[j] & MASK) - (b[j] & MASK) - borrow;
+            result[j] = (int) s;
+            borrow = s >>> 63;
+        }
+
+        /* Went below zero, so add p back */
+        if (borrow != 0) {
+            long carry = 0;
+
+            for (int j = 0; j < n; j++) {
+                long s = (result[j] & MASK) + (p[j] & MASK) + carry;
+                result[j] = (int) s;
+                carry = s >>> 32;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return  -a mod p
+     */
+    int[] negate(int[] a) {
+        return subtract(new int[n], a);
+    }
+
+    /**
+     * @return  true if a is zero
+     */
+    boolean isZero(int[] a) {
+        for (int limb : a)
+            if (limb != 0)
+                return false;
+
+        return true;
+    }
+
+    /**
+     * @return  zero
+     */
+    int[] zero() {
+        return new int[n];
+    }
+
+    /**
+     * @return  a<sup>-1</sup>, for a nonzero a in Montgomery form
+     */
+    int[] invert(int[] a) {
+        return fromBigInteger(toBigInteger(a).modInverse(modulus));
+    }
+
+    /**
+     * Subtracts p, in place, ignoring any borrow out of the top limb.
+     */
+    private void subtractP(int[] a) {
+        long borrow = 0;
+
+        for (int j = 0; j < n; j++) {
+            long s = (a[j] & MASK) - (p[j] & MASK) - borrow;
+            a[j] = (int) s;
+            borrow = s >>> 63;
+        }
+    }
+
+    /**
+     * @return  the sign of x - y
+     */
+    private int compare(int[] x, int[] y) {
+        for (int j = n - 1; j >= 0; j--)
+            if (x[j] != y[j])
+                return Integer.compareUnsigned(x[j], y[j]);
+
+        return 0;
+    }
+
+    /**
+     * @return  the limbs of a value less than 2<sup>32n</sup>
+     */
+    private int[] toLimbs(BigInteger x) {
+        byte[] bytes = x.toByteArray();
+        int[] limbs = new int[n];
+
+        for (int i = 0, b = bytes.length - 1; b >= 0 && i < 4 * n; i++, b--)
+            limbs[i >>> 2] |= (bytes[b] & 0xff) << (8 * (i & 3));
+
+        return limbs;
+    }
+}
@@ -0,0 +1,212 @@
+package crypto.ec;
+
+import crypto.ECExponentialElGamalCiphertext;
+import crypto.IProof;
+import crypto.IPublicKey;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Zero-knowledge proof that a ciphertext \f$\langle A, B \rangle =
+ * \langle rG, rH + mG \rangle\f$ encrypts one of a set of messages
+ * \f$\{d_1, \ldots, d_k\}\f$: the OR-composition proof of
+ * {@link crypto.adder.EEGMembershipProof}, written additively.
+ *
+ * For the real \f$m = d_x\f$ the prover commits to \f$y_x = tG\f$, \f$z_x
+ * = tH\f$; for every other \f$d_i\f$ it picks \f$c_i\f$ and \f$s_i\f$ and
+ * commits to \f$y_i = s_i G - c_i A\f$, \f$z_i = s_i H - c_i (B -
+ * d_i G)\f$. The challenge \f$c\f$ is a SHA-256 hash of the key, the
+ * ciphertext and the commitments (Fiat-Shamir), and the prover answers
+ * with \f$c_x = c - \sum_{i \neq x} c_i\f$ and \f$s_x = t + c_x r\f$.
+ * Only the \f$c_i\f$ and \f$s_i\f$ are kept: the verifier recomputes the
+ * commitments from them and checks that the \f$c_i\f$ sum to the hash.
+ *
+ * Knowing \f$r\f$, the prover computes even the simulated commitments as
+ * multiples of \f$G\f$ and \f$H\f$ alone (\f$y_i = (s_i - c_i r) G\f$ and
+ * \f$z_i = (s_i - c_i r) H + c_i (d_i - m) G\f$), so they come from the
+ * fixed-base tables.
+ */
+public class ECMembershipProof implements IProof<ECExponentialElGamalCiphertext> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The challenges c_i and responses s_i */
+    private List<BigInteger> cList;
+    private List<BigInteger> sList;
+
+    /**
+     * Proves that a ciphertext encrypts a value in a domain.
+     *
+     * @param a         the ciphertext's rG
+     * @param b         the ciphertext's rH + mG
+     * @param r         the randomness of the encryption
+     * @param key       the public key it was encrypted with
+     * @param value     the value m encrypted
+     * @param domain    the values it could have been
+     * @throws IllegalArgumentException if the value isn't in the domain
+     */
+    public ECMembershipProof(ECPoint a, ECPoint b, BigInteger r, ECPublicKey key, int value, List<Integer> domain) {
+        int indexInDomain = domain.indexOf(value);
+
+        if (indexInDomain < 0)
+            throw new IllegalArgumentException("Value " + value + " is not in the domain " + domain);
+
+        ECCurve curve = key.getCurve();
+        BigInteger n = curve.getOrder();
+
+        cList = new ArrayList<>(domain.size());
+        sList = new ArrayList<>(domain.size());
+
+        MessageDigest digest = digest(curve, key, a, b);
+        BigInteger t = ECThresholdKeys.randomScalar(curve);
+
+        for (int i = 0; i < domain.size(); i++) {
+            ECPoint y, z;
+
+            if (i == indexInDomain) {
+                y = curve.multiplyG(t);
+                z = key.multiplyH(t);
+
+                /* Filled in once the challenge is known */
+                cList.add(BigInteger.ZERO);
+                sList.add(BigInteger.ZERO);
+            }
+            else {
+                BigInteger c = ECThresholdKeys.randomScalar(curve);
+                BigInteger s = ECThresholdKeys.randomScalar(curve);
+                BigInteger e = s.subtract(c.multiply(r)).mod(n);
+
+                y = curve.multiplyG(e);
+                z = curve.add(key.multiplyH(e), curve.multiplyG(c.multiply(BigInteger.valueOf(domain.get(i) - value))));
+
+                cList.add(c);
+                sList.add(s);
+            }
+
+            update(digest, curve, y);
+            update(digest, curve, z);
+        }
+
+        /* The real challenge is what makes the challenges sum to the hash */
+        BigInteger realC = challenge(digest, n);
+
+        for (BigInteger fakeC : cList)
+            realC = realC.subtract(fakeC);
+
+        realC = realC.mod(n);
+
+        cList.set(indexInDomain, realC);
+        sList.set(indexInDomain, t.add(realC.multiply(r)).mod(n));
+    }
+
+    /**
+     * @param cList     the challenges
+     * @param sList     the responses
+     */
+    public ECMembershipProof(List<BigInteger> cList, List<BigInteger> sList) {
+        this.cList = new ArrayList<>(cList);
+        this.sList = new ArrayList<>(sList);
+    }
+
+    /**
+     * Verifies the proof for a ciphertext.
+     *
+     * @param ciphertext    the ciphertext
+     * @param PEK           the public key it was encrypted with
+     * @param domain        the values it could be
+     * @return              true if the proof is valid
+     */
+    public boolean verify(ECExponentialElGamalCiphertext ciphertext, IPublicKey PEK, List<Integer> domain) {
+        if (!(PEK instanceof ECPublicKey) || cList.size() != domain.size() || sList.size() != domain.size())
+            return false;
+
+        ECPublicKey key = (ECPublicKey) PEK;
+        ECCurve curve = key.getCurve();
+        BigInteger n = curve.getOrder();
+
+        ECPoint a = ciphertext.getA();
+        ECPoint b = ciphertext.getB();
+
+        /* The arithmetic doesn't look at the curve's b, so a point off the curve would go unnoticed */
+        if (!curve.isOnCurve(a) || !curve.isOnCurve(b))
+            return false;
+
+        MessageDigest digest = digest(curve, key, a, b);
+        BigInteger cChoices = BigInteger.ZERO;
+
+        for (int i = 0; i < domain.size(); i++) {
+            BigInteger c = cList.get(i);
+            BigInteger s = sList.get(i);
+
+            if (c.signum() < 0 || c.compareTo(n) >= 0 || s.signum() < 0 || s.compareTo(n) >= 0)
+                return false;
+
+            cChoices = cChoices.add(c);
+
+            /* y_i = s_i G - c_i A, z_i = s_i H - c_i (B - d_i G) */
+            ECPoint bOverD = curve.subtract(b, curve.multiplyG(BigInteger.valueOf(domain.get(i))));
+
+            update(digest, curve, curve.subtract(curve.multiplyG(s), curve.multiply(a, c)));
+            update(digest, curve, curve.subtract(key.multiplyH(s), curve.multiply(bOverD, c)));
+        }
+
+        return cChoices.mod(n).equals(challenge(digest, n));
+    }
+
+    /**
+     * @return  the challenges c_i
+     */
+    public List<BigInteger> getCList() {
+        return Collections.unmodifiableList(cList);
+    }
+
+    /**
+     * @return  the responses s_i
+     */
+    public List<BigInteger> getSList() {
+        return Collections.unmodifiableList(sList);
+    }
+
+    /**
+     * @return  a digest that has hashed the curve, the key and the ciphertext
+     */
+    private static MessageDigest digest(ECCurve curve, ECPublicKey key, ECPoint a, ECPoint b) {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        digest.update(curve.getName().getBytes(StandardCharsets.UTF_8));
+        update(digest, curve, curve.getG());
+        update(digest, curve, key.getH());
+        update(digest, curve, a);
+        update(digest, curve, b);
+
+        return digest;
+    }
+
+    private static void update(MessageDigest digest, ECCurve curve, ECPoint point) {
+        digest.update(point.encode(curve.getFieldLength()));
+    }
+
+    /**
+     * @return  the hash, as a number mod n
+     */
+    private static BigInteger challenge(MessageDigest digest, BigInteger n) {
+        return new BigInteger(1, digest.digest()).mod(n);
+    }
+
+    public String toString() {
+        return "ECMembershipProof: c=" + cList + " s=" + sList;
+    }
+}
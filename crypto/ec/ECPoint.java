@@ -0,0 +1,92 @@
+package crypto.ec;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+/**
+ * A point on an elliptic curve, in affine coordinates, or the point at
+ * infinity (the group's identity). Points are immutable; the arithmetic
+ * on them is done by their {@link ECCurve}.
+ *
+ * @see ECCurve
+ */
+public final class ECPoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The point at infinity */
+    public static final ECPoint INFINITY = new ECPoint(null, null);
+
+    /** The coordinates, both null for the point at infinity */
+    private final BigInteger x, y;
+
+    /**
+     * @param x     the x coordinate
+     * @param y     the y coordinate
+     */
+    public ECPoint(BigInteger x, BigInteger y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * @return  true if this is the point at infinity
+     */
+    public boolean isInfinity() {
+        return x == null;
+    }
+
+    /**
+     * @return  the x coordinate
+     */
+    public BigInteger getX() {
+        return x;
+    }
+
+    /**
+     * @return  the y coordinate
+     */
+    public BigInteger getY() {
+        return y;
+    }
+
+    /**
+     * Encodes the point compressed (as in SEC 1): 0x02 or 0x03, for the
+     * parity of y, then x in the curve's field length; the point at infinity
+     * is a single 0.
+     *
+     * @param length    the length of a field element, in bytes
+     * @return          the encoded point
+     */
+    public byte[] encode(int length) {
+        if (isInfinity())
+            return new byte[1];
+
+        byte[] encoded = new byte[length + 1];
+        byte[] xBytes = x.toByteArray();
+
+        encoded[0] = (byte) (y.testBit(0) ? 3 : 2);
+
+        int copy = Math.min(xBytes.length, length);
+        System.arraycopy(xBytes, xBytes.length - copy, encoded, encoded.length - copy, copy);
+
+        return encoded;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof ECPoint))
+            return false;
+
+        ECPoint p = (ECPoint) o;
+
+        return isInfinity() ? p.isInfinity() : !p.isInfinity() && x.equals(p.x) && y.equals(p.y);
+    }
+
+    public int hashCode() {
+        return isInfinity() ? 0 : x.hashCode() * 31 + y.hashCode();
+    }
+
+    public String toString() {
+        return isInfinity() ? "O" : "(" + x.toString(16) + "," + y.toString(16) + ")";
+    }
+}
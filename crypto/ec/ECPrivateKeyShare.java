@@ -0,0 +1,103 @@
+package crypto.ec;
+
+import crypto.ECExponentialElGamalCiphertext;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+
+/**
+ * One authority's share \f$x_j = f(j)\f$ of the secret \f$x\f$ behind an
+ * {@link ECPublicKey}, where \f$f\f$ is the (never assembled) sharing
+ * polynomial with \f$f(0) = x\f$. Any threshold of the shares' partial
+ * decryptions \f$x_j A\f$ can be combined, with Lagrange coefficients, into
+ * \f$xA = rH\f$.
+ *
+ * @see ECThresholdKeys
+ */
+public final class ECPrivateKeyShare implements PrivateKey {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The name of the curve, see {@link ECCurve#forName} */
+    private final String curveName;
+
+    /** The authority's index, the point at which the sharing polynomial was evaluated */
+    private final int index;
+
+    /** The share */
+    private final BigInteger share;
+
+    /**
+     * @param curve     the curve
+     * @param index     the authority's index (at least 1)
+     * @param share     the share
+     */
+    public ECPrivateKeyShare(ECCurve curve, int index, BigInteger share) {
+        if (index < 1)
+            throw new IllegalArgumentException("Share index must be positive: " + index);
+
+        this.curveName = curve.getName();
+        this.index = index;
+        this.share = share.mod(curve.getOrder());
+    }
+
+    /**
+     * @return  the curve
+     */
+    public ECCurve getCurve() {
+        return ECCurve.forName(curveName);
+    }
+
+    /**
+     * @return  the authority's index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return  the share
+     */
+    public BigInteger getShare() {
+        return share;
+    }
+
+    /**
+     * @param ciphertext    a ciphertext \f$\langle A, B \rangle\f$
+     * @return              the partial decryption \f$x_j A\f$
+     */
+    public ECPoint partialDecrypt(ECExponentialElGamalCiphertext ciphertext) {
+        return getCurve().multiply(ciphertext.getA(), share);
+    }
+
+    public String getAlgorithm() {
+        return "EC-ElGamal";
+    }
+
+    /** There is no standard encoding for this key */
+    public String getFormat() {
+        return null;
+    }
+
+    /** There is no standard encoding for this key */
+    public byte[] getEncoded() {
+        return null;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof ECPrivateKeyShare))
+            return false;
+
+        ECPrivateKeyShare key = (ECPrivateKeyShare) o;
+
+        return curveName.equals(key.curveName) && index == key.index && share.equals(key.share);
+    }
+
+    public int hashCode() {
+        return (curveName.hashCode() * 31 + index) * 31 + share.hashCode();
+    }
+
+    public String toString() {
+        return curveName + ":" + index;
+    }
+}
@@ -0,0 +1,124 @@
+package crypto.ec;
+
+import crypto.ECExponentialElGamalCiphertext;
+import crypto.IPublicKey;
+
+import java.math.BigInteger;
+import java.security.PublicKey;
+import java.util.List;
+
+/**
+ * An exponential ElGamal public key on an elliptic curve: a point \f$H =
+ * xG\f$ for a secret \f$x\f$ (shared among the authorities, see
+ * {@link ECThresholdKeys}). A message \f$m\f$ is encrypted as \f$\langle
+ * rG, rH + mG \rangle\f$, so that adding ciphertexts adds the messages;
+ * the message base is \f$G\f$ itself.
+ *
+ * This is the elliptic-curve counterpart of {@link crypto.adder.AdderPublicKey}:
+ * the group operation is point addition rather than multiplication mod
+ * \f$p\f$, and an exponentiation is a multiplication of a point by a
+ * scalar.
+ */
+public final class ECPublicKey implements IPublicKey, PublicKey {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The name of the curve, see {@link ECCurve#forName} */
+    private final String curveName;
+
+    /** The public value */
+    private final ECPoint h;
+
+    /** The fixed-base table for h, built on first use */
+    private transient volatile ECFixedBaseTable hTable;
+
+    /**
+     * @param curve     the curve
+     * @param h         the public value
+     * @throws IllegalArgumentException if h isn't a point on the curve other than the point at infinity
+     */
+    public ECPublicKey(ECCurve curve, ECPoint h) {
+        if (h.isInfinity() || !curve.isOnCurve(h))
+            throw new IllegalArgumentException("Public value is not a point on " + curve);
+
+        this.curveName = curve.getName();
+        this.h = h;
+    }
+
+    /**
+     * @return  the curve
+     */
+    public ECCurve getCurve() {
+        return ECCurve.forName(curveName);
+    }
+
+    /**
+     * @return  the public value
+     */
+    public ECPoint getH() {
+        return h;
+    }
+
+    /**
+     * @param k     a scalar (taken mod the order)
+     * @return      kH
+     */
+    public ECPoint multiplyH(BigInteger k) {
+        ECFixedBaseTable table = hTable;
+
+        if (table == null)
+            hTable = table = new ECFixedBaseTable(getCurve(), h);
+
+        return table.multiply(k);
+    }
+
+    /**
+     * Encrypts a message, with a proof that it is in the domain.
+     *
+     * @param m         the message
+     * @param domain    the messages that could have been encrypted
+     * @return          the encrypted message
+     */
+    public ECExponentialElGamalCiphertext encrypt(int m, List<Integer> domain) {
+        ECCurve curve = getCurve();
+        BigInteger r = ECThresholdKeys.randomScalar(curve);
+
+        ECPoint a = curve.multiplyG(r);
+        ECPoint b = curve.add(multiplyH(r), curve.multiplyG(BigInteger.valueOf(m)));
+
+        ECMembershipProof proof = new ECMembershipProof(a, b, r, this, m, domain);
+
+        return new ECExponentialElGamalCiphertext(a, b, r, proof, 1);
+    }
+
+    public String getAlgorithm() {
+        return "EC-ElGamal";
+    }
+
+    /** There is no standard encoding for this key */
+    public String getFormat() {
+        return null;
+    }
+
+    /** There is no standard encoding for this key */
+    public byte[] getEncoded() {
+        return null;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof ECPublicKey))
+            return false;
+
+        ECPublicKey key = (ECPublicKey) o;
+
+        return curveName.equals(key.curveName) && h.equals(key.h);
+    }
+
+    public int hashCode() {
+        return curveName.hashCode() * 31 + h.hashCode();
+    }
+
+    public String toString() {
+        return curveName + ":" + h;
+    }
+}
@@ -0,0 +1,200 @@
+package crypto.ec;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@link ECPublicKey} and the authorities' {@link ECPrivateKeyShare}s of
+ * its secret, made by joint Feldman key generation, so that no one
+ * authority ever knows the secret.
+ *
+ * Each authority \f$i\f$ picks a random polynomial \f$f_i\f$ of degree
+ * \f$t - 1\f$, publishes commitments \f$a_{ik} G\f$ to its coefficients,
+ * and hands authority \f$j\f$ the value \f$f_i(j)\f$, which \f$j\f$ checks
+ * against the commitments: \f$f_i(j) G = \sum_k j^k a_{ik} G\f$. The
+ * secret is then \f$x = \sum_i f_i(0)\f$, with public value \f$H = \sum_i
+ * a_{i0} G\f$, and authority \f$j\f$'s share is \f$x_j = \sum_i f_i(j)\f$,
+ * a point on the polynomial \f$\sum_i f_i\f$. Any \f$t\f$ shares determine
+ * the secret, by Lagrange interpolation at 0; fewer say nothing about it.
+ *
+ * The authorities here all run in one process, as in the supervisor's
+ * {@link supervisor.model.AuthorityManager} for the Adder keys.
+ */
+public final class ECThresholdKeys {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final ECPublicKey publicKey;
+    private final List<ECPrivateKeyShare> shares;
+
+    private ECThresholdKeys(ECPublicKey publicKey, List<ECPrivateKeyShare> shares) {
+        this.publicKey = publicKey;
+        this.shares = Collections.unmodifiableList(shares);
+    }
+
+    /**
+     * Generates a key shared among some authorities.
+     *
+     * @param curve         the curve
+     * @param authorities   the number of authorities
+     * @param threshold     the number of them needed to decrypt
+     * @return              the public key and the shares, in the order of the authorities' indices (1 to authorities)
+     * @throws IllegalArgumentException if the threshold is not between 1 and the number of authorities
+     * @throws IllegalStateException if a share doesn't match its dealer's commitments
+     */
+    public static ECThresholdKeys generate(ECCurve curve, int authorities, int threshold) {
+        if (threshold < 1 || threshold > authorities)
+            throw new IllegalArgumentException("Threshold must be between 1 and " + authorities + ": " + threshold);
+
+        BigInteger n = curve.getOrder();
+
+        /* Each authority's polynomial, and its commitments to the coefficients */
+        List<BigInteger[]> polynomials = new ArrayList<>(authorities);
+        List<ECPoint[]> commitments = new ArrayList<>(authorities);
+
+        for (int i = 0; i < authorities; i++) {
+            BigInteger[] coefficients = new BigInteger[threshold];
+            ECPoint[] committed = new ECPoint[threshold];
+
+            for (int k = 0; k < threshold; k++) {
+                coefficients[k] = randomScalar(curve);
+                committed[k] = curve.multiplyG(coefficients[k]);
+            }
+
+            polynomials.add(coefficients);
+            commitments.add(committed);
+        }
+
+        /* Each authority sums what it was dealt, after checking it */
+        List<ECPrivateKeyShare> shares = new ArrayList<>(authorities);
+
+        for (int j = 1; j <= authorities; j++) {
+            BigInteger x = BigInteger.valueOf(j);
+            BigInteger share = BigInteger.ZERO;
+
+            for (int i = 0; i < authorities; i++) {
+                BigInteger dealt = evaluate(polynomials.get(i), x, n);
+
+                if (!curve.multiplyG(dealt).equals(evaluate(curve, commitments.get(i), x)))
+                    throw new IllegalStateException("Share for authority " + j + " from authority " + (i + 1) + " doesn't match its commitments");
+
+                share = share.add(dealt);
+            }
+
+            shares.add(new ECPrivateKeyShare(curve, j, share));
+        }
+
+        List<ECPoint> constants = new ArrayList<>(authorities);
+
+        for (ECPoint[] committed : commitments)
+            constants.add(committed[0]);
+
+        return new ECThresholdKeys(new ECPublicKey(curve, curve.sum(constants)), shares);
+    }
+
+    /**
+     * @return  the public key
+     */
+    public ECPublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * @return  the authorities' shares, in the order of their indices
+     */
+    public List<ECPrivateKeyShare> getShares() {
+        return shares;
+    }
+
+    /**
+     * Combines partial decryptions \f$x_j A\f$ into \f$xA\f$.
+     *
+     * @param curve     the curve
+     * @param indices   the indices of the authorities that made the partial decryptions
+     * @param partials  their partial decryptions, in the same order
+     * @return          \f$\sum_j \lambda_j x_j A = xA\f$
+     */
+    public static ECPoint combine(ECCurve curve, List<Integer> indices, List<ECPoint> partials) {
+        List<BigInteger> lambdas = lagrange(curve, indices);
+        List<ECPoint> terms = new ArrayList<>(partials.size());
+
+        for (int i = 0; i < partials.size(); i++)
+            terms.add(curve.multiply(partials.get(i), lambdas.get(i)));
+
+        return curve.sum(terms);
+    }
+
+    /**
+     * Computes the Lagrange coefficients for interpolating at 0 from the
+     * given points, \f$\lambda_j = \prod_{k \neq j} k / (k - j) \bmod n\f$.
+     *
+     * @param curve     the curve
+     * @param indices   the (distinct) indices of the authorities
+     * @return          their Lagrange coefficients, in the same order
+     */
+    public static List<BigInteger> lagrange(ECCurve curve, List<Integer> indices) {
+        BigInteger n = curve.getOrder();
+        List<BigInteger> lambdas = new ArrayList<>(indices.size());
+
+        for (int j : indices) {
+            BigInteger numerator = BigInteger.ONE;
+            BigInteger denominator = BigInteger.ONE;
+
+            for (int k : indices) {
+                if (k == j)
+                    continue;
+
+                numerator = numerator.multiply(BigInteger.valueOf(k)).mod(n);
+                denominator = denominator.multiply(BigInteger.valueOf(k - j)).mod(n);
+            }
+
+            lambdas.add(numerator.multiply(denominator.modInverse(n)).mod(n));
+        }
+
+        return lambdas;
+    }
+
+    /**
+     * @return  a random scalar in [1, n)
+     */
+    static BigInteger randomScalar(ECCurve curve) {
+        BigInteger n = curve.getOrder();
+        BigInteger k;
+
+        do {
+            k = new BigInteger(n.bitLength(), RANDOM);
+        } while (k.signum() == 0 || k.compareTo(n) >= 0);
+
+        return k;
+    }
+
+    /**
+     * @return  the polynomial with the given coefficients at x, mod n
+     */
+    private static BigInteger evaluate(BigInteger[] coefficients, BigInteger x, BigInteger n) {
+        BigInteger value = BigInteger.ZERO;
+
+        for (int k = coefficients.length - 1; k >= 0; k--)
+            value = value.multiply(x).add(coefficients[k]).mod(n);
+
+        return value;
+    }
+
+    /**
+     * @return  the committed polynomial at x, times G: the sum of x^k times the k-th commitment
+     */
+    private static ECPoint evaluate(ECCurve curve, ECPoint[] commitments, BigInteger x) {
+        List<ECPoint> terms = new ArrayList<>(commitments.length);
+        BigInteger power = BigInteger.ONE;
+
+        for (ECPoint commitment : commitments) {
+            terms.add(curve.multiply(commitment, power));
+            power = power.multiply(x);
+        }
+
+        return curve.sum(terms);
+    }
+}
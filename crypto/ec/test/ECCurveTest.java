@@ -0,0 +1,96 @@
+package crypto.ec.test;
+
+import crypto.ec.ECCurve;
+import crypto.ec.ECDiscreteLog;
+import crypto.ec.ECPoint;
+import junit.framework.TestCase;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Curve arithmetic test: sums and multiples of points, worked out in
+ * Montgomery form and Jacobian coordinates, must agree with each other and
+ * with the published values for P-256.
+ */
+public class ECCurveTest extends TestCase {
+
+    private static final ECCurve CURVE = ECCurve.P256;
+
+    private final Random random = new Random(41);
+
+    public void testGenerator() {
+        ECPoint g = CURVE.getG();
+
+        assertTrue(CURVE.isOnCurve(g));
+        assertFalse(CURVE.isOnCurve(new ECPoint(g.getX(), g.getY().add(BigInteger.ONE))));
+
+        /* nG = O, so (n - 1)G = -G */
+        assertEquals(ECPoint.INFINITY, CURVE.multiply(g, CURVE.getOrder()));
+        assertEquals(CURVE.negate(g), CURVE.multiply(g, CURVE.getOrder().subtract(BigInteger.ONE)));
+
+        /* 2G, from the published test vectors */
+        assertEquals(new BigInteger("7cf27b188d034f7e8a52380304b51ac3c08969e277f21b35a60b48fc47669978", 16),
+                     CURVE.multiplyG(BigInteger.valueOf(2)).getX());
+    }
+
+    public void testSmallMultiples() {
+        ECPoint g = CURVE.getG();
+        ECPoint sum = ECPoint.INFINITY;
+
+        for (int i = 1; i <= 40; i++) {
+            sum = CURVE.add(sum, g);
+
+            assertEquals(sum, CURVE.multiply(g, BigInteger.valueOf(i)));
+            assertEquals(sum, CURVE.multiplyG(BigInteger.valueOf(i)));
+        }
+
+        assertEquals(ECPoint.INFINITY, CURVE.add(g, CURVE.negate(g)));
+        assertEquals(g, CURVE.add(g, ECPoint.INFINITY));
+        assertEquals(CURVE.multiplyG(BigInteger.valueOf(2)), CURVE.add(g, g));
+    }
+
+    public void testRandomMultiples() {
+        for (int i = 0; i < 20; i++) {
+            BigInteger k = new BigInteger(256, random);
+            BigInteger l = new BigInteger(256, random);
+
+            ECPoint kG = CURVE.multiplyG(k);
+
+            assertTrue(CURVE.isOnCurve(kG));
+            assertEquals(kG, CURVE.multiply(CURVE.getG(), k));
+            assertEquals(CURVE.multiplyG(k.multiply(l)), CURVE.multiply(kG, l));
+            assertEquals(CURVE.multiplyG(k.add(l)), CURVE.add(kG, CURVE.multiplyG(l)));
+            assertEquals(CURVE.multiplyG(k.subtract(l)), CURVE.subtract(kG, CURVE.multiplyG(l)));
+        }
+    }
+
+    public void testSum() {
+        List<ECPoint> points = new ArrayList<>();
+        BigInteger total = BigInteger.ZERO;
+
+        for (int i = 0; i < 10; i++) {
+            BigInteger k = new BigInteger(256, random);
+            points.add(CURVE.multiplyG(k));
+            total = total.add(k);
+        }
+
+        assertEquals(CURVE.multiplyG(total), CURVE.sum(points));
+    }
+
+    public void testDiscreteLog() {
+        ECDiscreteLog log = ECDiscreteLog.forCurve(CURVE);
+
+        assertEquals(0, log.solve(ECPoint.INFINITY, 10));
+        assertEquals(7, log.solve(CURVE.multiplyG(BigInteger.valueOf(7)), 10));
+        assertEquals(-1, log.solve(CURVE.multiplyG(BigInteger.valueOf(11)), 10));
+
+        /* Large enough for baby-step giant-step */
+        assertEquals(54321, log.solve(CURVE.multiplyG(BigInteger.valueOf(54321)), 100000));
+        assertEquals(100000, log.solve(CURVE.multiplyG(BigInteger.valueOf(100000)), 100000));
+        assertEquals(-1, log.solve(CURVE.multiplyG(BigInteger.valueOf(100001)), 100000));
+        assertTrue(log.getTableSize() > 0);
+    }
+}
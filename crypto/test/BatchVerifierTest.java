@@ -0,0 +1,142 @@
+package crypto.test;
+
+import crypto.*;
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.Util;
+import junit.framework.TestCase;
+import supervisor.model.AuthorityManager;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests that batch verification of race selections gives the same answers as verifying them one at a time,
+ * finds tampered race selections among good ones, and gives a rough idea of how much faster it is.
+ */
+public class BatchVerifierTest extends TestCase {
+
+    /** Race selections to verify, and candidates in each */
+    private static final int SELECTIONS = 60, CANDIDATES = 4;
+
+    /** Shared across tests, since key generation and encryption dominate the running time */
+    private static AdderPublicKey PEK;
+    private static List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> selections;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        if (selections != null)
+            return;
+
+        AuthorityManager.SESSION.newSession(1, 1, 2);
+        AuthorityManager.SESSION.generateAuthorityKeySharePair("1");
+        AuthorityManager.SESSION.generateAuthorityPolynomialValues("1");
+        AuthorityManager.SESSION.generateRealPrivateKeyShare("1");
+        PEK = AuthorityManager.SESSION.generatePublicEncryptionKey();
+
+        DHExponentialElGamalCryptoType cryptoType = new DHExponentialElGamalCryptoType();
+        cryptoType.loadPublicKey(PEK);
+
+        RaceSelectionCrypto<ExponentialElGamalCiphertext> crypto = new RaceSelectionCrypto<>(cryptoType);
+
+        selections = new ArrayList<>();
+
+        for (int i = 0; i < SELECTIONS; i++) {
+            Map<String, Integer> voteMap = new HashMap<>();
+
+            for (int j = 0; j < CANDIDATES; j++)
+                voteMap.put("Candidate" + j, j == i % CANDIDATES ? 1 : 0);
+
+            selections.add(crypto.encrypt(new PlaintextRaceSelection(voteMap, "Race" + i, 1)));
+        }
+    }
+
+    public void testJacobi() {
+        BigInteger p = PEK.getP().bigintValue();
+        BigInteger half = PEK.getQ().bigintValue();
+
+        for (int i = 0; i < 100; i++) {
+            BigInteger a = AdderInteger.random(PEK.getP()).bigintValue();
+            int euler = a.signum() == 0 ? 0 : a.modPow(half, p).equals(BigInteger.ONE) ? 1 : -1;
+
+            assertEquals(euler, Util.jacobi(a, p));
+        }
+
+        assertEquals(1, Util.jacobi(PEK.getG().bigintValue(), p));
+        assertEquals(-1, Util.jacobi(p.subtract(BigInteger.ONE), p));
+    }
+
+    public void testAgreesWithVerify() {
+        BatchVerifier<ExponentialElGamalCiphertext> verifier = new BatchVerifier<>(PEK);
+
+        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : selections)
+            verifier.add(rs, 0, 1);
+
+        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : selections) {
+            assertTrue(verifier.verify(rs, 0, 1));
+
+            /* Not what it was queued for, so verified on its own */
+            assertEquals(rs.verify(1, 2, PEK), verifier.verify(rs, 1, 2));
+        }
+    }
+
+    public void testFindsTamperedSelections() {
+        List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> batch = new ArrayList<>(selections);
+
+        /* A vote for a different candidate count, with the old proof, and a ciphertext negated out of the subgroup */
+        batch.set(7, tamper(batch.get(7), PEK.getF().bigintValue()));
+        batch.set(41, tamper(batch.get(41), PEK.getP().bigintValue().subtract(BigInteger.ONE)));
+
+        BatchVerifier<ExponentialElGamalCiphertext> verifier = new BatchVerifier<>(PEK);
+
+        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : batch)
+            verifier.add(rs, 0, 1);
+
+        for (int i = 0; i < batch.size(); i++)
+            assertEquals("selection " + i, i != 7 && i != 41, verifier.verify(batch.get(i), 0, 1));
+    }
+
+    public void testBatchLatency() {
+        long start = System.nanoTime();
+
+        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : selections)
+            assertTrue(rs.verify(0, 1, PEK));
+
+        long individual = System.nanoTime() - start;
+
+        start = System.nanoTime();
+
+        BatchVerifier<ExponentialElGamalCiphertext> verifier = new BatchVerifier<>(PEK);
+
+        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : selections)
+            verifier.add(rs, 0, 1);
+
+        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : selections)
+            assertTrue(verifier.verify(rs, 0, 1));
+
+        long batched = System.nanoTime() - start;
+
+        System.out.println("Verify " + SELECTIONS + " race selections, one at a time: " + individual / 1000000 + " ms");
+        System.out.println("Verify " + SELECTIONS + " race selections, batched:       " + batched / 1000000 + " ms");
+    }
+
+    /**
+     * @return a copy of rs with the H of one of its ciphertexts multiplied by factor, keeping the old proof
+     */
+    private static EncryptedRaceSelection<ExponentialElGamalCiphertext> tamper(EncryptedRaceSelection<ExponentialElGamalCiphertext> rs,
+                                                                               BigInteger factor) {
+        Map<String, ExponentialElGamalCiphertext> map = new HashMap<>(rs.getRaceSelectionsMap());
+
+        String candidate = map.keySet().iterator().next();
+        ExponentialElGamalCiphertext c = map.get(candidate);
+
+        AdderInteger h = c.getH().multiply(new AdderInteger(factor, PEK.getP().bigintValue()));
+        map.put(candidate, new ExponentialElGamalCiphertext(c.getG(), h, PEK.getP(), c.getProof()));
+
+        return new EncryptedRaceSelection<>(map, rs.getTitle(), rs.getSize());
+    }
+}
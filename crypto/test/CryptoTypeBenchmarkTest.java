@@ -0,0 +1,171 @@
+package crypto.test;
+
+import crypto.DHExponentialElGamalCryptoType;
+import crypto.ECExponentialElGamalCiphertext;
+import crypto.ECExponentialElGamalCryptoType;
+import crypto.ExponentialElGamalCiphertext;
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPrivateKeyShare;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.AdderPublicKeyShare;
+import crypto.adder.DiscreteLog;
+import crypto.ec.ECCurve;
+import crypto.ec.ECDiscreteLog;
+import crypto.ec.ECPoint;
+import crypto.ec.ECPrivateKeyShare;
+import crypto.ec.ECPublicKey;
+import crypto.ec.ECThresholdKeys;
+import junit.framework.TestCase;
+import sexpression.ASEConverter;
+
+import javax.crypto.interfaces.DHPublicKey;
+import java.math.BigInteger;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Side-by-side benchmark of the two exponential ElGamal crypto-types:
+ * encryption (with its proof), verification of a proof, tallying (with a
+ * proof of the total), and decryption of the total, along with the size of
+ * an encrypted vote as it is sent around. The DH type is run on the
+ * supervisor's 512-bit groups and on the 2048- and 3072-bit groups of RFC
+ * 3526 (as the JDK provides them); 3072 bits is about the security of
+ * P-256, the curve of the EC type.
+ */
+public class CryptoTypeBenchmarkTest extends TestCase {
+
+    private static final int VOTES = 8;
+
+    /** What one crypto-type's run measured, in microseconds (and bytes) */
+    private static final class Timing {
+        long encrypt, verify, tally, decrypt;
+        int size;
+
+        public String toString() {
+            return String.format("%8d %8d %8d %8d %8d", encrypt, verify, tally, decrypt, size);
+        }
+    }
+
+    public void testSideBySide() throws Exception {
+        System.out.println(String.format("%-10s %8s %8s %8s %8s %8s", "", "enc us", "ver us", "tally us", "dec us", "bytes"));
+
+        AdderPublicKeyShare share512 = AdderPublicKeyShare.makePublicKeyShare(512);
+        Timing dh512 = benchmarkDH(share512);
+        System.out.println(String.format("%-10s ", "DH-512") + dh512);
+
+        Timing dh2048 = benchmarkDH(AdderPublicKeyShare.makePublicKeyShare(rfc3526Prime(2048)));
+        System.out.println(String.format("%-10s ", "DH-2048") + dh2048);
+
+        Timing dh3072 = benchmarkDH(AdderPublicKeyShare.makePublicKeyShare(rfc3526Prime(3072)));
+        System.out.println(String.format("%-10s ", "DH-3072") + dh3072);
+
+        Timing ec = benchmarkEC(ECCurve.P256);
+        System.out.println(String.format("%-10s ", "EC P-256") + ec);
+
+        /* Points are a fraction of the size of group elements at the same security */
+        assertTrue(ec.size < dh3072.size);
+        assertTrue(ec.size < dh2048.size);
+    }
+
+    /**
+     * @return  the timings for a DH key in a group
+     */
+    private Timing benchmarkDH(AdderPublicKeyShare share) throws Exception {
+        AdderPrivateKeyShare privateKey = share.genKeyPair();
+        AdderPublicKey PEK = new AdderPublicKey(share.getP(), share.getG(), share.getH(), share.getF());
+
+        /* Once to warm up (and build the fixed-base tables), once to measure */
+        runDH(PEK, privateKey);
+        return runDH(PEK, privateKey);
+    }
+
+    private Timing runDH(AdderPublicKey PEK, AdderPrivateKeyShare privateKey) {
+        Timing timing = new Timing();
+        List<ExponentialElGamalCiphertext> votes = new ArrayList<>();
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < VOTES; i++)
+            votes.add(PEK.encrypt(new AdderInteger(i % 2), DHExponentialElGamalCryptoType.VOTE_DOMAIN));
+
+        timing.encrypt = (System.nanoTime() - start) / 1000 / VOTES;
+
+        start = System.nanoTime();
+
+        for (ExponentialElGamalCiphertext vote : votes)
+            assertTrue(vote.verify(0, 1, PEK));
+
+        timing.verify = (System.nanoTime() - start) / 1000 / VOTES;
+
+        start = System.nanoTime();
+        ExponentialElGamalCiphertext total = votes.get(0).operateIndependent(votes.subList(1, VOTES), PEK);
+        timing.tally = (System.nanoTime() - start) / 1000;
+
+        start = System.nanoTime();
+        AdderInteger fm = total.getH().divide(privateKey.partialDecrypt(total));
+        assertEquals(VOTES / 2, DiscreteLog.forKey(PEK).solve(fm, total.getSize()));
+        timing.decrypt = (System.nanoTime() - start) / 1000;
+
+        timing.size = ASEConverter.convertToASE(votes.get(0)).toVerbatim().length;
+
+        return timing;
+    }
+
+    /**
+     * @return  the timings for an EC key on a curve
+     */
+    private Timing benchmarkEC(ECCurve curve) throws Exception {
+        ECThresholdKeys keys = ECThresholdKeys.generate(curve, 1, 1);
+
+        runEC(keys.getPublicKey(), keys.getShares().get(0));
+        return runEC(keys.getPublicKey(), keys.getShares().get(0));
+    }
+
+    private Timing runEC(ECPublicKey PEK, ECPrivateKeyShare privateKey) {
+        ECCurve curve = PEK.getCurve();
+        Timing timing = new Timing();
+        List<ECExponentialElGamalCiphertext> votes = new ArrayList<>();
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < VOTES; i++)
+            votes.add(PEK.encrypt(i % 2, ECExponentialElGamalCryptoType.VOTE_DOMAIN));
+
+        timing.encrypt = (System.nanoTime() - start) / 1000 / VOTES;
+
+        start = System.nanoTime();
+
+        for (ECExponentialElGamalCiphertext vote : votes)
+            assertTrue(vote.verify(0, 1, PEK));
+
+        timing.verify = (System.nanoTime() - start) / 1000 / VOTES;
+
+        start = System.nanoTime();
+        ECExponentialElGamalCiphertext total = votes.get(0).operateIndependent(votes.subList(1, VOTES), PEK);
+        timing.tally = (System.nanoTime() - start) / 1000;
+
+        start = System.nanoTime();
+        ECPoint mG = curve.subtract(total.getB(), privateKey.partialDecrypt(total));
+        assertEquals(VOTES / 2, ECDiscreteLog.forCurve(curve).solve(mG, total.getSize()));
+        timing.decrypt = (System.nanoTime() - start) / 1000;
+
+        timing.size = ASEConverter.convertToASE(votes.get(0)).toVerbatim().length;
+
+        return timing;
+    }
+
+    /**
+     * @return  the RFC 3526 safe prime of the given length, as the JDK's Diffie-Hellman parameters have it
+     */
+    private static AdderInteger rfc3526Prime(int bits) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("DH");
+        generator.initialize(bits);
+
+        BigInteger p = ((DHPublicKey) generator.generateKeyPair().getPublic()).getParams().getP();
+
+        assertTrue(p.shiftRight(1).isProbablePrime(20));
+
+        return new AdderInteger(p);
+    }
+}
@@ -54,6 +54,36 @@ public class DHExponentialElGamalCryptoTypeTest extends TestCase {
 
     }
 
+    public void testDecryptMany() throws Exception {
+
+        /* Three authorities, any two of which can decrypt; two of them decrypt a batch of tallies */
+        AuthorityManager.SESSION.newSession(3, 2, 4);
+        setUpMultipleKeys(3, 2);
+
+        AdderPublicKey PEK = AuthorityManager.SESSION.generatePublicEncryptionKey();
+
+        ExponentialElGamalCiphertext ONEct = cryptoType.encrypt(ByteBuffer.allocate(4).putInt(1).array());
+        ExponentialElGamalCiphertext ZEROct = cryptoType.encrypt(ByteBuffer.allocate(4).putInt(0).array());
+
+        List<ExponentialElGamalCiphertext> tallies = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            List<ExponentialElGamalCiphertext> operands = new ArrayList<>();
+
+            for (int j = 0; j < 30; j++)
+                operands.add(j < i ? ONEct : ZEROct);
+
+            tallies.add(ZEROct.operateIndependent(operands, PEK));
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < tallies.size(); i++)
+            assertEquals(i, ByteBuffer.wrap(cryptoType.decrypt(tallies.get(i))).getInt());
+
+        System.out.println("Decrypt " + tallies.size() + " tallies with 2 authorities: " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
     private void checkEncryptDecrypt() {
 
         byte[] ZERO = ByteBuffer.allocate(4).putInt(0).array();
@@ -0,0 +1,162 @@
+package crypto.test;
+
+import crypto.ECExponentialElGamalCiphertext;
+import crypto.ECExponentialElGamalCryptoType;
+import crypto.ec.ECCurve;
+import crypto.ec.ECMembershipProof;
+import crypto.ec.ECPrivateKeyShare;
+import crypto.ec.ECPublicKey;
+import crypto.ec.ECThresholdKeys;
+import junit.framework.TestCase;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Elliptic-curve crypto-type test: ciphertexts must decrypt (with any
+ * threshold of the authorities' shares), sums must decrypt to the sum, and
+ * the proofs must hold for the values encrypted and no others.
+ */
+public class ECExponentialElGamalCryptoTypeTest extends TestCase {
+
+    private static final byte[] ZERO = ByteBuffer.allocate(4).putInt(0).array();
+    private static final byte[] ONE = ByteBuffer.allocate(4).putInt(1).array();
+
+    private ECExponentialElGamalCryptoType cryptoType;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        cryptoType = new ECExponentialElGamalCryptoType();
+    }
+
+    public void testEncryptDecryptSingle() throws Exception {
+        ECThresholdKeys keys = ECThresholdKeys.generate(ECCurve.P256, 1, 1);
+
+        cryptoType.loadPublicKey(keys.getPublicKey());
+        cryptoType.loadPrivateKeyShares(keys.getShares().toArray(new ECPrivateKeyShare[1]));
+
+        checkEncryptDecrypt(keys.getPublicKey());
+    }
+
+    public void testEncryptDecryptThreshold() throws Exception {
+        ECThresholdKeys keys = ECThresholdKeys.generate(ECCurve.P256, 3, 2);
+        List<ECPrivateKeyShare> shares = keys.getShares();
+
+        cryptoType.loadPublicKey(keys.getPublicKey());
+
+        /* Any two of the three authorities can decrypt */
+        for (int[] pair : new int[][] { { 0, 1 }, { 0, 2 }, { 2, 1 } }) {
+            cryptoType.loadPrivateKeyShares(new ECPrivateKeyShare[] { shares.get(pair[0]), shares.get(pair[1]) });
+            checkEncryptDecrypt(keys.getPublicKey());
+        }
+
+        /* But one can't */
+        cryptoType.loadPrivateKeyShares(new ECPrivateKeyShare[] { shares.get(0) });
+
+        try {
+            cryptoType.decrypt(cryptoType.encrypt(ONE));
+            fail("Decrypted with fewer shares than the threshold");
+        }
+        catch (RuntimeException expected) { }
+    }
+
+    public void testTally() throws Exception {
+        ECThresholdKeys keys = ECThresholdKeys.generate(ECCurve.P256, 1, 1);
+        ECPublicKey PEK = keys.getPublicKey();
+
+        cryptoType.loadPublicKey(PEK);
+        cryptoType.loadPrivateKeyShares(keys.getShares().toArray(new ECPrivateKeyShare[1]));
+
+        List<ECExponentialElGamalCiphertext> votes = new ArrayList<>();
+
+        for (int i = 0; i < 12; i++)
+            votes.add(cryptoType.encrypt(i % 3 == 0 ? ONE : ZERO));
+
+        ECExponentialElGamalCiphertext total = ECExponentialElGamalCiphertext.identity(PEK).operateIndependent(votes, PEK);
+
+        assertEquals(12, total.getSize());
+        assertTrue(total.verify(0, 12, PEK));
+        assertEquals(4, ByteBuffer.wrap(cryptoType.decrypt(total)).getInt());
+
+        /* The same as adding them one at a time */
+        ECExponentialElGamalCiphertext folded = ECExponentialElGamalCiphertext.identity(PEK);
+
+        for (ECExponentialElGamalCiphertext vote : votes)
+            folded = folded.operateIndependent(vote, PEK);
+
+        assertTrue(total.matches(folded));
+    }
+
+    public void testDependentSum() throws Exception {
+        ECThresholdKeys keys = ECThresholdKeys.generate(ECCurve.P256, 1, 1);
+        ECPublicKey PEK = keys.getPublicKey();
+
+        cryptoType.loadPublicKey(PEK);
+
+        /* One selection out of three, as in a race */
+        List<ECExponentialElGamalCiphertext> race = Arrays.asList(cryptoType.encrypt(ZERO), cryptoType.encrypt(ONE), cryptoType.encrypt(ZERO));
+        ECExponentialElGamalCiphertext sum = ECExponentialElGamalCiphertext.identity(PEK).operateDependent(race, PEK);
+
+        assertEquals(1, sum.getSize());
+        assertTrue(sum.verify(0, 1, PEK));
+    }
+
+    public void testBadProof() throws Exception {
+        ECThresholdKeys keys = ECThresholdKeys.generate(ECCurve.P256, 1, 1);
+        ECPublicKey PEK = keys.getPublicKey();
+
+        cryptoType.loadPublicKey(PEK);
+
+        ECExponentialElGamalCiphertext one = cryptoType.encrypt(ONE);
+
+        assertTrue(one.verify(0, 1, PEK));
+
+        /* The wrong domain */
+        assertFalse(one.verify(0, 0, PEK));
+        assertFalse(one.verify(0, 2, PEK));
+        assertFalse(one.verify(2, 3, PEK));
+
+        /* The wrong key */
+        assertFalse(one.verify(0, 1, ECThresholdKeys.generate(ECCurve.P256, 1, 1).getPublicKey()));
+
+        /* A proof for a different ciphertext */
+        ECExponentialElGamalCiphertext other = cryptoType.encrypt(ONE);
+        assertFalse(new ECExponentialElGamalCiphertext(one.getA(), one.getB(), other.getProof(), 1).verify(0, 1, PEK));
+
+        /* A tampered challenge */
+        List<BigInteger> cList = new ArrayList<>(one.getProof().getCList());
+        cList.set(0, cList.get(0).add(BigInteger.ONE));
+        ECMembershipProof tampered = new ECMembershipProof(cList, one.getProof().getSList());
+        assertFalse(new ECExponentialElGamalCiphertext(one.getA(), one.getB(), tampered, 1).verify(0, 1, PEK));
+
+        /* A value outside the domain can't be proved at all */
+        try {
+            PEK.encrypt(2, ECExponentialElGamalCryptoType.VOTE_DOMAIN);
+            fail("Proved a value outside the domain");
+        }
+        catch (IllegalArgumentException expected) { }
+    }
+
+    private void checkEncryptDecrypt(ECPublicKey PEK) throws Exception {
+        ECExponentialElGamalCiphertext ZEROct = cryptoType.encrypt(ZERO);
+        ECExponentialElGamalCiphertext ONEct = cryptoType.encrypt(ONE);
+        ECExponentialElGamalCiphertext ONEct2 = cryptoType.encrypt(ONE);
+
+        ECExponentialElGamalCiphertext TWOct = ONEct.operateIndependent(ONEct2, PEK);
+        assertTrue(TWOct.verify(0, 2, PEK));
+        TWOct = TWOct.operateIndependent(ZEROct, PEK);
+        ECExponentialElGamalCiphertext THREEct = TWOct.operateIndependent(ONEct, PEK);
+
+        assertEquals(0, ByteBuffer.wrap(cryptoType.decrypt(ZEROct)).getInt());
+        assertEquals(1, ByteBuffer.wrap(cryptoType.decrypt(ONEct)).getInt());
+        assertEquals(2, ByteBuffer.wrap(cryptoType.decrypt(TWOct)).getInt());
+        assertEquals(3, ByteBuffer.wrap(cryptoType.decrypt(THREEct)).getInt());
+        assertTrue(ZEROct.verify(0, 1, PEK));
+        assertTrue(ONEct.verify(0, 1, PEK));
+        assertTrue(TWOct.verify(0, 3, PEK));
+        assertTrue(THREEct.verify(0, 4, PEK));
+    }
+}
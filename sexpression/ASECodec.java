@@ -0,0 +1,363 @@
+package sexpression;
+
+import org.objenesis.ObjenesisHelper;
+import org.objenesis.instantiator.ObjectInstantiator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cached, per-class encoder/decoder used by {@link ASEConverter}. Everything the converter used to look up
+ * reflectively on every conversion (the class itself, its field list, field accessors and constructors) is
+ * resolved into {@link MethodHandle}s the first time a class is seen and reused from then on.
+ *
+ * The field order and naming are exactly those the converter has always used (declared fields of the class,
+ * followed by those of its direct superclass, skipping statics), so the wire output is unchanged. Transient fields
+ * (caches that are rebuilt on demand) are skipped as well, just as Java serialization skips them.
+ *
+ * Classes that are {@link BinaryEncodable} are written in their binary form instead; their fields are still
+ * collected, so that expressions written field by field can be read back.
+ */
+public final class ASECodec<T> {
+
+    /** The kinds of object the converter treats differently */
+    public enum Kind { BASIC, EXPRESSION, COLLECTION, MAP, BINARY, OBJECT }
+
+    /** Codecs, one per class, built lazily on first use */
+    private static final ClassValue<ASECodec<?>> CODECS = new ClassValue<ASECodec<?>>() {
+        protected ASECodec<?> computeValue(Class<?> c) {
+            return new ASECodec<>(c);
+        }
+    };
+
+    /** Class names as they appear on the wire, mapped to their resolved classes */
+    private static final Map<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
+
+    /** Field and class names, parsed once into the expressions that are written for them */
+    private static final Map<String, ASExpression> SYMBOLS = new ConcurrentHashMap<>();
+
+    /** Generic signatures used to adapt the handles so they can be invoked exactly */
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType MAKER = MethodType.methodType(Object.class);
+    private static final MethodType PARSER = MethodType.methodType(Object.class, String.class);
+    private static final MethodType DECODER = MethodType.methodType(Object.class, byte[].class);
+
+    /**
+     * An accessor pair for a single non-static field. The handles are null if the field could not be made
+     * accessible (e.g. it belongs to a class in a module that isn't open to us).
+     */
+    public static final class FieldCodec {
+
+        private final String name;
+        private final ASExpression symbol;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final RuntimeException failure;
+
+        private FieldCodec(Field f) {
+            name = f.getName();
+            symbol = symbol(name);
+
+            MethodHandle get = null, set = null;
+            RuntimeException fail = null;
+
+            try {
+                f.setAccessible(true);
+
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                get = lookup.unreflectGetter(f).asType(GETTER);
+                set = lookup.unreflectSetter(f).asType(SETTER);
+            }
+            catch (IllegalAccessException | RuntimeException e) {
+                fail = e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+            }
+
+            getter = get;
+            setter = set;
+            failure = fail;
+        }
+
+        /**
+         * @return the name of the field
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the (cached) expression written as the field name
+         */
+        public ASExpression getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * @param obj   the object to read from
+         * @return      the (boxed) value of this field in obj
+         */
+        public Object get(Object obj) {
+            if (getter == null) throw failure;
+
+            try { return (Object) getter.invokeExact(obj); }
+            catch (RuntimeException | Error e) { throw e; }
+            catch (Throwable t) { throw new IllegalStateException(t); }
+        }
+
+        /**
+         * @param obj       the object to write into
+         * @param value     the (boxed) value to set this field to
+         */
+        public void set(Object obj, Object value) throws ConversionException {
+            if (setter == null)
+                throw new ConversionException("Could not access the field '" + name + "' during conversion.");
+
+            try { setter.invokeExact(obj, value); }
+            catch (RuntimeException | Error e) { throw e; }
+            catch (Throwable t) { throw new ConversionException("Could not set the field '" + name + "': " + t.getMessage()); }
+        }
+    }
+
+    private final Class<T> type;
+    private final Kind kind;
+    private final ASExpression symbol;
+
+    /** Fields in wire order (declared, then those of the direct superclass) */
+    private final List<FieldCodec> fields;
+
+    /** Fields by name, preferring those declared on the class itself, as getDeclaredField would */
+    private final Map<String, FieldCodec> fieldsByName;
+
+    /** No-arg constructor for collections and maps, String constructor for basic types */
+    private final MethodHandle constructor;
+
+    /** The static fromBytes(byte[]) of a binary-encodable class */
+    private final MethodHandle decoder;
+
+    private ObjectInstantiator<T> instantiator;
+
+    private ASECodec(Class<T> c) {
+        type = c;
+        symbol = symbol(c.getName());
+
+        if (Number.class.isAssignableFrom(c) || String.class == c) kind = Kind.BASIC;
+        else if (ASExpression.class.isAssignableFrom(c))           kind = Kind.EXPRESSION;
+        else if (Collection.class.isAssignableFrom(c))             kind = Kind.COLLECTION;
+        else if (Map.class.isAssignableFrom(c))                    kind = Kind.MAP;
+        else if (BinaryEncodable.class.isAssignableFrom(c))        kind = Kind.BINARY;
+        else                                                       kind = Kind.OBJECT;
+
+        MethodHandle ctor = null;
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        try {
+            if (kind == Kind.BASIC)
+                ctor = lookup.findConstructor(c, MethodType.methodType(void.class, String.class)).asType(PARSER);
+            else if (kind == Kind.COLLECTION || kind == Kind.MAP)
+                ctor = lookup.findConstructor(c, MethodType.methodType(void.class)).asType(MAKER);
+        }
+        catch (NoSuchMethodException | IllegalAccessException ignored) {
+
+            /* Fall back to a declared (non-public) no-arg constructor, as getDeclaredConstructor() would find */
+            if (kind == Kind.COLLECTION || kind == Kind.MAP) {
+                try {
+                    Constructor<T> declared = c.getDeclaredConstructor();
+                    declared.setAccessible(true);
+                    ctor = MethodHandles.lookup().unreflectConstructor(declared).asType(MAKER);
+                }
+                catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) { /* Reported when the codec is used */ }
+            }
+        }
+
+        constructor = ctor;
+
+        MethodHandle fromBytes = null;
+
+        if (kind == Kind.BINARY) {
+            try { fromBytes = lookup.findStatic(c, "fromBytes", MethodType.methodType(c, byte[].class)).asType(DECODER); }
+            catch (NoSuchMethodException | IllegalAccessException e) { /* Reported when the codec is used */ }
+        }
+
+        decoder = fromBytes;
+
+        List<FieldCodec> fieldList = new ArrayList<>();
+        Map<String, FieldCodec> byName = new HashMap<>();
+
+        if (kind == Kind.OBJECT || kind == Kind.BINARY) {
+            collectFields(c, fieldList, byName);
+
+            if (c.getSuperclass() != null)
+                collectFields(c.getSuperclass(), fieldList, byName);
+        }
+
+        fields = Collections.unmodifiableList(fieldList);
+        fieldsByName = byName;
+    }
+
+    private static void collectFields(Class<?> c, List<FieldCodec> fieldList, Map<String, FieldCodec> byName) {
+        for (Field f : c.getDeclaredFields()) {
+
+            /* Skip if static or transient */
+            if (Modifier.isStatic(f.getModifiers()) || Modifier.isTransient(f.getModifiers()))
+                continue;
+
+            FieldCodec fc = new FieldCodec(f);
+            fieldList.add(fc);
+            byName.putIfAbsent(fc.getName(), fc);
+        }
+    }
+
+    /**
+     * @param c     the class to get a codec for
+     * @param <T>   the type
+     *
+     * @return      the codec for c, built the first time it is requested
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ASECodec<T> forClass(Class<T> c) {
+        return (ASECodec<T>) CODECS.get(c);
+    }
+
+    /**
+     * Resolves a class name as written by the converter, caching the result.
+     *
+     * @param className     the fully qualified class name
+     * @return              the class with this name
+     *
+     * @throws ConversionException if no such class can be loaded
+     */
+    public static Class<?> forName(String className) throws ConversionException {
+        Class<?> c = CLASSES.get(className);
+
+        if (c == null) {
+            try { c = Class.forName(className); }
+            catch (Exception e) {
+                throw new ConversionException("Error during casting inferred type: " + e.getMessage());
+            }
+
+            CLASSES.putIfAbsent(className, c);
+        }
+
+        return c;
+    }
+
+    /**
+     * Returns the expression the converter writes for a field or class name. This is the same as
+     * {@link ASExpression#make(String)} on that name, but the parse is only done once per name.
+     *
+     * @param name  the field or class name
+     * @return      the parsed (and cached) expression for name
+     */
+    public static ASExpression symbol(String name) {
+        ASExpression exp = SYMBOLS.get(name);
+
+        if (exp == null) {
+            exp = ASExpression.make(name);
+            SYMBOLS.putIfAbsent(name, exp);
+        }
+
+        return exp;
+    }
+
+    /**
+     * @return the class this codec handles
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return how the converter should treat instances of this class
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the (cached) expression written as this class's name
+     */
+    public ASExpression getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return the non-static fields of this class in the order they are written
+     */
+    public List<FieldCodec> getFields() {
+        return fields;
+    }
+
+    /**
+     * @param name  the name of a field
+     * @return      the field with this name, or null if there is none
+     */
+    public FieldCodec getField(String name) {
+        return fieldsByName.get(name);
+    }
+
+    /**
+     * Creates a blank instance without running any constructor, for filling in field by field.
+     *
+     * @return a new, uninitialised instance of this class
+     */
+    public T newBlankInstance() {
+        /* Racy but harmless, Objenesis caches its instantiators anyway */
+        if (instantiator == null)
+            instantiator = ObjenesisHelper.getInstantiatorOf(type);
+
+        return instantiator.newInstance();
+    }
+
+    /**
+     * Creates an empty instance via the public no-arg constructor (collections and maps need their constructor run).
+     *
+     * @return a new, empty instance of this class
+     *
+     * @throws ConversionException if there is no such constructor or it fails
+     */
+    public T newInstance() throws ConversionException {
+        if (constructor == null)
+            throw new ConversionException("No accessible no-arg constructor for " + type.getName());
+
+        try { return type.cast((Object) constructor.invokeExact()); }
+        catch (Throwable t) { throw new ConversionException(t.getClass() + ": " + t.getMessage()); }
+    }
+
+    /**
+     * Creates an instance of a basic type via its String constructor.
+     *
+     * @param value     the string form of the value
+     * @return          the value as an instance of this class
+     *
+     * @throws ConversionException if there is no such constructor or it fails
+     */
+    public T parse(String value) throws ConversionException {
+        if (constructor == null)
+            throw new ConversionException("Error during construction of a basic class: no String constructor for " + type.getName());
+
+        try { return type.cast((Object) constructor.invokeExact(value)); }
+        catch (Throwable t) { throw new ConversionException("Error during construction of a basic class: " + t.getMessage()); }
+    }
+
+    /**
+     * Creates an instance of a binary-encodable class from its binary form.
+     *
+     * @param bytes     the binary form, as {@link BinaryEncodable#toBytes()} wrote it
+     * @return          the value as an instance of this class
+     *
+     * @throws ConversionException if the class has no fromBytes(byte[]) or it fails
+     */
+    public T fromBytes(byte[] bytes) throws ConversionException {
+        if (decoder == null)
+            throw new ConversionException("No accessible static fromBytes(byte[]) for " + type.getName());
+
+        try { return type.cast((Object) decoder.invokeExact(bytes)); }
+        catch (Throwable t) { throw new ConversionException("Error during decoding of " + type.getName() + ": " + t); }
+    }
+}
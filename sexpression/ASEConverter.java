@@ -1,23 +1,37 @@
 package sexpression;
 
 
-import org.objenesis.ObjenesisHelper;
-import org.objenesis.instantiator.ObjectInstantiator;
-
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.*;
-import java.util.stream.Stream;
 
 /**
  * A static utility to automate the process of creating toASE and fromASE methods. This can create a
  * relatively compact and human+machine-readable s-expression and convert it back to a copy of the
- * original class instance.
+ * original class instance. The per-class reflective work is done once and cached in an {@link ASECodec}.
  *
  * Created by Matthew Kindy II on 11/21/2014.
  */
 public class ASEConverter {
 
+    /** Whether {@link BinaryEncodable} objects are written in their binary form (they are always read either way) */
+    private static volatile boolean binaryEncoding = true;
+
+    /**
+     * Turns the binary form of {@link BinaryEncodable} objects on or off. With it off they are written field by
+     * field, as they were before they had a binary form, for readers that don't know it yet.
+     *
+     * @param enabled   whether to write the binary form
+     */
+    public static void setBinaryEncoding(boolean enabled) {
+        binaryEncoding = enabled;
+    }
+
+    /**
+     * @return  whether {@link BinaryEncodable} objects are written in their binary form
+     */
+    public static boolean isBinaryEncoding() {
+        return binaryEncoding;
+    }
+
     /**
      * Creates an object of class c from ASExpression exp.
      *
@@ -31,43 +45,50 @@ public class ASEConverter {
         if (c==null) return null;
         if (exp==null || exp.equals(ListExpression.EMPTY)) return null;
 
-        ObjectInstantiator<T> tInstantiator = ObjenesisHelper.getInstantiatorOf(c);
-
         /* Convert to a list expression */
         /* Parse through each element of the list expression */
         /* (object [classname] ([fieldname] [classname] ([param]) (...) (...)) ([fieldname] [classname] ([param])))*/
         /*    type c           |-------------------------------- class field ASEs ------------------------------ | */
 
+        ASECodec<T> codec = ASECodec.forClass(c);
 
+        switch (codec.getKind()) {
 
-        /* Use Objenesis to construct a new (hopefully blank) instance of this class */
-        T newObj = tInstantiator.newInstance();
-
-        if (newObj instanceof Number || newObj instanceof String)
-            return convertBasicType(exp,c);
-
-        if (newObj instanceof ASExpression)
-            return c.cast(convertASE(exp));
+            case BASIC:
+                return convertBasicType(exp, codec);
 
-        try {
+            case EXPRESSION:
+                return c.cast(convertASE(exp));
 
             /* Objenesis doesn't call the constructor, which is necessary for Collections, at minimum,
-             * so here we use reflection directly.
+             * so here the codec uses the constructor directly.
              */
+            case COLLECTION:
+            case MAP:
+                try {
+                    if (codec.getKind() == ASECodec.Kind.COLLECTION)
+                        return (T)convertCollection(exp, (Collection) codec.newInstance());
 
-            if (newObj instanceof Collection) {
-                Collection col = (Collection) c.getDeclaredConstructor().newInstance();
-                return (T)convertCollection(exp, col);
-            }
-            if (newObj instanceof Map) {
-                Map m = (Map)c.getDeclaredConstructor().newInstance();
-                return (T)convertMap(exp, m);
-            }
-        }
-        catch (Exception e) {
-            throw new ConversionException("Error during reconstruction of collection: " + exp +"\n\t" + e.getMessage());
+                    return (T)convertMap(exp, (Map) codec.newInstance());
+                }
+                catch (Exception e) {
+                    throw new ConversionException("Error during reconstruction of collection: " + exp +"\n\t" + e.getMessage());
+                }
+
+            /* The binary form is the bytes alone, anything else was written field by field */
+            case BINARY:
+                if (exp.size() == 3 && exp.get(2) instanceof StringExpression)
+                    return codec.fromBytes(((StringExpression) exp.get(2)).getBytesCopy());
+
+                break;
+
+            default:
+                break;
         }
 
+        /* Use Objenesis to construct a new (hopefully blank) instance of this class */
+        T newObj = codec.newBlankInstance();
+
         for (int i=2; i<exp.size(); i++) {
 
             /* Get the ASExpression */
@@ -76,41 +97,21 @@ public class ASEConverter {
             /* If this is an instance of ListExpression, convert to object */
             if (cur instanceof ListExpression) {
 
-                //System.out.println("This ListExpression: " + cur);
-
                 /* There ought to be no primitives here since they were autoboxed */
                 Object value = ASEConverter.convertFromASE((ListExpression) cur);
 
-                //System.out.println("The value that got converted: " + value);
-
                 /* Get the name of this field */
                 String fieldName = ((ListExpression) cur).get(0).toString();
-                //System.out.println("Field name: " + fieldName);
-
-                /* Set the field in the blank object to the value in the ASE using reflection */
-                Field f;
 
-                /* Get the field with this name */
-                try { f = c.getDeclaredField(fieldName); }
-                catch (NoSuchFieldException ignored) {
+                /* Get the field with this name, from this class or its direct superclass */
+                ASECodec.FieldCodec f = codec.getField(fieldName);
 
-                    try { f=c.getSuperclass().getDeclaredField(fieldName); }
-                    catch (NoSuchFieldException e) {
-
-                        throw new ConversionException("Could not find the field with specified name '"+ fieldName +
-                                                      "' in " + c.getName() + " or " + c.getSuperclass().getName());
-                    }
-                }
-
-                try {
-                    /* This does not cause worry because it is automatically reset in Java */
-                    f.setAccessible(true);
-
-                    /* Set the new value */
-                    f.set(newObj, value);
-                }
-                catch (IllegalAccessException e) { throw new ConversionException("Could not access the field for some reason during conversion."); }
+                if (f == null)
+                    throw new ConversionException("Could not find the field with specified name '"+ fieldName +
+                                                  "' in " + c.getName() + " or " + c.getSuperclass().getName());
 
+                /* Set the new value */
+                f.set(newObj, value);
             }
             else throw new ConversionException("Found an unexpected ASExpression in '" + exp + "'");
 
@@ -148,12 +149,7 @@ public class ASEConverter {
     private static Class<?> getClass(ListExpression exp) throws ConversionException{
         String className = exp.get(1).toString();
 
-        try {
-            return className.equals("NULL") ? null : (Class.forName(className));
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new ConversionException("Error during casting inferred type: " + e.getMessage());
-        }
+        return className.equals("NULL") ? null : ASECodec.forName(className);
     }
 
     /**
@@ -201,34 +197,26 @@ public class ASEConverter {
         List<ASExpression> expList = new ArrayList<>();
 
         /* Write the name of the Object */
-        //System.out.println(fieldName);
-        expList.add(StringExpression.make(fieldName));
+        expList.add(ASECodec.symbol(fieldName));
 
         if (obj == null) {
-            expList.add(StringExpression.make("NULL"));
+            expList.add(ASECodec.symbol("NULL"));
             return new ListExpression(expList);
         }
 
-        Class curClass = obj.getClass();
-        expList.add(StringExpression.make(curClass.getName()));
+        ASECodec<?> codec = ASECodec.forClass(obj.getClass());
+        expList.add(codec.getSymbol());
 
-        /* Get the list of fields */
-        Field[] fields = curClass.getDeclaredFields();
-
-        /* Concatenate those fields in the direct superclass */
-        fields = Stream.concat(Arrays.stream(fields), Arrays.stream(curClass.getSuperclass().getDeclaredFields())).toArray(Field[]::new);
-
-        /* Get each field object and convert */
-        for (Field f : fields) {
+        if (binaryEncoding && codec.getKind() == ASECodec.Kind.BINARY) {
+            expList.add(StringExpression.makeString(((BinaryEncodable) obj).toBytes()));
+            return new ListExpression(expList);
+        }
 
-            /* Skip if static */
-            if (Modifier.isStatic(f.getModifiers()))
-                continue;
+        /* Get each (non-static) field object, including those in the direct superclass, and convert */
+        for (ASECodec.FieldCodec f : codec.getFields()) {
 
             /* Convert this field to an ASE */
             try {
-                f.setAccessible(true);
-
                 /* This ought to autobox any primitives */
                 expList.add(ASEConverter.convertToASE(f.get(obj), f.getName()));
             }
@@ -243,8 +231,8 @@ public class ASEConverter {
         List<ASExpression> expList = new ArrayList<>();
 
         /* Write the name of the Object */
-        expList.add(StringExpression.make(fieldName));
-        expList.add(StringExpression.make(ase.getClass().getName()));
+        expList.add(ASECodec.symbol(fieldName));
+        expList.add(ASECodec.forClass(ase.getClass()).getSymbol());
         expList.add(ase);
 
         return new ListExpression(expList);
@@ -271,8 +259,8 @@ public class ASEConverter {
         List<ASExpression> expList = new ArrayList<>();
 
         /* Write the name of the Object */
-        expList.add(StringExpression.make(fieldName));
-        expList.add(StringExpression.make(col.getClass().getName()));
+        expList.add(ASECodec.symbol(fieldName));
+        expList.add(ASECodec.forClass(col.getClass()).getSymbol());
 
         /* Convert the data in particular */
         for (Object o : col.toArray())
@@ -329,8 +317,8 @@ public class ASEConverter {
         List<ASExpression> expList = new ArrayList<>();
 
         /* Write the name of the Object */
-        expList.add(StringExpression.make(fieldName));
-        expList.add(StringExpression.make(m.getClass().getName()));
+        expList.add(ASECodec.symbol(fieldName));
+        expList.add(ASECodec.forClass(m.getClass()).getSymbol());
 
         Set<Map.Entry<K,V>> entrySet = m.entrySet();
 
@@ -394,8 +382,8 @@ public class ASEConverter {
         List<ASExpression> expList = new ArrayList<>();
 
         /* Write the name of the Object */
-        expList.add(StringExpression.make(fieldName));
-        expList.add(StringExpression.make(obj.getClass().getName()));
+        expList.add(ASECodec.symbol(fieldName));
+        expList.add(ASECodec.forClass(obj.getClass()).getSymbol());
 
         expList.add(StringExpression.makeString(obj.toString()));
         return new ListExpression(expList);
@@ -405,18 +393,14 @@ public class ASEConverter {
      * Converts a ListExpression for a basic type (Long/Integer/Float/Byte/Double/etc.) into a class instance
      *
      * @param exp       the expression to convert into an object of class c
-     * @param c         the class into which the expression will be converted
+     * @param codec     the codec for the class into which the expression will be converted
      * @param <T>       the type
      * @return          an instance of type T.
      *
      * @throws ConversionException if a constructor can't be found that takes a String argument
      */
-    private static <T> T convertBasicType(ListExpression exp, Class<T> c) throws ConversionException{
-        try {
-            return c.getConstructor(String.class).newInstance(exp.get(2).toString());
-        } catch (Exception e) {
-            throw new ConversionException("Error during construction of a basic class: " + e.getMessage());
-        }
+    private static <T> T convertBasicType(ListExpression exp, ASECodec<T> codec) throws ConversionException{
+        return codec.parse(exp.get(2).toString());
     }
 
 }
@@ -56,6 +56,9 @@ import java.util.HashMap;
  */
 public abstract class ASExpression implements Serializable {
 
+    /** Pinned to the value computed before hashCode(byte[]) was added, so older serialized expressions still read */
+    private static final long serialVersionUID = 5023029064020514139L;
+
     /**
      * Parse a String into an expression. This method utilizes the s-expression
      * parser.<br>
@@ -260,7 +263,19 @@ public abstract class ASExpression implements Serializable {
      */
     @Override
     public int hashCode() {
-        byte[] sha = getSHA1();
+        return hashCode( getSHA1() );
+    }
+
+    /**
+     * Compute the hash code of an expression from the SHA-1 hash of its
+     * verbatim form, so that expressions which are stored only as bytes (see
+     * ExpressionArena) hash the same way.
+     * 
+     * @param sha
+     *            The SHA-1 hash of an expression's verbatim form.
+     * @return This method returns the expression's hash code.
+     */
+    static int hashCode(byte[] sha) {
         return (((int) sha[0]) << 24) | (((int) sha[1]) << 16)
                 | (((int) sha[2]) << 8) | (int) sha[3];
     }
@@ -0,0 +1,37 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+package sexpression;
+
+/**
+ * An object with a compact binary form of its own, which {@link ASEConverter} writes in place of a field-by-field
+ * dump of it: a list of the field name, the class name and a single string holding the bytes. Implementing classes
+ * must also have a public static <code>fromBytes(byte[])</code> returning an instance of the class, which the
+ * converter uses to read it back. Their fields are still what the converter falls back on for expressions written
+ * the old way (or with {@link ASEConverter#setBinaryEncoding(boolean)} off, for readers that predate this).
+ */
+public interface BinaryEncodable {
+
+    /**
+     * @return  the binary form of this object, as its class's <code>fromBytes</code> reads it
+     */
+    byte[] toBytes();
+}
@@ -0,0 +1,204 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression;
+
+import sexpression.stream.ASEBufferReader;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An ExpressionArena is a compact, append-only store for a large number of
+ * s-expressions (the messages of an auditorium log, for instance). Rather than
+ * a tree of objects per expression, each one carrying its own cached verbatim,
+ * string and hash copies, the arena keeps only the verbatim bytes, packed into
+ * large shared pages, and a few int tables locating them. An expression is
+ * materialized as objects only when asked for, and then its long atoms are
+ * slices of the arena rather than copies.<br>
+ * <br>
+ * Hash codes are computed once when an expression is added, and agree with
+ * ASExpression.hashCode(), so stored expressions can be used as hash keys
+ * without being materialized. The arena is not safe for concurrent appends.
+ */
+public class ExpressionArena {
+
+    /** The size of a page of the arena; bigger expressions get a page of their own */
+    public static final int PAGE_SIZE = 1 << 20;
+
+    private byte[][] _pages = new byte[16][];
+    private int _pageCount = 0;
+
+    /** How much of the last page is used */
+    private int _pageUsed = PAGE_SIZE;
+
+    /* Per expression: the page it is in, where in the page it starts, its length, and its hash code */
+    private int[] _page = new int[1024];
+    private int[] _offset = new int[1024];
+    private int[] _length = new int[1024];
+    private int[] _hash = new int[1024];
+
+    private int _size = 0;
+
+    /**
+     * Add an expression to the arena.
+     * 
+     * @param expression
+     *            The expression to store.
+     * @return The index of the stored expression.
+     */
+    public int add(ASExpression expression) {
+        return add( expression.toVerbatim(), expression.hashCode() );
+    }
+
+    /**
+     * Add an expression to the arena from its verbatim form.
+     * 
+     * @param verbatim
+     *            The verbatim form of the expression to store.
+     * @return The index of the stored expression.
+     */
+    public int addVerbatim(byte[] verbatim) {
+        return add( verbatim, ASExpression.hashCode( ASExpression.computeSHA1( verbatim ) ) );
+    }
+
+    private int add(byte[] verbatim, int hash) {
+        int len = verbatim.length;
+
+        if (len > PAGE_SIZE - _pageUsed) {
+            if (_pageCount == _pages.length)
+                _pages = Arrays.copyOf( _pages, _pageCount * 2 );
+
+            _pages[_pageCount++] = new byte[Math.max( PAGE_SIZE, len )];
+            _pageUsed = 0;
+        }
+
+        if (_size == _page.length) {
+            int capacity = _size * 2;
+            _page = Arrays.copyOf( _page, capacity );
+            _offset = Arrays.copyOf( _offset, capacity );
+            _length = Arrays.copyOf( _length, capacity );
+            _hash = Arrays.copyOf( _hash, capacity );
+        }
+
+        System.arraycopy( verbatim, 0, _pages[_pageCount - 1], _pageUsed, len );
+
+        _page[_size] = _pageCount - 1;
+        _offset[_size] = _pageUsed;
+        _length[_size] = len;
+        _hash[_size] = hash;
+
+        _pageUsed += len;
+
+        return _size++;
+    }
+
+    /**
+     * @return The number of expressions in the arena.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @param index
+     *            The index of a stored expression.
+     * @return The length of the expression's verbatim form.
+     */
+    public int length(int index) {
+        check( index );
+        return _length[index];
+    }
+
+    /**
+     * @param index
+     *            The index of a stored expression.
+     * @return The expression's hash code, as ASExpression.hashCode() would
+     *         compute it.
+     */
+    public int hashCode(int index) {
+        check( index );
+        return _hash[index];
+    }
+
+    /**
+     * @param index
+     *            The index of a stored expression.
+     * @return A read-only view of the expression's verbatim form.
+     */
+    public ByteBuffer verbatim(int index) {
+        check( index );
+        return ByteBuffer.wrap( _pages[_page[index]], _offset[index], _length[index] ).asReadOnlyBuffer();
+    }
+
+    /**
+     * Build the objects for a stored expression. Nothing is cached, so callers
+     * that want to hold on to the result should do so themselves.
+     * 
+     * @param index
+     *            The index of a stored expression.
+     * @return The expression.
+     */
+    public ASExpression get(int index) {
+        try {
+            return new ASEBufferReader( verbatim( index ) ).read();
+        }
+        catch (IOException | InvalidVerbatimStreamException e) {
+            /* We wrote these bytes ourselves from valid expressions */
+            throw new IllegalStateException( "Corrupt expression arena at " + index, e );
+        }
+    }
+
+    /**
+     * Compare a stored expression with a verbatim form, without materializing
+     * it.
+     * 
+     * @param index
+     *            The index of a stored expression.
+     * @param verbatim
+     *            The verbatim form to compare against.
+     * @return True if they are the same expression.
+     */
+    public boolean verbatimEquals(int index, byte[] verbatim) {
+        return verbatim( index ).equals( ByteBuffer.wrap( verbatim ) );
+    }
+
+    /**
+     * Compare two stored expressions (possibly from different arenas) without
+     * materializing them.
+     * 
+     * @return True if they are the same expression.
+     */
+    public boolean verbatimEquals(int index, ExpressionArena other, int otherIndex) {
+        if (_hash[index] != other._hash[otherIndex])
+            return false;
+
+        return verbatim( index ).equals( other.verbatim( otherIndex ) );
+    }
+
+    private void check(int index) {
+        if (index < 0 || index >= _size)
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + _size );
+    }
+}
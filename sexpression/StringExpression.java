@@ -25,7 +25,10 @@ package sexpression;
 import sexpression.ByteArrayBuffer.ByteArray;
 import sexpression.stream.Base64;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 
@@ -37,6 +40,13 @@ import java.util.HashMap;
  */
 public class StringExpression extends ASExpression {
 
+    /**
+     * Pinned to the value of the original, eager-only class, whose serialized
+     * form (just _bytes) is kept, so strings serialized by older builds (in
+     * Tap's records, for one) still read back.
+     */
+    private static final long serialVersionUID = -4010330366235334760L;
+
     public static class BytesBox {
         private final byte[] _bytes;
 
@@ -103,13 +113,40 @@ public class StringExpression extends ASExpression {
 
     }
 
-    private byte[] _bytes;
+    /**
+     * Ask for an expression that represents the bytes remaining in the given
+     * buffer, without copying them. The bytes are only copied out of the
+     * buffer when something asks for them, so large atoms that are parsed but
+     * never looked at (signatures, ciphertexts) cost nothing to read. These
+     * expressions are NOT interned; match() falls back to comparing bytes when
+     * one of them is involved.
+     * 
+     * @param slice
+     *            The bytes of the string. The buffer must not be changed
+     *            afterwards.
+     * @return This method returns a (lazy) expression that represents the
+     *         given bytes.
+     */
+    public static StringExpression makeLazy(ByteBuffer slice) {
+        return new StringExpression(slice.slice());
+    }
+
+    private volatile byte[] _bytes;
+
+    /** The bytes of a lazy string, until they are copied into _bytes */
+    private transient ByteBuffer _slice;
+
+    private final transient int _length;
+
+    private final transient boolean _lazy;
 
     /**
      * Construct a string sexp that is empty.
      */
     private StringExpression() {
         _bytes = new byte[0];
+        _length = 0;
+        _lazy = false;
     }
 
     /**
@@ -119,6 +156,62 @@ public class StringExpression extends ASExpression {
      */
     private StringExpression(byte[] bytes) {
         _bytes = bytes;
+        _length = bytes.length;
+        _lazy = false;
+    }
+
+    /**
+     * Constructor for a lazy string backed by a buffer slice.
+     * 
+     * @param slice
+     */
+    private StringExpression(ByteBuffer slice) {
+        _slice = slice;
+        _length = slice.remaining();
+        _lazy = true;
+    }
+
+    /**
+     * @return the bytes of this string, copying them out of the backing buffer
+     *         the first time if this is a lazy string.
+     */
+    private byte[] bytes() {
+        byte[] bytes = _bytes;
+        if (bytes != null)
+            return bytes;
+
+        synchronized (this) {
+            if (_bytes == null) {
+                bytes = new byte[_length];
+                _slice.duplicate().get(bytes);
+                _bytes = bytes;
+                _slice = null;
+            }
+            return _bytes;
+        }
+    }
+
+    /**
+     * @return true if this string was created by makeLazy and so may not be
+     *         the interned instance for its bytes.
+     */
+    public boolean isLazy() {
+        return _lazy;
+    }
+
+    /**
+     * Interned strings match by identity; a lazy string has to be compared by
+     * its contents instead.
+     */
+    private boolean sameString(ASExpression target) {
+        if (this == target)
+            return true;
+        if (!(target instanceof StringExpression))
+            return false;
+
+        StringExpression other = (StringExpression) target;
+        return (_lazy || other._lazy) && _length == other._length
+                && Arrays.equals(bytes(), other.bytes());
     }
 
     /**
@@ -130,7 +223,7 @@ public class StringExpression extends ASExpression {
      */
     public StringBuffer toStringHelp() {
         StringBuffer buffer = new StringBuffer();
-        for (byte b : _bytes)
+        for (byte b : bytes())
             if ((b > 32 && b < 127) || Character.isWhitespace((char) b))
                 buffer.append((char) b);
             else
@@ -148,7 +241,7 @@ public class StringExpression extends ASExpression {
     private StringBuffer toPrettifiedString() {
         StringBuffer buffer = new StringBuffer();
         buffer.append("{");
-        buffer.append(Base64.encodeBytes(_bytes));
+        buffer.append(Base64.encodeBytes(bytes()));
         buffer.append("}");
         return buffer;
     }
@@ -161,11 +254,11 @@ public class StringExpression extends ASExpression {
      */
     public ByteArrayBuffer toVerbatimHelp() {
         ByteArrayBuffer buf = new ByteArrayBuffer();
-        ByteArray length = new ByteArray(Integer.toString(_bytes.length)
+        ByteArray length = new ByteArray(Integer.toString(_length)
                 .getBytes());
         buf.append(length);
         buf.append((byte) ':');
-        buf.append(new ByteArray(_bytes));
+        buf.append(new ByteArray(bytes()));
         return buf;
     }
 
@@ -174,7 +267,7 @@ public class StringExpression extends ASExpression {
      */
     @Override
     public synchronized ASExpression match(ASExpression target) {
-        if (this == target)
+        if (sameString(target))
             return ListExpression.EMPTY;
         return NoMatch.SINGLETON;
     }
@@ -185,7 +278,7 @@ public class StringExpression extends ASExpression {
     @Override
     public synchronized HashMap<String, ASExpression> namedMatch(
             ASExpression target) {
-        if (this == target)
+        if (sameString(target))
             return new HashMap<>();
         return NamedNoMatch.SINGLETON;
     }
@@ -197,8 +290,8 @@ public class StringExpression extends ASExpression {
      * @return This method returns a copy of the byte string.
      */
     public byte[] getBytesCopy() {
-        byte[] returnarray = new byte[_bytes.length];
-        System.arraycopy(_bytes, 0, returnarray, 0, _bytes.length);
+        byte[] returnarray = new byte[_length];
+        System.arraycopy(bytes(), 0, returnarray, 0, _length);
         return returnarray;
     }
 
@@ -209,7 +302,7 @@ public class StringExpression extends ASExpression {
      *         expression. DO NOT MUTATE THIS.
      */
     public byte[] getBytes() {
-        return _bytes;
+        return bytes();
     }
 
     /**
@@ -220,7 +313,10 @@ public class StringExpression extends ASExpression {
      * @return This method returns the indexth byte from the string.
      */
     public byte get(int index) {
-        return _bytes[index];
+        ByteBuffer slice = _slice;
+        if (_bytes == null && slice != null)
+            return slice.get(index);
+        return bytes()[index];
     }
 
     /**
@@ -229,7 +325,7 @@ public class StringExpression extends ASExpression {
      * @return This method returns the number of bytes in this string.
      */
     public int size() {
-        return _bytes.length;
+        return _length;
     }
 
     /**
@@ -238,7 +334,28 @@ public class StringExpression extends ASExpression {
 
     @Override
     public void finalize() {
-        _interned.remove(new BytesBox(_bytes));
+        if (!_lazy)
+            _interned.remove(new BytesBox(_bytes));
+    }
+
+    /**
+     * Lazy strings have to copy their bytes out before being serialized, so
+     * that only the plain bytes are written.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        bytes();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * A deserialized string has only its bytes, so stands in for the interned
+     * (eager) string with those bytes.
+     */
+    private Object readResolve() {
+        if (_bytes.length == 0)
+            return EMPTY;
+
+        return makeString(_bytes);
     }
     
     /**
@@ -0,0 +1,451 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.stream;
+
+import sexpression.*;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The ASEBufferReader parses ASExpressions in verbatim, base64 or binary form
+ * directly out of a ByteBuffer, typically a file mapped into memory. It reads
+ * the same streams as ASEInputStreamReader, but without a call per byte:
+ * lengths are parsed straight out of the buffer, list elements are collected
+ * on one shared stack rather than an ArrayList per list, and atoms longer than
+ * {@link #MAX_INTERNED_LENGTH} are lazy slices of the buffer that are only
+ * copied if something asks for their bytes.<br>
+ * <br>
+ * Files are mapped in windows of up to {@link #WINDOW} bytes, so logs larger
+ * than a single mapping can hold are read as well. The file is kept open
+ * (until close()) only if it doesn't fit in one window.
+ */
+public class ASEBufferReader implements Closeable {
+
+    /** Atoms up to this long are interned as usual, so patterns match them by identity */
+    public static final int MAX_INTERNED_LENGTH = 64;
+
+    /** The most of a file that is mapped at any one time, by default */
+    public static final int WINDOW = 1 << 28;
+
+    private ByteBuffer _buffer;
+
+    /** The file being mapped, if any, and where in it the current buffer starts */
+    private final FileChannel _channel;
+    private final long _fileSize;
+    private final int _window;
+    private long _windowStart;
+
+    /** Elements of the lists currently being parsed */
+    private ASExpression[] _stack = new ASExpression[64];
+    private int _top = 0;
+
+    /** Symbol dictionary for the binary format, built up as binary expressions are read */
+    private List<StringExpression> _symbols = new ArrayList<>();
+
+    /**
+     * Dictionaries already built by a scan of the stream (one per reset), if
+     * this reader is parsing part of a stream, and the one currently in use
+     */
+    private final List<List<StringExpression>> _dictionaries;
+    private int _dictionary;
+
+    /**
+     * @param buffer
+     *            Parse expressions from the bytes remaining in this buffer.
+     */
+    public ASEBufferReader(ByteBuffer buffer) {
+        _buffer = buffer.slice();
+        _channel = null;
+        _fileSize = _buffer.limit();
+        _window = _buffer.limit();
+        _dictionaries = null;
+    }
+
+    /**
+     * Constructor for a reader over part of a stream whose binary symbol
+     * dictionaries have already been built (see ASEParallelReader).
+     * 
+     * @param buffer
+     *            Parse expressions from the bytes remaining in this buffer.
+     * @param dictionaries
+     *            The complete dictionaries of the stream, one per reset.
+     * @param dictionary
+     *            The index of the dictionary in use at the start of buffer.
+     */
+    ASEBufferReader(ByteBuffer buffer, List<List<StringExpression>> dictionaries, int dictionary) {
+        _buffer = buffer.slice();
+        _channel = null;
+        _fileSize = _buffer.limit();
+        _window = _buffer.limit();
+        _dictionaries = dictionaries;
+        _dictionary = dictionary;
+        _symbols = dictionaries.get( dictionary );
+    }
+
+    private ASEBufferReader(FileChannel channel, int window) throws IOException {
+        _channel = channel;
+        _fileSize = channel.size();
+        _window = window;
+        _dictionaries = null;
+        map( 0, Math.min( window, _fileSize ) );
+
+        /* Mappings stay valid once the channel is closed, so only keep it if we'll need to remap */
+        if (_fileSize <= window)
+            channel.close();
+    }
+
+    /**
+     * Map a file into memory to read expressions from it.
+     * 
+     * @param file
+     *            The file (typically a log) to read.
+     * @return A reader over the file.
+     * @throws IOException
+     *             This method throws if the file cannot be opened or mapped.
+     */
+    public static ASEBufferReader map(File file) throws IOException {
+        return map( file, WINDOW );
+    }
+
+    /**
+     * Map a file into memory to read expressions from it, mapping at most
+     * window bytes of it at a time (though a single expression larger than
+     * that will still be mapped whole).
+     * 
+     * @param file
+     *            The file (typically a log) to read.
+     * @param window
+     *            The usual size of a mapping.
+     * @return A reader over the file.
+     * @throws IOException
+     *             This method throws if the file cannot be opened or mapped.
+     */
+    public static ASEBufferReader map(File file, int window) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+
+        try {
+            return new ASEBufferReader( raf.getChannel(), window );
+        }
+        catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Close the underlying file, if it is still open. Expressions already read
+     * remain valid.
+     * 
+     * @see java.io.Closeable#close()
+     */
+    public void close() throws IOException {
+        if (_channel != null)
+            _channel.close();
+    }
+
+    private void map(long start, long size) throws IOException {
+        _buffer = _channel.map( FileChannel.MapMode.READ_ONLY, start, size );
+        _windowStart = start;
+    }
+
+    /**
+     * Invoke this method to parse one ASExpression off the buffer.
+     * 
+     * @return This method returns the parsed ASExpression, or null if the end
+     *         of the buffer was reached.
+     * @throws IOException
+     *             This method throws if the buffer ends part way through an
+     *             expression, or if remapping the file fails.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if there is invalid data in the buffer.
+     */
+    public ASExpression read() throws IOException,
+            InvalidVerbatimStreamException {
+        while (true) {
+            int start = _buffer.position();
+
+            if (!_buffer.hasRemaining() && _windowStart + start >= _fileSize)
+                return null;
+
+            int symbols = _symbols.size();
+
+            try {
+                return readTop();
+            }
+            catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                /* Undo any partial work and retry from a window starting at this expression */
+                _top = 0;
+                while (_dictionaries == null && _symbols.size() > symbols)
+                    _symbols.remove( _symbols.size() - 1 );
+
+                long offset = _windowStart + start;
+                long end = _windowStart + _buffer.limit();
+
+                if (_channel == null || end >= _fileSize)
+                    throw new EOFException( "End of stream" );
+
+                long size = Math.min( Math.max( _window, 2L * (end - offset) ), _fileSize - offset );
+                if (size > Integer.MAX_VALUE)
+                    throw new IOException( "Expression at " + offset + " is too large to map" );
+
+                map( offset, size );
+            }
+        }
+    }
+
+    /**
+     * This is a private helper method for read(). Dispatches on the first byte
+     * of a top level expression.
+     */
+    private ASExpression readTop() throws InvalidVerbatimStreamException {
+        byte b = _buffer.get();
+
+        // base64/canonical case
+        if (b == '{')
+            return readBase64();
+        // binary case
+        if (b == BinaryFormat.MARKER) {
+            int flags = _buffer.get() & 0xFF;
+            if ((flags & BinaryFormat.RESET) != 0) {
+                if (_dictionaries != null)
+                    _symbols = _dictionaries.get( ++_dictionary );
+                else
+                    _symbols.clear();
+            }
+            return readBinaryElement();
+        }
+        // verbatim case
+        return readASE( b );
+    }
+
+    /**
+     * This is a private helper method for readTop(). Decodes a base64 expression
+     * up to the closing brace and parses the verbatim expression inside it.
+     */
+    private ASExpression readBase64() throws InvalidVerbatimStreamException {
+        int start = _buffer.position();
+        while (_buffer.get() != '}')
+            ;
+
+        byte[] encoded = new byte[_buffer.position() - start - 1];
+        ByteBuffer dup = _buffer.duplicate();
+        dup.position( start );
+        dup.get( encoded );
+
+        try {
+            return ASExpression.makeVerbatim( Base64.decode( encoded, 0, encoded.length ) );
+        }
+        catch (RuntimeException e) {
+            throw new InvalidVerbatimStreamException( "invalid base64 expression: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * This is a private helper method for read(). Parses the verbatim
+     * expression whose first byte has already been read.
+     */
+    private ASExpression readASE(byte openchar) throws InvalidVerbatimStreamException {
+        switch (openchar) {
+        case '(':
+            return readList();
+        case '#':
+            return readWildcard();
+        case '%':
+            ASExpression name = readString( _buffer.get() );
+            ASExpression pattern = readASE( _buffer.get() );
+            return new NamedPattern( name.toString(), pattern );
+        }
+
+        if (openchar >= '0' && openchar <= '9')
+            return readString( openchar );
+
+        throw new InvalidVerbatimStreamException( "read: '" + (char) openchar
+                + "' as " + openchar + ": expected to be a number, '(', '#', or '%'." );
+    }
+
+    private ASExpression readWildcard() throws InvalidVerbatimStreamException {
+        switch (_buffer.get()) {
+        case ASEInputStreamReader.ANY:
+            return Wildcard.SINGLETON;
+        case ASEInputStreamReader.STRING:
+            return StringWildcard.SINGLETON;
+        case ASEInputStreamReader.WILDCARD:
+            return WildcardWildcard.SINGLETON;
+        case ASEInputStreamReader.NOTHING:
+            return Nothing.SINGLETON;
+        case ASEInputStreamReader.NOMATCH:
+            return NoMatch.SINGLETON;
+        case ASEInputStreamReader.LIST:
+            return new ListWildcard( readASE( _buffer.get() ) );
+        }
+        throw new InvalidVerbatimStreamException(
+                "# wasn't followed by an acceptable byte" );
+    }
+
+    /**
+     * This is a private helper method for readASE(). Parses the length (whose
+     * first digit has already been read), the colon and the string itself.
+     */
+    private ASExpression readString(byte openchar) throws InvalidVerbatimStreamException {
+        long len = openchar - '0';
+        byte b;
+
+        while ((b = _buffer.get()) != ':') {
+            if (b < '0' || b > '9' || len > Integer.MAX_VALUE)
+                throw new InvalidVerbatimStreamException( "invalid string length" );
+            len = len * 10 + (b - '0');
+        }
+
+        return atom( (int) len );
+    }
+
+    /**
+     * Make a string expression from the next len bytes, interning short
+     * strings and slicing long ones.
+     */
+    private StringExpression atom(int len) throws InvalidVerbatimStreamException {
+        if (len < 0)
+            throw new InvalidVerbatimStreamException( "invalid string length" );
+
+        int start = _buffer.position();
+        if (len > _buffer.limit() - start)
+            throw new BufferUnderflowException();
+
+        if (len <= MAX_INTERNED_LENGTH) {
+            byte[] ba = new byte[len];
+            _buffer.get( ba );
+            return StringExpression.makeString( ba );
+        }
+
+        ByteBuffer dup = _buffer.duplicate();
+        dup.limit( start + len );
+        _buffer.position( start + len );
+        return StringExpression.makeLazy( dup );
+    }
+
+    /**
+     * This is a private helper method for readASE(). Parses a list whose open
+     * paren has already been read, collecting its elements on the shared stack.
+     */
+    private ListExpression readList() throws InvalidVerbatimStreamException {
+        int base = _top;
+        byte b;
+
+        while ((b = _buffer.get()) != ')')
+            push( readASE( b ) );
+
+        ASExpression[] elements = Arrays.copyOfRange( _stack, base, _top );
+        Arrays.fill( _stack, base, _top, null );
+        _top = base;
+
+        return new ListExpression( elements );
+    }
+
+    private void push(ASExpression exp) {
+        if (_top == _stack.length)
+            _stack = Arrays.copyOf( _stack, _stack.length * 2 );
+        _stack[_top++] = exp;
+    }
+
+    /**
+     * This is a private helper method for readTop(). Parses one tagged element
+     * (recursively, for lists) of a binary expression.
+     */
+    private ASExpression readBinaryElement() throws InvalidVerbatimStreamException {
+        int tag = _buffer.get();
+
+        switch (tag) {
+        case BinaryFormat.LITERAL:
+            return atom( readVarint() );
+
+        case BinaryFormat.DEFINE:
+            int len = readVarint();
+            if (len < 0 || len > BinaryFormat.MAX_SYMBOL_LENGTH)
+                throw new InvalidVerbatimStreamException( "invalid symbol length" );
+            byte[] ba = new byte[len];
+            _buffer.get( ba );
+            StringExpression symbol = StringExpression.makeString( ba );
+            if (_dictionaries == null)
+                _symbols.add( symbol );
+            return symbol;
+
+        case BinaryFormat.REFERENCE:
+            int index = readVarint();
+            if (index < 0 || index >= _symbols.size())
+                throw new InvalidVerbatimStreamException( "reference to undefined symbol " + index );
+            return _symbols.get( index );
+
+        case BinaryFormat.LIST:
+            int count = readVarint();
+            if (count < 0)
+                throw new InvalidVerbatimStreamException( "invalid list length" );
+            if (count > _buffer.remaining())
+                throw new BufferUnderflowException();
+            ASExpression[] elements = new ASExpression[count];
+            for (int i = 0; i < count; i++)
+                elements[i] = readBinaryElement();
+            return new ListExpression( elements );
+
+        case BinaryFormat.VERBATIM:
+            int length = readVarint();
+            if (length < 0)
+                throw new InvalidVerbatimStreamException( "invalid pattern length" );
+            if (length == 0)
+                return Nothing.SINGLETON;
+            int end = _buffer.position() + length;
+            if (length > _buffer.remaining())
+                throw new BufferUnderflowException();
+            ASExpression pattern = readASE( _buffer.get() );
+            _buffer.position( end );
+            return pattern;
+        }
+
+        throw new InvalidVerbatimStreamException( "read: " + tag + ": not a binary s-expression tag." );
+    }
+
+    private int readVarint() throws InvalidVerbatimStreamException {
+        long value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = _buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value > Integer.MAX_VALUE)
+                    throw new InvalidVerbatimStreamException( "varint is too large: " + value );
+                return (int) value;
+            }
+        }
+
+        throw new InvalidVerbatimStreamException( "varint is too long" );
+    }
+}
@@ -24,10 +24,12 @@ package sexpression.stream;
 
 import sexpression.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The ASEInputStreamReader parses ASExpressions that have been serialized in
@@ -49,6 +51,9 @@ public class ASEInputStreamReader {
     private InputStream _base64Stream;
     private InputStream _standardStream;
 
+    /** Symbol dictionary for the binary format, built up as binary expressions are read */
+    private final ArrayList<StringExpression> _symbols = new ArrayList<>();
+
     /**
      * @param stream
      *            This is the stream off which ASExpressions are parsed.
@@ -61,7 +66,7 @@ public class ASEInputStreamReader {
     /**
      * Invoke this method to parse one ASExpression off the decorated stream.
      * This method interprets the stream to have ASExpressions in either
-     * verbatim or base64/canonical form delineated by nothing. (In other words,
+     * verbatim, base64/canonical or binary form delineated by nothing. (In other words,
      * s-expressions in the verbatim form should be "back to back" on the stream
      * in order for subsequent calls to read() to give the desired behavior..)
      * 
@@ -87,6 +92,9 @@ public class ASEInputStreamReader {
 
             return readASE( (byte) _stream.read() );
         }
+        // binary case
+        else if (b == BinaryFormat.MARKER)
+            return readBinary();
         // EOF case.
         else if (b == -1)
             return null;
@@ -247,4 +255,68 @@ public class ASEInputStreamReader {
 
         return new ListExpression( list );
     }
+
+    /**
+     * This is a private helper method for read(). This method parses the
+     * remainder of a binary expression, assuming the marker byte has already
+     * been read.
+     * 
+     * @return This method returns the ASExpression that was encoded in binary
+     *         form.
+     */
+    private ASExpression readBinary() throws IOException,
+            InvalidVerbatimStreamException {
+        int flags = _stream.read();
+        if (flags == -1)
+            throw new EOFException( "End of stream" );
+
+        if ((flags & BinaryFormat.RESET) != 0)
+            _symbols.clear();
+
+        return readBinaryElement();
+    }
+
+    /**
+     * This is a private helper method for readBinary(). This method parses one
+     * tagged element (recursively, for lists) of a binary expression.
+     */
+    private ASExpression readBinaryElement() throws IOException,
+            InvalidVerbatimStreamException {
+        int tag = _stream.read();
+
+        switch (tag) {
+        case BinaryFormat.LITERAL:
+            return StringExpression.makeString( BinaryFormat.readFully( _stream, BinaryFormat.readVarint( _stream ) ) );
+
+        case BinaryFormat.DEFINE:
+            StringExpression symbol = StringExpression.makeString( BinaryFormat.readFully( _stream, BinaryFormat.readVarint( _stream ) ) );
+            _symbols.add( symbol );
+            return symbol;
+
+        case BinaryFormat.REFERENCE:
+            int index = BinaryFormat.readVarint( _stream );
+            if (index >= _symbols.size())
+                throw new InvalidVerbatimStreamException( "reference to undefined symbol " + index );
+            return _symbols.get( index );
+
+        case BinaryFormat.LIST:
+            /* Every element takes at least a byte of input, so grow the list as they're read */
+            int count = BinaryFormat.readVarint( _stream );
+            List<ASExpression> elements = new ArrayList<ASExpression>( Math.min( count, BinaryFormat.MAX_PREALLOCATION ) );
+            for (int i = 0; i < count; i++)
+                elements.add( readBinaryElement() );
+            return new ListExpression( elements );
+
+        case BinaryFormat.VERBATIM:
+            byte[] verbatim = BinaryFormat.readFully( _stream, BinaryFormat.readVarint( _stream ) );
+            if (verbatim.length == 0)
+                return Nothing.SINGLETON;
+            return new ASEInputStreamReader( new ByteArrayInputStream( verbatim ) ).read();
+
+        case -1:
+            throw new EOFException( "End of stream" );
+        }
+
+        throw new InvalidVerbatimStreamException( "read: " + tag + ": not a binary s-expression tag." );
+    }
 }
@@ -0,0 +1,532 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.stream;
+
+import sexpression.ASExpression;
+import sexpression.StringExpression;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The ASEParallelReader loads a whole file of back-to-back s-expressions (an
+ * auditorium log, typically) using every core. A window of the file is mapped
+ * and scanned sequentially for the boundaries of its top level expressions,
+ * which is cheap since verbatim strings and binary elements carry their
+ * lengths. The expressions are then grouped into chunks that are parsed on a
+ * fork/join pool, and handed back by read() in their original order while the
+ * next window is loaded.<br>
+ * <br>
+ * Verbatim, base64 and binary expressions (in any mix) are supported. The
+ * binary symbol dictionaries are built during the scan so that chunks can be
+ * parsed independently. As with the other readers, an incomplete expression at
+ * the very end of the file (e.g. from a crash part way through a write) is
+ * treated as the end of the file.
+ */
+public class ASEParallelReader implements Closeable {
+
+    /** How much of the file is mapped, scanned and parsed at once, by default */
+    public static final int WINDOW = 1 << 26;
+
+    /** The smallest chunk worth handing to another thread */
+    private static final int MIN_CHUNK = 1 << 16;
+
+    private final FileChannel _channel;
+    private final long _fileSize;
+    private final int _window;
+    private final ForkJoinPool _pool;
+
+    /** Where in the file the next window starts */
+    private long _offset = 0;
+
+    /** The binary symbol dictionaries of the file so far, one per reset */
+    private final List<List<StringExpression>> _dictionaries = new ArrayList<>();
+
+    /** Expressions parsed from the current window, and the next one to return */
+    private List<ASExpression> _parsed = Collections.emptyList();
+    private int _next = 0;
+
+    /**
+     * @param file
+     *            The file to read.
+     * @param window
+     *            How much of the file to map and parse at once. This bounds
+     *            the memory used by parsed but unread expressions.
+     * @param pool
+     *            The pool to parse on.
+     * @throws IOException
+     *             This method throws if the file cannot be opened.
+     */
+    public ASEParallelReader(File file, int window, ForkJoinPool pool) throws IOException {
+        _channel = new RandomAccessFile( file, "r" ).getChannel();
+        _fileSize = _channel.size();
+        _window = window;
+        _pool = pool;
+
+        _dictionaries.add( new ArrayList<StringExpression>() );
+    }
+
+    /**
+     * @param file
+     *            The file to read, using the common fork/join pool.
+     * @throws IOException
+     *             This method throws if the file cannot be opened.
+     */
+    public ASEParallelReader(File file) throws IOException {
+        this( file, WINDOW, ForkJoinPool.commonPool() );
+    }
+
+    /**
+     * Load every expression in a file.
+     * 
+     * @param file
+     *            The file to read.
+     * @return The expressions in the file, in order.
+     * @throws IOException
+     *             This method throws if the file cannot be read.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if there is invalid data in the file.
+     */
+    public static List<ASExpression> readAll(File file) throws IOException,
+            InvalidVerbatimStreamException {
+        List<ASExpression> all = new ArrayList<>();
+
+        try (ASEParallelReader reader = new ASEParallelReader( file )) {
+            ASExpression exp;
+            while ((exp = reader.read()) != null)
+                all.add( exp );
+        }
+
+        return all;
+    }
+
+    /**
+     * Invoke this method to get the next expression in the file.
+     * 
+     * @return The next expression, or null if the end of the file was reached.
+     * @throws IOException
+     *             This method throws if the file cannot be read.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if there is invalid data in the file.
+     */
+    public ASExpression read() throws IOException,
+            InvalidVerbatimStreamException {
+        while (_next == _parsed.size()) {
+            if (_offset >= _fileSize)
+                return null;
+
+            loadWindow();
+        }
+
+        ASExpression exp = _parsed.get( _next );
+        _parsed.set( _next++, null );
+        return exp;
+    }
+
+    /**
+     * @see java.io.Closeable#close()
+     */
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /**
+     * Map, scan and parse the next window of the file.
+     */
+    private void loadWindow() throws IOException, InvalidVerbatimStreamException {
+        long size = Math.min( _window, _fileSize - _offset );
+
+        while (true) {
+            ByteBuffer buffer = _channel.map( FileChannel.MapMode.READ_ONLY, _offset, size );
+            Scanner scanner = new Scanner( buffer, _dictionaries );
+            List<int[]> chunks = scanner.scan( Math.max( MIN_CHUNK, (int) (size / (_pool.getParallelism() * 4L)) ) );
+
+            boolean atEnd = _offset + size >= _fileSize;
+
+            if (chunks.isEmpty() && !atEnd) {
+                /* A single expression bigger than the window; try again with a bigger one */
+                size = Math.min( 2 * size, _fileSize - _offset );
+                if (size > Integer.MAX_VALUE)
+                    throw new IOException( "Expression at " + _offset + " is too large to map" );
+                continue;
+            }
+
+            _parsed = parse( buffer, chunks );
+            _next = 0;
+
+            /* Anything left at the end of the file is an incomplete expression */
+            _offset = atEnd ? _fileSize : _offset + scanner.end();
+            return;
+        }
+    }
+
+    /**
+     * Parse the chunks of a window in parallel.
+     * 
+     * @param buffer
+     *            The window.
+     * @param chunks
+     *            Each chunk's start, end and the index of the binary
+     *            dictionary in use at its start.
+     * @return Every expression in the window, in order.
+     */
+    private List<ASExpression> parse(ByteBuffer buffer, List<int[]> chunks) throws IOException,
+            InvalidVerbatimStreamException {
+        List<List<ASExpression>> results = new ArrayList<>( Collections.nCopies( chunks.size(), (List<ASExpression>) null ) );
+
+        try {
+            _pool.invoke( new ParseTask( buffer, chunks, results, 0, chunks.size() ) );
+        }
+        catch (ParseException e) {
+            /* The pool may hand back a copy of the exception, so look for the original cause */
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof InvalidVerbatimStreamException)
+                    throw (InvalidVerbatimStreamException) t;
+                if (t instanceof IOException)
+                    throw (IOException) t;
+            }
+            throw e;
+        }
+
+        int total = 0;
+        for (List<ASExpression> result : results)
+            total += result.size();
+
+        List<ASExpression> all = new ArrayList<>( total );
+        for (List<ASExpression> result : results)
+            all.addAll( result );
+
+        return all;
+    }
+
+    /**
+     * Wraps the checked exceptions a chunk can throw so they can get out of
+     * the pool.
+     */
+    private static class ParseException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ParseException(Exception cause) {
+            super( cause );
+        }
+    }
+
+    /**
+     * Parses a range of chunks, splitting it in two until only one is left.
+     */
+    private class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer _buffer;
+        private final List<int[]> _chunks;
+        private final List<List<ASExpression>> _results;
+        private final int _lo, _hi;
+
+        ParseTask(ByteBuffer buffer, List<int[]> chunks, List<List<ASExpression>> results, int lo, int hi) {
+            _buffer = buffer;
+            _chunks = chunks;
+            _results = results;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll( new ParseTask( _buffer, _chunks, _results, _lo, mid ),
+                           new ParseTask( _buffer, _chunks, _results, mid, _hi ) );
+                return;
+            }
+
+            if (_hi == _lo)
+                return;
+
+            int[] chunk = _chunks.get( _lo );
+            ByteBuffer slice = _buffer.duplicate();
+            slice.limit( chunk[1] );
+            slice.position( chunk[0] );
+
+            ASEBufferReader reader = new ASEBufferReader( slice, _dictionaries, chunk[2] );
+            List<ASExpression> result = new ArrayList<>();
+
+            try {
+                ASExpression exp;
+                while ((exp = reader.read()) != null)
+                    result.add( exp );
+            }
+            catch (IOException | InvalidVerbatimStreamException e) {
+                throw new ParseException( e );
+            }
+
+            /* Each task writes its own slot, and invokeAll publishes them */
+            _results.set( _lo, result );
+        }
+    }
+
+    /**
+     * Finds the boundaries of the top level expressions in a window, without
+     * building them, and fills in the binary symbol dictionaries as it goes.
+     */
+    static class Scanner {
+
+        private final ByteBuffer _buffer;
+        private final int _limit;
+        private final List<List<StringExpression>> _dictionaries;
+
+        /** The end of the last complete expression found */
+        private int _end = 0;
+
+        Scanner(ByteBuffer buffer, List<List<StringExpression>> dictionaries) {
+            _buffer = buffer;
+            _limit = buffer.limit();
+            _dictionaries = dictionaries;
+        }
+
+        /**
+         * @return the end of the last complete expression in the window
+         */
+        int end() {
+            return _end;
+        }
+
+        /**
+         * Split the window into chunks of whole expressions of about the
+         * given size.
+         * 
+         * @return each chunk's start, end, and the index of the binary
+         *         dictionary in use at its start.
+         */
+        List<int[]> scan(int chunkSize) throws InvalidVerbatimStreamException {
+            List<int[]> chunks = new ArrayList<>();
+            int start = 0;
+            int dictionary = _dictionaries.size() - 1;
+
+            while (_end < _limit) {
+                int next = skipTop( _end );
+                if (next < 0)
+                    break;
+
+                _end = next;
+
+                if (_end - start >= chunkSize) {
+                    chunks.add( new int[] { start, _end, dictionary } );
+                    start = _end;
+                    dictionary = _dictionaries.size() - 1;
+                }
+            }
+
+            if (_end > start)
+                chunks.add( new int[] { start, _end, dictionary } );
+
+            return chunks;
+        }
+
+        /**
+         * @return the offset just past the top level expression starting at
+         *         pos, or -1 if it runs past the end of the window.
+         */
+        private int skipTop(int pos) throws InvalidVerbatimStreamException {
+            byte b = _buffer.get( pos );
+
+            if (b == '{') {
+                for (int i = pos + 1; i < _limit; i++)
+                    if (_buffer.get( i ) == '}')
+                        return i + 1;
+                return -1;
+            }
+
+            if (b == BinaryFormat.MARKER)
+                return skipBinary( pos + 1 );
+
+            return skipVerbatim( pos );
+        }
+
+        private int skipVerbatim(int pos) throws InvalidVerbatimStreamException {
+            int depth = 0;
+
+            while (true) {
+                if (pos >= _limit)
+                    return -1;
+
+                byte b = _buffer.get( pos++ );
+
+                if (b == '(') {
+                    depth++;
+                    continue;
+                }
+
+                if (b == ')') {
+                    if (--depth < 0)
+                        throw new InvalidVerbatimStreamException( "unbalanced ')' at top level" );
+                }
+                else if (b == '#') {
+                    if (pos >= _limit)
+                        return -1;
+
+                    byte kind = _buffer.get( pos++ );
+
+                    /* A list wildcard is followed by its pattern */
+                    if (kind == ASEInputStreamReader.LIST)
+                        continue;
+                }
+                else if (b == '%') {
+                    /* A named pattern's name is followed by its pattern */
+                    pos = pos < _limit ? skipString( _buffer.get( pos ), pos + 1 ) : -1;
+                    if (pos < 0)
+                        return -1;
+                    continue;
+                }
+                else {
+                    pos = skipString( b, pos );
+                    if (pos < 0)
+                        return -1;
+                }
+
+                if (depth == 0)
+                    return pos;
+            }
+        }
+
+        /**
+         * @return the offset past the verbatim string whose first length digit
+         *         (first) has been read, and pos is just past it
+         */
+        private int skipString(byte first, int pos) throws InvalidVerbatimStreamException {
+            if (first < '0' || first > '9')
+                throw new InvalidVerbatimStreamException( "read: '" + (char) first
+                        + "' as " + first + ": expected to be a number, '(', '#', or '%'." );
+
+            long len = first - '0';
+
+            while (true) {
+                if (pos >= _limit)
+                    return -1;
+
+                byte b = _buffer.get( pos++ );
+                if (b == ':')
+                    break;
+                if (b < '0' || b > '9' || len > Integer.MAX_VALUE)
+                    throw new InvalidVerbatimStreamException( "invalid string length" );
+
+                len = len * 10 + (b - '0');
+            }
+
+            return len > _limit - pos ? -1 : pos + (int) len;
+        }
+
+        private int skipBinary(int pos) throws InvalidVerbatimStreamException {
+            int dictionaries = _dictionaries.size();
+            List<StringExpression> current = _dictionaries.get( dictionaries - 1 );
+            int symbols = current.size();
+
+            int end = skipBinaryElements( pos );
+
+            /* Undo any dictionary changes if the expression is incomplete */
+            if (end < 0) {
+                while (_dictionaries.size() > dictionaries)
+                    _dictionaries.remove( _dictionaries.size() - 1 );
+                while (current.size() > symbols)
+                    current.remove( current.size() - 1 );
+            }
+
+            return end;
+        }
+
+        private int skipBinaryElements(int pos) throws InvalidVerbatimStreamException {
+            if (pos >= _limit)
+                return -1;
+
+            if ((_buffer.get( pos++ ) & BinaryFormat.RESET) != 0)
+                _dictionaries.add( new ArrayList<StringExpression>() );
+
+            List<StringExpression> dictionary = _dictionaries.get( _dictionaries.size() - 1 );
+            long pending = 1;
+
+            while (pending > 0) {
+                if (pos >= _limit)
+                    return -1;
+
+                int tag = _buffer.get( pos++ );
+                pending--;
+
+                long value = 0;
+                for (int shift = 0; ; shift += 7) {
+                    if (pos >= _limit)
+                        return -1;
+                    if (shift > 28)
+                        throw new InvalidVerbatimStreamException( "varint is too long" );
+
+                    int b = _buffer.get( pos++ );
+                    value |= (long) (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0)
+                        break;
+                }
+
+                if (value > Integer.MAX_VALUE)
+                    throw new InvalidVerbatimStreamException( "varint is too large: " + value );
+
+                switch (tag) {
+                case BinaryFormat.LITERAL:
+                case BinaryFormat.VERBATIM:
+                    if (value > _limit - pos)
+                        return -1;
+                    pos += (int) value;
+                    break;
+
+                case BinaryFormat.DEFINE:
+                    if (value > _limit - pos)
+                        return -1;
+                    byte[] bytes = new byte[(int) value];
+                    ByteBuffer dup = _buffer.duplicate();
+                    dup.position( pos );
+                    dup.get( bytes );
+                    dictionary.add( StringExpression.makeString( bytes ) );
+                    pos += (int) value;
+                    break;
+
+                case BinaryFormat.REFERENCE:
+                    break;
+
+                case BinaryFormat.LIST:
+                    pending += value;
+                    break;
+
+                default:
+                    throw new InvalidVerbatimStreamException( "read: " + tag + ": not a binary s-expression tag." );
+                }
+            }
+
+            return pos;
+        }
+    }
+}
@@ -23,10 +23,15 @@
 package sexpression.stream;
 
 import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 
 /**
  * The ASEWriter can take an ASExpressions and serialize them over an output
@@ -40,6 +45,10 @@ public class ASEWriter {
     private OutputStream _stream;
     private OutputStream _base64Stream;
 
+    /** Symbol dictionary for the binary format, shared by every expression written to this stream */
+    private final HashMap<ByteBuffer, Integer> _symbols = new HashMap<>();
+    private boolean _binaryStarted = false;
+
     /**
      * @param out
      *            This is the stream that ASExpressions will get written to.
@@ -90,4 +99,80 @@ public class ASEWriter {
         _stream.write( closebrace );
         _stream.flush();
     }
+
+    /**
+     * Invoke this method to serialize an ASExpression to the decorated output
+     * stream in the compact binary format (see {@link BinaryFormat}). Short
+     * strings are written once per stream and referred to by index afterwards,
+     * so repeated symbols (message types, field and class names) cost a byte
+     * or two each.
+     * 
+     * @param expression
+     *            Write this expression to the stream.
+     * @throws IOException
+     *             This method throws if the wrapped stream throws an
+     *             IOException.
+     */
+    public void writeASEBinary(ASExpression expression) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        buf.write( BinaryFormat.MARKER );
+        buf.write( _binaryStarted ? 0 : BinaryFormat.RESET );
+        _binaryStarted = true;
+
+        writeBinary( expression, buf );
+
+        buf.writeTo( _stream );
+        _stream.flush();
+    }
+
+    /**
+     * This is a private helper method for writeASEBinary(). Writes one element
+     * (recursively, for lists) to buf.
+     */
+    private void writeBinary(ASExpression expression, ByteArrayOutputStream buf) throws IOException {
+        if (expression instanceof StringExpression) {
+            byte[] bytes = ((StringExpression) expression).getBytes();
+
+            if (bytes.length <= BinaryFormat.MAX_SYMBOL_LENGTH) {
+                ByteBuffer key = ByteBuffer.wrap( bytes );
+                Integer index = _symbols.get( key );
+
+                if (index != null) {
+                    buf.write( BinaryFormat.REFERENCE );
+                    BinaryFormat.writeVarint( buf, index );
+                    return;
+                }
+
+                if (_symbols.size() < BinaryFormat.MAX_SYMBOLS) {
+                    _symbols.put( key, _symbols.size() );
+                    buf.write( BinaryFormat.DEFINE );
+                    BinaryFormat.writeVarint( buf, bytes.length );
+                    buf.write( bytes );
+                    return;
+                }
+            }
+
+            buf.write( BinaryFormat.LITERAL );
+            BinaryFormat.writeVarint( buf, bytes.length );
+            buf.write( bytes );
+        }
+        else if (expression instanceof ListExpression) {
+            ListExpression list = (ListExpression) expression;
+
+            buf.write( BinaryFormat.LIST );
+            BinaryFormat.writeVarint( buf, list.size() );
+
+            for (ASExpression ase : list)
+                writeBinary( ase, buf );
+        }
+        else {
+            /* Patterns are rare on the wire, so just embed their verbatim form */
+            byte[] verbatim = expression.toVerbatim();
+
+            buf.write( BinaryFormat.VERBATIM );
+            BinaryFormat.writeVarint( buf, verbatim.length );
+            buf.write( verbatim );
+        }
+    }
 }
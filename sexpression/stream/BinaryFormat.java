@@ -0,0 +1,140 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.stream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Constants and helpers shared by ASEWriter and ASEInputStreamReader for the
+ * compact binary s-expression encoding.<br>
+ * <br>
+ * A binary expression on the stream starts with the {@link #MARKER} byte
+ * (which can never start a verbatim or base64 expression), followed by a flags
+ * byte and then the expression itself. Each element is a tag byte followed by:
+ * <ul>
+ * <li>{@link #LITERAL}: varint length, then that many bytes</li>
+ * <li>{@link #DEFINE}: as LITERAL, and the string is appended to the stream's
+ * symbol dictionary</li>
+ * <li>{@link #REFERENCE}: varint index into the symbol dictionary</li>
+ * <li>{@link #LIST}: varint element count, then the elements</li>
+ * <li>{@link #VERBATIM}: varint length, then the verbatim encoding of a
+ * pattern expression (wildcards, named patterns, nothing)</li>
+ * </ul>
+ * The dictionary lives as long as the stream. A writer sets {@link #RESET} on
+ * the first expression it writes so that a reader of an appended-to file
+ * starts a fresh dictionary at the right place.
+ */
+final class BinaryFormat {
+
+    /** Introduces a binary expression on the stream */
+    static final byte MARKER = '!';
+
+    /** Flag: clear the symbol dictionary before reading this expression */
+    static final int RESET = 0x01;
+
+    static final int LITERAL = 0;
+    static final int DEFINE = 1;
+    static final int REFERENCE = 2;
+    static final int LIST = 3;
+    static final int VERBATIM = 4;
+
+    /** Strings no longer than this are entered into the symbol dictionary */
+    static final int MAX_SYMBOL_LENGTH = 64;
+
+    /** The most symbols a single stream's dictionary will hold */
+    static final int MAX_SYMBOLS = 1 << 16;
+
+    /**
+     * The most bytes (or list elements) allocated ahead of the input that
+     * fills them, so a corrupt length can't allocate more than the input
+     * actually holds
+     */
+    static final int MAX_PREALLOCATION = 1 << 16;
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Write a non-negative int as an unsigned LEB128 varint.
+     */
+    static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write( (value & 0x7F) | 0x80 );
+            value >>>= 7;
+        }
+        out.write( value );
+    }
+
+    /**
+     * Read an unsigned LEB128 varint written by writeVarint.
+     * 
+     * @throws InvalidVerbatimStreamException
+     *             if the varint is longer than 5 bytes, or its value doesn't
+     *             fit in a non-negative int.
+     */
+    static int readVarint(InputStream in) throws IOException,
+            InvalidVerbatimStreamException {
+        long value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b == -1)
+                throw new EOFException( "End of stream" );
+
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value > Integer.MAX_VALUE)
+                    throw new InvalidVerbatimStreamException( "varint is too large: " + value );
+                return (int) value;
+            }
+        }
+
+        throw new InvalidVerbatimStreamException( "varint is too long" );
+    }
+
+    /**
+     * Read exactly len bytes off the stream. The buffer grows as the bytes
+     * arrive, so a corrupt length ends in an EOFException rather than an
+     * allocation the size of the length.
+     */
+    static byte[] readFully(InputStream in, int len) throws IOException {
+        byte[] ba = new byte[Math.min( len, MAX_PREALLOCATION )];
+        int off = 0;
+
+        while (off != len) {
+            if (off == ba.length)
+                ba = Arrays.copyOf( ba, (int) Math.min( len, 2L * ba.length ) );
+
+            int n = in.read( ba, off, ba.length - off );
+            if (n == -1)
+                throw new EOFException( "End of stream" );
+            off += n;
+        }
+
+        return ba;
+    }
+}
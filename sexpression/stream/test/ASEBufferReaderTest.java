@@ -0,0 +1,193 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.stream.test;
+
+import junit.framework.TestCase;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import sexpression.stream.ASEBufferReader;
+import sexpression.stream.ASEWriter;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class tests parsing s-expressions out of buffers and mapped files with
+ * ASEBufferReader.
+ */
+public class ASEBufferReaderTest extends TestCase {
+
+    private static final String LONG = "0123456789012345678901234567890123456789012345678901234567890123456789";
+
+    /**
+     * This method tests the same simple, list and base64 cases as the stream
+     * reader.
+     * 
+     * @throws IOException
+     * @throws InvalidVerbatimStreamException
+     */
+    public void test_verbatim() throws IOException,
+            InvalidVerbatimStreamException {
+        String test = "3:abc(3:abc2:ab)(()(3:abc2:ab))"
+                + "{KDEwOkRlYXIgS3lsZTooNTpzLWV4cCgxOmYxOnQxOncpMTohKCkpKQ==}";
+        ASEBufferReader reader = new ASEBufferReader(
+                ByteBuffer.wrap( test.getBytes( "us-ascii" ) ) );
+
+        assertEquals( "abc", reader.read().toString() );
+        assertEquals( "(abc ab)", reader.read().toString() );
+        assertEquals( "(() (abc ab))", reader.read().toString() );
+        assertEquals( "(Dear Kyle: (s-exp (f t w) ! ()))", reader.read().toString() );
+        assertNull( reader.read() );
+    }
+
+    /**
+     * This method tests that long atoms are lazy slices which still behave
+     * like the interned strings they stand for.
+     * 
+     * @throws IOException
+     * @throws InvalidVerbatimStreamException
+     */
+    public void test_lazyAtoms() throws IOException,
+            InvalidVerbatimStreamException {
+        ASExpression expected = new ListExpression( "short", LONG );
+        ASEBufferReader reader = new ASEBufferReader(
+                ByteBuffer.wrap( expected.toVerbatim() ) );
+
+        ListExpression read = (ListExpression) reader.read();
+
+        assertSame( StringExpression.makeString( "short" ), read.get( 0 ) );
+        assertTrue( ((StringExpression) read.get( 1 )).isLazy() );
+        assertEquals( LONG.length(), read.get( 1 ).size() );
+
+        assertEquals( expected, read );
+        assertTrue( Arrays.equals( expected.toVerbatim(), read.toVerbatim() ) );
+        assertEquals( ListExpression.EMPTY, StringExpression.makeString( LONG ).match( read.get( 1 ) ) );
+        assertEquals( LONG, read.get( 1 ).toString() );
+    }
+
+    /**
+     * This method tests that lazy atoms are Java serialized as their plain
+     * bytes, in the same form older builds wrote, and read back as the
+     * interned strings.
+     * 
+     * @throws Exception
+     */
+    public void test_lazyAtomSerialization() throws Exception {
+        ObjectStreamClass form = ObjectStreamClass.lookup( StringExpression.class );
+
+        assertEquals( -4010330366235334760L, form.getSerialVersionUID() );
+        assertEquals( 1, form.getFields().length );
+        assertEquals( "_bytes", form.getFields()[0].getName() );
+
+        ASEBufferReader reader = new ASEBufferReader(
+                ByteBuffer.wrap( new ListExpression( "short", LONG ).toVerbatim() ) );
+        StringExpression lazy = (StringExpression) ((ListExpression) reader.read()).get( 1 );
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream( bytes )) {
+            out.writeObject( lazy );
+            out.writeObject( StringExpression.EMPTY );
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes.toByteArray() ) )) {
+            assertSame( StringExpression.makeString( LONG ), in.readObject() );
+            assertSame( StringExpression.EMPTY, in.readObject() );
+        }
+    }
+
+    /**
+     * This method tests reading a mapped file with a mix of verbatim and
+     * binary expressions, using a window much smaller than the file so that
+     * expressions straddle mappings.
+     * 
+     * @throws IOException
+     * @throws InvalidVerbatimStreamException
+     */
+    public void test_mappedFile() throws IOException,
+            InvalidVerbatimStreamException {
+        List<ASExpression> expected = new ArrayList<>();
+        File file = File.createTempFile( "asebufferreader", ".log" );
+        file.deleteOnExit();
+
+        try (FileOutputStream out = new FileOutputStream( file )) {
+            ASEWriter writer = new ASEWriter( out );
+
+            for (int i = 0; i < 100; i++) {
+                ASExpression exp = new ListExpression( "signed-message", Integer.toString( i ), LONG + i );
+                expected.add( exp );
+
+                if (i % 2 == 0)
+                    writer.writeASE( exp );
+                else
+                    writer.writeASEBinary( exp );
+            }
+        }
+
+        try (ASEBufferReader reader = ASEBufferReader.map( file, 64 )) {
+            for (ASExpression exp : expected)
+                assertEquals( exp, reader.read() );
+
+            assertNull( reader.read() );
+        }
+
+        try (ASEBufferReader reader = ASEBufferReader.map( file )) {
+            for (ASExpression exp : expected)
+                assertEquals( exp, reader.read() );
+
+            assertNull( reader.read() );
+        }
+    }
+
+    /**
+     * This method tests that corrupt binary expressions, whose lengths or
+     * indices don't fit in an int, are reported as invalid rather than read
+     * as wrapped values or taken for the end of the buffer.
+     * 
+     * @throws IOException
+     */
+    public void test_binaryCorrupt() throws IOException {
+        /* A string length of 2^32 + 5, which wraps to 5 as an int */
+        assertInvalid( new byte[] { '!', 1, 0, (byte) 0x85, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10, 'a', 'b', 'c', 'd', 'e' } );
+
+        /* References to symbols 2^32 - 1, which wraps negative, and 2^32, which wraps to the symbol defined before it */
+        assertInvalid( new byte[] { '!', 1, 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F } );
+        assertInvalid( new byte[] { '!', 1, 3, 2, 1, 1, 'a', 2, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10 } );
+
+        /* A varint of six bytes */
+        assertInvalid( new byte[] { '!', 1, 3, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0 } );
+    }
+
+    private void assertInvalid(byte[] corrupt) throws IOException {
+        try {
+            new ASEBufferReader( ByteBuffer.wrap( corrupt ) ).read();
+            fail( "Read a corrupt binary expression" );
+        }
+        catch (InvalidVerbatimStreamException expected) {
+        }
+    }
+}
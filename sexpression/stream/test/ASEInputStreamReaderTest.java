@@ -23,11 +23,16 @@
 package sexpression.stream.test;
 
 import junit.framework.TestCase;
+import sexpression.ASExpression;
 import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEWriter;
 import sexpression.stream.InvalidVerbatimStreamException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * This class tests the parsing capability included in ASEInputStreamReader.
@@ -107,4 +112,119 @@ public class ASEInputStreamReaderTest extends TestCase {
         assertEquals( "(Dear Kyle: (s-exp (f t w) ! ()))",
             stream.read().toString() );
     }
+
+    /**
+     * This method tests that expressions written in the binary format read
+     * back as the same expressions, with the same verbatim form.
+     * 
+     * @throws IOException
+     * @throws InvalidVerbatimStreamException
+     */
+    public void test_binaryRoundTrip() throws IOException,
+            InvalidVerbatimStreamException {
+        ASExpression[] tests = {
+                ASExpression.make( "abc" ),
+                ASExpression.make( "()" ),
+                ASExpression.make( "(() (abc ab) (signed-message (succeeds abc) ()))" ),
+                ASExpression.make( "(a #string #list:(b #any) %name:#string)" ) };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ASEWriter writer = new ASEWriter( out );
+        for (ASExpression test : tests)
+            writer.writeASEBinary( test );
+
+        ASEInputStreamReader stream = new ASEInputStreamReader(
+                new ByteArrayInputStream( out.toByteArray() ) );
+
+        for (ASExpression test : tests) {
+            ASExpression read = stream.read();
+            assertEquals( test, read );
+            assertTrue( Arrays.equals( test.toVerbatim(), read.toVerbatim() ) );
+        }
+
+        assertNull( stream.read() );
+    }
+
+    /**
+     * This method tests that repeated symbols are only written once per
+     * stream, that binary and verbatim expressions can be mixed on one
+     * stream, and that a second writer appending to the same stream resets
+     * the dictionary.
+     * 
+     * @throws IOException
+     * @throws InvalidVerbatimStreamException
+     */
+    public void test_binaryDictionary() throws IOException,
+            InvalidVerbatimStreamException {
+        ASExpression test = ASExpression.make( "(signed-message (succeeds (ptr abc def)) (signature sha1withrsa xyz))" );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ASEWriter writer = new ASEWriter( out );
+
+        writer.writeASEBinary( test );
+        int first = out.size();
+        writer.writeASEBinary( test );
+        int second = out.size() - first;
+
+        assertTrue( second < first );
+        assertTrue( second < test.toVerbatim().length );
+
+        writer.writeASE( test );
+
+        /* A new writer on the same stream starts its own dictionary */
+        ASEWriter appender = new ASEWriter( out );
+        appender.writeASEBinary( ASExpression.make( "(other symbols)" ) );
+        appender.writeASEBinary( test );
+
+        ASEInputStreamReader stream = new ASEInputStreamReader(
+                new ByteArrayInputStream( out.toByteArray() ) );
+
+        for (int i = 0; i < 3; i++)
+            assertEquals( test, stream.read() );
+
+        assertEquals( "(other symbols)", stream.read().toString() );
+        assertEquals( test, stream.read() );
+        assertNull( stream.read() );
+    }
+
+    /**
+     * This method tests that corrupt binary expressions are rejected: varints
+     * that overflow an int or run too long are invalid, and lengths and
+     * counts larger than the input end the stream rather than being
+     * allocated up front.
+     * 
+     * @throws IOException
+     */
+    public void test_binaryCorrupt() throws IOException {
+        /* A string length of 2^32 - 1, which wraps negative as an int */
+        assertInvalid( new byte[] { '!', 1, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 'a' } );
+
+        /* A varint of six bytes */
+        assertInvalid( new byte[] { '!', 1, 3, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0 } );
+
+        /* A string length and a list count of 2^31 - 1, followed by next to nothing */
+        assertTruncated( new byte[] { '!', 1, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'a', 'b' } );
+        assertTruncated( new byte[] { '!', 1, 3, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 3, 0 } );
+    }
+
+    private void assertInvalid(byte[] corrupt) throws IOException {
+        try {
+            new ASEInputStreamReader( new ByteArrayInputStream( corrupt ) ).read();
+            fail( "Read a corrupt binary expression" );
+        }
+        catch (InvalidVerbatimStreamException expected) {
+        }
+    }
+
+    private void assertTruncated(byte[] corrupt) throws IOException {
+        try {
+            new ASEInputStreamReader( new ByteArrayInputStream( corrupt ) ).read();
+            fail( "Read a corrupt binary expression" );
+        }
+        catch (EOFException expected) {
+        }
+        catch (InvalidVerbatimStreamException e) {
+            fail( "Expected the stream to end, but got " + e );
+        }
+    }
 }
@@ -0,0 +1,136 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.stream.test;
+
+import junit.framework.TestCase;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEParallelReader;
+import sexpression.stream.ASEWriter;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class tests that ASEParallelReader gives back exactly what the
+ * sequential reader does, in the same order.
+ */
+public class ASEParallelReaderTest extends TestCase {
+
+    private static final int MESSAGES = 5000;
+
+    private File file;
+    private List<ASExpression> expected;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        file = File.createTempFile( "aseparallelreader", ".log" );
+        file.deleteOnExit();
+        expected = new ArrayList<>();
+
+        try (OutputStream out = new BufferedOutputStream( new FileOutputStream( file ) )) {
+            ASEWriter writer = new ASEWriter( out );
+
+            for (int i = 0; i < MESSAGES; i++) {
+                /* A new writer (and so a new binary dictionary) every so often, as if the machine restarted */
+                if (i % 1000 == 0)
+                    writer = new ASEWriter( out );
+
+                ASExpression exp = new ListExpression(
+                        ASExpression.make( "signed-message" ),
+                        new ListExpression( "succeeds", "ptr", Integer.toString( i ) ),
+                        ASExpression.make( "(#string #list:(ptr #any) %name:#string)" ),
+                        ListExpression.EMPTY,
+                        new ListExpression( "signature", "0123456789012345678901234567890123456789012345678901234567890123456789" + i ) );
+                expected.add( exp );
+
+                if (i % 3 == 0)
+                    writer.writeASE( exp );
+                else
+                    writer.writeASEBinary( exp );
+            }
+        }
+    }
+
+    /**
+     * This method checks the test file against the sequential reader.
+     */
+    public void test_sequential() throws IOException,
+            InvalidVerbatimStreamException {
+        ASEInputStreamReader reader = new ASEInputStreamReader(
+                new BufferedInputStream( new FileInputStream( file ) ) );
+
+        for (ASExpression exp : expected)
+            assertEquals( exp, reader.read() );
+
+        assertNull( reader.read() );
+    }
+
+    /**
+     * This method reads the whole file, split into many chunks.
+     */
+    public void test_readAll() throws IOException,
+            InvalidVerbatimStreamException {
+        assertEquals( expected, ASEParallelReader.readAll( file ) );
+    }
+
+    /**
+     * This method reads the file through windows much smaller than the file
+     * (and some smaller than one expression) on a small pool.
+     */
+    public void test_smallWindows() throws IOException,
+            InvalidVerbatimStreamException {
+        ForkJoinPool pool = new ForkJoinPool( 2 );
+
+        for (int window : new int[] { 100, 4096, 1 << 20 }) {
+            try (ASEParallelReader reader = new ASEParallelReader( file, window, pool )) {
+                for (ASExpression exp : expected)
+                    assertEquals( exp, reader.read() );
+
+                assertNull( reader.read() );
+            }
+        }
+
+        pool.shutdown();
+    }
+
+    /**
+     * This method checks that an incomplete expression at the end of the file
+     * is treated as the end of the file.
+     */
+    public void test_truncated() throws IOException,
+            InvalidVerbatimStreamException {
+        try (RandomAccessFile raf = new RandomAccessFile( file, "rw" )) {
+            raf.setLength( raf.length() - 10 );
+        }
+
+        List<ASExpression> read = ASEParallelReader.readAll( file );
+
+        assertEquals( expected.subList( 0, MESSAGES - 1 ), read );
+    }
+}
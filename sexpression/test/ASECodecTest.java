@@ -0,0 +1,315 @@
+package sexpression.test;
+
+import crypto.*;
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPrivateKeyShare;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.FixedWidthCodec;
+import junit.framework.TestCase;
+import sexpression.*;
+import supervisor.model.AuthorityManager;
+import supervisor.model.Ballot;
+
+import java.io.DataInputStream;
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Tests that the cached codecs behind ASEConverter produce exactly the output of the original reflective
+ * conversion (with the binary forms off), round-trip encrypted ballots in both forms, and gives a rough idea of
+ * their throughput and of the size and parse time the binary forms save.
+ */
+public class ASECodecTest extends TestCase {
+
+    private static final int ITERATIONS = 200;
+
+    /** Shared across tests, since key generation and encryption dominate the running time */
+    private static Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> encrypted;
+    private static AdderPublicKey PEK;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        if (encrypted != null)
+            return;
+
+        AuthorityManager.SESSION.newSession(1, 1, 3);
+        AuthorityManager.SESSION.generateAuthorityKeySharePair("1");
+        AuthorityManager.SESSION.generateAuthorityPolynomialValues("1");
+
+        DHExponentialElGamalCryptoType cryptoType = new DHExponentialElGamalCryptoType();
+        cryptoType.loadPrivateKeyShares(new AdderPrivateKeyShare[]{AuthorityManager.SESSION.generateRealPrivateKeyShare("1")});
+
+        PEK = AuthorityManager.SESSION.generatePublicEncryptionKey();
+        cryptoType.loadPublicKey(PEK);
+
+        BallotCrypter<ExponentialElGamalCiphertext> crypter = new BallotCrypter<>(cryptoType);
+        encrypted = crypter.encrypt(createPlaintextBallot());
+    }
+
+    public void testCodecsAreCached() {
+        assertSame(ASECodec.forClass(Ballot.class), ASECodec.forClass(Ballot.class));
+        assertSame(ASECodec.symbol("selectionsMap"), ASECodec.symbol("selectionsMap"));
+
+        /* Declared fields first, then those of the direct superclass */
+        List<String> names = new ArrayList<>();
+        for (ASECodec.FieldCodec f : ASECodec.forClass(EncryptedRaceSelection.class).getFields())
+            names.add(f.getName());
+
+        assertEquals(Arrays.asList("selectionsMap", "title", "size"), names);
+    }
+
+    public void testIdenticalWireOutput() {
+        /* With the binary forms off, the output is still exactly the field-by-field encoding older readers know */
+        ASEConverter.setBinaryEncoding(false);
+
+        try {
+            assertTrue(Arrays.equals(reflectiveToASE(encrypted, "object").toVerbatim(),
+                                     ASEConverter.convertToASE(encrypted).toVerbatim()));
+
+            EncryptedRaceSelection<ExponentialElGamalCiphertext> rs = encrypted.getRaceSelections().get(0);
+
+            assertTrue(Arrays.equals(reflectiveToASE(rs, "object").toVerbatim(),
+                                     ASEConverter.convertToASE(rs).toVerbatim()));
+        }
+        finally {
+            ASEConverter.setBinaryEncoding(true);
+        }
+    }
+
+    public void testBinaryEncoding() {
+        assertEquals(ASECodec.Kind.BINARY, ASECodec.forClass(ExponentialElGamalCiphertext.class).getKind());
+
+        ExponentialElGamalCiphertext ciphertext = firstCiphertext();
+        ListExpression exp = ASEConverter.convertToASE(ciphertext);
+
+        /* (object crypto.ExponentialElGamalCiphertext <bytes>) */
+        assertEquals(3, exp.size());
+        assertTrue(exp.get(2) instanceof StringExpression);
+
+        ExponentialElGamalCiphertext copy = ASEConverter.convertFromASE(exp);
+
+        assertTrue(ciphertext.matches(copy));
+        assertEquals(ciphertext.getProof().toString(), copy.getProof().toString());
+        assertTrue(Arrays.equals(ciphertext.toBytes(), copy.toBytes()));
+    }
+
+    public void testUnreducedProofRoundTrip() {
+        /* The proof of a pairwise sum holds sums of challenges and responses that aren't reduced mod q */
+        Iterator<ExponentialElGamalCiphertext> ciphertexts = encrypted.getRaceSelections().get(0).getRaceSelectionsMap().values().iterator();
+        ExponentialElGamalCiphertext sum = ciphertexts.next().operateIndependent(ciphertexts.next(), PEK);
+
+        ExponentialElGamalCiphertext copy = ASEConverter.convertFromASE(ASEConverter.convertToASE(sum));
+
+        assertTrue(sum.matches(copy));
+        assertEquals(sum.getProof().toString(), copy.getProof().toString());
+        assertEquals(sum.verify(0, 2, PEK), copy.verify(0, 2, PEK));
+    }
+
+    public void testUnreducedElementRoundTrip() throws Exception {
+        BigInteger seven = BigInteger.valueOf(7);
+
+        /* subtract leaves 5 - 1 (mod 7) as 5 + 6 = 11 */
+        AdderInteger unreduced = new AdderInteger(5, 7).subtract(new AdderInteger(1, 7));
+        AdderInteger otherModulus = new AdderInteger(3, 11);
+        AdderInteger reduced = new AdderInteger(3, 7);
+
+        assertEquals(BigInteger.valueOf(11), unreduced.bigintValue());
+
+        byte[] bytes = FixedWidthCodec.encode(1, out -> {
+            FixedWidthCodec.write(out, unreduced, seven);
+            FixedWidthCodec.write(out, otherModulus, seven);
+            FixedWidthCodec.write(out, reduced, seven);
+            FixedWidthCodec.writeList(out, Arrays.asList(reduced, unreduced), seven);
+        });
+
+        DataInputStream in = FixedWidthCodec.open(bytes, 1);
+
+        for (AdderInteger expected : Arrays.asList(unreduced, otherModulus, reduced))
+            assertSameInteger(expected, FixedWidthCodec.read(in, seven));
+
+        List<AdderInteger> list = FixedWidthCodec.readList(in, seven);
+
+        assertSameInteger(reduced, list.get(0));
+        assertSameInteger(unreduced, list.get(1));
+
+        FixedWidthCodec.end(in);
+    }
+
+    private static void assertSameInteger(AdderInteger expected, AdderInteger actual) {
+        assertEquals(expected.bigintValue(), actual.bigintValue());
+        assertEquals(expected.getModulus().bigintValue(), actual.getModulus().bigintValue());
+    }
+
+    public void testLegacyExpressionsStillDecode() {
+        /* A ballot written field by field (e.g. by an older machine, or read back from an old log) */
+        ListExpression legacy = reflectiveToASE(encrypted, "object");
+        Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> copy = ASEConverter.convertFromASE(legacy);
+
+        assertNotNull(copy);
+        assertEquals(ASEConverter.convertToASE(encrypted), ASEConverter.convertToASE(copy));
+    }
+
+    public void testBinaryIsSmallerAndFaster() throws Exception {
+        ASEConverter.setBinaryEncoding(false);
+        byte[] legacy;
+
+        try { legacy = ASEConverter.convertToASE(encrypted).toVerbatim(); }
+        finally { ASEConverter.setBinaryEncoding(true); }
+
+        byte[] binary = ASEConverter.convertToASE(encrypted).toVerbatim();
+
+        /* Warm up both paths */
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            ASEConverter.convertFromASE((ListExpression) ASExpression.makeVerbatim(legacy));
+            ASEConverter.convertFromASE((ListExpression) ASExpression.makeVerbatim(binary));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            ASEConverter.convertFromASE((ListExpression) ASExpression.makeVerbatim(legacy));
+        long legacyParse = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            ASEConverter.convertFromASE((ListExpression) ASExpression.makeVerbatim(binary));
+        long binaryParse = System.nanoTime() - start;
+
+        System.out.println("Ballot size (field by field): " + legacy.length + " bytes");
+        System.out.println("Ballot size (binary):         " + binary.length + " bytes");
+        System.out.println("Ballot parse (field by field): " + perSecond(legacyParse) + " ballots/s");
+        System.out.println("Ballot parse (binary):         " + perSecond(binaryParse) + " ballots/s");
+
+        assertTrue(binary.length < legacy.length);
+    }
+
+    private static ExponentialElGamalCiphertext firstCiphertext() {
+        return encrypted.getRaceSelections().get(0).getRaceSelectionsMap().values().iterator().next();
+    }
+
+    public void testBallotRoundTrip() {
+        ListExpression exp = ASEConverter.convertToASE(encrypted);
+        Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> copy = ASEConverter.convertFromASE(exp);
+
+        assertEquals(encrypted.getBid(), copy.getBid());
+        assertEquals(encrypted.getNonce(), copy.getNonce());
+        assertEquals(encrypted.getSize(), copy.getSize());
+        assertEquals(encrypted.getRaceSelections().size(), copy.getRaceSelections().size());
+        assertEquals(exp, ASEConverter.convertToASE(copy));
+    }
+
+    public void testRaceSelectionRoundTrip() {
+        for (EncryptedRaceSelection<ExponentialElGamalCiphertext> rs : encrypted.getRaceSelections()) {
+            ListExpression exp = ASEConverter.convertToASE(rs);
+            EncryptedRaceSelection<ExponentialElGamalCiphertext> copy = ASEConverter.convertFromASE(exp);
+
+            assertEquals(rs.getTitle(), copy.getTitle());
+            assertEquals(rs.getSize(), copy.getSize());
+            assertEquals(rs.getRaceSelectionsMap().keySet(), copy.getRaceSelectionsMap().keySet());
+            assertEquals(exp, ASEConverter.convertToASE(copy));
+        }
+    }
+
+    public void testThroughput() {
+        ListExpression exp = ASEConverter.convertToASE(encrypted);
+
+        /* Warm up both paths */
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            reflectiveToASE(encrypted, "object");
+            ASEConverter.convertFromASE(ASEConverter.convertToASE(encrypted));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            reflectiveToASE(encrypted, "object");
+        long reflective = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            ASEConverter.convertToASE(encrypted);
+        long encode = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            ASEConverter.convertFromASE(exp);
+        long decode = System.nanoTime() - start;
+
+        System.out.println("Ballot encode (reflective): " + perSecond(reflective) + " ballots/s");
+        System.out.println("Ballot encode (codec):      " + perSecond(encode) + " ballots/s");
+        System.out.println("Ballot decode (codec):      " + perSecond(decode) + " ballots/s");
+    }
+
+    private static long perSecond(long nanos) {
+        return ITERATIONS * 1000000000L / Math.max(nanos, 1);
+    }
+
+    /**
+     * The original, uncached reflective encoding, kept here as the reference for the wire format.
+     */
+    private static ListExpression reflectiveToASE(Object obj, String fieldName) {
+        List<ASExpression> expList = new ArrayList<>();
+        expList.add(StringExpression.make(fieldName));
+
+        if (obj == null) {
+            expList.add(StringExpression.make("NULL"));
+            return new ListExpression(expList);
+        }
+
+        expList.add(StringExpression.make(obj.getClass().getName()));
+
+        if (obj instanceof Number || obj instanceof String) {
+            expList.add(StringExpression.makeString(obj.toString()));
+        }
+        else if (obj instanceof ASExpression) {
+            expList.add((ASExpression) obj);
+        }
+        else if (obj instanceof Collection) {
+            for (Object o : ((Collection<?>) obj).toArray())
+                expList.add(reflectiveToASE(o, "object"));
+        }
+        else if (obj instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) obj).entrySet())
+                expList.add(reflectiveToASE(new KeyValuePair<>(e.getKey(), e.getValue()), "object"));
+        }
+        else {
+            Class<?> c = obj.getClass();
+            Field[] fields = Stream.concat(Arrays.stream(c.getDeclaredFields()),
+                                           Arrays.stream(c.getSuperclass().getDeclaredFields())).toArray(Field[]::new);
+
+            for (Field f : fields) {
+                if (Modifier.isStatic(f.getModifiers()))
+                    continue;
+
+                try {
+                    f.setAccessible(true);
+                    expList.add(reflectiveToASE(f.get(obj), f.getName()));
+                }
+                catch (IllegalAccessException e) { throw new RuntimeException(e); }
+            }
+        }
+
+        return new ListExpression(expList);
+    }
+
+    private static Ballot<PlaintextRaceSelection> createPlaintextBallot() {
+        List<PlaintextRaceSelection> raceSelectionList = new ArrayList<>();
+        Map<String, Integer> voteMap = new HashMap<>();
+        Map<String, Integer> voteMap2 = new HashMap<>();
+
+        voteMap.put("Bob", 1);
+        voteMap.put("Jeff", 0);
+        voteMap.put("Jesus", 0);
+
+        voteMap2.put("Angela", 1);
+        voteMap2.put("Jeff", 0);
+        voteMap2.put("Jesus", 0);
+
+        raceSelectionList.add(new PlaintextRaceSelection(voteMap, "Presidential", 1));
+        raceSelectionList.add(new PlaintextRaceSelection(voteMap2, "Secondary", 1));
+
+        return new Ballot<>("123456789", raceSelectionList, "123456789");
+    }
+}
@@ -0,0 +1,119 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.test;
+
+import org.junit.Test;
+import sexpression.*;
+import verifier.value.Expression;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * This is a JUnit test of sexpression.ExpressionArena, and of the arena-backed
+ * verifier.value.Expression built on it.
+ */
+public class ExpressionArenaTest {
+
+    private static ASExpression message(int n) {
+        return ASExpression.make( "(signed-message (cert (signature sig data)) (signature 0 sig" + n + " (succeeds () (voted " + n + ")))))" );
+    }
+
+    @Test
+    public void test_roundTrip() {
+        ExpressionArena arena = new ExpressionArena();
+
+        for (int lcv = 0; lcv < 100; lcv++)
+            assertEquals( lcv, arena.add( message( lcv ) ) );
+
+        assertEquals( 100, arena.size() );
+
+        for (int lcv = 0; lcv < 100; lcv++) {
+            assertEquals( message( lcv ), arena.get( lcv ) );
+            assertEquals( message( lcv ).hashCode(), arena.hashCode( lcv ) );
+            assertEquals( message( lcv ).toVerbatim().length, arena.length( lcv ) );
+            assertTrue( arena.verbatimEquals( lcv, message( lcv ).toVerbatim() ) );
+        }
+    }
+
+    @Test
+    public void test_addVerbatim() {
+        ExpressionArena arena = new ExpressionArena();
+        ASExpression exp = message( 7 );
+
+        int index = arena.addVerbatim( exp.toVerbatim() );
+
+        assertEquals( exp.hashCode(), arena.hashCode( index ) );
+        assertEquals( exp, arena.get( index ) );
+    }
+
+    @Test
+    public void test_pageSpill() {
+        ExpressionArena arena = new ExpressionArena();
+
+        /* Bigger than a page, with small expressions either side */
+        byte[] big = new byte[ExpressionArena.PAGE_SIZE + 17];
+        for (int lcv = 0; lcv < big.length; lcv++)
+            big[lcv] = (byte) lcv;
+
+        ASExpression large = new ListExpression( StringExpression.makeString( "blob" ), StringExpression.makeString( big ) );
+
+        int before = arena.add( message( 1 ) );
+        int index = arena.add( large );
+        int after = arena.add( message( 2 ) );
+
+        assertEquals( message( 1 ), arena.get( before ) );
+        assertEquals( large, arena.get( index ) );
+        assertEquals( message( 2 ), arena.get( after ) );
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void test_badIndex() {
+        new ExpressionArena().get( 0 );
+    }
+
+    @Test
+    public void test_expressionEquality() {
+        ExpressionArena arena = new ExpressionArena();
+        ExpressionArena other = new ExpressionArena();
+
+        Expression a = new Expression( arena, arena.add( message( 3 ) ) );
+        Expression b = new Expression( other, other.add( message( 3 ) ) );
+        Expression c = new Expression( message( 3 ) );
+        Expression d = new Expression( arena, arena.add( message( 4 ) ) );
+
+        assertEquals( a, b );
+        assertEquals( a, c );
+        assertEquals( c, a );
+        assertEquals( a.hashCode(), c.hashCode() );
+        assertFalse( a.equals( d ) );
+        assertEquals( message( 3 ), a.getASE() );
+
+        Set<Expression> set = new HashSet<>();
+        set.add( c );
+        assertTrue( set.contains( a ) );
+        assertFalse( set.contains( d ) );
+    }
+}
@@ -19,7 +19,7 @@
   * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
   * ACCESS OR USE OF THE SOFTWARE.
  */
-
+
 package sexpression.test;
 
 import org.junit.runner.RunWith;
@@ -29,7 +29,8 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
   ByteArrayBufferTest.class,
   PatternTest.class,
-  SerializationTest.class
+  SerializationTest.class,
+  ExpressionArenaTest.class
 })
 public class SExpressionTestSuite {
 
@@ -244,6 +244,7 @@ public class Booth {
             }
 
             public void uploadBallots(BallotUploadEvent ballotUploadEvent) {}
+            public void ballotChunk(BallotChunkEvent ballotChunkEvent) {}
 
             @Override
             public void overrideCommitConfirm(OverrideCommitConfirmEvent e) {
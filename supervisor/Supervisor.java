@@ -24,10 +24,13 @@ package supervisor;
 
 import auditorium.Bugout;
 import supervisor.model.Model;
+import supervisor.model.SupervisorJournal;
 import supervisor.view.View;
 import votebox.AuditoriumParams;
 
 import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * This is the main entry point of the Supervisor. It is the "Controller" of the
@@ -42,10 +45,15 @@ public class Supervisor {
     /**
      * Runs the supervisor. If an argument is given, it will be the serial
      * number, otherwise, it gets set to -1 by default which will force
-     * the constructor to look for a pre-specified serial.
+     * the constructor to look for a pre-specified serial. With -chunked,
+     * the ballots are uploaded to Tap in chunks at the close of polls. With
+     * -recover, the state of the election is recovered from its journal, as
+     * after a crash; otherwise the election starts afresh.
      */
     public static void main(String[] args) {
 		int i = 0;
+		boolean chunkedUpload = false;
+		boolean recover = false;
 
 
 		if (args.length > i && args[i].equals("-q")) {
@@ -53,10 +61,20 @@ public class Supervisor {
 			i++;
 		}
 
+		if (args.length > i && args[i].equals("-chunked")) {
+			chunkedUpload = true;
+			i++;
+		}
+
+		if (args.length > i && args[i].equals("-recover")) {
+			recover = true;
+			i++;
+		}
+
         if (args.length > i)
-            new Supervisor(Integer.parseInt(args[i]));
+            new Supervisor(Integer.parseInt(args[i]), chunkedUpload, recover);
         else
-            new Supervisor(-1);
+            new Supervisor(-1, chunkedUpload, recover);
     }
 
     /** Model for the MVC */
@@ -71,12 +89,16 @@ public class Supervisor {
      * before bugging out.
      *
      * @param serial the serial number used in the Auditorium logs
+     * @param chunkedUpload whether to upload the ballots to Tap in chunks
+     * @param recover whether to recover the election's state from its journal
      */
-    private Supervisor(int serial) {
+    private Supervisor(int serial, boolean chunkedUpload, boolean recover) {
     	if(serial != -1)
     		model = new Model(serial, new AuditoriumParams("supervisor.conf"));
     	else
     		model = new Model(new AuditoriumParams("supervisor.conf"));
+
+        model.setChunkedUpload(chunkedUpload);
     	
         view = new View(model);
         view.setVisible(true);
@@ -88,6 +110,15 @@ public class Supervisor {
                     JOptionPane.QUESTION_MESSAGE);
         model.setKeyword(keyword);
 
+        /* Keep the election's state journaled, recovering it if this supervisor was restarted during the election */
+        File journal = SupervisorJournal.directoryFor(new File(model.getParams().getLogLocation() + ".journal"), keyword);
+
+        try { model.openJournal(journal, recover); }
+        catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Could not open the supervisor's journal: " + e.getMessage(),
+                                          "Journal", JOptionPane.ERROR_MESSAGE);
+        }
+
         view.display();
         model.start();
     }
@@ -224,6 +224,17 @@ public class AuthorityManager {
     }
 
     public AuthorityManager newSession(int safetyThreshold, int decryptionThreshold, int maxAuth) {
+        return newSession(safetyThreshold, decryptionThreshold, maxAuth, AdderInteger.safePrime(512));
+    }
+
+    /**
+     * Starts a new session with keys in the group of the given safe prime, e.g. one of the standard groups of RFC
+     * 3526, which would take a long time to generate afresh at the sizes they come in.
+     *
+     * @param p     a safe prime
+     * @return      this
+     */
+    public AuthorityManager newSession(int safetyThreshold, int decryptionThreshold, int maxAuth, AdderInteger p) {
 
         if (safetyThreshold >= decryptionThreshold && decryptionThreshold > 0 && maxAuth >= safetyThreshold) {
 
@@ -243,7 +254,7 @@ public class AuthorityManager {
             indexMap.clear();
             keyIndex.clear();
 
-            seedKey = AdderPublicKeyShare.makePublicKeyShare(512);
+            seedKey = AdderPublicKeyShare.makePublicKeyShare(p);
 
         } else throw new RuntimeException("Tried to start a new session with bad inputs!");
         
@@ -0,0 +1,123 @@
+package supervisor.model;
+
+import sexpression.ASEConverter;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import votebox.events.*;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Uploads a supervisor's ballots to Tap at the close of polls, in chunks rather than in one message: a
+ * {@link StartUploadEvent} with the upload's manifest, then the ballots of each precinct (cast, then challenged) in
+ * {@link BallotChunkEvent}s of a bounded number of ballots each, then a {@link CompletedUploadEvent} with the number
+ * of chunks and a digest of them. Each chunk is announced (and so signed, logged and sent on) as soon as it is
+ * made, so no message is ever larger than a chunk and Tap can start forwarding ballots while the rest are sent.
+ *
+ * @see Model
+ */
+public class BallotUploader {
+
+    /** The default number of ballots in a chunk */
+    public static final int CHUNK_BALLOTS = 50;
+
+    /** The serial of the supervisor uploading */
+    private final int serial;
+
+    /** The most ballots in a chunk */
+    private final int chunkBallots;
+
+    /** Announces the upload's events */
+    private final Consumer<IAnnounceEvent> announcer;
+
+    /**
+     * @param serial        the serial of the supervisor uploading
+     * @param chunkBallots  the most ballots in a chunk
+     * @param announcer     announces the upload's events (on the auditorium network)
+     */
+    public BallotUploader(int serial, int chunkBallots, Consumer<IAnnounceEvent> announcer) {
+        if (chunkBallots < 1)
+            throw new IllegalArgumentException("A chunk must hold at least one ballot");
+
+        this.serial = serial;
+        this.chunkBallots = chunkBallots;
+        this.announcer = announcer;
+    }
+
+    /**
+     * Uploads the ballots of some precincts, which should have had their polls closed.
+     *
+     * @param precincts     the precincts
+     * @return              the ID of the upload
+     */
+    public String upload(Collection<? extends Precinct<?>> precincts) {
+        String uploadID = serial + "-" + System.currentTimeMillis();
+
+        /* Take each precinct's ballots once, so the manifest and the chunks agree */
+        List<Precinct<?>> uploading = new ArrayList<>(precincts);
+        List<List<? extends Ballot<?>>> cast = new ArrayList<>(), challenged = new ArrayList<>();
+
+        List<ASExpression> manifest = new ArrayList<>();
+        int chunks = 0;
+
+        for (Precinct<?> precinct : uploading) {
+            cast.add(precinct.getCastBallots());
+            challenged.add(precinct.getChallengedBallots());
+
+            int castCount = cast.get(cast.size() - 1).size(), challengedCount = challenged.get(challenged.size() - 1).size();
+
+            manifest.add(new ListExpression(precinct.getPrecinctID(), precinct.getBallotFile(), "" + castCount, "" + challengedCount));
+            chunks += chunks(castCount) + chunks(challengedCount);
+        }
+
+        announcer.accept(new StartUploadEvent(serial, uploadID, chunks, new ListExpression(manifest)));
+
+        MessageDigest digest = BallotChunkEvent.newDigest();
+        int sequence = 0;
+
+        for (int i = 0; i < uploading.size(); i++) {
+            String precinctID = uploading.get(i).getPrecinctID();
+
+            sequence = announce(uploadID, sequence, precinctID, BallotChunkEvent.CAST, cast.get(i), digest);
+            sequence = announce(uploadID, sequence, precinctID, BallotChunkEvent.CHALLENGED, challenged.get(i), digest);
+        }
+
+        announcer.accept(new CompletedUploadEvent(serial, uploadID, sequence, BallotChunkEvent.toHex(digest)));
+
+        return uploadID;
+    }
+
+    /**
+     * Announces a list of ballots in chunks.
+     *
+     * @return  the sequence number of the next chunk
+     */
+    private int announce(String uploadID, int sequence, String precinctID, String kind, List<? extends Ballot<?>> ballots,
+                         MessageDigest digest) {
+
+        for (int from = 0; from < ballots.size(); from += chunkBallots) {
+            List<ASExpression> chunk = new ArrayList<>();
+
+            for (Ballot<?> ballot : ballots.subList(from, Math.min(from + chunkBallots, ballots.size())))
+                chunk.add(ASEConverter.convertToASE(ballot));
+
+            BallotChunkEvent event = new BallotChunkEvent(serial, uploadID, sequence++, precinctID, kind, new ListExpression(chunk));
+
+            event.addTo(digest);
+            announcer.accept(event);
+        }
+
+        return sequence;
+    }
+
+    /**
+     * @return  the number of chunks a number of ballots take
+     */
+    private int chunks(int ballots) {
+        return (ballots + chunkBallots - 1) / chunkBallots;
+    }
+}
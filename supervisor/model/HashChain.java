@@ -1,6 +1,6 @@
 package supervisor.model;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
@@ -15,6 +15,12 @@ import java.util.Random;
  */
 public class HashChain {
 
+    /** The value a link's uniqueness is set to to mark the end of a closed chain */
+    private static final String END = "0000000000";
+
+    /** The hexadecimal digits, for writing hashes */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     /** initial value passed to hash function to act as a previous node in the chain */
     private final String initialLastHash  = "00000000000000000000000000000000";
 
@@ -36,6 +42,19 @@ public class HashChain {
     /** A boolean that is true when the HashChain has been closed */
     private boolean isClosed;
 
+    /** The digest links are hashed with, reused from one to the next */
+    private final MessageDigest digest;
+
+    /** The bytes of a link being hashed, grown as needed */
+    private byte[] linkBytes = new byte[128];
+
+    /**
+     * The end of the prefix of the chain that {@link #isHashChainCompromised} has verified: the last link it reached
+     * by hashing from the start, or null if it hasn't reached any. Verification carries on from here rather than from
+     * the start of the chain.
+     */
+    private String verified;
+
     /**
      * Default constructor.
      */
@@ -54,6 +73,9 @@ public class HashChain {
 
         this.lastHash = lastHash;
         isClosed = false;
+
+        try { digest = MessageDigest.getInstance("SHA-256"); }
+        catch (NoSuchAlgorithmException e) { throw new IllegalStateException("SHA-256 is not available", e); }
     }
 
     /**
@@ -63,7 +85,7 @@ public class HashChain {
      * @param serialNumber      the serial number of the machine
      * @return                  the resulting hash, or null if the hashchain is closed
      */
-    public String hashBallot(int serialNumber){
+    public synchronized String hashBallot(int serialNumber){
         return isClosed ? null : hashBallotWithGenerator(serialNumber, new Random());
     }
 
@@ -75,22 +97,33 @@ public class HashChain {
      * @param r                 a generator for random integers
      * @return                  the resulting hash, or null if the hashchain is closed
      */
-    public String hashBallotWithGenerator(int serialNumber, Random r)
+    public synchronized String hashBallotWithGenerator(int serialNumber, Random r)
     {
-        if(!isClosed) {
+        /* This is a random number to let each hash instance to be unique */
+        return isClosed ? null : hashBallotWithUniqueness(serialNumber, r.nextInt(Integer.MAX_VALUE));
+    }
 
-            /* This is a random number to let each hash instance to be unique */
-            int ballotUniqueness = r.nextInt(Integer.MAX_VALUE);
+    /**
+     * Creates a hash for voting session from a given uniqueness number, so that a chain can be rebuilt link by
+     * link (as from the supervisor's journal), unless the HashChain is closed.
+     *
+     * @param serialNumber      the serial number of the machine
+     * @param ballotUniqueness  the random number that makes this hash unique
+     * @return                  the resulting hash, or null if the hashchain is closed
+     */
+    public synchronized String hashBallotWithUniqueness(int serialNumber, int ballotUniqueness)
+    {
+        if(!isClosed) {
 
-            /* Concatenate formatted version of the serial number, uniqueness number, and the last hash */
-            String elementsToBeHashed = "" + uniquenessFormat.format(ballotUniqueness) + serialFormat.format(serialNumber) + lastHash;
+            String uniqueness = uniquenessFormat.format(ballotUniqueness);
+            String serial = serialFormat.format(serialNumber);
 
-            /* Now hash the concatenated information */
-            String hash = hashWithSHA256(elementsToBeHashed);
+            /* Hash the formatted version of the uniqueness number, serial number, and the last hash */
+            String hash = hashLink(uniqueness, serial, lastHash);
 
             /* put the newly created hash in the necessary lists. */
-            HashToBID.put(lastHash, uniquenessFormat.format(ballotUniqueness));
-            HashToMID.put(lastHash, serialFormat.format(serialNumber));
+            HashToBID.put(lastHash, uniqueness);
+            HashToMID.put(lastHash, serial);
 
             /* Update the last hash */
             lastHash = hash;
@@ -102,71 +135,118 @@ public class HashChain {
     }
 
     /**
-     * A wrapper for the raw SHA256 hashing function provided in the Java libraries
+     * Hashes a link of the chain, "[BID][MID][previousHash]", with the reused digest.
      *
-     * @param toBeHashed        a string to be hashed
-     * @return                  the result of hashing the string with the SHA256 algorithm
+     * @param uniqueness        the link's formatted uniqueness number
+     * @param serial            the link's formatted machine serial
+     * @param previousHash      the hash of the link before it
+     * @return                  the link's hash, in hexadecimal
      */
-    private String hashWithSHA256(String toBeHashed){
+    private String hashLink(String uniqueness, String serial, String previousHash) {
 
-        String hash = "";
-        MessageDigest digest = null;
+        int length = uniqueness.length() + serial.length() + previousHash.length();
 
-        try { digest = MessageDigest.getInstance("SHA-256"); }
-        catch (NoSuchAlgorithmException e) { e.printStackTrace(); }
+        if (length > linkBytes.length)
+            linkBytes = new byte[2 * length];
 
-        try {
+        /* The fields are digits, so their UTF-8 bytes are just their chars */
+        int offset = putASCII(uniqueness, 0);
+        offset = putASCII(serial, offset);
+        offset = putASCII(previousHash, offset);
 
-            /* Hash the bytes of the input string, encoded in UTF-8 */
-            assert(digest != null);
-            digest.update(toBeHashed.getBytes("UTF-8"));
+        /* Anything else (as from a tampered chain) is hashed as the UTF-8 it is */
+        if (offset < 0)
+            return hashWithSHA256(uniqueness + serial + previousHash);
 
-            /* Get the results of the hash */
-            byte[] arrOut = digest.digest();
+        digest.update(linkBytes, 0, offset);
 
-            /* Now convert the hashed value back into a string */
-            StringBuilder sb = new StringBuilder();
+        return toHex(digest.digest());
+    }
 
-            /* TODO Explain why this masks and offsets */
-            for (byte anArrOut : arrOut)
-                sb.append(Integer.toString((anArrOut & 0xff) + 0x100, 16).substring(1));
+    /**
+     * Puts a string of ASCII characters into the link's bytes.
+     *
+     * @return  the offset after it, or -1 if it (or a string before it) isn't ASCII
+     */
+    private int putASCII(String string, int offset) {
+
+        if (offset < 0)
+            return offset;
 
-            hash = sb.toString();
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
 
+            if (c >= 0x80)
+                return -1;
+
+            linkBytes[offset++] = (byte) c;
         }
-        catch (UnsupportedEncodingException e) { e.printStackTrace(); }
 
-        return hash;
+        return offset;
+    }
+
+    /**
+     * A wrapper for the raw SHA256 hashing function provided in the Java libraries
+     *
+     * @param toBeHashed        a string to be hashed
+     * @return                  the result of hashing the string with the SHA256 algorithm
+     */
+    private String hashWithSHA256(String toBeHashed){
+
+        /* Hash the bytes of the input string, encoded in UTF-8 */
+        digest.update(toBeHashed.getBytes(StandardCharsets.UTF_8));
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @param bytes     a hash
+     * @return          the hash in lower-case hexadecimal, two digits a byte
+     */
+    private static String toHex(byte[] bytes) {
+
+        char[] hex = new char[2 * bytes.length];
+
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+
+        return new String(hex);
     }
 
     /**
      * Goes through all of the ballots in the voting session checking that all ballot's hashes
      * are computed from the previous ballot's hash and that ballot's machineID and BID, proving if any
-     * are missing in the chain
+     * are missing in the chain. Links reached by an earlier call aren't hashed again, so a chain checked as it
+     * grows is quick to check once it is closed.
      *
      * @return          true if the hash chain is valid, false if it has been compromised.
      */
-    public boolean isHashChainCompromised(){
+    public synchronized boolean isHashChainCompromised(){
 
-        String previousHash = initialLastHash;
-        String elementsToBeHashed;
+        /* Carry on from the end of the prefix already verified, if there is one */
+        String previousHash = verified == null ? initialLastHash : verified;
 
         /* See if the initialLastHash is in the HashToBID */
         if (!HashToBID.containsKey(previousHash)) {
             return true;
         }
 
+        verified = previousHash;
+
         /* Cycle through the hashes while you're not getting the end string */
-        while (!HashToBID.get(previousHash).equals("0000000000") && !lastHash.equals(previousHash)) {
+        while (!HashToBID.get(previousHash).equals(END) && !lastHash.equals(previousHash)) {
 
             /* From the previous hash construct "[BID][MID][previousHash]" and hash it to get the next previous hash */
-            elementsToBeHashed = HashToBID.get(previousHash) + HashToMID.get(previousHash) + previousHash;
-            previousHash = hashWithSHA256(elementsToBeHashed);
+            previousHash = hashLink(HashToBID.get(previousHash), String.valueOf(HashToMID.get(previousHash)), previousHash);
 
             /* If the hash that was computed was not the expected hash, we have a problem. */
             if(!HashToBID.containsKey(previousHash)) {
                 return true;
             }
+
+            verified = previousHash;
         }
 
         /* If we got to the end, there is no problem */
@@ -178,23 +258,22 @@ public class HashChain {
      *
      * @return      a hash of the String representation of the HashChain
      */
-    public String hashSelf(){
-
-        String toBeHashed = "";
+    public synchronized String hashSelf(){
 
+        /* Hashing the entries one after another is the same as hashing them concatenated */
         for (String entry : HashToBID.keySet())
-            toBeHashed += HashToBID.get(entry) + HashToMID.get(entry) + entry;
+            digest.update((HashToBID.get(entry) + HashToMID.get(entry) + entry).getBytes(StandardCharsets.UTF_8));
 
-        return hashWithSHA256(toBeHashed);
+        return toHex(digest.digest());
     }
 
     /**
      * Adds flag to hash chain signalling end of chain
      */
-    public void closeHashChain(){
+    public synchronized void closeHashChain(){
 
         if(!isClosed) {
-            HashToBID.put(lastHash, "0000000000");
+            HashToBID.put(lastHash, END);
             isClosed = true;
         }
 
@@ -22,6 +22,8 @@
 
 package supervisor.model;
 
+import auditorium.AuditoriumCryptoException;
+import auditorium.Bugout;
 import auditorium.IAuditoriumParams;
 import auditorium.NetworkException;
 import crypto.EncryptedRaceSelection;
@@ -40,6 +42,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * The main model of the Supervisor in the model-view-controller. Contains the status of the machines, and of
@@ -94,13 +98,19 @@ public class Model {
     private final IAuditoriumParams auditoriumParams;
 
     /** A map of all committed ballot ID's to their nonce values */
-    private HashMap<String, ASExpression> committedBids;
+    private Map<String, ASExpression> committedBids;
 
     /** A Map of Precinct IDs to Precincts */
-    private TreeMap<String, Precinct<ExponentialElGamalCiphertext>> precincts;
+    private ConcurrentSkipListMap<String, Precinct<ExponentialElGamalCiphertext>> precincts;
+
+    /** An index of every committed ballot ID to the precinct holding it */
+    private Map<String, Precinct<ExponentialElGamalCiphertext>> precinctsByBID;
+
+    /** An index of ballot style files to the precincts using them */
+    private Map<String, Precinct<ExponentialElGamalCiphertext>> precinctsByBallot;
 
     /** A mapping of committed ballots to the machines that committed them */
-    private HashMap<ASExpression, Integer> machinesToCommits;
+    private Map<ASExpression, Integer> machinesToCommits;
 
     /** Keeps track of the last heard polls open event so that new machines can be updated when they come online */
     private PollsOpenEvent lastPollsOpenHeard;
@@ -110,6 +120,15 @@ public class Model {
     /** An object that maintains a hash chain record of voting */
     private HashChain hashChain;
 
+    /** A generator for the uniqueness of the hash chain's links, drawn here so they can be journaled */
+    private final Random hashUniqueness = new Random();
+
+    /** The journal of the election's state, written to before the state changes, or null if there is none */
+    private SupervisorJournal journal;
+
+    /** Whether the ballots are uploaded to Tap in chunks at the close of polls, rather than in one message */
+    private boolean chunkedUpload;
+
     /**
      * Equivalent to Model(-1, params);
      * 
@@ -148,8 +167,10 @@ public class Model {
         pollsOpenObs = new ObservableEvent();
         keyword = "";
 
-        committedBids = new HashMap<>();
-        precincts = new TreeMap<>();
+        committedBids = new ConcurrentHashMap<>();
+        precincts = new ConcurrentSkipListMap<>();
+        precinctsByBID = new ConcurrentHashMap<>();
+        precinctsByBallot = new ConcurrentHashMap<>();
 
         /* This is the heartbeat timer, it announces a status event every 5 minutes */
         statusTimer = new Timer(300000, new ActionListener() {
@@ -162,7 +183,7 @@ public class Model {
 
         hashChain = new HashChain();
 
-        machinesToCommits = new HashMap<>();
+        machinesToCommits = new ConcurrentHashMap<>();
     }
 
     /**
@@ -593,6 +614,8 @@ public class Model {
      * @param arePollsOpen      the polls' status
      */
     public void setArePollsOpen(boolean arePollsOpen) {
+        journal(() -> journal.polls(arePollsOpen));
+
         this.arePollsOpen = arePollsOpen;
         pollsOpenObs.notifyObservers();
     }
@@ -645,6 +668,7 @@ public class Model {
             public void startUpload(StartUploadEvent startUploadEvent) {}
             public void completedUpload(CompletedUploadEvent completedUploadEvent) {}
             public void uploadBallots(BallotUploadEvent ballotUploadEvent) {}
+            public void ballotChunk(BallotChunkEvent ballotChunkEvent) {}
 
 
             /**
@@ -675,7 +699,7 @@ public class Model {
 
                 if (m != null) {
                     /* If we find the machine, set its label to the label specified */
-                    m.setLabel(e.getLabel());
+                    labelMachine(m, e.getLabel());
 
                     /* reload the machine to update it in the UI */
                     machines.remove(m);
@@ -714,8 +738,13 @@ public class Model {
                 if (m != null && m instanceof SupervisorMachine && e.getSerial() != mySerial) {
 
                     Precinct p = getPrecinctWithBID(e.getBID());
+                    long castAt = System.currentTimeMillis();
 
-                    try { p.castBallot(e.getBID()); }
+                    /* Journal the cast once it has been made */
+                    try {
+                        if (p.castBallot(e.getBID(), castAt) != null)
+                            journal(() -> journal.cast(e.getBID(), castAt));
+                    }
                     catch (NullPointerException ex) { throw new RuntimeException("Couldn't find a precinct for this committed ballot!"); }
                 }
             }
@@ -802,24 +831,21 @@ public class Model {
 //                    booth.setProtectedCount(booth.getProtectedCount() + 1);
 
                     /* Put the committed ballot in the ballot store, in all the proper places */
-                    Precinct<ExponentialElGamalCiphertext> thisPrecinct = precincts.get(e.getPrecinct());
-
                     try {
 
                         ASExpression ballot = ASExpression.makeVerbatim(e.getBallot());
                         System.out.println(ballot + " committed!");
 
-                        thisPrecinct.commitBallot(e.getBID(), ASEConverter.convertFromASE((ListExpression) ballot));
+                        long expiresAt = System.currentTimeMillis() + 1000L * Precinct.COMMIT_SECONDS;
 
-                        machinesToCommits.put(ballot, e.getSerial());
-
-                        committedBids.put(e.getBID(), e.getNonce());
+                        journal(() -> journal.commit(e.getPrecinct(), e.getBID(), e.getNonce(), e.getSerial(), ballot, expiresAt));
+                        commit(e.getPrecinct(), e.getBID(), e.getNonce(), e.getSerial(), ballot, expiresAt);
                     } catch (Exception ex) {
                         throw new RuntimeException(ex);
                     }
 
                     /* Create a hash chain record of this ballot and voting session */
-                    String ballotHash = hashChain.hashBallot(e.getSerial());
+                    String ballotHash = hashBallot(e.getSerial());
                 }
             }
 
@@ -832,6 +858,7 @@ public class Model {
                 setArePollsOpen(false);
 
                 /* Close the hash chain for this polling session */
+                journal(() -> journal.closeChain());
                 hashChain.closeHashChain();
 
 
@@ -843,8 +870,7 @@ public class Model {
 
                 /* TODO there should be a button on the UI or something to upload separately from this pollsClosed event */
 
-                /* Announce that this Supervisor is going to start sending ballots to Tap */
-                auditorium.announce(new StartUploadEvent(mySerial));
+                journal(() -> journal.closePolls());
 
                 /* Go through all the precincts about which this Supervisor knows */
                 for (Map.Entry<String, Precinct<ExponentialElGamalCiphertext>> m : precincts.entrySet()) {
@@ -856,10 +882,20 @@ public class Model {
 
                 }
 
-                auditorium.announce(new BallotUploadEvent(mySerial, precincts));
+                /* Send the ballots to Tap, a chunk at a time if asked to */
+                if (chunkedUpload)
+                    new BallotUploader(mySerial, BallotUploader.CHUNK_BALLOTS, auditorium::announce).upload(precincts.values());
+
+                else {
+                    /* Announce that this Supervisor is going to start sending ballots to Tap */
+                    auditorium.announce(new StartUploadEvent(mySerial));
+
+                    /* The precincts go as the sorted map the server has always been sent */
+                    auditorium.announce(new BallotUploadEvent(mySerial, new TreeMap<>(precincts)));
 
-                /* Announce that this Supervisor has completed sending ballots to Tap */
-                auditorium.announce(new CompletedUploadEvent(mySerial));
+                    /* Announce that this Supervisor has completed sending ballots to Tap */
+                    auditorium.announce(new CompletedUploadEvent(mySerial));
+                }
             }
 
             /**
@@ -909,7 +945,7 @@ public class Model {
                 /* If there isn't one, initialize it */
                 if (m == null) {
                     m = new BallotScannerMachine(e.getSerial());
-                    machines.add(m);
+                    addMachine(m);
                     machinesChangedObs.notifyObservers();
                 }
 
@@ -969,7 +1005,7 @@ public class Model {
 
                 /* If the event has the label, go ahead and set it to that */
                 if (e.getLabel() > 0)
-                    bsm.setLabel(e.getLabel());
+                    labelMachine(bsm, e.getLabel());
 
                 /* If not, check if it's activated and give it a label */
                 else if (isActivated) {
@@ -1016,7 +1052,7 @@ public class Model {
                 /* If the machine hasn't been seen before, add it to the list of machines and initialize it */
                 if (m == null) {
                     m = new SupervisorMachine(e.getSerial(), e.getSerial() == mySerial);
-                    machines.add(m);
+                    addMachine(m);
                     machinesChangedObs.notifyObservers();
                 }
 
@@ -1061,7 +1097,7 @@ public class Model {
                 if (m == null) {
                     m = new VoteBoxBooth(e.getSerial());
                     System.out.println("Vote Box Added: " + m);
-                    machines.add(m);
+                    addMachine(m);
                     machinesChangedObs.notifyObservers();
                 }
 
@@ -1118,7 +1154,7 @@ public class Model {
 
                 /* Set the local machine's label */
                 if (e.getLabel() > 0)
-                    booth.setLabel(e.getLabel());
+                    labelMachine(booth, e.getLabel());
 
                 /* If the machine doesn't have a label, give it one */
                 else {
@@ -1167,23 +1203,20 @@ public class Model {
 //                    booth.setProtectedCount(booth.getProtectedCount() + 1);
 
                     /* Put the committed ballot in the ballot store, in all the proper places */
-                    Precinct<ExponentialElGamalCiphertext> thisPrecinct = precincts.get(e.getPrecinct());
-
                     try {
 
                         ASExpression ballot = ASExpression.makeVerbatim(e.getBallot());
                         System.out.println(ballot + " committed!");
 
-                        thisPrecinct.commitBallot(e.getBID(), ASEConverter.convertFromASE((ListExpression) ballot));
-
-                        machinesToCommits.put(ballot, e.getSerial());
+                        long expiresAt = System.currentTimeMillis() + 1000L * Precinct.COMMIT_SECONDS;
 
-                        committedBids.put(e.getBID(), e.getNonce());
+                        journal(() -> journal.commit(e.getPrecinct(), e.getBID(), e.getNonce(), e.getSerial(), ballot, expiresAt));
+                        commit(e.getPrecinct(), e.getBID(), e.getNonce(), e.getSerial(), ballot, expiresAt);
                     }
                     catch(Exception ex) { throw new RuntimeException(ex); }
 
                     /* Create a hash chain record of this ballot and voting session */
-                    String ballotHash = hashChain.hashBallot(e.getSerial());
+                    String ballotHash = hashBallot(e.getSerial());
 
                     /* Announce that the ballot was received, so it's logged */
                     auditorium.announce(new BallotReceivedEvent(mySerial, e.getSerial(), e.getNonce(), e.getBID(), e.getPrecinct()));
@@ -1244,7 +1277,7 @@ public class Model {
                     TapMachine tap = new TapMachine(tapMachineEvent.getSerial());
                     tap.setOnline(true);
 
-                    machines.add(tap);
+                    addMachine(tap);
                     machinesChangedObs.notifyObservers();
                 }
 
@@ -1286,15 +1319,19 @@ public class Model {
                     /* First move it out of the committed list */
                     ASExpression nonce = committedBids.remove(bid);
 
-                    /* Tell the ballot store to cast the ballot */
-                    Ballot<EncryptedRaceSelection> b = p.castBallot(bid);
+                    /* Tell the ballot store to cast the ballot, and journal the cast once it has been made */
+                    long castAt = System.currentTimeMillis();
+                    Ballot<EncryptedRaceSelection> b = p.castBallot(bid, castAt);
 
                     boolean wasCast = (b!=null);
 
-                    if (wasCast)
+                    if (wasCast) {
+                        journal(() -> journal.cast(bid, castAt));
+
                         auditorium.announce(
                                 new EncryptedCastBallotWithNIZKsEvent(serial, nonce, ASEConverter.convertToASE(b).toVerbatim(),
                                         bid, machinesToCommits.get(ASEConverter.convertToASE(b))));
+                    }
                     else throw new RuntimeException("Found the precinct with the bid, but couldn't cast the ballot...");
 
                     /* Now tell the ballot scanner that this ballot was accepted */
@@ -1336,6 +1373,7 @@ public class Model {
 
                         System.out.println("Getting the precinct ID and the ballot file... ");
                         /* Get the precinct and then ballot style for this PIN */
+                        journal(() -> journal.usePIN(PIN));
                         String PID = pinValidator.usePIN(PIN);
                         String ballotFile = precincts.get(PID).getBallotFile();
 
@@ -1430,6 +1468,16 @@ public class Model {
         statusTimer.restart();
     }
 
+    /**
+     * Has the ballots uploaded to Tap in chunks at the close of polls (see {@link BallotUploader}), rather than as one
+     * message holding every precinct. Tap hands chunked uploads on to the server in the same form either way.
+     *
+     * @param chunkedUpload     whether to upload in chunks
+     */
+    public void setChunkedUpload(boolean chunkedUpload) {
+        this.chunkedUpload = chunkedUpload;
+    }
+
     /**
      * A method for retrieving the parameters of the election
      */
@@ -1453,14 +1501,221 @@ public class Model {
             /* Pare off the precinct information */
             String precinctID = fileName.substring(fileName.length() - 7, fileName.length() - 4);
 
-            Precinct precinct = new Precinct(precinctID, ballotFile.getAbsolutePath());
-
-            precincts.put(precinctID, precinct);
+            journal(() -> journal.precinct(precinctID, ballotFile.getAbsolutePath()));
+            putPrecinct(precinctID, ballotFile.getAbsolutePath());
         }
         /* If we get an exception on the file, show a dialog indicating as much. This is good error handling, methinks */
         catch(NumberFormatException e){ JOptionPane.showMessageDialog(null, "Please choose a valid ballot"); }
     }
 
+    /**
+     * Adds a precinct to the ballot store.
+     *
+     * @param precinctID        the precinct's ID
+     * @param ballotFile        the absolute path of the precinct's ballot
+     */
+    private void putPrecinct(String precinctID, String ballotFile) {
+        Precinct<ExponentialElGamalCiphertext> precinct = new Precinct<>(precinctID, ballotFile);
+
+        /* With NIZKs, verify and tally the ballots as they are cast, so the totals are ready when the polls close */
+        if (auditoriumParams.getEnableNIZKs()) {
+            try { precinct.startRunningTally(auditoriumParams.getKeyStore().loadPEK()); }
+            catch (AuditoriumCryptoException e) { Bugout.err("Could not load the PEK, tallying at the close of polls: " + e.getMessage()); }
+        }
+
+        Precinct<ExponentialElGamalCiphertext> replaced = precincts.put(precinctID, precinct);
+
+        /* Precincts sharing a ballot style are found by the one first in ID order, as a scan of precincts finds it */
+        if (replaced != null && precinctsByBallot.remove(replaced.getBallotFile(), replaced)) {
+            for (Precinct<ExponentialElGamalCiphertext> other : precincts.values()) {
+                if (other.getBallotFile().equals(replaced.getBallotFile())) {
+                    precinctsByBallot.putIfAbsent(other.getBallotFile(), other);
+                    break;
+                }
+            }
+        }
+
+        precinctsByBallot.merge(precinct.getBallotFile(), precinct,
+                                (kept, added) -> kept.getPrecinctID().compareTo(added.getPrecinctID()) <= 0 ? kept : added);
+    }
+
+    /**
+     * Puts a committed ballot in the ballot store, in all the proper places.
+     *
+     * @param precinctID        the ID of the ballot's precinct
+     * @param bid               the ballot's ID
+     * @param nonce             the nonce of the voting session
+     * @param serial            the serial of the machine that committed it
+     * @param ballot            the encrypted ballot
+     * @param expiresAt         when the ballot can no longer be cast, in milliseconds since the epoch
+     */
+    private void commit(String precinctID, String bid, ASExpression nonce, int serial, ASExpression ballot, long expiresAt) {
+        Precinct<ExponentialElGamalCiphertext> thisPrecinct = precincts.get(precinctID);
+
+        thisPrecinct.commitBallot(bid, ASEConverter.convertFromASE((ListExpression) ballot), expiresAt);
+        precinctsByBID.put(bid, thisPrecinct);
+
+        machinesToCommits.put(ballot, serial);
+
+        committedBids.put(bid, nonce);
+    }
+
+    /**
+     * Adds a link to the hash chain for a voting session, journaling it first.
+     *
+     * @param serial            the serial of the machine the session was on
+     * @return                  the link's hash, or null if the chain is closed
+     */
+    private String hashBallot(int serial) {
+        int uniqueness = hashUniqueness.nextInt(Integer.MAX_VALUE);
+
+        journal(() -> journal.hash(serial, uniqueness));
+
+        return hashChain.hashBallotWithUniqueness(serial, uniqueness);
+    }
+
+    /**
+     * Adds a machine that hasn't been seen before, journaling it first.
+     */
+    private void addMachine(AMachine m) {
+        journal(() -> journal.machine(m.getSerial(), machineType(m), m.getLabel()));
+        machines.add(m);
+    }
+
+    /**
+     * Sets a machine's label, journaling it first if it has changed.
+     */
+    private void labelMachine(AMachine m, int label) {
+        if (m.getLabel() != label)
+            journal(() -> journal.machine(m.getSerial(), machineType(m), label));
+
+        m.setLabel(label);
+    }
+
+    /**
+     * @return  the type of a machine, as it is journaled
+     */
+    private static String machineType(AMachine m) {
+        if (m instanceof VoteBoxBooth) return SupervisorJournal.VOTEBOX;
+        if (m instanceof BallotScannerMachine) return SupervisorJournal.SCANNER;
+        if (m instanceof TapMachine) return SupervisorJournal.TAP;
+
+        return SupervisorJournal.SUPERVISOR;
+    }
+
+    /**
+     * Writes a change to the journal, if there is one, before it is made (or, for a cast or challenge, once it has been
+     * made). A journal that can't be written to is reported, but doesn't stop the election.
+     */
+    private void journal(Runnable change) {
+        if (journal == null)
+            return;
+
+        try { change.run(); }
+        catch (UncheckedIOException e) { Bugout.err("Could not journal the supervisor's state: " + e.getMessage()); }
+    }
+
+    /**
+     * Journals every change to the state of the election from here on, first recovering the state from the journal if
+     * asked to. A supervisor restarted in the middle of an election gets back its precincts and their ballots, the
+     * hash chain, the outstanding PINs and the machines (as offline, until they are heard from); one not asked to
+     * recover sets aside any journal already there, and starts afresh. This should be done before it is
+     * {@link #start started}.
+     *
+     * @param directory         the directory holding the election's journal (see
+     *                          {@link SupervisorJournal#directoryFor}), made if it doesn't exist
+     * @param recover           whether to recover the state from the journal there
+     * @return                  the number of journal records replayed
+     * @throws IOException if the journal can't be read, or set aside
+     * @see SupervisorJournal
+     */
+    public int openJournal(File directory, boolean recover) throws IOException {
+        if (!recover) {
+            File archived = SupervisorJournal.archive(directory);
+
+            if (archived != null)
+                Bugout.msg("Set aside the journal of an earlier run in " + archived);
+        }
+
+        SupervisorJournal recovered = new SupervisorJournal(directory);
+
+        int replayed = recovered.recover(new SupervisorJournal.Handler() {
+
+            public void precinct(String precinctID, String ballotFile) {
+                putPrecinct(precinctID, ballotFile);
+            }
+
+            /* A commit is journaled before it is made, so one that then failed may refer to a precinct that isn't here */
+            public void commit(String precinctID, String bid, ASExpression nonce, int serial, ASExpression ballot, long expiresAt) {
+                if (precincts.containsKey(precinctID))
+                    Model.this.commit(precinctID, bid, nonce, serial, ballot, expiresAt);
+            }
+
+            /* A cast is replayed as of when it was made, so it is counted only if it was in time then */
+            public void cast(String bid, long castAt) {
+                committedBids.remove(bid);
+
+                Precinct p = getPrecinctWithBID(bid);
+                if (p != null) p.castBallot(bid, castAt);
+            }
+
+            public void challenge(String bid) {
+                Precinct p = getPrecinctWithBID(bid);
+                if (p != null) p.challengeBallot(bid);
+            }
+
+            public void closePolls() {
+                for (Precinct<ExponentialElGamalCiphertext> p : precincts.values())
+                    p.closePolls();
+            }
+
+            public void polls(boolean open) {
+                arePollsOpen = open;
+            }
+
+            public void hash(int serial, int uniqueness) {
+                hashChain.hashBallotWithUniqueness(serial, uniqueness);
+            }
+
+            public void closeChain() {
+                hashChain.closeHashChain();
+            }
+
+            public void pin(String PIN, String precinctID, long expiresAt) {
+                pinValidator.restorePIN(PIN, precinctID, expiresAt);
+            }
+
+            public void usePIN(String PIN) {
+                pinValidator.usePIN(PIN);
+            }
+
+            public void machine(int serial, String type, int label) {
+                AMachine m = getMachineForSerial(serial);
+
+                if (m == null) {
+                    switch (type) {
+                        case SupervisorJournal.VOTEBOX: m = new VoteBoxBooth(serial); break;
+                        case SupervisorJournal.SCANNER: m = new BallotScannerMachine(serial); break;
+                        case SupervisorJournal.TAP:     m = new TapMachine(serial); break;
+                        default:                        m = new SupervisorMachine(serial, serial == mySerial); break;
+                    }
+
+                    m.setOnline(false);
+                    machines.add(m);
+                }
+
+                m.setLabel(label);
+            }
+        });
+
+        journal = recovered;
+
+        pollsOpenObs.notifyObservers();
+        machinesChangedObs.notifyObservers();
+
+        return replayed;
+    }
+
     /**
      * Will spoil ballot by removing it from the committedBids structure, return true if a bid was removed
      *
@@ -1477,6 +1732,10 @@ public class Model {
             nonce = p.getNonce(bid);
             ballot = p.challengeBallot(bid);
 
+            /* Journal the challenge once it has been made */
+            if (ballot != null)
+                journal(() -> journal.challenge(bid));
+
             /* Announce that a ballot was spoiled */
             auditorium.announce(new SpoilBallotEvent(mySerial, StringExpression.make(nonce), bid, ASEConverter.convertToASE(ballot).toVerbatim()));
 
@@ -1486,31 +1745,19 @@ public class Model {
     }
 
     /**
-     *
-     * @param bid
-     * @return
+     * @param bid       the ID of a committed ballot
+     * @return          the precinct holding the ballot, or null if it was never committed
      */
     private Precinct getPrecinctWithBID(String bid) {
-
-        /* If we have the ballot, return it */
-        for (Map.Entry<String,Precinct<ExponentialElGamalCiphertext>> m : precincts.entrySet())
-            if (m.getValue().hasBID(bid)) return m.getValue();
-
-        return null;
+        return bid == null ? null : precinctsByBID.get(bid);
     }
 
     /**
-     *
-     * @param ballotFile
-     * @return
+     * @param ballotFile    the path of a ballot style file
+     * @return              the precinct using the ballot style, or null if there is none
      */
     private Precinct getPrecinctWithBallot(String ballotFile){
-
-        /* If we have the ballotFile, remove it */
-        for (Map.Entry<String,Precinct<ExponentialElGamalCiphertext>> m : precincts.entrySet())
-            if (m.getValue().getBallotFile().equals(ballotFile)) return m.getValue();
-
-        return null;
+        return ballotFile == null ? null : precinctsByBallot.get(ballotFile);
     }
 
     /**
@@ -1534,7 +1781,12 @@ public class Model {
      * @return                  new 5-digit pin as String
      */
     public String generatePIN(String precinctID){
-        return pinValidator.generatePIN(precinctID);
+        String PIN = pinValidator.generatePIN(precinctID);
+
+        /* The PIN is only drawn here, so it can only be journaled once it exists */
+        journal(() -> journal.pin(PIN, precinctID, pinValidator.getExpiry(PIN)));
+
+        return PIN;
     }
 
     /**
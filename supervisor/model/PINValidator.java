@@ -69,6 +69,28 @@ public class PINValidator {
         return PIN;
     }
 
+    /**
+     * Puts back a PIN generated before the supervisor restarted, as recovered from its journal.
+     *
+     * @param PIN           the PIN
+     * @param precinctID    the precinct it was generated for
+     * @param expiresAt     when it expires, in milliseconds since the epoch
+     */
+    public void restorePIN(String PIN, String precinctID, long expiresAt) {
+        timeStamp.put(PIN, TimeStamp.expiringAt(expiresAt));
+        precinctIDs.put(PIN, precinctID);
+    }
+
+    /**
+     * @param PIN           a PIN that has been generated
+     * @return              when it expires, in milliseconds since the epoch, or -1 if there is no such PIN
+     */
+    public long getExpiry(String PIN) {
+        TimeStamp stamp = timeStamp.get(PIN);
+
+        return stamp == null ? -1 : stamp.getExpiry();
+    }
+
     /**
      * Checks that this PIN is a valid PIN.
      *
@@ -0,0 +1,433 @@
+package supervisor.model;
+
+import crypto.AHomomorphicCiphertext;
+import crypto.BatchVerifier;
+import crypto.EncryptedRaceSelection;
+import crypto.IPublicKey;
+import crypto.adder.Race;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Verifies and homomorphically sums a list of cast ballots on a fork/join pool.
+ *
+ * The ballots are split into partitions of a fixed number of ballots. Each partition is batch verified on its own and
+ * its verified race selections multiplied into a product for each race, without a proof; the products of the
+ * partitions are then multiplied pairwise up a reduction tree. Only at the root is each race's product proven (the
+ * races in parallel), once, as {@link Race#sumRaceSelections()} proves only the total, so the sums are the very ones a
+ * single sequential pass gives. The partitions and the shape of the tree depend only on the number of ballots, never
+ * on the number of threads, and the reports (malformed ballots, the first ballot to fail its proof) come out in ballot
+ * order, so the outcome doesn't depend on the pool either.
+ *
+ * Given a {@link VerificationCache}, ballots it already knows to be verified under the key skip their proofs, and
+ * ballots verified here are added to it.
+ *
+ * @see Precinct#getCastBallotTotal(IPublicKey)
+ */
+public class ParallelTallier<T extends AHomomorphicCiphertext<T>> {
+
+    /** The default number of ballots in a partition */
+    public static final int PARTITION_SIZE = 64;
+
+    /** The public key used for vote proofs */
+    private final IPublicKey PEK;
+
+    /** The pool the partitions are verified and summed on */
+    private final ForkJoinPool pool;
+
+    /** The number of ballots in a partition */
+    private final int partitionSize;
+
+    /** The ballots known to be verified under the key, or null */
+    private final VerificationCache cache;
+
+    /**
+     * The partial (or, at the root, the complete) tally of a run of ballots.
+     */
+    public static class Tally<T extends AHomomorphicCiphertext<T>> {
+
+        /** The unproven product of each race's verified race selections, in order of first appearance, until summed */
+        private final Map<String, EncryptedRaceSelection<T>> products = new LinkedHashMap<>();
+
+        /** The encrypted sum of each race, in order of first appearance */
+        private final Map<String, EncryptedRaceSelection<T>> sums = new LinkedHashMap<>();
+
+        /** The number of race selections multiplied (or summed) for each race */
+        private final Map<String, Integer> counts = new HashMap<>();
+
+        /** The total size of the ballots summed */
+        private int size;
+
+        /** Ballots rejected as malformed before the first failure, in order, with what was wrong with them */
+        private final List<Ballot<EncryptedRaceSelection<T>>> malformed = new ArrayList<>();
+        private final List<Exception> malformedCauses = new ArrayList<>();
+
+        /** The first ballot to fail its proof, and the race selection that failed, or null if none did */
+        private Ballot<EncryptedRaceSelection<T>> failed;
+        private EncryptedRaceSelection<T> failedSelection;
+
+        /**
+         * @return  the encrypted sum of each race, in order of first appearance (meaningless if a ballot failed)
+         */
+        public Map<String, EncryptedRaceSelection<T>> getSums() {
+            return sums;
+        }
+
+        /**
+         * @param raceID    a race
+         * @return          the number of race selections summed for that race
+         */
+        public int getCount(String raceID) {
+            Integer count = counts.get(raceID);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * @return  the total size of the ballots summed
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return  the ballots rejected as malformed (and left out of the sums), in order
+         */
+        public List<Ballot<EncryptedRaceSelection<T>>> getMalformed() {
+            return malformed;
+        }
+
+        /**
+         * @return  what was wrong with each of the malformed ballots
+         */
+        public List<Exception> getMalformedCauses() {
+            return malformedCauses;
+        }
+
+        /**
+         * @return  the first ballot to fail its proof, or null if they all passed
+         */
+        public Ballot<EncryptedRaceSelection<T>> getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return  the race selection of the failed ballot that failed its proof
+         */
+        public EncryptedRaceSelection<T> getFailedSelection() {
+            return failedSelection;
+        }
+
+        /**
+         * Checks this tally against another of the same ballots, e.g. one recomputed from scratch. Proofs are made
+         * afresh for every sum, so the sums are compared by their ciphertexts alone.
+         *
+         * @param other     the other tally
+         * @return          whether the two rejected the same ballots and (unless a ballot failed, when there are no
+         *                  sums) have the same sums, counts and size
+         */
+        public boolean matches(Tally<T> other) {
+            if (failed != other.failed || !malformed.equals(other.malformed))
+                return false;
+
+            if (failed != null)
+                return true;
+
+            if (size != other.size || !counts.equals(other.counts)
+                || !new ArrayList<>(sums.keySet()).equals(new ArrayList<>(other.sums.keySet())))
+                return false;
+
+            for (Map.Entry<String, EncryptedRaceSelection<T>> entry : sums.entrySet())
+                if (!entry.getValue().matches(other.sums.get(entry.getKey())))
+                    return false;
+
+            return true;
+        }
+    }
+
+    /**
+     * @param PEK       the public key used for vote proofs
+     */
+    public ParallelTallier(IPublicKey PEK) {
+        this(PEK, null);
+    }
+
+    /**
+     * @param PEK       the public key used for vote proofs
+     * @param cache     the ballots known to be verified (ignored if null, or for another key)
+     */
+    public ParallelTallier(IPublicKey PEK, VerificationCache cache) {
+        this(PEK, ForkJoinPool.commonPool(), PARTITION_SIZE, cache);
+    }
+
+    /**
+     * @param PEK               the public key used for vote proofs
+     * @param pool              the pool to verify and sum on
+     * @param partitionSize     the number of ballots in a partition
+     */
+    public ParallelTallier(IPublicKey PEK, ForkJoinPool pool, int partitionSize) {
+        this(PEK, pool, partitionSize, null);
+    }
+
+    /**
+     * @param PEK               the public key used for vote proofs
+     * @param pool              the pool to verify and sum on
+     * @param partitionSize     the number of ballots in a partition
+     * @param cache             the ballots known to be verified (ignored if null, or for another key)
+     */
+    public ParallelTallier(IPublicKey PEK, ForkJoinPool pool, int partitionSize, VerificationCache cache) {
+        if (partitionSize < 1)
+            throw new IllegalArgumentException("bad partition size: " + partitionSize);
+
+        this.PEK = PEK;
+        this.pool = pool;
+        this.partitionSize = partitionSize;
+        this.cache = cache != null && cache.isFor(PEK) ? cache : null;
+    }
+
+    /**
+     * Verifies each race selection of each ballot (for a value in [0, 1], as cast ballots hold) and sums them by race.
+     *
+     * @param ballots   the cast ballots
+     * @return          the tally of the ballots
+     */
+    public Tally<T> tally(List<Ballot<EncryptedRaceSelection<T>>> ballots) {
+        List<Ballot<EncryptedRaceSelection<T>>> copy = new ArrayList<>(ballots);
+
+        return pool.invoke(ForkJoinTask.adapt(() -> sum(new TallyTask(copy, 0, copy.size()).invoke())));
+    }
+
+    /**
+     * Verifies a ballot cast after those already in a tally, and adds it in. This is for a tally kept up as the
+     * ballots are cast, starting from an empty one; it is finished with {@link #finish(Tally)}.
+     *
+     * @param tally     the tally of the ballots cast so far (which is used up)
+     * @param ballot    the ballot just cast
+     * @return          the tally with the ballot in it
+     */
+    Tally<T> add(Tally<T> tally, Ballot<EncryptedRaceSelection<T>> ballot) {
+        return combine(tally, tallyPartition(Collections.singletonList(ballot)));
+    }
+
+    /**
+     * Sums the races of a tally kept up with {@link #add(Tally, Ballot)}, which can go on being added to.
+     *
+     * @param tally     the tally of the ballots cast so far
+     * @return          the complete tally of those ballots
+     */
+    Tally<T> finish(Tally<T> tally) {
+        return pool.invoke(ForkJoinTask.adapt(() -> sum(tally)));
+    }
+
+    /**
+     * Tallies the ballots in [lo, hi): directly if that is a single partition, otherwise by splitting it (on a
+     * partition boundary) and combining the tallies of the two halves.
+     */
+    private class TallyTask extends RecursiveTask<Tally<T>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Ballot<EncryptedRaceSelection<T>>> ballots;
+        private final int lo, hi;
+
+        private TallyTask(List<Ballot<EncryptedRaceSelection<T>>> ballots, int lo, int hi) {
+            this.ballots = ballots;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected Tally<T> compute() {
+            int partitions = (hi - lo + partitionSize - 1) / partitionSize;
+
+            if (partitions <= 1)
+                return tallyPartition(ballots.subList(lo, hi));
+
+            int mid = lo + (partitions / 2) * partitionSize;
+
+            TallyTask left = new TallyTask(ballots, lo, mid);
+            left.fork();
+
+            Tally<T> right = new TallyTask(ballots, mid, hi).compute();
+
+            return combine(left.join(), right);
+        }
+    }
+
+    /**
+     * Verifies a single partition, one ballot after another.
+     */
+    private Tally<T> tallyPartition(List<Ballot<EncryptedRaceSelection<T>>> ballots) {
+        Tally<T> tally = new Tally<>();
+
+        /* The verified race selections of each race, in order of first appearance */
+        Map<String, List<EncryptedRaceSelection<T>>> selections = new LinkedHashMap<>();
+
+        /* The ballots' digests, and whether they are already known to be verified */
+        List<String> digests = new ArrayList<>(ballots.size());
+        boolean[] known = new boolean[ballots.size()];
+
+        for (int i = 0; i < ballots.size(); i++) {
+            String digest = digest(ballots.get(i));
+
+            digests.add(digest);
+            known[i] = digest != null && cache.isVerified(digest);
+        }
+
+        /* Check all the vote proofs together first; any the batch can't vouch for are checked one by one below */
+        BatchVerifier<T> verifier = new BatchVerifier<>(PEK);
+
+        for (int i = 0; i < ballots.size(); i++) {
+            Ballot<EncryptedRaceSelection<T>> bal = ballots.get(i);
+
+            if (!known[i] && bal != null && bal.getRaceSelections() != null)
+                for (EncryptedRaceSelection<T> ers : bal.getRaceSelections())
+                    verifier.add(ers, 0, 1);
+        }
+
+        for (int i = 0; i < ballots.size(); i++) {
+            Ballot<EncryptedRaceSelection<T>> bal = ballots.get(i);
+
+            try {
+
+                /* The ballot's selections, added to the tally only once every one of them has passed */
+                List<EncryptedRaceSelection<T>> passed = new ArrayList<>();
+
+                for (EncryptedRaceSelection<T> ers : bal.getRaceSelections()) {
+
+                    /* Confirm that the vote proof is valid, and stop at the first that isn't */
+                    if (!known[i] && !verifier.verify(ers, 0, 1)) {
+                        tally.failed = bal;
+                        tally.failedSelection = ers;
+                        return tally;
+                    }
+
+                    passed.add(ers);
+                }
+
+                int size = bal.getSize();
+
+                for (EncryptedRaceSelection<T> ers : passed) {
+                    List<EncryptedRaceSelection<T>> race = selections.get(ers.getTitle());
+
+                    if (race == null) {
+                        race = new ArrayList<>();
+                        selections.put(ers.getTitle(), race);
+                    }
+
+                    race.add(ers);
+                }
+
+                tally.size += size;
+
+                if (digests.get(i) != null && !known[i])
+                    cache.markVerified(digests.get(i));
+            }
+            catch (Exception e) {
+                tally.malformed.add(bal);
+                tally.malformedCauses.add(e);
+            }
+        }
+
+        for (Map.Entry<String, List<EncryptedRaceSelection<T>>> entry : selections.entrySet()) {
+            List<EncryptedRaceSelection<T>> race = entry.getValue();
+
+            tally.products.put(entry.getKey(), race.get(0).operateUnproven(race.subList(1, race.size()), PEK));
+            tally.counts.put(entry.getKey(), race.size());
+        }
+
+        return tally;
+    }
+
+    /**
+     * @return  the ballot's digest in the cache, or null if there is no cache (or the ballot can't be encoded)
+     */
+    private String digest(Ballot<EncryptedRaceSelection<T>> ballot) {
+        if (cache == null || ballot == null)
+            return null;
+
+        try {
+            return cache.digest(ballot, VerificationCache.CAST);
+        }
+        catch (RuntimeException e) {
+            /* Malformed; it is verified (and reported) as usual */
+            return null;
+        }
+    }
+
+    /**
+     * Combines the tallies of two consecutive runs of ballots, multiplying their products race by race.
+     */
+    private Tally<T> combine(Tally<T> left, Tally<T> right) {
+
+        /* Nothing after the first failure counts */
+        if (left.failed != null)
+            return left;
+
+        Tally<T> tally = new Tally<>();
+
+        tally.malformed.addAll(left.malformed);
+        tally.malformed.addAll(right.malformed);
+        tally.malformedCauses.addAll(left.malformedCauses);
+        tally.malformedCauses.addAll(right.malformedCauses);
+
+        if (right.failed != null) {
+            tally.failed = right.failed;
+            tally.failedSelection = right.failedSelection;
+            return tally;
+        }
+
+        tally.size = left.size + right.size;
+        tally.products.putAll(left.products);
+        tally.counts.putAll(left.counts);
+
+        for (Map.Entry<String, EncryptedRaceSelection<T>> entry : right.products.entrySet()) {
+            EncryptedRaceSelection<T> product = tally.products.get(entry.getKey());
+
+            if (product != null)
+                product = product.operateUnproven(Collections.singletonList(entry.getValue()), PEK);
+            else
+                product = entry.getValue();
+
+            tally.products.put(entry.getKey(), product);
+            tally.counts.put(entry.getKey(), tally.getCount(entry.getKey()) + right.getCount(entry.getKey()));
+        }
+
+        return tally;
+    }
+
+    /**
+     * Sums each race of a tally, the races in parallel, by proving its product, leaving the tally itself as it was.
+     */
+    private Tally<T> sum(Tally<T> tally) {
+        if (tally.failed != null)
+            return tally;
+
+        List<ForkJoinTask<EncryptedRaceSelection<T>>> tasks = new ArrayList<>();
+
+        /* The identity times the product, as Race#sumRaceSelections() sums its selections, with the one proof */
+        for (EncryptedRaceSelection<T> product : tally.products.values()) {
+            EncryptedRaceSelection<T> identity = EncryptedRaceSelection.identity(product, PEK);
+
+            tasks.add(ForkJoinTask.adapt(() -> identity.operate(Collections.singletonList(product), PEK)));
+        }
+
+        ForkJoinTask.invokeAll(tasks);
+
+        Tally<T> summed = new Tally<>();
+
+        summed.size = tally.size;
+        summed.malformed.addAll(tally.malformed);
+        summed.malformedCauses.addAll(tally.malformedCauses);
+
+        int i = 0;
+
+        for (String raceID : tally.products.keySet()) {
+            summed.sums.put(raceID, tasks.get(i++).join());
+            summed.counts.put(raceID, tally.getCount(raceID));
+        }
+
+        return summed;
+    }
+}
@@ -4,31 +4,54 @@ import auditorium.Bugout;
 import crypto.AHomomorphicCiphertext;
 import crypto.EncryptedRaceSelection;
 import crypto.IPublicKey;
-import crypto.adder.Race;
 import sexpression.ASEConverter;
 import sexpression.ASExpression;
 import sexpression.ListExpression;
 import sexpression.StringExpression;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The Precinct class is a data structure to hold encrypted ballots and ballot style and handle manipulation of the ballots.
  *
+ * It is safe to use from several threads at once. A ballot only ever moves from committed to cast or challenged, so
+ * each move holds just the lock of the stripe its BID falls in: ballots with BIDs in different stripes are committed,
+ * cast, challenged and looked up concurrently, and tallies work from a snapshot of the cast ballots.
+ *
+ * It is serialized in the same form as before it was made concurrent (see {@link #serialPersistentFields}), as Tap
+ * sends precincts on to the server Java serialized.
+ *
  * Created by Matthew Kindy II on 6/20/14.
  */
 public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializable {
 
+    private static final long serialVersionUID = -3461923131794836419L;
+
+    /** The fields written when a precinct is serialized, with their original types */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("ballotFile", String.class),
+            new ObjectStreamField("precinctID", String.class),
+            new ObjectStreamField("allBallots", Map.class),
+            new ObjectStreamField("committed", Map.class),
+            new ObjectStreamField("inFlightTimer", Map.class),
+            new ObjectStreamField("cast", List.class),
+            new ObjectStreamField("challenged", List.class)
+    };
+
+    /** The seconds a committed ballot has to be cast in */
+    public static final int COMMIT_SECONDS = 30;
+
+    /** The number of locks the BIDs are spread over */
+    private static final int STRIPES = 32;
+
     /** File path to the ballot style. */
     private String ballotFile;
 
     /** Three digit precinct code. */
-    private final String precinctID;
+    private String precinctID;
 
     /** Map of all the bids to the corresponding ballot. */
     private Map<String,Ballot<EncryptedRaceSelection<T>>> allBallots;
@@ -37,11 +60,20 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
     private Map<String, Ballot<EncryptedRaceSelection<T>>> committed;
     private Map<String, TimeStamp> inFlightTimer;
 
-    /** List of ballots that have been cast, not committed or challenged.*/
+    /** List of ballots that have been cast, not committed or challenged, in the order they were cast. Guarded by itself.*/
     private List<Ballot<EncryptedRaceSelection<T>>> cast;
 
-    /** List of ballots that have been challenged but not cast or committed.*/
-    private List<Ballot<EncryptedRaceSelection<T>>> challenged;
+    /** Map of bids to ballots that have been challenged but not cast or committed, in the order they were challenged.*/
+    private Map<String, Ballot<EncryptedRaceSelection<T>>> challenged;
+
+    /** The locks guarding each ballot's moves, chosen by BID */
+    private transient ReentrantLock[] locks;
+
+    /** The tally of the cast ballots, kept up as they are cast, or null if it is only computed at the end. Guarded by cast. */
+    private transient RunningTally<T> runningTally;
+
+    /** The ballots known to have been verified, shared with whoever else tallies them, or null */
+    private transient VerificationCache verificationCache;
 
     /**
      * @param precinctID    Three digit precinct code
@@ -52,11 +84,72 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
         this.precinctID = precinctID;
         this.ballotFile = ballotFile;
 
-        allBallots      = new HashMap<>();
-        committed       = new HashMap<>();
-        inFlightTimer   = new HashMap<>();
+        allBallots      = new ConcurrentHashMap<>();
+        committed       = new ConcurrentHashMap<>();
+        inFlightTimer   = new ConcurrentHashMap<>();
         cast            = new ArrayList<>();
-        challenged      = new ArrayList<>();
+        challenged      = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        makeLocks();
+    }
+
+    private void makeLocks() {
+        locks = new ReentrantLock[STRIPES];
+
+        for (int i = 0; i < STRIPES; i++)
+            locks[i] = new ReentrantLock();
+    }
+
+    /**
+     * Writes the precinct in its original form: plain maps, and the challenged ballots as a list.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+
+        fields.put("ballotFile", ballotFile);
+        fields.put("precinctID", precinctID);
+        fields.put("allBallots", new HashMap<>(allBallots));
+        fields.put("committed", new HashMap<>(committed));
+        fields.put("inFlightTimer", new HashMap<>(inFlightTimer));
+        fields.put("cast", getCastBallots());
+        fields.put("challenged", getChallengedBallots());
+
+        out.writeFields();
+    }
+
+    /**
+     * Reads a precinct written in its original form, indexing the challenged ballots by BID again.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+
+        ballotFile      = (String) fields.get("ballotFile", null);
+        precinctID      = (String) fields.get("precinctID", null);
+        allBallots      = new ConcurrentHashMap<>((Map<String, Ballot<EncryptedRaceSelection<T>>>) fields.get("allBallots", new HashMap<>()));
+        committed       = new ConcurrentHashMap<>((Map<String, Ballot<EncryptedRaceSelection<T>>>) fields.get("committed", new HashMap<>()));
+        inFlightTimer   = new ConcurrentHashMap<>((Map<String, TimeStamp>) fields.get("inFlightTimer", new HashMap<>()));
+        cast            = new ArrayList<>((List<Ballot<EncryptedRaceSelection<T>>>) fields.get("cast", new ArrayList<>()));
+        challenged      = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        /* The challenged ballots are the very ballots in allBallots, so find their BIDs there */
+        Map<Ballot<EncryptedRaceSelection<T>>, String> bids = new IdentityHashMap<>();
+
+        for (Map.Entry<String, Ballot<EncryptedRaceSelection<T>>> entry : allBallots.entrySet())
+            bids.put(entry.getValue(), entry.getKey());
+
+        for (Ballot<EncryptedRaceSelection<T>> ballot : (List<Ballot<EncryptedRaceSelection<T>>>) fields.get("challenged", new ArrayList<>()))
+            challenged.put(bids.getOrDefault(ballot, ballot.getBid()), ballot);
+
+        makeLocks();
+    }
+
+    /**
+     * @param bid       Ballot Identification Number
+     * @return          the lock guarding the moves of the ballot with this BID
+     */
+    private ReentrantLock lockFor(String bid) {
+        return locks[(bid.hashCode() & Integer.MAX_VALUE) % STRIPES];
     }
 
     /**
@@ -88,17 +181,23 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
      */
     public Ballot<EncryptedRaceSelection<T>> challengeBallot(String bid){
 
-        /* Remove the Ballot from committed */
-        Ballot<EncryptedRaceSelection<T>> toChallenge = committed.remove(bid);
+        ReentrantLock lock = lockFor(bid);
+        lock.lock();
 
-        /* Add the Ballot to challenged */
-        if(toChallenge != null) {
-            challenged.add(toChallenge);
-            inFlightTimer.remove(bid);
-        }
+        try {
+            /* Remove the Ballot from committed */
+            Ballot<EncryptedRaceSelection<T>> toChallenge = committed.remove(bid);
 
-        /* Return the ballot that was challenged */
-        return toChallenge;
+            /* Add the Ballot to challenged */
+            if(toChallenge != null) {
+                challenged.put(bid, toChallenge);
+                inFlightTimer.remove(bid);
+            }
+
+            /* Return the ballot that was challenged */
+            return toChallenge;
+        }
+        finally { lock.unlock(); }
     }
 
     /**
@@ -108,10 +207,27 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
      * @param ballot    Ballot as an ASExpression
      */
     public void commitBallot(String bid, Ballot<EncryptedRaceSelection<T>> ballot){
+        commitBallot(bid, ballot, System.currentTimeMillis() + 1000L*COMMIT_SECONDS);
+    }
 
-        committed.put(bid, ballot);
-        allBallots.put(bid, ballot);
-        inFlightTimer.put(bid, new TimeStamp(30));
+    /**
+     * Commits a new Ballot that has until the given time to be cast, as when a commit is recovered from the journal.
+     *
+     * @param bid       Ballot Identification Number
+     * @param ballot    Ballot as an ASExpression
+     * @param expiresAt when the ballot can no longer be cast, in milliseconds since the epoch
+     */
+    public void commitBallot(String bid, Ballot<EncryptedRaceSelection<T>> ballot, long expiresAt){
+
+        ReentrantLock lock = lockFor(bid);
+        lock.lock();
+
+        try {
+            committed.put(bid, ballot);
+            allBallots.put(bid, ballot);
+            inFlightTimer.put(bid, TimeStamp.expiringAt(expiresAt));
+        }
+        finally { lock.unlock(); }
     }
 
     /**
@@ -120,16 +236,41 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
      *                  cast, false otherwise
      */
     public Ballot<EncryptedRaceSelection<T>> castBallot(String bid){
+        return castBallot(bid, System.currentTimeMillis());
+    }
+
+    /**
+     * Casts a ballot as of the given time, as when a cast is recovered from the journal: it is only counted if it
+     * hadn't expired by then.
+     *
+     * @param bid       Ballot Identification Number
+     * @param castAt    when the ballot was cast, in milliseconds since the epoch
+     * @return          the ballot, if it was committed, whether or not it was cast in time; null otherwise
+     */
+    public Ballot<EncryptedRaceSelection<T>> castBallot(String bid, long castAt){
+
+        ReentrantLock lock = lockFor(bid);
+        lock.lock();
 
-        /* Remove the Ballot from committed */
-        Ballot<EncryptedRaceSelection<T>> toCast = committed.remove(bid);
-        TimeStamp flightTimer = inFlightTimer.remove(bid);
+        try {
+            /* Remove the Ballot from committed */
+            Ballot<EncryptedRaceSelection<T>> toCast = committed.remove(bid);
+            TimeStamp flightTimer = inFlightTimer.remove(bid);
 
-        if(toCast != null && flightTimer != null && flightTimer.isValid())
-            cast.add(toCast);
+            if(toCast != null && flightTimer != null && flightTimer.isValidAt(castAt)) {
+                synchronized (cast) {
+                    cast.add(toCast);
 
-        /* Add it to cast and check */
-        return toCast;
+                    /* Verify and tally it now, in the background, rather than all at once when the polls close */
+                    if (runningTally != null)
+                        runningTally.add(toCast);
+                }
+            }
+
+            /* Add it to cast and check */
+            return toCast;
+        }
+        finally { lock.unlock(); }
     }
 
     /**
@@ -138,64 +279,106 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
     public void closePolls() {
 
         /* Move each ballot in committed to the challenged list */
-        challenged.addAll(committed.values());
-        committed.clear();
+        for (String bid : new ArrayList<>(committed.keySet()))
+            challengeBallot(bid);
+
+        /* No more ballots will be cast, so the running tally can be summed */
+        synchronized (cast) {
+            if (runningTally != null)
+                runningTally.close();
+        }
     }
 
     /**
-     * Sums all Ballots in this precinct and returns the summed (encrypted) Ballot
-     * @return          a Ballot representing the sum total of all of the votes
-     *                  cast in this precinct
+     * Lets the tally skip the proofs of ballots already verified (here, or by a machine whose attestation was
+     * loaded), and record those it verifies.
+     *
+     * @param cache     the ballots known to be verified, or null to verify every ballot
      */
-    public Ballot<EncryptedRaceSelection<T>> getCastBallotTotal(IPublicKey PEK){
+    public void setVerificationCache(VerificationCache cache) {
+        verificationCache = cache;
+    }
 
-        int size=0;
+    /**
+     * Starts keeping the tally of the cast ballots up to date as they are cast, so that the total is ready soon after
+     * the polls close. Any ballots already cast are added first.
+     *
+     * @param PEK       the public key used for vote proofs
+     */
+    public void startRunningTally(IPublicKey PEK) {
+        synchronized (cast) {
+            runningTally = new RunningTally<>(PEK, verificationCache);
 
-        /* The results of the election are stored by race ID in this map */
-        Map<String, Race<T>> results = new HashMap<>();
+            for (Ballot<EncryptedRaceSelection<T>> ballot : cast)
+                runningTally.add(ballot);
+        }
+    }
+
+    /**
+     * Recomputes the tally of the cast ballots from scratch and checks it against the running tally. This can be done
+     * at any time, while the polls are open or after they close.
+     *
+     * @param PEK       the public key used for vote proofs
+     * @return          true if the two agree, or there is no running tally to check
+     */
+    public boolean checkRunningTally(IPublicKey PEK) {
+        List<Ballot<EncryptedRaceSelection<T>>> castNow;
+        RunningTally<T> running;
 
-        /* For each ballot, get each vote and build a results mapping between race ids and elections */
-        for (Ballot<EncryptedRaceSelection<T>> bal : cast) {
+        synchronized (cast) {
+            castNow = new ArrayList<>(cast);
+            running = runningTally;
+        }
 
-            try {
+        if (running == null)
+            return true;
 
-                List<EncryptedRaceSelection<T>> raceSelections = bal.getRaceSelections();
+        ParallelTallier.Tally<T> recomputed = new ParallelTallier<T>(PEK).tally(castNow);
 
-                /* Cycle through each of the races */
-                for(EncryptedRaceSelection<T> ers: raceSelections){
+        return running.getAdded() == castNow.size() && running.current().matches(recomputed);
+    }
 
-                    /* Get all the candidate choices */
-                    String raceID = ers.getTitle();
+    /**
+     * Sums all Ballots in this precinct and returns the summed (encrypted) Ballot
+     * @return          a Ballot representing the sum total of all of the votes
+     *                  cast in this precinct
+     */
+    public Ballot<EncryptedRaceSelection<T>> getCastBallotTotal(IPublicKey PEK){
 
-                    /* Confirm that the vote proof is valid */
-                    if (!ers.verify(0, 1, PEK)) {
-                        Bugout.err("!!!Ballot failed NIZK test!!! " + bal.getSize() + " " + ers.getRaceSelectionsMap());
-                        return null;
-                    }
+        List<Ballot<EncryptedRaceSelection<T>>> castNow;
+        RunningTally<T> running;
 
-                    /* Code these results as a subelection so the ciphers can be summed homomorphically */
-                    Race<T> race = results.get(raceID);
+        synchronized (cast) {
+            castNow = new ArrayList<>(cast);
+            running = runningTally;
+        }
 
-                    /* If we haven't seen this specific race before, initialize it */
-                    if (race == null)
-                        race = new Race<>(PEK, new ArrayList<>(ers.getRaceSelectionsMap().keySet()));
+        /* Use the running tally if there is one for this key, otherwise verify and sum the cast ballots in parallel */
+        ParallelTallier.Tally<T> tally = running != null && running.getPublicKey().equals(PEK) && running.getAdded() == castNow.size()
+                                         ? running.finish()
+                                         : new ParallelTallier<T>(PEK, verificationCache).tally(castNow);
 
-                    /* This will ready race to homomorphically tally the vote */
-                    race.castRaceSelection(ers);
+        /* Report what the tally rejected, in the order the ballots were cast */
+        for (int i = 0; i < tally.getMalformed().size(); i++) {
+            Exception e = tally.getMalformedCauses().get(i);
 
-                    /* Now save the result until we're ready to decrypt the totals */
-                    results.put(raceID, race);
-                }
+            Bugout.err("Malformed ballot received <" + e.getMessage() + ">");
+            Bugout.err("Rejected ballot:\n" + tally.getMalformed().get(i));
+            e.printStackTrace();
+        }
 
-                size += bal.getSize();
-            }
-            catch (Exception e) {
-                Bugout.err("Malformed ballot received <" + e.getMessage() + ">");
-                Bugout.err("Rejected ballot:\n" + bal);
-                e.printStackTrace();
-            }
+        /* Confirm that the vote proofs were valid */
+        if (tally.getFailed() != null) {
+            Bugout.err("!!!Ballot failed NIZK test!!! " + tally.getFailed().getSize() + " " + tally.getFailedSelection().getRaceSelectionsMap());
+            return null;
         }
 
+        /* The results of the election are stored by race ID in this map */
+        Map<String, EncryptedRaceSelection<T>> results = new HashMap<>();
+
+        for (Map.Entry<String, EncryptedRaceSelection<T>> entry : tally.getSums().entrySet())
+            results.put(entry.getKey(), entry.getValue());
+
         /* This will hold the final list of summed Votes to be put into a Ballot */
         ArrayList<EncryptedRaceSelection<T>> votes = new ArrayList<>();
 
@@ -205,15 +388,11 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
         /* Now go through each race */
         for(String id :  results.keySet()) {
 
-            /* Get the race */
-            Race<T> thisRace = results.get(id);
-
             /* Get the homomorphically tallied vote for this race */
-            EncryptedRaceSelection<T> vote = thisRace.sumRaceSelections();
-
+            EncryptedRaceSelection<T> vote = results.get(id);
 
             /* Verify the voteProof and error off if bad */
-            if(vote.verify(0, thisRace.getRaceSelections().size(), PEK)) {
+            if(vote.verify(0, tally.getCount(id), PEK)) {
                 votes.add(vote);
                 voteASE.add(ASEConverter.convertToASE(vote));
             }
@@ -226,7 +405,17 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
         String nonce = StringExpression.makeString(voteList.getSHA256()).toString();
 
         /* Return the Ballot of all the summed race results */
-        return new Ballot<>(precinctID, votes, nonce, size);
+        return new Ballot<>(precinctID, votes, nonce, tally.getSize());
+    }
+
+    /**
+     * @return          the cast ballots, in the order they were cast
+     */
+    public List<Ballot<EncryptedRaceSelection<T>>> getCastBallots(){
+
+        synchronized (cast) {
+            return new ArrayList<>(cast);
+        }
     }
 
     /**
@@ -238,13 +427,10 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
      */
     public List<Ballot<EncryptedRaceSelection<T>>> getChallengedBallots(){
 
-        List<Ballot<EncryptedRaceSelection<T>>> ballotList = new ArrayList<>();
-
         /* Add each challenged ballot to the List */
-        ballotList.addAll(challenged.stream().collect(Collectors.toList()));
-
-        /* Construct a ListExpression from the List and return */
-        return ballotList;
+        synchronized (challenged) {
+            return new ArrayList<>(challenged.values());
+        }
     }
 
     public String getPrecinctID(){
@@ -257,11 +443,8 @@ public class Precinct<T extends AHomomorphicCiphertext<T>> implements Serializab
 
     public Ballot<EncryptedRaceSelection<T>> getChallengedBallot(String bid) {
 
-        if(allBallots.containsKey(bid) && challenged.contains(allBallots.get(bid)))
-            return allBallots.get(bid);
-
-        /* If it's either not a challenged ballot or doesn't exist */
-        else return null;
+        /* Null if it's either not a challenged ballot or doesn't exist */
+        return challenged.get(bid);
     }
 
 }
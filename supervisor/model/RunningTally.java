@@ -0,0 +1,147 @@
+package supervisor.model;
+
+import crypto.AHomomorphicCiphertext;
+import crypto.EncryptedRaceSelection;
+import crypto.IPublicKey;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps the encrypted tally of a precinct up to date as ballots are cast, so that closing the polls only has to finish
+ * it rather than verify every ballot.
+ *
+ * Each ballot {@link #add added} is verified and put in its races on a background thread, one ballot at a time and in
+ * the order they were cast, so the tally is the one {@link ParallelTallier#tally(java.util.List)} would give for the
+ * same ballots. The sums themselves are only made (and proven) when the tally is {@link #close closed}, or looked at
+ * with {@link #current()}, since the proof of a sum is of no use once another ballot is added to it.
+ *
+ * @see Precinct#startRunningTally(IPublicKey)
+ */
+public class RunningTally<T extends AHomomorphicCiphertext<T>> {
+
+    /** The public key used for vote proofs */
+    private final IPublicKey PEK;
+
+    /** Verifies and sums the ballots */
+    private final ParallelTallier<T> tallier;
+
+    /** The thread the ballots are verified on */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "RunningTally");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The tally of the ballots added so far; only touched on the executor's thread */
+    private ParallelTallier.Tally<T> tally = new ParallelTallier.Tally<>();
+
+    /** The number of ballots added */
+    private int added;
+
+    /** The complete tally, once closed */
+    private Future<ParallelTallier.Tally<T>> finished;
+
+    /**
+     * @param PEK   the public key used for vote proofs
+     */
+    public RunningTally(IPublicKey PEK) {
+        this(PEK, null);
+    }
+
+    /**
+     * @param PEK       the public key used for vote proofs
+     * @param cache     the ballots known to be verified, or null
+     */
+    public RunningTally(IPublicKey PEK, VerificationCache cache) {
+        this.PEK = PEK;
+        this.tallier = new ParallelTallier<>(PEK, cache);
+    }
+
+    /**
+     * @return  the public key used for vote proofs
+     */
+    public IPublicKey getPublicKey() {
+        return PEK;
+    }
+
+    /**
+     * @return  the number of ballots added
+     */
+    public synchronized int getAdded() {
+        return added;
+    }
+
+    /**
+     * Queues a newly cast ballot to be verified and added to the tally.
+     *
+     * @param ballot    the ballot
+     */
+    public synchronized void add(Ballot<EncryptedRaceSelection<T>> ballot) {
+        if (finished != null)
+            throw new IllegalStateException("Ballot cast after the tally was closed");
+
+        added++;
+        executor.execute(() -> tally = tallier.add(tally, ballot));
+    }
+
+    /**
+     * Stops taking ballots, and starts summing the races once the ballots already added are verified.
+     */
+    public synchronized void close() {
+        if (finished != null)
+            return;
+
+        finished = executor.submit(() -> tallier.finish(tally));
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for the ballots added so far to be verified, and sums them, without closing the tally.
+     *
+     * @return  the complete tally of the ballots added so far
+     */
+    public ParallelTallier.Tally<T> current() {
+        Future<ParallelTallier.Tally<T>> result;
+
+        synchronized (this) {
+            result = finished != null ? finished : executor.submit(() -> tallier.finish(tally));
+        }
+
+        return await(result);
+    }
+
+    /**
+     * Closes the tally if it isn't already, and waits for it to be complete.
+     *
+     * @return  the complete tally
+     */
+    public ParallelTallier.Tally<T> finish() {
+        Future<ParallelTallier.Tally<T>> result;
+
+        synchronized (this) {
+            close();
+            result = finished;
+        }
+
+        return await(result);
+    }
+
+    /**
+     * @return  the tally, once it has been computed
+     */
+    private ParallelTallier.Tally<T> await(Future<ParallelTallier.Tally<T>> result) {
+        try {
+            return result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while finishing the tally", e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Could not finish the tally", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package supervisor.model;
+
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEWriter;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A write-ahead journal of the supervisor's state: the precincts and their ballots, the hash chain, the outstanding
+ * PINs and the machines. Each change is appended to the journal (and synced) before it is made, as an s-expression
+ * record, except casts and challenges, which may be turned down and so are recorded once they have been made. A commit
+ * records when its ballot expires and a cast when it was made, so a replayed cast has the outcome it had. From time to
+ * time the journal is compacted into a snapshot of the state as it stands, written as the fewest records that rebuild
+ * it, and a new journal is started; so a restarted supervisor {@link #recover recovers} by replaying the snapshot and
+ * the journal written since, rather than the whole day's auditorium log.
+ *
+ * The records are
+ * <pre>
+ * (precinct [id] [ballot-file])
+ * (commit [precinct] [bid] [nonce] [serial] [ballot] [expires-at])
+ * (cast [bid] [cast-at])
+ * (challenge [bid])
+ * (close-polls)
+ * (polls open|closed)
+ * (hash [serial] [uniqueness])
+ * (close-chain)
+ * (pin [pin] [precinct] [expires-at])
+ * (use-pin [pin])
+ * (machine [serial] [type] [label])
+ * </pre>
+ *
+ * A snapshot starts with (snapshot [generation]), the generation of the journal that follows it. Everything in
+ * earlier journals is in the snapshot, so a crash while compacting replays either the old snapshot and journal or
+ * the new ones, never both. A record cut short by a crash is dropped when the journal is recovered.
+ *
+ * @see Model
+ */
+public class SupervisorJournal implements Closeable {
+
+    /** The machine types in machine records */
+    public static final String VOTEBOX = "votebox", SUPERVISOR = "supervisor", SCANNER = "scanner", TAP = "tap";
+
+    /** The fewest records written to a journal before it is compacted */
+    private static final int MIN_TAIL = 1000;
+
+    /** Receives the records of a journal being recovered, in the order they were written */
+    public interface Handler {
+        void precinct(String precinctID, String ballotFile);
+        void commit(String precinctID, String bid, ASExpression nonce, int serial, ASExpression ballot, long expiresAt);
+        void cast(String bid, long castAt);
+        void challenge(String bid);
+        void closePolls();
+        void polls(boolean open);
+        void hash(int serial, int uniqueness);
+        void closeChain();
+        void pin(String PIN, String precinctID, long expiresAt);
+        void usePIN(String PIN);
+        void machine(int serial, String type, int label);
+    }
+
+    /** The directory holding the snapshot and journal */
+    private final File directory;
+
+    /** The current journal's generation, and the records written to it */
+    private int generation;
+    private int tail;
+
+    /** The current journal, open for appending, or null until recovered (and once closed) */
+    private FileOutputStream out;
+    private ASEWriter writer;
+
+    /* The state as it stands, as the records that rebuild it */
+
+    /** The precincts, by ID */
+    private final Map<String, ASExpression> precincts = new LinkedHashMap<>();
+
+    /** The commits, casts and challenges of the ballots, in the order they happened */
+    private final List<ASExpression> ballots = new ArrayList<>();
+
+    /** The links of the hash chain, in order */
+    private final List<ASExpression> links = new ArrayList<>();
+
+    /** The outstanding PINs, by PIN */
+    private final Map<String, ASExpression> pins = new LinkedHashMap<>();
+
+    /** The machines, by serial */
+    private final Map<Integer, ASExpression> machines = new TreeMap<>();
+
+    /** The latest polls-open record, and whether the polls and the chain have been closed */
+    private ASExpression polls;
+    private boolean pollsClosed, chainClosed;
+
+    /**
+     * @param directory     the directory to keep the journal in, made if it doesn't exist
+     * @throws IOException if it can't be made
+     */
+    public SupervisorJournal(File directory) throws IOException {
+        this.directory = directory;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not make the journal directory " + directory);
+    }
+
+    /**
+     * @param base          where the supervisor keeps its journals, as [base]-[election]
+     * @param launchCode    the election's launch code
+     * @return              the directory of the election's journal, named by a digest of the launch code, so that each
+     *                      election has its own journal (and the code itself isn't written to disk)
+     */
+    public static File directoryFor(File base, String launchCode) {
+        MessageDigest digest;
+
+        try { digest = MessageDigest.getInstance("SHA-256"); }
+        catch (NoSuchAlgorithmException e) { throw new IllegalStateException("SHA-256 is not available", e); }
+
+        byte[] hash = digest.digest(launchCode.getBytes(StandardCharsets.UTF_8));
+
+        return new File(base.getPath() + "-" + String.format("%016x", new BigInteger(1, Arrays.copyOf(hash, 8))));
+    }
+
+    /**
+     * Sets aside a journal left from an earlier run, as [directory].[time], so that a supervisor not asked to recover
+     * starts its election afresh without losing the journal.
+     *
+     * @param directory     the directory of the journal
+     * @return              the directory it was moved to, or null if there was no journal
+     * @throws IOException if it can't be moved
+     */
+    public static File archive(File directory) throws IOException {
+        String[] files = directory.list();
+
+        if (files == null || files.length == 0)
+            return null;
+
+        File archived = new File(directory.getPath() + "." + System.currentTimeMillis());
+        Files.move(directory.toPath(), archived.toPath());
+
+        return archived;
+    }
+
+    /**
+     * Replays the snapshot and the journal since it, then opens the journal to write to. This must be done (even
+     * into an empty directory) before anything is written.
+     *
+     * @param handler   receives the records
+     * @return          the number of records replayed
+     * @throws IOException if the snapshot or journal can't be read
+     */
+    public synchronized int recover(Handler handler) throws IOException {
+        int replayed = 0;
+
+        File snapshot = snapshotFile();
+
+        if (snapshot.exists()) {
+            List<ListExpression> records = read(snapshot, false);
+
+            if (records.isEmpty() || !records.get(0).get(0).toString().equals("snapshot"))
+                throw new IOException("Not a journal snapshot: " + snapshot);
+
+            generation = Integer.parseInt(records.get(0).get(1).toString());
+
+            for (ListExpression record : records.subList(1, records.size()))
+                replay(record, handler);
+
+            replayed += records.size() - 1;
+        }
+
+        File journal = journalFile(generation);
+
+        if (journal.exists()) {
+            List<ListExpression> records = read(journal, true);
+
+            for (ListExpression record : records)
+                replay(record, handler);
+
+            replayed += records.size();
+            tail = records.size();
+        }
+
+        /* Journals from before the snapshot are already in it */
+        File[] files = directory.listFiles();
+
+        if (files != null)
+            for (File file : files)
+                if (file.getName().startsWith("journal-") && !file.equals(journal))
+                    Files.deleteIfExists(file.toPath());
+
+        open(journal);
+
+        return replayed;
+    }
+
+    /* The records, each applied to the state here and written to the journal before the change it describes is made */
+
+    public void precinct(String precinctID, String ballotFile) {
+        record("precinct", precinctID, ballotFile);
+    }
+
+    public void commit(String precinctID, String bid, ASExpression nonce, int serial, ASExpression ballot, long expiresAt) {
+        record(new ListExpression(StringExpression.makeString("commit"), StringExpression.makeString(precinctID),
+                                  StringExpression.makeString(bid), nonce, StringExpression.makeString("" + serial), ballot,
+                                  StringExpression.makeString("" + expiresAt)));
+    }
+
+    public void cast(String bid, long castAt) {
+        record("cast", bid, "" + castAt);
+    }
+
+    public void challenge(String bid) {
+        record("challenge", bid);
+    }
+
+    public void closePolls() {
+        record("close-polls");
+    }
+
+    public void polls(boolean open) {
+        record("polls", open ? "open" : "closed");
+    }
+
+    public void hash(int serial, int uniqueness) {
+        record("hash", "" + serial, "" + uniqueness);
+    }
+
+    public void closeChain() {
+        record("close-chain");
+    }
+
+    public void pin(String PIN, String precinctID, long expiresAt) {
+        record("pin", PIN, precinctID, "" + expiresAt);
+    }
+
+    public void usePIN(String PIN) {
+        record("use-pin", PIN);
+    }
+
+    public void machine(int serial, String type, int label) {
+        record("machine", "" + serial, type, "" + label);
+    }
+
+    /**
+     * Writes the state as it stands to a new snapshot, and starts a new journal.
+     *
+     * @throws IOException if the snapshot can't be written
+     */
+    public synchronized void snapshot() throws IOException {
+        if (out == null)
+            throw new IllegalStateException("The journal is not open");
+
+        int next = generation + 1;
+
+        File temp = new File(directory, "snapshot.tmp");
+
+        try (FileOutputStream snapshot = new FileOutputStream(temp)) {
+            ASEWriter snapshotWriter = new ASEWriter(new BufferedOutputStream(snapshot));
+
+            snapshotWriter.writeASE(new ListExpression("snapshot", "" + next));
+
+            for (ASExpression record : state())
+                snapshotWriter.writeASE(record);
+
+            snapshot.getChannel().force(true);
+        }
+
+        Files.move(temp.toPath(), snapshotFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        /* Only now that the snapshot is in place is the old journal done with */
+        out.close();
+        Files.deleteIfExists(journalFile(generation).toPath());
+
+        generation = next;
+        tail = 0;
+
+        open(journalFile(generation));
+    }
+
+    /**
+     * @return  the records written to the current journal, since the last snapshot
+     */
+    public synchronized int getTail() {
+        return tail;
+    }
+
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * @return  the records that rebuild the state as it stands
+     */
+    private List<ASExpression> state() {
+        List<ASExpression> state = new ArrayList<>();
+
+        state.addAll(machines.values());
+        state.addAll(precincts.values());
+
+        /* PINs that have expired needn't be kept */
+        long now = System.currentTimeMillis();
+
+        for (ASExpression pin : pins.values())
+            if (Long.parseLong(((ListExpression) pin).get(3).toString()) > now)
+                state.add(pin);
+
+        if (polls != null)
+            state.add(polls);
+
+        state.addAll(ballots);
+
+        if (pollsClosed)
+            state.add(new ListExpression("close-polls"));
+
+        state.addAll(links);
+
+        if (chainClosed)
+            state.add(new ListExpression("close-chain"));
+
+        return state;
+    }
+
+    private void record(String... fields) {
+        record(new ListExpression(fields));
+    }
+
+    /**
+     * Applies a record to the state here, and appends it to the journal, compacting the journal if it has grown as
+     * large as the state.
+     *
+     * @throws UncheckedIOException if it can't be written
+     */
+    private synchronized void record(ListExpression record) {
+        if (out == null)
+            throw new IllegalStateException("The journal is not open; recover it first");
+
+        apply(record);
+
+        try {
+            writer.writeASE(record);
+            out.getChannel().force(false);
+            tail++;
+
+            if (tail >= Math.max(MIN_TAIL, ballots.size() + links.size()))
+                snapshot();
+        }
+        catch (IOException e) { throw new UncheckedIOException("Could not write to the journal in " + directory, e); }
+    }
+
+    /**
+     * Applies a record to the state here.
+     */
+    private void apply(ListExpression record) {
+        switch (record.get(0).toString()) {
+            case "precinct":    precincts.put(record.get(1).toString(), record); break;
+            case "commit":
+            case "cast":
+            case "challenge":   ballots.add(record); break;
+            case "close-polls": pollsClosed = true; break;
+            case "polls":       polls = record; break;
+            case "hash":        links.add(record); break;
+            case "close-chain": chainClosed = true; break;
+            case "pin":         pins.put(record.get(1).toString(), record); break;
+            case "use-pin":     pins.remove(record.get(1).toString()); break;
+            case "machine":     machines.put(Integer.parseInt(record.get(1).toString()), record); break;
+            default:            throw new IllegalArgumentException("Unknown journal record " + record);
+        }
+    }
+
+    /**
+     * Applies a record to the state here, and hands it to the handler.
+     */
+    private void replay(ListExpression record, Handler handler) {
+        apply(record);
+
+        switch (record.get(0).toString()) {
+            case "precinct":    handler.precinct(record.get(1).toString(), record.get(2).toString()); break;
+            case "commit":      handler.commit(record.get(1).toString(), record.get(2).toString(), record.get(3),
+                                               Integer.parseInt(record.get(4).toString()), record.get(5),
+                                               Long.parseLong(record.get(6).toString())); break;
+            case "cast":        handler.cast(record.get(1).toString(), Long.parseLong(record.get(2).toString())); break;
+            case "challenge":   handler.challenge(record.get(1).toString()); break;
+            case "close-polls": handler.closePolls(); break;
+            case "polls":       handler.polls(record.get(1).toString().equals("open")); break;
+            case "hash":        handler.hash(Integer.parseInt(record.get(1).toString()), Integer.parseInt(record.get(2).toString())); break;
+            case "close-chain": handler.closeChain(); break;
+            case "pin":         handler.pin(record.get(1).toString(), record.get(2).toString(), Long.parseLong(record.get(3).toString())); break;
+            case "use-pin":     handler.usePIN(record.get(1).toString()); break;
+            case "machine":     handler.machine(Integer.parseInt(record.get(1).toString()), record.get(2).toString(),
+                                                Integer.parseInt(record.get(3).toString())); break;
+        }
+    }
+
+    /**
+     * Reads the records in a file.
+     *
+     * @param file      the file
+     * @param torn      whether the last record may have been cut short by a crash, in which case it is dropped (and
+     *                  cut from the file)
+     * @return          the records
+     * @throws IOException if the file can't be read, or (unless the end may be torn) is malformed
+     */
+    private static List<ListExpression> read(File file, boolean torn) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        ASEInputStreamReader reader = new ASEInputStreamReader(in);
+
+        List<ListExpression> records = new ArrayList<>();
+        int good = 0;
+
+        try {
+            ASExpression record;
+
+            while ((record = reader.read()) != null) {
+                if (!(record instanceof ListExpression) || ((ListExpression) record).size() == 0)
+                    throw new InvalidVerbatimStreamException("Not a journal record: " + record);
+
+                records.add((ListExpression) record);
+                good = bytes.length - in.available();
+            }
+        }
+        catch (IOException | InvalidVerbatimStreamException | RuntimeException e) {
+            if (!torn)
+                throw new IOException("Malformed journal file " + file, e);
+
+            try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+                channel.truncate(good);
+            }
+        }
+
+        return records;
+    }
+
+    private void open(File journal) throws IOException {
+        out = new FileOutputStream(journal, true);
+        writer = new ASEWriter(out);
+    }
+
+    private File snapshotFile() {
+        return new File(directory, "snapshot.ase");
+    }
+
+    private File journalFile(int generation) {
+        return new File(directory, "journal-" + generation + ".ase");
+    }
+}
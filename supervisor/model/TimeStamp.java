@@ -23,12 +23,39 @@ class TimeStamp {
         lifeTimeInSeconds = seconds;
     }
 
+    /**
+     * @param expiresAt     when the stamp expires, in milliseconds since the epoch
+     * @return              a stamp, issued at most a second ago, that expires exactly then
+     */
+    public static TimeStamp expiringAt(long expiresAt) {
+        TimeStamp stamp = new TimeStamp(0);
+        stamp.lifeTimeInSeconds = (int) Math.max(0, (expiresAt - stamp.startTime + 999) / 1000);
+        stamp.startTime = expiresAt - 1000L*stamp.lifeTimeInSeconds;
+
+        return stamp;
+    }
+
+    /**
+     * @return when this expires, in milliseconds since the epoch
+     */
+    public long getExpiry(){
+        return startTime + 1000L*lifeTimeInSeconds;
+    }
+
     /**
      * Determines if a PIN is "alive"
      *
      * @return true if the PIN hasn't been around for more than lifeTimeInSeconds time, false otherwise
      */
     public boolean isValid(){
-        return (System.currentTimeMillis()-startTime) < 1000*lifeTimeInSeconds;
+        return isValidAt(System.currentTimeMillis());
+    }
+
+    /**
+     * @param time  a time, in milliseconds since the epoch
+     * @return      true if this hadn't expired at that time, false otherwise
+     */
+    public boolean isValidAt(long time){
+        return (time-startTime) < 1000L*lifeTimeInSeconds;
     }
 }
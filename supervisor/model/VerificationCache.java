@@ -0,0 +1,216 @@
+package supervisor.model;
+
+import auditorium.AuditoriumCryptoException;
+import auditorium.Certificate;
+import auditorium.IncorrectFormatException;
+import auditorium.Key;
+import auditorium.RSACrypto;
+import auditorium.Signature;
+import crypto.IPublicKey;
+import sexpression.ASEConverter;
+import sexpression.ASExpression;
+import sexpression.BinaryEncodable;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which ballots have had their proofs verified under a public key, so that the same ballot isn't verified
+ * again by every party that tallies it (the supervisor, the central server, a recount).
+ *
+ * A ballot is identified by the SHA-256 of the key's fingerprint, the rule it was verified by, and the ballot's
+ * encoding as {@link ASEConverter} writes it, so any change to the ballot (a proof included) makes it a different
+ * ballot. A cache is kept in memory, and can be {@link #save saved} as an attestation signed by the machine that did
+ * the verifying; whoever trusts that machine's certificate can {@link #load load} it and skip those ballots.
+ *
+ * @see ParallelTallier
+ * @see WebServerTallier
+ */
+public class VerificationCache {
+
+    /** The rule for cast ballots: every race selection verified for values in [0, 1] */
+    public static final String CAST = "cast";
+
+    /** The rule for summed ballots: every race selection verified for values in [0, its size] */
+    public static final String TOTAL = "total";
+
+    /** The first element of an attestation's payload */
+    private static final String ATTESTATION = "verified-ballots";
+
+    /** The fingerprint of the public key the ballots were verified under */
+    private final byte[] fingerprint;
+
+    /** The digests of the verified ballots, in Base64 */
+    private final Set<String> verified = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param PEK   the public key used for vote proofs
+     */
+    public VerificationCache(IPublicKey PEK) {
+        this.fingerprint = fingerprint(PEK);
+    }
+
+    /**
+     * @param PEK   a public key
+     * @return      the SHA-256 of its binary form (or its encoding, if it has none)
+     */
+    public static byte[] fingerprint(IPublicKey PEK) {
+        byte[] encoding = PEK instanceof BinaryEncodable ? ((BinaryEncodable) PEK).toBytes()
+                                                         : ASEConverter.convertToASE(PEK).toVerbatim();
+
+        return sha256().digest(encoding);
+    }
+
+    /**
+     * @param PEK   a public key
+     * @return      whether this cache is of ballots verified under it
+     */
+    public boolean isFor(IPublicKey PEK) {
+        return PEK != null && Arrays.equals(fingerprint, fingerprint(PEK));
+    }
+
+    /**
+     * @param ballot    a ballot
+     * @param rule      the rule it is verified by, {@link #CAST} or {@link #TOTAL}
+     * @return          the digest identifying the ballot, as verified by that rule, in this cache
+     */
+    public String digest(Ballot<?> ballot, String rule) {
+        MessageDigest digest = sha256();
+
+        digest.update(fingerprint);
+        digest.update(rule.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(ASEConverter.convertToASE(ballot).toVerbatim());
+
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * @param digest    a ballot's {@link #digest}
+     * @return          whether the ballot has been verified
+     */
+    public boolean isVerified(String digest) {
+        return verified.contains(digest);
+    }
+
+    /**
+     * Records that a ballot has been verified.
+     *
+     * @param digest    the ballot's {@link #digest}
+     */
+    public void markVerified(String digest) {
+        verified.add(digest);
+    }
+
+    /**
+     * @return  the number of ballots known to be verified
+     */
+    public int size() {
+        return verified.size();
+    }
+
+    /**
+     * Takes in the ballots another cache (e.g. one {@link #load loaded} from another machine) knows to be verified.
+     *
+     * @param other     the other cache
+     * @throws IllegalArgumentException if its ballots were verified under a different key
+     */
+    public void addAll(VerificationCache other) {
+        if (!Arrays.equals(fingerprint, other.fingerprint))
+            throw new IllegalArgumentException("Ballots were verified under a different key");
+
+        verified.addAll(other.verified);
+    }
+
+    /**
+     * Saves the verified ballots as an attestation signed with the given key: (signature [signer-id] [sigdata]
+     * (verified-ballots [fingerprint] [digest]...)).
+     *
+     * @param file      the file to write
+     * @param signer    the private key of the machine that verified the ballots
+     *
+     * @throws AuditoriumCryptoException if the attestation can't be signed
+     * @throws IOException if the file can't be written
+     */
+    public void save(File file, Key signer) throws AuditoriumCryptoException, IOException {
+        List<ASExpression> payload = new ArrayList<>();
+
+        payload.add(StringExpression.makeString(ATTESTATION));
+        payload.add(StringExpression.makeString(fingerprint));
+
+        for (String digest : verified)
+            payload.add(StringExpression.makeString(Base64.getDecoder().decode(digest)));
+
+        Signature signature = RSACrypto.SINGLETON.sign(new ListExpression(payload), signer);
+
+        Files.write(file.toPath(), signature.toASE().toVerbatim());
+    }
+
+    /**
+     * Loads an attestation written by {@link #save}, after checking its signature.
+     *
+     * @param file      the file to read
+     * @param PEK       the public key the ballots should have been verified under
+     * @param signer    the certificate of the machine trusted to have verified them
+     * @return          a cache of the attested ballots
+     *
+     * @throws AuditoriumCryptoException if the attestation isn't signed by the signer
+     * @throws IncorrectFormatException if the file isn't an attestation, or is for a different key
+     * @throws IOException if the file can't be read
+     */
+    public static VerificationCache load(File file, IPublicKey PEK, Certificate signer)
+            throws AuditoriumCryptoException, IncorrectFormatException, IOException {
+
+        ASExpression exp;
+
+        try { exp = ASExpression.makeVerbatim(Files.readAllBytes(file.toPath())); }
+        catch (InvalidVerbatimStreamException e) { throw new IOException("Could not parse " + file, e); }
+
+        Signature signature = new Signature(exp);
+        RSACrypto.SINGLETON.verify(signature, signer);
+
+        if (!(signature.getPayload() instanceof ListExpression))
+            throw new IncorrectFormatException(exp, new Exception("not an attestation of verified ballots"));
+
+        ListExpression payload = (ListExpression) signature.getPayload();
+
+        if (payload.size() < 2 || !payload.get(0).toString().equals(ATTESTATION) || !(payload.get(1) instanceof StringExpression))
+            throw new IncorrectFormatException(exp, new Exception("not an attestation of verified ballots"));
+
+        VerificationCache cache = new VerificationCache(PEK);
+
+        if (!Arrays.equals(cache.fingerprint, ((StringExpression) payload.get(1)).getBytesCopy()))
+            throw new IncorrectFormatException(exp, new Exception("ballots were verified under a different key"));
+
+        for (int i = 2; i < payload.size(); i++) {
+            if (!(payload.get(i) instanceof StringExpression))
+                throw new IncorrectFormatException(exp, new Exception("bad ballot digest"));
+
+            cache.verified.add(Base64.getEncoder().encodeToString(((StringExpression) payload.get(i)).getBytesCopy()));
+        }
+
+        return cache;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
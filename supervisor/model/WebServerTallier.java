@@ -2,6 +2,7 @@ package supervisor.model;
 
 import auditorium.Bugout;
 import crypto.AHomomorphicCiphertext;
+import crypto.BatchVerifier;
 import crypto.EncryptedRaceSelection;
 import crypto.IPublicKey;
 import crypto.PlaintextRaceSelection;
@@ -33,11 +34,61 @@ public class WebServerTallier {
     public static <T extends AHomomorphicCiphertext<T>> Ballot<EncryptedRaceSelection<T>> tally(
             String ID, List<Ballot<EncryptedRaceSelection<T>>> toSum, IPublicKey PEK){
 
+        return tally(ID, toSum, PEK, null);
+    }
+
+    /**
+     * Sum every vote in cast and return a Ballot with encrypted sums that includes every race
+     * across all Ballots, skipping the proofs of ballots already known to be verified.
+     *
+     * @param ID            the ID to be assigned to this ballot post-tallying, used as a ballot id
+     * @param toSum         the list of cast ballots that should be homomorphically summed
+     * @param PEK           the public key used for vote proofs
+     * @param cache         the ballots known to be verified (ignored if null, or for another key), to which those
+     *                      verified here are added
+     * @return              a Ballot containing the encrypted sums for each race
+     */
+    public static <T extends AHomomorphicCiphertext<T>> Ballot<EncryptedRaceSelection<T>> tally(
+            String ID, List<Ballot<EncryptedRaceSelection<T>>> toSum, IPublicKey PEK, VerificationCache cache){
+
         int size = 0;
 
+        if (cache != null && !cache.isFor(PEK))
+            cache = null;
+
+        /* The ballots' digests in the cache, and which of them are already known to be verified */
+        Map<Ballot<EncryptedRaceSelection<T>>, String> digests = new IdentityHashMap<>();
+        Set<Ballot<EncryptedRaceSelection<T>>> known = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        if (cache != null) {
+            for (Ballot<EncryptedRaceSelection<T>> bal : toSum) {
+                if (bal == null)
+                    continue;
+
+                try {
+                    String digest = cache.digest(bal, VerificationCache.TOTAL);
+
+                    digests.put(bal, digest);
+
+                    if (cache.isVerified(digest))
+                        known.add(bal);
+                }
+                catch (RuntimeException e) { /* Malformed; it is verified (and reported) as usual */ }
+            }
+        }
+
         /* The results of the election are stored by race ID in this map */
         Map<String, Race<T>> results = new LinkedHashMap<>();
 
+        /* Check all the race selection proofs together first; any the batch can't vouch for are checked one by one below */
+        BatchVerifier<T> verifier = new BatchVerifier<>(PEK);
+
+        for (Ballot<EncryptedRaceSelection<T>> bal : toSum)
+            if (bal != null && !known.contains(bal) && bal.getRaceSelections() != null)
+                for (EncryptedRaceSelection<T> rs : bal.getRaceSelections())
+                    if (rs != null)
+                        verifier.add(rs, 0, rs.getSize());
+
         /* For each ballot, get each vote and build a results mapping between race ids and elections */
         for (Ballot<EncryptedRaceSelection<T>> bal : toSum) {
 
@@ -57,7 +108,7 @@ public class WebServerTallier {
                     List<String> possibleCandidates = new ArrayList<>(rs.getRaceSelectionsMap().keySet());
 
                     /* Confirm that the rs proof is valid */
-                    if (!rs.verify(0, rs.getSize(), PEK)) {
+                    if (!known.contains(bal) && !verifier.verify(rs, 0, rs.getSize())) {
                         Bugout.err("!!!Ballot failed NIZK test!!!");
                         return null;
                     }
@@ -78,6 +129,9 @@ public class WebServerTallier {
                 }
 
                 size += bal.getSize();
+
+                if (digests.containsKey(bal) && !known.contains(bal))
+                    cache.markVerified(digests.get(bal));
             }
             catch (Exception e) {
                 Bugout.err("Malformed ballot received <" + e.getMessage() + ">");
@@ -236,6 +236,129 @@ public class HashChainTest extends TestCase {
         System.out.println("\n");
     }
 
+    /**
+     * Here we check that verifying a chain as it grows, and then once it is closed, gives the same answers as
+     * verifying the same chain all at once
+     */
+    public void testIncrementalVerification() {
+
+        h = new HashChain();
+
+        HashMap<String, String> HashToBID = new HashMap<>();
+        HashMap<String, String> HashToMID = new HashMap<>();
+
+        DecimalFormat d = new DecimalFormat("0000000000");
+        DecimalFormat s = new DecimalFormat("00");
+
+        String lastHash = "00000000000000000000000000000000";
+
+        for (int i = 0; i < 100; i++) {
+
+            /* An open chain doesn't verify, but checking it moves the verified prefix along */
+            if (i % 10 == 0)
+                assertTrue(h.isHashChainCompromised());
+
+            int ballotUniqueness = i + 1;
+            int serial = i % 7;
+
+            String hash = h.hashBallotWithUniqueness(serial, ballotUniqueness);
+            assertEquals(hashWithSHA256(d.format(ballotUniqueness) + s.format(serial) + lastHash), hash);
+
+            HashToBID.put(lastHash, d.format(ballotUniqueness));
+            HashToMID.put(lastHash, s.format(serial));
+
+            lastHash = hash;
+        }
+
+        h.closeHashChain();
+        assertFalse(h.isHashChainCompromised());
+
+        HashChain whole = new HashChain(HashToBID, HashToMID, lastHash);
+        whole.closeHashChain();
+        assertFalse(whole.isHashChainCompromised());
+
+        assertEquals(whole.hashSelf(), h.hashSelf());
+    }
+
+    /**
+     * Here we check that a link changed after it was added, but before it was verified, is found when the chain is
+     * verified, even though the links before it had been
+     */
+    public void testTamperedAfterInsertion() {
+
+        HashMap<String, String> HashToBID = new HashMap<>();
+        HashMap<String, String> HashToMID = new HashMap<>();
+
+        h = new HashChain(HashToBID, HashToMID, "00000000000000000000000000000000");
+
+        for (int i = 0; i < 10; i++)
+            h.hashBallotWithUniqueness(i, i + 1);
+
+        /* An open chain doesn't verify, but the links so far are now verified */
+        assertTrue(h.isHashChainCompromised());
+
+        /* The links after this hash are added after the chain was verified */
+        String tampered = h.hashBallotWithUniqueness(3, 11);
+
+        for (int i = 12; i < 20; i++)
+            h.hashBallotWithUniqueness(3, i);
+
+        HashToBID.put(tampered, "0000000666");
+
+        h.closeHashChain();
+        assertTrue(h.isHashChainCompromised());
+
+        /* And the same for the machine of the last link, changed once the chain is closed */
+        HashToBID = new HashMap<>();
+        HashToMID = new HashMap<>();
+
+        h = new HashChain(HashToBID, HashToMID, "00000000000000000000000000000000");
+
+        /* The hash the last link is kept under */
+        String last = "00000000000000000000000000000000";
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(h.isHashChainCompromised());
+
+            String hash = h.hashBallotWithUniqueness(i, i + 1);
+
+            if (i < 9)
+                last = hash;
+        }
+
+        h.closeHashChain();
+
+        HashToMID.put(last, "99");
+        assertTrue(h.isHashChainCompromised());
+    }
+
+    /**
+     * Here we check that closing and verifying a long chain is quick, since it was verified as it grew
+     */
+    public void testCloseLongHashChain() {
+
+        h = new HashChain();
+
+        Random r = new Random(10L);
+
+        for (int i = 0; i < 100000; i++) {
+            h.hashBallotWithGenerator(r.nextInt(100), r);
+
+            /* Verify the chain so far now and then, as it grows; an open chain doesn't verify */
+            if (i % 1000 == 999)
+                assertTrue(h.isHashChainCompromised());
+        }
+
+        long start = System.nanoTime();
+
+        h.closeHashChain();
+        assertFalse(h.isHashChainCompromised());
+
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue("Closing and verifying took " + elapsed / 1000 + " us", elapsed < 50000000L);
+    }
+
     /**
      * A wrapper for the raw SHA256 hashing function provided in the Java libraries
      *
@@ -0,0 +1,181 @@
+package supervisor.model.test;
+
+import crypto.*;
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.Race;
+import junit.framework.TestCase;
+import supervisor.model.AuthorityManager;
+import supervisor.model.Ballot;
+import supervisor.model.ParallelTallier;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests that the parallel tally gives the same encrypted totals as summing each race in one sequential pass, whatever
+ * the number of threads, that it reports the first bad ballot, and gives an idea of how it scales.
+ */
+public class ParallelTallierTest extends TestCase {
+
+    /** Ballots to tally, and the races on each, with the candidates in each race */
+    private static final int BALLOTS = 48, RACES = 2, CANDIDATES = 3;
+
+    /** Small partitions, so even this many ballots make a tree of some depth */
+    private static final int PARTITION_SIZE = 6;
+
+    /** Shared across tests, since key generation and encryption dominate the running time */
+    private static AdderPublicKey PEK;
+    private static List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> ballots;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        if (ballots != null)
+            return;
+
+        AuthorityManager.SESSION.newSession(1, 1, 2);
+        AuthorityManager.SESSION.generateAuthorityKeySharePair("1");
+        AuthorityManager.SESSION.generateAuthorityPolynomialValues("1");
+        AuthorityManager.SESSION.generateRealPrivateKeyShare("1");
+        PEK = AuthorityManager.SESSION.generatePublicEncryptionKey();
+
+        DHExponentialElGamalCryptoType cryptoType = new DHExponentialElGamalCryptoType();
+        cryptoType.loadPublicKey(PEK);
+
+        RaceSelectionCrypto<ExponentialElGamalCiphertext> crypto = new RaceSelectionCrypto<>(cryptoType);
+
+        ballots = new ArrayList<>();
+
+        for (int i = 0; i < BALLOTS; i++) {
+            List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> selections = new ArrayList<>();
+
+            for (int race = 0; race < RACES; race++) {
+                Map<String, Integer> voteMap = new HashMap<>();
+
+                for (int j = 0; j < CANDIDATES; j++)
+                    voteMap.put("Candidate" + j, j == (i + race) % CANDIDATES ? 1 : 0);
+
+                selections.add(crypto.encrypt(new PlaintextRaceSelection(voteMap, "Race" + race, 1)));
+            }
+
+            ballots.add(new Ballot<>("" + i, selections, "" + i));
+        }
+    }
+
+    public void testMatchesSequentialSum() {
+        Map<String, EncryptedRaceSelection<ExponentialElGamalCiphertext>> expected = new HashMap<>();
+
+        for (int race = 0; race < RACES; race++) {
+            Race<ExponentialElGamalCiphertext> r = null;
+
+            for (Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot : ballots) {
+                EncryptedRaceSelection<ExponentialElGamalCiphertext> rs = ballot.getRaceSelections().get(race);
+
+                if (r == null)
+                    r = new Race<>(PEK, new ArrayList<>(rs.getRaceSelectionsMap().keySet()));
+
+                r.castRaceSelection(rs);
+            }
+
+            expected.put("Race" + race, r.sumRaceSelections());
+        }
+
+        for (int threads : new int[]{ 1, 3 }) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+
+            ParallelTallier.Tally<ExponentialElGamalCiphertext> tally =
+                    new ParallelTallier<ExponentialElGamalCiphertext>(PEK, pool, PARTITION_SIZE).tally(ballots);
+
+            pool.shutdown();
+
+            assertNull(tally.getFailed());
+            assertTrue(tally.getMalformed().isEmpty());
+            assertEquals(BALLOTS, tally.getSize());
+            assertEquals(Arrays.asList("Race0", "Race1"), new ArrayList<>(tally.getSums().keySet()));
+
+            for (String raceID : expected.keySet()) {
+                EncryptedRaceSelection<ExponentialElGamalCiphertext> sum = tally.getSums().get(raceID);
+
+                assertEquals(BALLOTS, tally.getCount(raceID));
+                assertEquals(expected.get(raceID).getSize(), sum.getSize());
+                assertTrue(sum.verify(0, BALLOTS, PEK));
+
+                for (Map.Entry<String, ExponentialElGamalCiphertext> entry : expected.get(raceID).getRaceSelectionsMap().entrySet()) {
+                    ExponentialElGamalCiphertext c = sum.getRaceSelectionsMap().get(entry.getKey());
+
+                    assertEquals(entry.getValue().getG(), c.getG());
+                    assertEquals(entry.getValue().getH(), c.getH());
+                }
+            }
+        }
+    }
+
+    public void testReportsFirstBadBallot() {
+        List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> tampered = new ArrayList<>(ballots);
+
+        /* A malformed ballot, then two whose votes were altered after they were proven */
+        tampered.set(3, new Ballot<>("3", null, "3"));
+        tampered.set(20, tamper(tampered.get(20)));
+        tampered.set(40, tamper(tampered.get(40)));
+
+        ParallelTallier.Tally<ExponentialElGamalCiphertext> tally =
+                new ParallelTallier<ExponentialElGamalCiphertext>(PEK, ForkJoinPool.commonPool(), PARTITION_SIZE).tally(tampered);
+
+        assertSame(tampered.get(20), tally.getFailed());
+        assertEquals(Collections.singletonList(tampered.get(3)), tally.getMalformed());
+    }
+
+    public void testLeavesOutMalformedBallot() {
+        List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> tampered = new ArrayList<>(ballots);
+
+        /* A ballot whose first race is sound but whose second is missing */
+        List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> selections = new ArrayList<>(tampered.get(7).getRaceSelections());
+        selections.set(1, null);
+        tampered.set(7, new Ballot<>("7", selections, "7"));
+
+        ParallelTallier.Tally<ExponentialElGamalCiphertext> tally =
+                new ParallelTallier<ExponentialElGamalCiphertext>(PEK, ForkJoinPool.commonPool(), PARTITION_SIZE).tally(tampered);
+
+        assertNull(tally.getFailed());
+        assertEquals(Collections.singletonList(tampered.get(7)), tally.getMalformed());
+        assertEquals(BALLOTS - 1, tally.getSize());
+
+        for (int race = 0; race < RACES; race++) {
+            assertEquals(BALLOTS - 1, tally.getCount("Race" + race));
+            assertTrue(tally.getSums().get("Race" + race).verify(0, BALLOTS - 1, PEK));
+        }
+    }
+
+    public void testScaling() {
+        for (int threads : new int[]{ 1, 2, 4, 8 }) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long start = System.nanoTime();
+
+            new ParallelTallier<ExponentialElGamalCiphertext>(PEK, pool, PARTITION_SIZE).tally(ballots);
+
+            System.out.println("Tally " + BALLOTS + " ballots on " + threads + " threads (" + Runtime.getRuntime().availableProcessors()
+                               + " cores): " + (System.nanoTime() - start) / 1000000 + " ms");
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return a copy of the ballot with a vote of its first race selection altered, keeping the old proof
+     */
+    private static Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> tamper(Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot) {
+        List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> selections = new ArrayList<>(ballot.getRaceSelections());
+        EncryptedRaceSelection<ExponentialElGamalCiphertext> rs = selections.get(0);
+
+        Map<String, ExponentialElGamalCiphertext> map = new HashMap<>(rs.getRaceSelectionsMap());
+        String candidate = map.keySet().iterator().next();
+        ExponentialElGamalCiphertext c = map.get(candidate);
+
+        AdderInteger h = c.getH().multiply(new AdderInteger(PEK.getF(), PEK.getP()));
+        map.put(candidate, new ExponentialElGamalCiphertext(c.getG(), h, PEK.getP(), c.getProof()));
+
+        selections.set(0, new EncryptedRaceSelection<>(map, rs.getTitle(), rs.getSize()));
+
+        return new Ballot<>(ballot.getBid(), selections, ballot.getNonce());
+    }
+}
@@ -1,6 +1,21 @@
 package supervisor.model.test;
 
+import crypto.*;
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPublicKey;
 import junit.framework.TestCase;
+import supervisor.model.AuthorityManager;
+import supervisor.model.Ballot;
+import supervisor.model.Precinct;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A test suite for the Precinct class
@@ -9,9 +24,220 @@ import junit.framework.TestCase;
  */
 public class PrecinctTest extends TestCase {
 
+    /** Ballots to cast, and the candidates in the one race on each */
+    private static final int BALLOTS = 12, CANDIDATES = 3;
+
+    /** Shared across tests, since key generation and encryption dominate the running time */
+    private static AdderPublicKey PEK;
+    private static List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> ballots;
+
     protected void setUp() throws Exception {
         super.setUp();
+
+        if (ballots != null)
+            return;
+
+        AuthorityManager.SESSION.newSession(1, 1, 2);
+        AuthorityManager.SESSION.generateAuthorityKeySharePair("1");
+        AuthorityManager.SESSION.generateAuthorityPolynomialValues("1");
+        AuthorityManager.SESSION.generateRealPrivateKeyShare("1");
+        PEK = AuthorityManager.SESSION.generatePublicEncryptionKey();
+
+        DHExponentialElGamalCryptoType cryptoType = new DHExponentialElGamalCryptoType();
+        cryptoType.loadPublicKey(PEK);
+
+        RaceSelectionCrypto<ExponentialElGamalCiphertext> crypto = new RaceSelectionCrypto<>(cryptoType);
+
+        ballots = new ArrayList<>();
+
+        for (int i = 0; i < BALLOTS; i++) {
+            Map<String, Integer> voteMap = new HashMap<>();
+
+            for (int j = 0; j < CANDIDATES; j++)
+                voteMap.put("Candidate" + j, j == i % CANDIDATES ? 1 : 0);
+
+            List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> selections = new ArrayList<>();
+            selections.add(crypto.encrypt(new PlaintextRaceSelection(voteMap, "Race", 1)));
+
+            ballots.add(new Ballot<>("" + i, selections, "" + i));
+        }
+    }
+
+    public void testRunningTally() {
+        Precinct<ExponentialElGamalCiphertext> precinct = new Precinct<>("001", "ballot.zip");
+
+        /* Some ballots are cast before the running tally is started, and some after */
+        cast(precinct, 0, 3);
+        precinct.startRunningTally(PEK);
+        cast(precinct, 3, BALLOTS / 2);
+
+        /* The check can be made while the polls are still open, and more ballots cast afterward */
+        assertTrue(precinct.checkRunningTally(PEK));
+
+        cast(precinct, BALLOTS / 2, BALLOTS);
+        precinct.closePolls();
+
+        Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> total = precinct.getCastBallotTotal(PEK);
+
+        assertNotNull(total);
+        assertEquals(BALLOTS, (int) total.getSize());
+        assertEquals(1, total.getRaceSelections().size());
+        assertTrue(total.getRaceSelections().get(0).verify(0, BALLOTS, PEK));
+
+        assertTrue(precinct.checkRunningTally(PEK));
+    }
+
+    public void testMatchesTallyAtClose() {
+        Precinct<ExponentialElGamalCiphertext> running = new Precinct<>("001", "ballot.zip");
+        Precinct<ExponentialElGamalCiphertext> atClose = new Precinct<>("002", "ballot.zip");
+
+        running.startRunningTally(PEK);
+
+        cast(running, 0, BALLOTS);
+        cast(atClose, 0, BALLOTS);
+
+        running.closePolls();
+        atClose.closePolls();
+
+        EncryptedRaceSelection<ExponentialElGamalCiphertext> a = running.getCastBallotTotal(PEK).getRaceSelections().get(0);
+        EncryptedRaceSelection<ExponentialElGamalCiphertext> b = atClose.getCastBallotTotal(PEK).getRaceSelections().get(0);
+
+        assertTrue(a.matches(b));
     }
 
-    public void test(){}
+    public void testRunningTallyRejectsBadBallot() {
+        Precinct<ExponentialElGamalCiphertext> precinct = new Precinct<>("001", "ballot.zip");
+        precinct.startRunningTally(PEK);
+
+        cast(precinct, 0, 4);
+
+        /* A vote altered after it was proven */
+        Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot = ballots.get(4);
+        EncryptedRaceSelection<ExponentialElGamalCiphertext> rs = ballot.getRaceSelections().get(0);
+
+        Map<String, ExponentialElGamalCiphertext> map = new HashMap<>(rs.getRaceSelectionsMap());
+        ExponentialElGamalCiphertext c = map.get("Candidate0");
+        map.put("Candidate0", new ExponentialElGamalCiphertext(c.getG(), c.getH().multiply(new AdderInteger(PEK.getF(), PEK.getP())),
+                                                               PEK.getP(), c.getProof()));
+
+        List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> selections = new ArrayList<>();
+        selections.add(new EncryptedRaceSelection<>(map, rs.getTitle(), rs.getSize()));
+
+        precinct.commitBallot("bad", new Ballot<>("bad", selections, "bad"));
+        precinct.castBallot("bad");
+
+        cast(precinct, 5, BALLOTS);
+        precinct.closePolls();
+
+        assertNull(precinct.getCastBallotTotal(PEK));
+        assertTrue(precinct.checkRunningTally(PEK));
+    }
+
+    public void testConcurrentCommitCastAndChallenge() throws Exception {
+        Precinct<ExponentialElGamalCiphertext> precinct = new Precinct<>("001", "ballot.zip");
+        precinct.startRunningTally(PEK);
+
+        /* Each thread commits its share of the ballots, casting most and challenging every third, while reading back */
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> done = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+
+            done.add(pool.submit(() -> {
+                for (int i = first; i < BALLOTS; i += threads) {
+                    Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot = ballots.get(i);
+
+                    precinct.commitBallot(ballot.getBid(), ballot);
+                    assertTrue(precinct.hasBID(ballot.getBid()));
+
+                    if (i % 3 == 2)
+                        assertSame(ballot, precinct.challengeBallot(ballot.getBid()));
+                    else
+                        assertSame(ballot, precinct.castBallot(ballot.getBid()));
+
+                    /* A ballot only moves once */
+                    assertNull(precinct.castBallot(ballot.getBid()));
+                }
+            }));
+        }
+
+        for (Future<?> f : done)
+            f.get();
+
+        pool.shutdown();
+
+        assertTrue(precinct.checkRunningTally(PEK));
+
+        /* A ballot committed and never cast is challenged when the polls close */
+        precinct.commitBallot("late", ballots.get(0));
+        precinct.closePolls();
+
+        assertEquals(BALLOTS / 3 + 1, precinct.getChallengedBallots().size());
+        assertSame(ballots.get(2), precinct.getChallengedBallot(ballots.get(2).getBid()));
+        assertNull(precinct.getChallengedBallot(ballots.get(0).getBid()));
+
+        Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> total = precinct.getCastBallotTotal(PEK);
+        assertEquals(BALLOTS - BALLOTS / 3, (int) total.getSize());
+
+        /* Once the polls close, the precinct can be sent on as it is */
+        ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream());
+        out.writeObject(precinct);
+        out.close();
+    }
+
+    /**
+     * Tests that a precinct is serialized in its original form, and reads back with its ballots where they were
+     */
+    @SuppressWarnings("unchecked")
+    public void testSerializedForm() throws Exception {
+        ObjectStreamClass form = ObjectStreamClass.lookup(Precinct.class);
+
+        assertEquals(-3461923131794836419L, form.getSerialVersionUID());
+        assertEquals(List.class, form.getField("challenged").getType());
+        assertEquals(List.class, form.getField("cast").getType());
+        assertNull(form.getField("locks"));
+
+        Precinct<ExponentialElGamalCiphertext> precinct = new Precinct<>("001", "ballot.zip");
+
+        cast(precinct, 0, 4);
+        precinct.commitBallot(ballots.get(4).getBid(), ballots.get(4));
+        precinct.challengeBallot(ballots.get(4).getBid());
+        precinct.commitBallot(ballots.get(5).getBid(), ballots.get(5));
+        precinct.closePolls();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(precinct);
+        }
+
+        Precinct<ExponentialElGamalCiphertext> copy;
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (Precinct<ExponentialElGamalCiphertext>) in.readObject();
+        }
+
+        assertEquals("001", copy.getPrecinctID());
+        assertEquals(4, copy.getCastBallots().size());
+        assertEquals(2, copy.getChallengedBallots().size());
+        assertEquals(ballots.get(4).getBid(), copy.getChallengedBallot(ballots.get(4).getBid()).getBid());
+        assertEquals(ballots.get(5).getBid(), copy.getChallengedBallot(ballots.get(5).getBid()).getBid());
+
+        /* And is still usable */
+        copy.commitBallot(ballots.get(6).getBid(), ballots.get(6));
+        assertNotNull(copy.castBallot(ballots.get(6).getBid()));
+        assertEquals(5, copy.getCastBallots().size());
+    }
+
+    /**
+     * Commits and casts the ballots in [from, to).
+     */
+    private static void cast(Precinct<ExponentialElGamalCiphertext> precinct, int from, int to) {
+        for (Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot : ballots.subList(from, to)) {
+            precinct.commitBallot(ballot.getBid(), ballot);
+            assertSame(ballot, precinct.castBallot(ballot.getBid()));
+        }
+    }
 }
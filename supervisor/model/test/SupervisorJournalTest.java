@@ -0,0 +1,334 @@
+package supervisor.model.test;
+
+import auditorium.test.TestParams;
+import crypto.EncryptedRaceSelection;
+import crypto.ExponentialElGamalCiphertext;
+import junit.framework.TestCase;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import supervisor.model.Ballot;
+import supervisor.model.Model;
+import supervisor.model.Precinct;
+import supervisor.model.SupervisorJournal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A test suite for the SupervisorJournal class
+ */
+public class SupervisorJournalTest extends TestCase {
+
+    /** When the ballots committed in these tests expire, and when they are cast, in time */
+    private static final long EXPIRES = 60000, CAST_AT = 30000;
+
+    private File directory;
+
+    /** Records what a recovery replays, as one line per record */
+    private static class Recorder implements SupervisorJournal.Handler {
+
+        List<String> records = new ArrayList<>();
+
+        public void precinct(String precinctID, String ballotFile) { records.add("precinct " + precinctID + " " + ballotFile); }
+        public void commit(String precinctID, String bid, ASExpression nonce, int serial, ASExpression ballot, long expiresAt) {
+            records.add("commit " + precinctID + " " + bid + " " + nonce + " " + serial + " " + ballot);
+        }
+        public void cast(String bid, long castAt) { records.add("cast " + bid); }
+        public void challenge(String bid) { records.add("challenge " + bid); }
+        public void closePolls() { records.add("close-polls"); }
+        public void polls(boolean open) { records.add("polls " + open); }
+        public void hash(int serial, int uniqueness) { records.add("hash " + serial + " " + uniqueness); }
+        public void closeChain() { records.add("close-chain"); }
+        public void pin(String PIN, String precinctID, long expiresAt) { records.add("pin " + PIN + " " + precinctID); }
+        public void usePIN(String PIN) { records.add("use-pin " + PIN); }
+        public void machine(int serial, String type, int label) { records.add("machine " + serial + " " + type + " " + label); }
+    }
+
+    /** Replays the ballots' records into a precinct, as the supervisor does */
+    private static class Replayer extends Recorder {
+
+        Precinct<ExponentialElGamalCiphertext> precinct = new Precinct<>("001", "ballot.zip");
+
+        public void commit(String precinctID, String bid, ASExpression nonce, int serial, ASExpression ballot, long expiresAt) {
+            precinct.commitBallot(bid, new Ballot<>(bid, new ArrayList<>(), "nonce" + bid), expiresAt);
+        }
+        public void cast(String bid, long castAt) { precinct.castBallot(bid, castAt); }
+        public void challenge(String bid) { precinct.challengeBallot(bid); }
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("journal").toFile();
+    }
+
+    protected void tearDown() throws Exception {
+        delete(directory);
+        super.tearDown();
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+
+        if (files != null)
+            for (File f : files)
+                delete(f);
+
+        file.delete();
+    }
+
+    private static ASExpression ballot(int i) {
+        return new ListExpression(StringExpression.makeString("ballot"), StringExpression.makeString("" + i));
+    }
+
+    private SupervisorJournal open(Recorder recorder) throws IOException {
+        SupervisorJournal journal = new SupervisorJournal(directory);
+        journal.recover(recorder);
+
+        return journal;
+    }
+
+    /**
+     * Tests that records are replayed as they were written
+     */
+    public void testRecover() throws IOException {
+        SupervisorJournal journal = open(new Recorder());
+
+        journal.machine(3, SupervisorJournal.VOTEBOX, 1);
+        journal.precinct("001", "/ballots/ballot001.zip");
+        journal.polls(true);
+        journal.pin("12345", "001", System.currentTimeMillis() + 60000);
+        journal.usePIN("12345");
+        journal.commit("001", "100", StringExpression.makeString("nonce"), 3, ballot(0), EXPIRES);
+        journal.hash(3, 42);
+        journal.cast("100", CAST_AT);
+        journal.polls(false);
+        journal.closeChain();
+        journal.closePolls();
+        journal.close();
+
+        Recorder recorder = new Recorder();
+        SupervisorJournal recovered = new SupervisorJournal(directory);
+
+        assertEquals(11, recovered.recover(recorder));
+        recovered.close();
+
+        assertEquals("machine 3 votebox 1", recorder.records.get(0));
+        assertEquals("commit 001 100 nonce 3 (ballot 0)", recorder.records.get(5));
+        assertEquals("hash 3 42", recorder.records.get(6));
+        assertEquals("close-polls", recorder.records.get(10));
+    }
+
+    /**
+     * Tests that a snapshot keeps only the records still needed, and that the journal since it is replayed after
+     */
+    public void testSnapshot() throws IOException {
+        SupervisorJournal journal = open(new Recorder());
+
+        journal.machine(3, SupervisorJournal.VOTEBOX, 0);
+        journal.machine(3, SupervisorJournal.VOTEBOX, 2);
+        journal.pin("11111", "001", System.currentTimeMillis() + 60000);
+        journal.pin("22222", "001", System.currentTimeMillis() + 60000);
+        journal.pin("33333", "001", System.currentTimeMillis() - 1);
+        journal.usePIN("11111");
+        journal.commit("001", "100", StringExpression.makeString("nonce"), 3, ballot(0), EXPIRES);
+        journal.commit("001", "101", StringExpression.makeString("nonce"), 3, ballot(1), EXPIRES);
+        journal.challenge("100");
+
+        journal.snapshot();
+        assertEquals(0, journal.getTail());
+
+        journal.cast("101", CAST_AT);
+        journal.close();
+
+        Recorder recorder = new Recorder();
+        SupervisorJournal recovered = new SupervisorJournal(directory);
+
+        assertEquals(6, recovered.recover(recorder));
+        recovered.close();
+
+        List<String> expected = new ArrayList<>();
+        expected.add("machine 3 votebox 2");
+        expected.add("pin 22222 001");
+        expected.add("commit 001 100 nonce 3 (ballot 0)");
+        expected.add("commit 001 101 nonce 3 (ballot 1)");
+        expected.add("challenge 100");
+        expected.add("cast 101");
+
+        assertEquals(expected, recorder.records);
+        assertEquals(1, directory.list((dir, name) -> name.startsWith("journal-")).length);
+    }
+
+    /**
+     * Tests that casts are replayed with the outcome they had when they were made, however long after the ballots
+     * expired the journal is recovered, and across a snapshot
+     */
+    public void testReplayExpiredCast() throws IOException {
+        SupervisorJournal journal = open(new Recorder());
+        Precinct<ExponentialElGamalCiphertext> live = new Precinct<>("001", "ballot.zip");
+        long now = System.currentTimeMillis();
+
+        /* Cast in time, though expired by the time it is recovered */
+        commit(journal, live, "100", now - 1000);
+        cast(journal, live, "100", now - 2000);
+
+        /* Cast too late, though it would be in time if its timer were started over when it is recovered */
+        commit(journal, live, "101", now + 60000);
+        cast(journal, live, "101", now + 61000);
+
+        commit(journal, live, "102", now + 60000);
+        commit(journal, live, "103", now + 60000);
+        journal.snapshot();
+
+        cast(journal, live, "102", now);
+        cast(journal, live, "103", now + 60000);
+        journal.close();
+
+        assertEquals(Arrays.asList("100", "102"), bids(live.getCastBallots()));
+
+        Replayer replayer = new Replayer();
+        open(replayer).close();
+
+        assertEquals(bids(live.getCastBallots()), bids(replayer.precinct.getCastBallots()));
+
+        /* The ballots cast too late aren't left committed, to be challenged when the polls close */
+        live.closePolls();
+        replayer.precinct.closePolls();
+
+        assertTrue(live.getChallengedBallots().isEmpty());
+        assertTrue(replayer.precinct.getChallengedBallots().isEmpty());
+    }
+
+    /**
+     * Commits a ballot, journaling it first, as the supervisor does.
+     */
+    private static void commit(SupervisorJournal journal, Precinct<ExponentialElGamalCiphertext> precinct, String bid, long expiresAt) {
+        journal.commit("001", bid, StringExpression.makeString("nonce" + bid), 3, ballot(0), expiresAt);
+        precinct.commitBallot(bid, new Ballot<>(bid, new ArrayList<>(), "nonce" + bid), expiresAt);
+    }
+
+    /**
+     * Casts a ballot, journaling it once it has been made, as the supervisor does.
+     */
+    private static void cast(SupervisorJournal journal, Precinct<ExponentialElGamalCiphertext> precinct, String bid, long castAt) {
+        if (precinct.castBallot(bid, castAt) != null)
+            journal.cast(bid, castAt);
+    }
+
+    private static List<String> bids(List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> ballots) {
+        List<String> bids = new ArrayList<>();
+
+        for (Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot : ballots)
+            bids.add(ballot.getBid());
+
+        return bids;
+    }
+
+    /**
+     * Tests that a supervisor started for a new election starts with none of the last election's state, and that one
+     * only recovers its election's state when asked to
+     */
+    public void testNewElectionStartsEmpty() throws IOException {
+        File lastElection = SupervisorJournal.directoryFor(new File(directory, "journal"), "1111111111");
+
+        Model model = new Model(1, TestParams.Singleton);
+        model.openJournal(lastElection, false);
+        model.addPrecinct(new File("ballot001.zip"));
+        model.setArePollsOpen(true);
+
+        /* Restarted during the election, and asked to recover, the supervisor gets it back */
+        Model restarted = new Model(1, TestParams.Singleton);
+
+        assertEquals(2, restarted.openJournal(lastElection, true));
+        assertEquals(Arrays.asList("001"), Arrays.asList(restarted.getPrecinctIDs()));
+        assertTrue(restarted.arePollsOpen());
+
+        /* Started for the next election, it has a journal of its own, and starts afresh */
+        File nextElection = SupervisorJournal.directoryFor(new File(directory, "journal"), "2222222222");
+        assertFalse(nextElection.equals(lastElection));
+
+        Model next = new Model(1, TestParams.Singleton);
+
+        assertEquals(0, next.openJournal(nextElection, false));
+        assertEquals(0, next.getPrecinctIDs().length);
+        assertFalse(next.arePollsOpen());
+
+        /* As it does with the same launch code, unless asked to recover; the old journal is set aside, not lost */
+        Model again = new Model(1, TestParams.Singleton);
+
+        assertEquals(0, again.openJournal(lastElection, false));
+        assertEquals(0, again.getPrecinctIDs().length);
+        assertFalse(again.arePollsOpen());
+        assertEquals(1, directory.list((dir, name) -> name.startsWith(lastElection.getName() + ".")).length);
+    }
+
+    /**
+     * Tests that a record cut short by a crash is dropped, and the journal written to after it
+     */
+    public void testTornRecord() throws IOException {
+        SupervisorJournal journal = open(new Recorder());
+
+        journal.commit("001", "100", StringExpression.makeString("nonce"), 3, ballot(0), EXPIRES);
+        journal.cast("100", CAST_AT);
+        journal.close();
+
+        File file = directory.listFiles((dir, name) -> name.startsWith("journal-"))[0];
+
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] { 1, 0, 0, 0 });
+        }
+
+        Recorder recorder = new Recorder();
+        journal = open(recorder);
+
+        assertEquals(2, recorder.records.size());
+
+        journal.cast("101", CAST_AT);
+        journal.close();
+
+        recorder = new Recorder();
+        open(recorder).close();
+
+        assertEquals(3, recorder.records.size());
+        assertEquals("cast 101", recorder.records.get(2));
+    }
+
+    /**
+     * Tests that a day's worth of ballots is recovered quickly
+     */
+    public void testRecoverManyBallots() throws IOException {
+        final int BALLOTS = 10000;
+
+        StringBuilder ciphertexts = new StringBuilder();
+
+        for (int i = 0; i < 64; i++)
+            ciphertexts.append("0123456789abcdef");
+
+        SupervisorJournal journal = open(new Recorder());
+
+        for (int i = 0; i < BALLOTS; i++) {
+            journal.commit("001", "" + i, StringExpression.makeString("nonce" + i), 3,
+                           new ListExpression(StringExpression.makeString("" + i), StringExpression.makeString(ciphertexts.toString())),
+                           EXPIRES);
+            journal.hash(3, i);
+            journal.cast("" + i, CAST_AT);
+        }
+
+        journal.close();
+
+        long start = System.currentTimeMillis();
+
+        Recorder recorder = new Recorder();
+        open(recorder).close();
+
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(3 * BALLOTS, recorder.records.size());
+        assertTrue("Recovery took " + elapsed + " ms", elapsed < 10000);
+    }
+}
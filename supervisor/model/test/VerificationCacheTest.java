@@ -0,0 +1,194 @@
+package supervisor.model.test;
+
+import auditorium.AuditoriumCryptoException;
+import auditorium.Certificate;
+import auditorium.Generator;
+import auditorium.IncorrectFormatException;
+import crypto.*;
+import crypto.adder.AdderInteger;
+import crypto.adder.AdderPublicKey;
+import junit.framework.TestCase;
+import supervisor.model.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests that verified ballots are remembered, skipped when tallied again, and carried between machines in a signed
+ * attestation.
+ */
+public class VerificationCacheTest extends TestCase {
+
+    /** Ballots to cast, and the candidates in the one race on each */
+    private static final int BALLOTS = 8, CANDIDATES = 3;
+
+    /** Shared across tests, since key generation and encryption dominate the running time */
+    private static AdderPublicKey PEK;
+    private static List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> ballots;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        if (ballots != null)
+            return;
+
+        AuthorityManager.SESSION.newSession(1, 1, 2);
+        AuthorityManager.SESSION.generateAuthorityKeySharePair("1");
+        AuthorityManager.SESSION.generateAuthorityPolynomialValues("1");
+        AuthorityManager.SESSION.generateRealPrivateKeyShare("1");
+        PEK = AuthorityManager.SESSION.generatePublicEncryptionKey();
+
+        DHExponentialElGamalCryptoType cryptoType = new DHExponentialElGamalCryptoType();
+        cryptoType.loadPublicKey(PEK);
+
+        RaceSelectionCrypto<ExponentialElGamalCiphertext> crypto = new RaceSelectionCrypto<>(cryptoType);
+
+        ballots = new ArrayList<>();
+
+        for (int i = 0; i < BALLOTS; i++) {
+            Map<String, Integer> voteMap = new HashMap<>();
+
+            for (int j = 0; j < CANDIDATES; j++)
+                voteMap.put("Candidate" + j, j == i % CANDIDATES ? 1 : 0);
+
+            List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> selections = new ArrayList<>();
+            selections.add(crypto.encrypt(new PlaintextRaceSelection(voteMap, "Race", 1)));
+
+            ballots.add(new Ballot<>("" + i, selections, "" + i));
+        }
+    }
+
+    public void testTallyFillsAndUsesCache() {
+        VerificationCache cache = new VerificationCache(PEK);
+
+        long start = System.nanoTime();
+        ParallelTallier.Tally<ExponentialElGamalCiphertext> first = new ParallelTallier<ExponentialElGamalCiphertext>(PEK, cache).tally(ballots);
+        long uncached = System.nanoTime() - start;
+
+        assertNull(first.getFailed());
+        assertEquals(BALLOTS, cache.size());
+
+        start = System.nanoTime();
+        ParallelTallier.Tally<ExponentialElGamalCiphertext> second = new ParallelTallier<ExponentialElGamalCiphertext>(PEK, cache).tally(ballots);
+        long cached = System.nanoTime() - start;
+
+        assertTrue(first.matches(second));
+
+        System.out.println("Tally of " + BALLOTS + " ballots: " + uncached / 1000000 + " ms verifying, "
+                           + cached / 1000000 + " ms from the cache");
+    }
+
+    public void testCachedBallotsSkipVerification() {
+        Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> bad = badBallot();
+        List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> withBad = new ArrayList<>(ballots);
+        withBad.add(bad);
+
+        VerificationCache cache = new VerificationCache(PEK);
+
+        /* Not in the cache, so it is verified, fails, and isn't added */
+        assertNotNull(new ParallelTallier<ExponentialElGamalCiphertext>(PEK, cache).tally(withBad).getFailed());
+        assertFalse(cache.isVerified(cache.digest(bad, VerificationCache.CAST)));
+
+        /* Once the cache vouches for it (however wrongly), its proof isn't checked */
+        cache.markVerified(cache.digest(bad, VerificationCache.CAST));
+        assertNull(new ParallelTallier<ExponentialElGamalCiphertext>(PEK, cache).tally(withBad).getFailed());
+
+        /* A cache for another key, or for the other rule, doesn't vouch for anything */
+        assertFalse(cache.isVerified(cache.digest(bad, VerificationCache.TOTAL)));
+        assertNotNull(new ParallelTallier<ExponentialElGamalCiphertext>(otherKey(), cache).tally(withBad).getFailed());
+    }
+
+    public void testWebServerTallier() {
+        VerificationCache cache = new VerificationCache(PEK);
+
+        Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> first = WebServerTallier.tally("total", ballots, PEK, cache);
+        assertEquals(BALLOTS, cache.size());
+
+        Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> second = WebServerTallier.tally("total", ballots, PEK, cache);
+
+        assertEquals(BALLOTS, cache.size());
+        assertTrue(first.getRaceSelections().get(0).matches(second.getRaceSelections().get(0)));
+    }
+
+    public void testAttestation() throws Exception {
+        Generator generator = new Generator();
+        Generator.Keys keys = generator.generateKey("supervisor", "supervisor");
+        Certificate cert = generator.createCert(keys.getPrivate(), keys.getPublic());
+
+        VerificationCache cache = new VerificationCache(PEK);
+        new ParallelTallier<ExponentialElGamalCiphertext>(PEK, cache).tally(ballots);
+
+        File file = File.createTempFile("verified", ".ase");
+        file.deleteOnExit();
+
+        cache.save(file, keys.getPrivate());
+
+        VerificationCache loaded = VerificationCache.load(file, PEK, cert);
+
+        assertEquals(BALLOTS, loaded.size());
+
+        for (Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot : ballots)
+            assertTrue(loaded.isVerified(loaded.digest(ballot, VerificationCache.CAST)));
+
+        /* Merged into a fresh cache, it vouches for the same ballots */
+        VerificationCache merged = new VerificationCache(PEK);
+        merged.addAll(loaded);
+        assertEquals(BALLOTS, merged.size());
+
+        /* Only for the key the ballots were verified under */
+        try {
+            VerificationCache.load(file, otherKey(), cert);
+            fail();
+        }
+        catch (IncorrectFormatException ignored) { }
+
+        /* Only if signed by the machine trusted to verify them */
+        Generator.Keys others = generator.generateKey("other", "other");
+        Certificate otherCert = generator.createCert(others.getPrivate(), others.getPublic());
+
+        try {
+            VerificationCache.load(file, PEK, otherCert);
+            fail();
+        }
+        catch (AuditoriumCryptoException ignored) { }
+
+        /* And not if it has been altered */
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length - 3] ^= 1;
+        Files.write(file.toPath(), bytes);
+
+        try {
+            VerificationCache.load(file, PEK, cert);
+            fail();
+        }
+        catch (AuditoriumCryptoException ignored) { }
+    }
+
+    /**
+     * @return  a ballot with a vote altered after it was proven
+     */
+    private static Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> badBallot() {
+        EncryptedRaceSelection<ExponentialElGamalCiphertext> rs = ballots.get(0).getRaceSelections().get(0);
+
+        Map<String, ExponentialElGamalCiphertext> map = new HashMap<>(rs.getRaceSelectionsMap());
+        ExponentialElGamalCiphertext c = map.get("Candidate0");
+        map.put("Candidate0", new ExponentialElGamalCiphertext(c.getG(), c.getH().multiply(new AdderInteger(PEK.getF(), PEK.getP())),
+                                                               PEK.getP(), c.getProof()));
+
+        List<EncryptedRaceSelection<ExponentialElGamalCiphertext>> selections = new ArrayList<>();
+        selections.add(new EncryptedRaceSelection<>(map, rs.getTitle(), rs.getSize()));
+
+        return new Ballot<>("bad", selections, "bad");
+    }
+
+    /**
+     * @return  a public key in the same group with a different public value
+     */
+    private static AdderPublicKey otherKey() {
+        return new AdderPublicKey(PEK.getP(), PEK.getG(), PEK.getH().multiply(PEK.getG()), PEK.getF());
+    }
+}
@@ -0,0 +1,172 @@
+package tap;
+
+import crypto.EncryptedRaceSelection;
+import crypto.ExponentialElGamalCiphertext;
+import sexpression.ASEConverter;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEWriter;
+import sexpression.stream.InvalidVerbatimStreamException;
+import supervisor.model.Ballot;
+import supervisor.model.Precinct;
+import votebox.events.BallotChunkEvent;
+import votebox.events.CompletedUploadEvent;
+import votebox.events.StartUploadEvent;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.TreeMap;
+
+/**
+ * Tap's end of a supervisor's chunked upload. Each chunk is checked against the upload's manifest and order, and
+ * appended to a spool file as it arrives, so that Tap holds no more than one chunk in memory however many ballots
+ * there are; the completion marker is then checked against the number of chunks spooled and their digest.
+ *
+ * @see BallotChunkEvent
+ */
+public class ChunkedUpload implements Closeable {
+
+    /** The upload's manifest */
+    private final StartUploadEvent manifest;
+
+    /** The file the chunks are spooled to, as their s-expressions one after another */
+    private final File spool;
+
+    private final OutputStream out;
+    private final ASEWriter writer;
+
+    /** The digest of the chunks spooled */
+    private final MessageDigest digest = BallotChunkEvent.newDigest();
+
+    /** The sequence number of the next chunk */
+    private int next;
+
+    /** Whether the upload has been completed and checked */
+    private boolean complete;
+
+    /**
+     * @param directory     the directory to spool the chunks in
+     * @param manifest      the event starting the upload
+     * @throws IOException if the spool file can't be made
+     */
+    public ChunkedUpload(File directory, StartUploadEvent manifest) throws IOException {
+        if (!manifest.isChunked())
+            throw new IllegalArgumentException("Not a chunked upload");
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not make the upload spool directory " + directory);
+
+        this.manifest = manifest;
+        this.spool = new File(directory, "upload-" + manifest.getUploadID().replaceAll("[^A-Za-z0-9-]", "_") + ".ase");
+        this.out = new BufferedOutputStream(new FileOutputStream(spool));
+        this.writer = new ASEWriter(out);
+    }
+
+    /**
+     * Spools the next chunk of the upload.
+     *
+     * @param chunk     the chunk
+     * @throws IOException if it can't be written
+     * @throws IllegalStateException if it isn't part of this upload, or is out of order or one too many
+     */
+    public synchronized void accept(BallotChunkEvent chunk) throws IOException {
+        if (!chunk.getUploadID().equals(manifest.getUploadID()) || chunk.getSerial() != manifest.getSerial())
+            throw new IllegalStateException("Chunk of upload " + chunk.getUploadID() + " is not part of " + manifest.getUploadID());
+
+        if (complete || chunk.getSequence() != next || next >= manifest.getChunks())
+            throw new IllegalStateException("Expected chunk " + next + " of " + manifest.getChunks() + " in upload "
+                                            + manifest.getUploadID() + " but got chunk " + chunk.getSequence());
+
+        writer.writeASE(chunk.toSExp());
+        chunk.addTo(digest);
+        next++;
+    }
+
+    /**
+     * Completes the upload, checking that every chunk was spooled, unchanged.
+     *
+     * @param completed     the event completing the upload
+     * @return              whether the upload is complete and intact
+     * @throws IOException if the spool can't be finished
+     */
+    public synchronized boolean complete(CompletedUploadEvent completed) throws IOException {
+        close();
+
+        complete = completed.isChunked() && completed.getUploadID().equals(manifest.getUploadID())
+                   && completed.getChunks() == next && next == manifest.getChunks()
+                   && completed.getDigest().equals(BallotChunkEvent.toHex(digest));
+
+        return complete;
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Reads the ballots back out of the spool into the precincts they were uploaded from, as a supervisor that
+     * uploads in one piece sends them, for the server's record.
+     *
+     * @return  the precincts, by ID
+     * @throws IOException if the upload isn't complete, or its spool can't be read
+     */
+    public synchronized TreeMap<String, Precinct<ExponentialElGamalCiphertext>> readPrecincts() throws IOException {
+        if (!complete)
+            throw new IOException("Upload " + manifest.getUploadID() + " is not complete");
+
+        TreeMap<String, Precinct<ExponentialElGamalCiphertext>> precincts = new TreeMap<>();
+
+        for (ASExpression entry : manifest.getManifest()) {
+            ListExpression precinct = (ListExpression) entry;
+            precincts.put(precinct.get(0).toString(), new Precinct<>(precinct.get(0).toString(), precinct.get(1).toString()));
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(spool))) {
+            ASEInputStreamReader reader = new ASEInputStreamReader(in);
+
+            for (ASExpression sexp; (sexp = reader.read()) != null; ) {
+                BallotChunkEvent chunk = (BallotChunkEvent) BallotChunkEvent.getMatcher().match(manifest.getSerial(), sexp);
+                Precinct<ExponentialElGamalCiphertext> precinct = chunk == null ? null : precincts.get(chunk.getPrecinctID());
+
+                if (precinct == null)
+                    throw new IOException("Unexpected chunk in the spool of upload " + manifest.getUploadID() + ": " + sexp);
+
+                /* Each ballot moves from committed to cast or challenged, as it did on the supervisor */
+                for (ASExpression ase : chunk.getBallots()) {
+                    Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot = ASEConverter.convertFromASE((ListExpression) ase);
+
+                    precinct.commitBallot(ballot.getBid(), ballot);
+
+                    if (chunk.getKind().equals(BallotChunkEvent.CAST))
+                        precinct.castBallot(ballot.getBid());
+                    else
+                        precinct.challengeBallot(ballot.getBid());
+                }
+            }
+        }
+        catch (InvalidVerbatimStreamException | ClassCastException e) {
+            throw new IOException("Could not read the spool of upload " + manifest.getUploadID(), e);
+        }
+
+        return precincts;
+    }
+
+    /**
+     * @return  the upload's manifest
+     */
+    public StartUploadEvent getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @return  the file the chunks are spooled to
+     */
+    public File getSpool() {
+        return spool;
+    }
+
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,296 @@
+package tap;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEWriter;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tap's streaming upload of the supervisors' records to the server. The records are first written to a file, gzipped,
+ * in the compact binary s-expression format (see {@link #writeRecord}), one record at a time, so they are never all in
+ * memory at once; the file is then sent in fixed-size chunks, each with its CRC-32 and the offset it starts at, and
+ * finished with the SHA-256 of the whole. If the connection drops, the upload asks the server how much it has and
+ * carries on from there, so a failed upload resumes rather than starting over.
+ *
+ * @see UploadReceiver for the protocol, and a stand-in server to test against
+ */
+public class ServerUpload {
+
+    /** The default number of bytes in a chunk */
+    public static final int CHUNK_BYTES = 256 * 1024;
+
+    /** The default number of times a chunk is tried before the upload is given up on */
+    public static final int ATTEMPTS = 5;
+
+    /** The URL uploads are sent under, as [server]/[upload-id] */
+    private final String server;
+
+    /** The most bytes in a chunk */
+    private final int chunkBytes;
+
+    /** The number of times a request is tried before the upload is given up on */
+    private final int attempts;
+
+    private final HttpClient client = new DefaultHttpClient();
+
+    /** The bytes sent by the last upload, which is less than its length if it was resumed */
+    private long bytesSent;
+
+    /**
+     * @param server        the URL uploads are sent under, e.g. http://localhost:9000/upload
+     * @param chunkBytes    the most bytes in a chunk
+     * @param attempts      the number of times a request is tried before the upload is given up on
+     */
+    public ServerUpload(String server, int chunkBytes, int attempts) {
+        if (chunkBytes < 1 || attempts < 1)
+            throw new IllegalArgumentException("A chunk must hold at least one byte and be tried at least once");
+
+        this.server = server.endsWith("/") ? server.substring(0, server.length() - 1) : server;
+        this.chunkBytes = chunkBytes;
+        this.attempts = attempts;
+
+        HttpConnectionParams.setConnectionTimeout(client.getParams(), 10000);
+        HttpConnectionParams.setSoTimeout(client.getParams(), 30000);
+    }
+
+    /**
+     * @see #ServerUpload(String, int, int)
+     */
+    public ServerUpload(String server) {
+        this(server, CHUNK_BYTES, ATTEMPTS);
+    }
+
+    /**
+     * Uploads a file, resuming from wherever the server's copy of it ends.
+     *
+     * @param uploadID      the upload's ID, which stays the same if it is resumed
+     * @param file          the file to upload
+     * @throws IOException if the upload fails more times in a row than allowed, or the server rejects it
+     */
+    public void upload(String uploadID, File file) throws IOException {
+        String url = server + "/" + uploadID;
+        long length = file.length();
+        byte[] chunk = new byte[chunkBytes];
+
+        bytesSent = 0;
+
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long offset = -1;
+            int failures = 0;
+
+            while (offset < length) {
+                try {
+                    /* Find out where to carry on from whenever the last request might not have got through */
+                    if (offset < 0)
+                        offset = Long.parseLong(execute(new HttpGet(url), 200));
+
+                    if (offset >= length)
+                        break;
+
+                    int size = (int) Math.min(chunkBytes, length - offset);
+
+                    in.seek(offset);
+                    in.readFully(chunk, 0, size);
+
+                    CRC32 crc = new CRC32();
+                    crc.update(chunk, 0, size);
+
+                    HttpPut put = new HttpPut(url + "?offset=" + offset);
+                    put.setHeader("X-Chunk-CRC32", Long.toHexString(crc.getValue()));
+                    put.setEntity(new ByteArrayEntity(chunk, 0, size, ContentType.APPLICATION_OCTET_STREAM));
+
+                    offset = Long.parseLong(execute(put, 200));
+                    bytesSent += size;
+                    failures = 0;
+                }
+                catch (IOException | NumberFormatException e) {
+                    if (e instanceof RejectedException)
+                        throw (RejectedException) e;
+
+                    if (++failures >= attempts)
+                        throw new IOException("Gave up on upload " + uploadID + " after " + failures + " attempts", e);
+
+                    System.err.println("Upload " + uploadID + " interrupted (" + e.getMessage() + "), resuming...");
+                    offset = -1;
+                    pause(failures);
+                }
+            }
+        }
+
+        HttpPost complete = new HttpPost(url + "/complete");
+        complete.setHeader("X-SHA-256", sha256(file));
+
+        for (int failures = 1; ; failures++) {
+            try {
+                execute(complete, 200);
+                return;
+            }
+            catch (IOException e) {
+                if (e instanceof RejectedException || failures >= attempts)
+                    throw e;
+
+                pause(failures);
+            }
+        }
+    }
+
+    /**
+     * @return  the bytes sent by the last upload, which is less than its length if it was resumed
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public void shutdown() {
+        client.getConnectionManager().shutdown();
+    }
+
+    /**
+     * Executes a request.
+     *
+     * @return  the body of the response
+     * @throws IOException if the request fails, or is answered with anything but the expected status
+     */
+    private String execute(HttpUriRequest request, int expected) throws IOException {
+        HttpResponse response = client.execute(request);
+        String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+        int status = response.getStatusLine().getStatusCode();
+
+        /* A 409 means the server has a different amount than was thought, which the next attempt will ask for */
+        if (status == 409)
+            throw new IOException("Server has " + body + " bytes, not the offset sent");
+
+        if (status != expected)
+            throw new RejectedException(request.getMethod() + " " + request.getURI() + ": " + status + " " + body);
+
+        return body.trim();
+    }
+
+    /**
+     * Backs off before the next attempt, for longer the more attempts have failed.
+     */
+    private static void pause(int failures) throws IOException {
+        try { Thread.sleep(Math.min(500L << failures, 30000L)); }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while resuming the upload");
+        }
+    }
+
+    /**
+     * @param file  a file
+     * @return      the SHA-256 of its contents, in hex
+     * @throws IOException if it can't be read
+     */
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest;
+
+        try { digest = MessageDigest.getInstance("SHA-256"); }
+        catch (NoSuchAlgorithmException e) { throw new RuntimeException(e); }
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+
+            for (int n; (n = in.read(buffer)) > 0; )
+                digest.update(buffer, 0, n);
+        }
+
+        return String.format("%064x", new java.math.BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * Writes the supervisors' records to a file to upload, gzipped, as binary s-expressions:<br>
+     * <br>
+     * (tap-record [tap-serial])<br>
+     * then for each complete chunked upload, (supervisor-upload [serial] [upload-id] [manifest]) followed by its
+     * chunks as they were spooled (see {@link votebox.events.BallotChunkEvent}),<br>
+     * then for each record uploaded in one piece, (supervisor-record [serial] [the record, Java serialized]),<br>
+     * then (end-tap-record [number of expressions before it]).
+     *
+     * @param file              the file to write
+     * @param tapSerial         the serial of the Tap uploading
+     * @param uploads           the supervisors' chunked uploads; any that aren't complete are left out
+     * @param supervisorRecord  the records of supervisors that uploaded in one piece, by serial
+     * @throws IOException if a spool can't be read or the file written
+     */
+    public static void writeRecord(File file, int tapSerial, Collection<ChunkedUpload> uploads,
+                                   Map<String, Serializable> supervisorRecord) throws IOException {
+
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file)), 65536)) {
+            ASEWriter writer = new ASEWriter(out);
+            int expressions = 0;
+
+            writer.writeASEBinary(new ListExpression("tap-record", "" + tapSerial));
+            expressions++;
+
+            for (ChunkedUpload upload : uploads) {
+                if (!upload.isComplete())
+                    continue;
+
+                writer.writeASEBinary(new ListExpression(StringExpression.makeString("supervisor-upload"),
+                                                         StringExpression.makeString("" + upload.getManifest().getSerial()),
+                                                         StringExpression.makeString(upload.getManifest().getUploadID()),
+                                                         upload.getManifest().getManifest()));
+                expressions++;
+
+                try (InputStream in = new BufferedInputStream(new FileInputStream(upload.getSpool()))) {
+                    ASEInputStreamReader reader = new ASEInputStreamReader(in);
+
+                    for (ASExpression chunk; (chunk = reader.read()) != null; expressions++)
+                        writer.writeASEBinary(chunk);
+                }
+                catch (InvalidVerbatimStreamException e) {
+                    throw new IOException("Could not read the spool of upload " + upload.getManifest().getUploadID(), e);
+                }
+            }
+
+            for (Map.Entry<String, Serializable> entry : supervisorRecord.entrySet()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+                try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes)) {
+                    objectOutputStream.writeObject(entry.getValue());
+                }
+
+                writer.writeASEBinary(new ListExpression(StringExpression.makeString("supervisor-record"),
+                                                         StringExpression.makeString(entry.getKey()),
+                                                         StringExpression.makeString(bytes.toByteArray())));
+                expressions++;
+            }
+
+            writer.writeASEBinary(new ListExpression("end-tap-record", "" + expressions));
+        }
+    }
+
+    /**
+     * Thrown when the server rejects a request outright, which trying again won't fix.
+     */
+    public static class RejectedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public RejectedException(String message) {
+            super(message);
+        }
+    }
+}
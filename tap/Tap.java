@@ -72,6 +72,15 @@ public class Tap {
      * This will be uploaded to the bulletin board */
     private Map<String, Serializable> supervisorRecord;
 
+    /** The supervisors' chunked uploads, by supervisor serial, spooled to disk as they arrive */
+    private Map<Integer, ChunkedUpload> chunkedUploads;
+
+    /** The directory chunked uploads are spooled in */
+    private final File spoolDirectory;
+
+    /** The URL to stream uploads to (see {@link ServerUpload}), or null to post them in one piece */
+    private String uploadServer;
+
 
     /**
      * Initializes a new Trapper.<BR>
@@ -91,7 +100,9 @@ public class Tap {
         uploadPending = new ArrayList<>();
         uploadComplete = new ArrayList<>();
         supervisorRecord = new HashMap<>();
+        chunkedUploads = new HashMap<>();
 
+        spoolDirectory = new File(params.getLogLocation() + ".uploads");
     }
 
     /**
@@ -110,6 +121,15 @@ public class Tap {
         catch (IOException e) { e.printStackTrace(); }
     }
 
+    /**
+     * Streams uploads to the server in resumable chunks, rather than posting them in one piece.
+     *
+     * @param uploadServer  the URL to stream uploads to (see {@link ServerUpload}), or null to post them in one piece
+     */
+    public void setUploadServer(String uploadServer) {
+        this.uploadServer = uploadServer;
+    }
+
     /**
      * Dumps the ballots to the server TODO more refined explanation
      */
@@ -117,12 +137,31 @@ public class Tap {
 
         System.out.println("Uploading Ballots to the server!");
 
+        if (uploadServer != null) {
+            streamToServer();
+            return;
+        }
+
         HttpClient client = new DefaultHttpClient();
 
         HttpPost post = new HttpPost("http://localhost:9000/3FF968A3B47CT34C");
 
         String encoded;
 
+        /* Supervisors that uploaded in chunks are recorded as if they had uploaded in one piece, which the server reads */
+        for (Map.Entry<Integer, ChunkedUpload> upload : chunkedUploads.entrySet()) {
+
+            if (!upload.getValue().isComplete())
+                continue;
+
+            try { supervisorRecord.put(Integer.toString(upload.getKey()), upload.getValue().readPrecincts()); }
+            catch (IOException e) {
+                System.err.println("Could not read supervisor " + upload.getKey() + "'s upload: " + e.getMessage());
+            }
+        }
+
+        chunkedUploads.clear();
+
         try {
 
             System.out.println("Encoding the Supervisors' records... ");
@@ -182,7 +221,9 @@ public class Tap {
                     BallotScanAcceptedEvent.getMatcher(),
                     PollsClosedEvent.getMatcher(),
                     StartUploadEvent.getMatcher(),
-                    BallotUploadEvent.getMatcher()
+                    BallotUploadEvent.getMatcher(),
+                    BallotChunkEvent.getMatcher(),
+                    CompletedUploadEvent.getMatcher()
             );
 
         }
@@ -237,11 +278,74 @@ public class Tap {
             public void provisionalCommitBallot(ProvisionalCommitEvent provisionalCommitEvent) {}
             public void announceProvisionalBallot(ProvisionalBallotEvent provisionalBallotEvent) {}
             public void provisionalAuthorizedToCast(ProvisionalAuthorizeEvent provisionalAuthorizeEvent) {}
-            public void completedUpload(CompletedUploadEvent completedUploadEvent) {}
+            /**
+             * Handler for the end of a chunked upload: checks that every chunk arrived, and uploads to the server once
+             * no more supervisors are uploading.
+             */
+            public void completedUpload(CompletedUploadEvent completedUploadEvent) {
+
+                int serial = completedUploadEvent.getSerial();
+                ChunkedUpload upload = chunkedUploads.get(serial);
+
+                /* Ballots sent in one message were handled when they arrived */
+                if (!completedUploadEvent.isChunked() || upload == null)
+                    return;
+
+                try {
+                    if (!upload.complete(completedUploadEvent)) {
+                        System.err.println("Supervisor " + serial + "'s upload " + upload.getManifest().getUploadID() + " is incomplete or altered, discarding it!");
+                        chunkedUploads.remove(serial);
+                    }
+                }
+                catch (IOException e) {
+                    System.err.println("Could not spool supervisor " + serial + "'s upload: " + e.getMessage());
+                    chunkedUploads.remove(serial);
+                }
+
+                uploadPending.remove(Integer.valueOf(serial));
+
+                uploadIfDone();
+            }
 
             public void startUpload(StartUploadEvent startUploadEvent) {
                 System.out.println("Supervisor started upload...");
                 uploadPending.add(startUploadEvent.getSerial());
+
+                /* A supervisor that starts over sets aside what it had uploaded so far */
+                ChunkedUpload earlier = chunkedUploads.remove(startUploadEvent.getSerial());
+
+                if (earlier != null) {
+                    try { earlier.close(); }
+                    catch (IOException e) { System.err.println("Could not close supervisor " + startUploadEvent.getSerial() + "'s earlier upload: " + e.getMessage()); }
+                }
+
+                /* A chunked upload is spooled as its chunks arrive */
+                if (startUploadEvent.isChunked()) {
+                    try { chunkedUploads.put(startUploadEvent.getSerial(), new ChunkedUpload(spoolDirectory, startUploadEvent)); }
+                    catch (IOException e) { System.err.println("Could not spool supervisor " + startUploadEvent.getSerial() + "'s upload: " + e.getMessage()); }
+                }
+            }
+
+            /**
+             * Handler for a chunk of a supervisor's ballots: spools it, and forwards it on straight away.
+             */
+            public void ballotChunk(BallotChunkEvent ballotChunkEvent) {
+
+                int serial = ballotChunkEvent.getSerial();
+                ChunkedUpload upload = chunkedUploads.get(serial);
+
+                if (upload == null) {
+                    System.err.println("Supervisor " + serial + " sent a chunk without first indicating it would upload!");
+                    return;
+                }
+
+                try {
+                    upload.accept(ballotChunkEvent);
+                    forward(ballotChunkEvent);
+                }
+                catch (IOException | IllegalStateException e) {
+                    System.err.println("Rejected supervisor " + serial + "'s chunk " + ballotChunkEvent.getSequence() + ": " + e.getMessage());
+                }
             }
 
             @Override
@@ -272,7 +376,14 @@ public class Tap {
                 /* Put the serial and map into the record map */
                 supervisorRecord.put(Integer.toString(serial), ballotUploadEvent.getMap());
 
-                /* Start uploading if we're done making the map (i.e. if no more pending and not currently uploading) */
+                uploadIfDone();
+            }
+
+            /**
+             * Starts uploading if we're done making the map (i.e. if no more pending and not currently uploading)
+             */
+            private void uploadIfDone() {
+
                 if(uploadPending.size()==0 && !uploading) {
 
                     Map<Serializable, String> invertedMap = new HashMap<>();
@@ -361,9 +472,46 @@ public class Tap {
         } catch (Exception e) { e.printStackTrace(); }
     }
 
+    /**
+     * Writes the supervisors' records to a file, compressed, and streams it to the server, resuming if the connection
+     * drops. The file is kept if the upload fails, so the records aren't lost.
+     *
+     * @see ServerUpload
+     */
+    private void streamToServer() {
+
+        String uploadID = _mySerial + "-" + System.currentTimeMillis();
+        File record = new File(spoolDirectory, "record-" + uploadID + ".ase.gz");
+
+        ServerUpload upload = new ServerUpload(uploadServer);
+
+        try {
+            if (!spoolDirectory.isDirectory() && !spoolDirectory.mkdirs())
+                throw new IOException("Could not make the upload spool directory " + spoolDirectory);
+
+            System.out.println("Writing the Supervisors' records... ");
+            ServerUpload.writeRecord(record, _mySerial, chunkedUploads.values(), supervisorRecord);
+
+            System.out.println("Streaming upload " + uploadID + " (" + record.length() + " bytes)...");
+            upload.upload(uploadID, record);
+
+            chunkedUploads.clear();
+            supervisorRecord.clear();
+            record.delete();
+
+            System.out.println("Upload complete!");
+        }
+        catch (IOException e) {
+            System.err.println("Upload failed, the records are kept in " + record);
+            e.printStackTrace();
+        }
+        finally { upload.shutdown(); }
+    }
+
     /**
      * Usage:<BR>
-     * 		java votebox.Tap [serial] [report address] [port]
+     * 		java votebox.Tap [serial] [report address] [port] [upload=url]<BR>
+     * where upload, if given, is the URL to stream uploads to (see {@link UploadReceiver})
      *
      * @param args      arguments to be used
      *
@@ -376,6 +524,15 @@ public class Tap {
 
         System.out.println(params.getReportAddress());
 
+        /* Take out the upload server, if one was given */
+        String uploadServer = null;
+
+        for (String arg : args)
+            if (arg.startsWith("upload="))
+                uploadServer = arg.substring("upload=".length());
+
+        args = Arrays.stream(args).filter(arg -> !arg.startsWith("upload=")).toArray(String[]::new);
+
         String reportAddr;
 
         int serial;
@@ -465,7 +622,9 @@ public class Tap {
                     localCon.connect(addr);
 
                     /* Start the tap */
-                    (new Tap(serial, localCon.getOutputStream(), launchCode, params)).start();
+                    Tap tap = new Tap(serial, localCon.getOutputStream(), launchCode, params);
+                    tap.setUploadServer(uploadServer);
+                    tap.start();
                     System.out.println("Connection successful to " + addr);
                     break;
                 }
@@ -0,0 +1,196 @@
+package tap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import sim.utils.ArgParse;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A local stand-in for the server Tap uploads to, speaking the protocol {@link ServerUpload} uses, so uploads can be
+ * tested (and interrupted, and resumed) without the real one. Each upload is written to [directory]/[id].part as its
+ * chunks arrive, and renamed to [id].gz once it is complete and its digest checks out.
+ *
+ * <pre>
+ * GET  /upload/[id]                    the number of bytes of the upload received so far
+ * PUT  /upload/[id]?offset=[n]         a chunk starting at byte n, with its CRC-32 in the X-Chunk-CRC32 header;
+ *                                      answered with the bytes received, or 409 (and the bytes received) if n isn't
+ *                                      the end of what has been received, or 400 if the checksum doesn't match
+ * POST /upload/[id]/complete           completes the upload, whose SHA-256 is in the X-SHA-256 header
+ * </pre>
+ *
+ * It is run as a program, with key=value arguments: port (9000 by default) and dir (the directory to write uploads
+ * to, "received" by default).
+ */
+public class UploadReceiver {
+
+    private final HttpServer server;
+
+    /** The directory uploads are written to */
+    private final File directory;
+
+    /**
+     * Starts receiving uploads.
+     *
+     * @param port          the port to listen on, or 0 for any free one
+     * @param directory     the directory to write uploads to, made if it doesn't exist
+     * @throws IOException if the port can't be listened on, or the directory made
+     */
+    public UploadReceiver(int port, File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not make the upload directory " + directory);
+
+        this.directory = directory;
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/upload/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return  the port being listened on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @param uploadID  an upload's ID
+     * @return          the file the complete upload was written to (which exists only once it is complete)
+     */
+    public File getUpload(String uploadID) {
+        return new File(directory, uploadID + ".gz");
+    }
+
+    /**
+     * @param uploadID  an upload's ID
+     * @return          the file an incomplete upload is being written to
+     */
+    public File getPart(String uploadID) {
+        return new File(directory, uploadID + ".part");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private synchronized void handle(HttpExchange exchange) throws IOException {
+        try {
+            URI uri = exchange.getRequestURI();
+            String[] path = uri.getPath().substring("/upload/".length()).split("/");
+            String uploadID = path[0];
+
+            if (!uploadID.matches("[A-Za-z0-9_-]+")) {
+                respond(exchange, 400, "Bad upload ID");
+                return;
+            }
+
+            File part = getPart(uploadID);
+
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    respond(exchange, 200, "" + (getUpload(uploadID).exists() ? getUpload(uploadID).length() : part.length()));
+                    break;
+
+                case "PUT":
+                    receiveChunk(exchange, uri, part);
+                    break;
+
+                case "POST":
+                    if (path.length == 2 && path[1].equals("complete"))
+                        complete(exchange, uploadID, part);
+                    else
+                        respond(exchange, 404, "Unknown request");
+                    break;
+
+                default:
+                    respond(exchange, 405, "Unknown method");
+            }
+        }
+        finally { exchange.close(); }
+    }
+
+    /**
+     * Appends a chunk to an upload, if it starts where the upload so far ends and its checksum matches.
+     */
+    private void receiveChunk(HttpExchange exchange, URI uri, File part) throws IOException {
+        long offset = -1;
+
+        if (uri.getQuery() != null && uri.getQuery().startsWith("offset="))
+            offset = Long.parseLong(uri.getQuery().substring("offset=".length()));
+
+        byte[] chunk = readAll(exchange.getRequestBody());
+
+        if (offset != part.length()) {
+            respond(exchange, 409, "" + part.length());
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(chunk);
+
+        if (!Long.toHexString(crc.getValue()).equalsIgnoreCase(exchange.getRequestHeaders().getFirst("X-Chunk-CRC32"))) {
+            respond(exchange, 400, "Checksum mismatch");
+            return;
+        }
+
+        try (FileOutputStream out = new FileOutputStream(part, true)) {
+            out.write(chunk);
+        }
+
+        respond(exchange, 200, "" + part.length());
+    }
+
+    /**
+     * Completes an upload if its digest matches.
+     */
+    private void complete(HttpExchange exchange, String uploadID, File part) throws IOException {
+        if (getUpload(uploadID).exists()) {
+            respond(exchange, 200, "Already complete");
+            return;
+        }
+
+        if (!ServerUpload.sha256(part).equalsIgnoreCase(exchange.getRequestHeaders().getFirst("X-SHA-256"))) {
+            respond(exchange, 400, "Digest mismatch");
+            return;
+        }
+
+        Files.move(part.toPath(), getUpload(uploadID).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Received upload " + uploadID + " (" + getUpload(uploadID).length() + " bytes)");
+
+        respond(exchange, 200, "Complete");
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        for (int n; (n = in.read(buffer)) > 0; )
+            out.write(buffer, 0, n);
+
+        return out.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, Object> opts = ArgParse.parseArgs(args);
+
+        UploadReceiver receiver = new UploadReceiver(Integer.parseInt(opts.getOrDefault("port", "9000").toString()),
+                                                     new File(opts.getOrDefault("dir", "received").toString()));
+
+        System.out.println("Receiving uploads on port " + receiver.getPort() + " into " + receiver.directory);
+    }
+}
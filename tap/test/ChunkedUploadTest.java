@@ -0,0 +1,202 @@
+package tap.test;
+
+import crypto.EncryptedRaceSelection;
+import crypto.ExponentialElGamalCiphertext;
+import junit.framework.TestCase;
+import sexpression.ASExpression;
+import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.InvalidVerbatimStreamException;
+import supervisor.model.Ballot;
+import supervisor.model.BallotUploader;
+import supervisor.model.Precinct;
+import tap.ChunkedUpload;
+import votebox.events.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A test suite for chunked uploads, from BallotUploader on the supervisor to ChunkedUpload on Tap
+ */
+public class ChunkedUploadTest extends TestCase {
+
+    private File directory;
+
+    /** The precincts uploaded */
+    private List<Precinct<ExponentialElGamalCiphertext>> precincts;
+
+    /** The events of the upload, as Tap hears them */
+    private List<IAnnounceEvent> events;
+
+    private VoteBoxEventMatcher matcher = new VoteBoxEventMatcher(StartUploadEvent.getMatcher(),
+            BallotChunkEvent.getMatcher(), CompletedUploadEvent.getMatcher());
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        directory = Files.createTempDirectory("uploads").toFile();
+
+        precincts = new ArrayList<>();
+
+        for (int p = 0; p < 2; p++) {
+            Precinct<ExponentialElGamalCiphertext> precinct = new Precinct<>("00" + p, "ballot00" + p + ".zip");
+
+            for (int i = 0; i < 25; i++) {
+                String bid = p + "-" + i;
+                precinct.commitBallot(bid, new Ballot<>(bid, new ArrayList<EncryptedRaceSelection<ExponentialElGamalCiphertext>>(), "nonce" + bid));
+
+                /* Cast two in three, and challenge the rest */
+                if (i % 3 != 0)
+                    precinct.castBallot(bid);
+            }
+
+            precinct.closePolls();
+            precincts.add(precinct);
+        }
+
+        /* Send each event through its s-expression, as it would go over the network */
+        events = new ArrayList<>();
+        new BallotUploader(7, 4, this::hear).upload(precincts);
+    }
+
+    private void hear(IAnnounceEvent event) {
+        try { events.add(matcher.match(event.getSerial(), ASExpression.makeVerbatim(event.toSExp().toVerbatim()))); }
+        catch (InvalidVerbatimStreamException e) { throw new RuntimeException(e); }
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+
+        if (files != null)
+            for (File file : files)
+                file.delete();
+
+        directory.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Tests that the manifest, chunks and completion marker agree, and the chunks are bounded
+     */
+    public void testUpload() throws Exception {
+        StartUploadEvent start = (StartUploadEvent) events.get(0);
+        CompletedUploadEvent completed = (CompletedUploadEvent) events.get(events.size() - 1);
+
+        assertTrue(start.isChunked());
+        assertEquals(2, start.getManifest().size());
+
+        /* 16 cast and 9 challenged ballots a precinct, 4 to a chunk */
+        assertEquals(2 * (4 + 3), start.getChunks());
+        assertEquals(start.getChunks(), events.size() - 2);
+        assertEquals(start.getChunks(), completed.getChunks());
+
+        int ballots = 0;
+
+        for (IAnnounceEvent event : events.subList(1, events.size() - 1)) {
+            BallotChunkEvent chunk = (BallotChunkEvent) event;
+
+            assertTrue(chunk.getBallots().size() <= 4);
+            ballots += chunk.getBallots().size();
+        }
+
+        assertEquals(50, ballots);
+
+        ChunkedUpload upload = new ChunkedUpload(directory, start);
+
+        for (IAnnounceEvent event : events.subList(1, events.size() - 1))
+            upload.accept((BallotChunkEvent) event);
+
+        assertTrue(upload.complete(completed));
+
+        /* The spool holds the chunks, in order */
+        try (FileInputStream in = new FileInputStream(upload.getSpool())) {
+            ASEInputStreamReader reader = new ASEInputStreamReader(in);
+
+            for (IAnnounceEvent event : events.subList(1, events.size() - 1))
+                assertEquals(event.toSExp(), reader.read());
+
+            assertNull(reader.read());
+        }
+    }
+
+    /**
+     * Tests that a complete upload reads back as the precincts uploaded, in the form the server is sent them
+     */
+    @SuppressWarnings("unchecked")
+    public void testReadPrecincts() throws Exception {
+        ChunkedUpload upload = new ChunkedUpload(directory, (StartUploadEvent) events.get(0));
+
+        for (IAnnounceEvent event : events.subList(1, events.size() - 1))
+            upload.accept((BallotChunkEvent) event);
+
+        assertTrue(upload.complete((CompletedUploadEvent) events.get(events.size() - 1)));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(upload.readPrecincts());
+        }
+
+        Map<String, Precinct<ExponentialElGamalCiphertext>> read;
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (Map<String, Precinct<ExponentialElGamalCiphertext>>) in.readObject();
+        }
+
+        assertEquals(2, read.size());
+
+        for (Precinct<ExponentialElGamalCiphertext> precinct : precincts) {
+            Precinct<ExponentialElGamalCiphertext> copy = read.get(precinct.getPrecinctID());
+
+            assertEquals(precinct.getBallotFile(), copy.getBallotFile());
+            assertEquals(bids(precinct.getCastBallots()), bids(copy.getCastBallots()));
+            assertEquals(bids(precinct.getChallengedBallots()), bids(copy.getChallengedBallots()));
+        }
+    }
+
+    private static List<String> bids(List<Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>>> ballots) {
+        List<String> bids = new ArrayList<>();
+
+        for (Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot : ballots)
+            bids.add(ballot.getBid());
+
+        return bids;
+    }
+
+    /**
+     * Tests that a chunk out of order is rejected, and an upload missing a chunk isn't completed
+     */
+    public void testMissingChunk() throws Exception {
+        ChunkedUpload upload = new ChunkedUpload(directory, (StartUploadEvent) events.get(0));
+
+        upload.accept((BallotChunkEvent) events.get(1));
+
+        try {
+            upload.accept((BallotChunkEvent) events.get(3));
+            fail("Accepted a chunk out of order");
+        }
+        catch (IllegalStateException expected) { }
+
+        assertFalse(upload.complete((CompletedUploadEvent) events.get(events.size() - 1)));
+    }
+
+    /**
+     * Tests that an upload whose chunks were altered isn't completed
+     */
+    public void testAlteredChunk() throws Exception {
+        ChunkedUpload upload = new ChunkedUpload(directory, (StartUploadEvent) events.get(0));
+
+        for (IAnnounceEvent event : events.subList(1, events.size() - 1)) {
+            BallotChunkEvent chunk = (BallotChunkEvent) event;
+
+            /* Pass off the challenged ballots as cast */
+            upload.accept(new BallotChunkEvent(chunk.getSerial(), chunk.getUploadID(), chunk.getSequence(),
+                                               chunk.getPrecinctID(), BallotChunkEvent.CAST, chunk.getBallots()));
+        }
+
+        assertFalse(upload.complete((CompletedUploadEvent) events.get(events.size() - 1)));
+    }
+}
@@ -0,0 +1,150 @@
+package tap.test;
+
+import junit.framework.TestCase;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import sexpression.stream.ASEInputStreamReader;
+import tap.ServerUpload;
+import tap.UploadReceiver;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A test suite for Tap's streaming upload to the server, against the stand-in UploadReceiver
+ */
+public class ServerUploadTest extends TestCase {
+
+    private File directory;
+
+    private UploadReceiver receiver;
+
+    private ServerUpload upload;
+
+    /** The file to upload, of a little over 5 chunks */
+    private File file;
+
+    private byte[] contents;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        directory = Files.createTempDirectory("server-upload").toFile();
+        receiver = new UploadReceiver(0, new File(directory, "received"));
+        upload = new ServerUpload("http://localhost:" + receiver.getPort() + "/upload", 4096, 2);
+
+        contents = new byte[5 * 4096 + 100];
+        new Random(0).nextBytes(contents);
+
+        file = new File(directory, "record");
+        Files.write(file.toPath(), contents);
+    }
+
+    protected void tearDown() throws Exception {
+        upload.shutdown();
+        receiver.stop();
+
+        delete(directory);
+        super.tearDown();
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+
+        if (files != null)
+            for (File f : files)
+                delete(f);
+
+        file.delete();
+    }
+
+    /**
+     * Tests that a file is uploaded whole, in chunks
+     */
+    public void testUpload() throws Exception {
+        upload.upload("1-100", file);
+
+        assertTrue(Arrays.equals(contents, Files.readAllBytes(receiver.getUpload("1-100").toPath())));
+        assertFalse(receiver.getPart("1-100").exists());
+        assertEquals(contents.length, upload.getBytesSent());
+    }
+
+    /**
+     * Tests that an interrupted upload resumes from where the server's copy ends, rather than starting over
+     */
+    public void testResume() throws Exception {
+        /* The first 3 chunks got through before the connection dropped */
+        Files.write(receiver.getPart("1-100").toPath(), Arrays.copyOf(contents, 3 * 4096));
+
+        upload.upload("1-100", file);
+
+        assertTrue(Arrays.equals(contents, Files.readAllBytes(receiver.getUpload("1-100").toPath())));
+        assertEquals(contents.length - 3 * 4096, upload.getBytesSent());
+    }
+
+    /**
+     * Tests that an upload whose copy on the server was corrupted isn't accepted
+     */
+    public void testCorrupted() throws Exception {
+        byte[] corrupted = Arrays.copyOf(contents, 2 * 4096);
+        corrupted[100] ^= 1;
+
+        Files.write(receiver.getPart("1-100").toPath(), corrupted);
+
+        try {
+            upload.upload("1-100", file);
+            fail("A corrupted upload was accepted");
+        }
+        catch (ServerUpload.RejectedException expected) { }
+
+        assertFalse(receiver.getUpload("1-100").exists());
+    }
+
+    /**
+     * Tests that a chunk the server rejects outright isn't retried until the attempts run out
+     */
+    public void testRejected() throws Exception {
+        try {
+            upload.upload("1.100", file);
+            fail("An upload the server rejected succeeded");
+        }
+        catch (ServerUpload.RejectedException expected) { }
+
+        assertEquals(0, upload.getBytesSent());
+    }
+
+    /**
+     * Tests that the record written for upload reads back as the supervisors' records, compressed
+     */
+    public void testWriteRecord() throws Exception {
+        Map<String, Serializable> supervisorRecord = new HashMap<>();
+        supervisorRecord.put("3", new ArrayList<>(Arrays.asList("ballot1", "ballot2")));
+
+        File record = new File(directory, "record.ase.gz");
+        ServerUpload.writeRecord(record, 9, new ArrayList<>(), supervisorRecord);
+
+        try (InputStream in = new GZIPInputStream(new FileInputStream(record))) {
+            ASEInputStreamReader reader = new ASEInputStreamReader(in);
+
+            assertEquals(new ListExpression("tap-record", "9"), reader.read());
+
+            ListExpression entry = (ListExpression) reader.read();
+            assertEquals("supervisor-record", entry.get(0).toString());
+            assertEquals("3", entry.get(1).toString());
+
+            try (ObjectInputStream objects = new ObjectInputStream(
+                    new ByteArrayInputStream(((StringExpression) entry.get(2)).getBytesCopy()))) {
+                assertEquals(supervisorRecord.get("3"), objects.readObject());
+            }
+
+            assertEquals(new ListExpression("end-tap-record", "2"), reader.read());
+            assertNull(reader.read());
+        }
+
+        /* And goes up like any other file */
+        upload.upload("9-200", record);
+        assertEquals(ServerUpload.sha256(record), ServerUpload.sha256(receiver.getUpload("9-200")));
+    }
+}
@@ -25,7 +25,8 @@ package verifier.auditoriumverifierplugins;
 import auditorium.IncorrectFormatException;
 import auditorium.Message;
 import sexpression.ASExpression;
-import sexpression.stream.ASEInputStreamReader;
+import sexpression.ExpressionArena;
+import sexpression.stream.ASEParallelReader;
 import sexpression.stream.InvalidVerbatimStreamException;
 import verifier.ActivationRecord;
 import verifier.IVerifierPlugin;
@@ -38,7 +39,6 @@ import verifier.value.Value;
 
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -80,15 +80,19 @@ public class AuditoriumLog implements IVerifierPlugin {
 		DagBuilder dag = new /*FastDAGBuilder(); //*/ DagBuilder();
 		ArrayList<Expression> set = new ArrayList<>();
 
-		try {
-			ASEInputStreamReader in = new ASEInputStreamReader( new FileInputStream(new File(verifier.getArgs().get("log"))));
+		/* Messages are kept as bytes in one arena, and only rebuilt as objects when the verifier looks at them */
+		ExpressionArena arena = new ExpressionArena();
+
+		/* Map the log rather than streaming it, and parse it on every core */
+		try (ASEParallelReader in = new ASEParallelReader(new File(verifier.getArgs().get("log")))) {
 
             ASExpression exp;
             /* Loop until end of file and load into dag to build set */
 			while ((exp = in.read()) != null) {
 				Message msg = new Message(exp);
-                dag.add(msg);
-				set.add(new Expression(msg.toASE()));
+				Expression expr = new Expression(arena, arena.add(msg.toASE()));
+                dag.add(msg, expr);
+				set.add(expr);
 			}
 		} catch (EOFException ignored) {
 		} catch (IOException | IncorrectFormatException | InvalidVerbatimStreamException e) {
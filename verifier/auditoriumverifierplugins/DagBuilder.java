@@ -78,11 +78,24 @@ public class DagBuilder {
      *                         formatted as expected.
      */
     public void add(Message message) throws FormatException {
+        add( message, new Expression( message.toASE() ) );
+    }
+
+    /**
+     * Add a message to the list of messages that this builder is holding,
+     * using an already built expression (e.g. one held in an arena) for it
+     * 
+     * @param message Add this message to the list
+     * @param expr    The expression value to store for this message
+     *
+     * @throws FormatException This method throws if the given message's datum is not
+     *                         formatted as expected.
+     */
+    public void add(Message message, Expression expr) throws FormatException {
 
         try {
 
         	Expression ptr  = new Expression( new MessagePointer( message ).toASE());
-        	Expression expr = new Expression( message.toASE() );
             
         	/* Store ptr-->message mapping in DAG */
         	_ptrToMsg.put( ptr, expr );
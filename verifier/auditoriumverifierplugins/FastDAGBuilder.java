@@ -71,12 +71,24 @@ public class FastDAGBuilder extends DagBuilder {
      *                         formatted as expected.
      */
     public void add(Message message) throws FormatException {
+        add(message, new Expression(message.toASE()));
+    }
+
+    /**
+     * Add a message to the list of messages that this builder is holding,
+     * using an already built expression for it
+     *
+     * @param message Add this message to the list
+     * @param expr    The expression value to store for this message
+     * @throws FormatException This method throws if the given message's datum is not
+     *                         formatted as expected.
+     */
+    public void add(Message message, Expression expr) throws FormatException {
 
         try {
 
         	MessagePointer msgPtr   = new MessagePointer(message);
         	Expression ptr          = new Expression(msgPtr.toASE());
-        	Expression expr         = new Expression(message.toASE());
             String msgPtrID         = msgPtr.getNodeId();
 
             
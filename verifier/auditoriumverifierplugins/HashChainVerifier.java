@@ -4,7 +4,7 @@ import auditorium.IncorrectFormatException;
 import auditorium.Message;
 import sexpression.ASExpression;
 import sexpression.StringExpression;
-import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEParallelReader;
 import sexpression.stream.InvalidVerbatimStreamException;
 import verifier.HashChainCompromisedException;
 import verifier.IVerifierPlugin;
@@ -13,7 +13,6 @@ import verifier.Verifier;
 
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 /**
@@ -51,8 +50,8 @@ public class HashChainVerifier implements IVerifierPlugin {
         /* Initialize that hash chain with string 0000000000, the known starting value for our hash */
         ASExpression hash = StringExpression.makeString(StringExpression.makeString("0000000000").getSHA1());
 
-        try {
-            ASEInputStreamReader in = new ASEInputStreamReader( new FileInputStream(new File(verifier.getArgs().get("log"))));
+        /* Map the log rather than streaming it, and parse it on every core */
+        try (ASEParallelReader in = new ASEParallelReader(new File(verifier.getArgs().get("log")))) {
 
             ASExpression exp;
 
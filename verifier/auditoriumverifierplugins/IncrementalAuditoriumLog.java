@@ -25,6 +25,7 @@ package verifier.auditoriumverifierplugins;
 import auditorium.IncorrectFormatException;
 import auditorium.Message;
 import sexpression.ASExpression;
+import sexpression.ExpressionArena;
 import verifier.*;
 import verifier.value.DAGValue;
 import verifier.value.Expression;
@@ -46,6 +47,7 @@ public class IncrementalAuditoriumLog implements IIncrementalPlugin {
 
 	private Verifier verifier;
 	private ArrayList<Expression> allset;
+	private ExpressionArena arena;
 	private SetValue allsetValue;
 	private DagBuilder alldag;
 	private DAGValue alldagValue;
@@ -62,6 +64,7 @@ public class IncrementalAuditoriumLog implements IIncrementalPlugin {
 	 */
 	public void init(Verifier verifier) {
 		allset = new ArrayList<>();
+		arena = new ExpressionArena();
 		alldag = new DagBuilder();
 		this.verifier = verifier;
 
@@ -84,8 +87,9 @@ public class IncrementalAuditoriumLog implements IIncrementalPlugin {
             /* TODO We should probably not throw a runtime exception, but some how note the hash chain was compromised. */
             throw new InvalidLogEntryException(e);
         }
-        allset.add(new Expression(entry.toASE()));
-		alldag.add(entry);
+        Expression expr = new Expression(arena, arena.add(entry.toASE()));
+        allset.add(expr);
+		alldag.add(entry, expr);
 		registerGlobals();
 	}
 
@@ -96,9 +100,12 @@ public class IncrementalAuditoriumLog implements IIncrementalPlugin {
 	 */
 	public void addLogData(ASExpression entry) throws InvalidLogEntryException {
 		try {
-            hashChainVerifier.verifyIncremental(new Message(entry));
-			allset.add(new Expression(entry));
-			alldag.add(new Message(entry));
+            Message msg = new Message(entry);
+            hashChainVerifier.verifyIncremental(msg);
+
+			Expression expr = new Expression(arena, arena.add(msg.toASE()));
+			allset.add(expr);
+			alldag.add(msg, expr);
 			registerGlobals();
 		} catch (IncorrectFormatException | HashChainCompromisedException e) { throw new InvalidLogEntryException(e); }
     }
@@ -23,12 +23,17 @@
 package verifier.value;
 
 import sexpression.ASExpression;
+import sexpression.ExpressionArena;
 import sexpression.ListExpression;
 import sexpression.StringExpression;
 
+import java.lang.ref.SoftReference;
+
 /**
  * This class represents the s-expression verifier value. Any arbitrary
- * s-expression can be represented.
+ * s-expression can be represented. An expression may also be a flyweight over
+ * an entry in an ExpressionArena, in which case its objects are only built
+ * when needed and may be dropped again under memory pressure.
  * 
  * @author kyle
  * 
@@ -37,6 +42,13 @@ public class Expression extends Value implements Comparable {
 
 	private final ASExpression _ase;
 
+	/** The arena and index holding this expression, if it is arena-backed */
+	private final ExpressionArena _arena;
+	private final int _index;
+
+	/** The last materialized form of an arena-backed expression */
+	private SoftReference<ASExpression> _materialized;
+
 	/**
 	 * @param ase
 	 *            The SExpression represented by this Expression object.
@@ -44,6 +56,21 @@ public class Expression extends Value implements Comparable {
 	public Expression(ASExpression ase) {
 		super(true);
 		_ase = ase;
+		_arena = null;
+		_index = -1;
+	}
+
+	/**
+	 * @param arena
+	 *            The arena holding the represented SExpression.
+	 * @param index
+	 *            The index of the SExpression in the arena.
+	 */
+	public Expression(ExpressionArena arena, int index) {
+		super(true);
+		_ase = null;
+		_arena = arena;
+		_index = index;
 	}
 
 	/**
@@ -60,14 +87,35 @@ public class Expression extends Value implements Comparable {
 	public boolean equals(Object o) {
 		if (!(o instanceof Expression))
 			return false;
-		return _ase.equals(((Expression) o)._ase);
+
+		Expression other = (Expression) o;
+
+		/* Arena-backed expressions compare by their bytes, without being materialized */
+		if (_arena != null && other._arena != null)
+			return _arena.verbatimEquals(_index, other._arena, other._index);
+		if (_arena != null)
+			return hashCode() == other.hashCode() && _arena.verbatimEquals(_index, other._ase.toVerbatim());
+		if (other._arena != null)
+			return other.equals(this);
+
+		return _ase.equals(other._ase);
 	}
 
 	/**
 	 * @return This method returns the s-expression that this value represents.
 	 */
 	public ASExpression getASE() {
-		return _ase;
+		if (_arena == null)
+			return _ase;
+
+		ASExpression ase = _materialized == null ? null : _materialized.get();
+
+		if (ase == null) {
+			ase = _arena.get(_index);
+			_materialized = new SoftReference<>(ase);
+		}
+
+		return ase;
 	}
 
 	/**
@@ -75,6 +123,9 @@ public class Expression extends Value implements Comparable {
 	 */
 	@Override
 	public int hashCode() {
+		if (_arena != null)
+			return _arena.hashCode(_index);
+
 		return _ase.hashCode();
 	}
 
@@ -83,7 +134,7 @@ public class Expression extends Value implements Comparable {
 	 */
 	@Override
 	public String toString() {
-		return _ase.toString();
+		return getASE().toString();
 	}
 
 	/**
@@ -95,6 +146,6 @@ public class Expression extends Value implements Comparable {
 
 	@Override
 	public ASExpression toASE() {
-		return new ListExpression(StringExpression.make("quote"), _ase);
+		return new ListExpression(StringExpression.make("quote"), getASE());
 	}
 }
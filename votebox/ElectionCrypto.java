@@ -0,0 +1,220 @@
+package votebox;
+
+import auditorium.AuditoriumCryptoException;
+import auditorium.IKeyStore;
+import crypto.*;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.RandomnessPool;
+import sexpression.ASExpression;
+import supervisor.model.Ballot;
+
+import java.util.List;
+
+/**
+ * The crypto a booth needs for one election, set up once rather than for every voter: the election's public key,
+ * read from the key store a single time (so the fixed-base tables built on it are kept), the crypto-type and ballot
+ * crypter using it, and the pool of encryptions precomputed with it. Each voter gets a {@link Session}, which only
+ * adds their nonce and ballot ID.
+ *
+ * Sessions also measure how long it takes from a voter being authorized to their first page being shown, which is
+ * kept here so it can be watched across an election.
+ *
+ * @see VoteBox
+ */
+public class ElectionCrypto {
+
+    /** The number of ballots' worth of encryptions to keep precomputed */
+    private static final int POOLED_BALLOTS = 2;
+
+    /** The public key ballots are encrypted with */
+    private final AdderPublicKey PEK;
+
+    /** Encryptions precomputed while the booth is idle, kept from one voter to the next */
+    private final RandomnessPool randomnessPool;
+
+    /** Encrypts ballots with the key, taking from the pool */
+    private final BallotCrypter<ExponentialElGamalCiphertext> ballotCrypter;
+
+    /** The sessions that have shown their first page, and the total and worst time it took them, in nanoseconds */
+    private long sessions, totalStartup, maxStartup;
+
+    /**
+     * @param PEK   the public key for the election
+     */
+    public ElectionCrypto(AdderPublicKey PEK) {
+        this.PEK = PEK;
+
+        /* Sized once a ballot is loaded */
+        randomnessPool = new RandomnessPool(PEK, DHExponentialElGamalCryptoType.VOTE_DOMAIN, 0);
+
+        DHExponentialElGamalCryptoType cryptoType = new DHExponentialElGamalCryptoType();
+        cryptoType.loadPublicKey(PEK);
+        cryptoType.setRandomnessPool(randomnessPool);
+
+        ballotCrypter = new BallotCrypter<>(cryptoType);
+    }
+
+    /**
+     * @param keyStore  the key store holding the election's public key
+     * @return          the crypto for the election, with its key loaded from the store
+     *
+     * @throws AuditoriumCryptoException if the key can't be loaded
+     */
+    public static ElectionCrypto load(IKeyStore keyStore) throws AuditoriumCryptoException {
+        return new ElectionCrypto(keyStore.loadPEK());
+    }
+
+    /**
+     * @return  the public key ballots are encrypted with
+     */
+    public AdderPublicKey getPEK() {
+        return PEK;
+    }
+
+    /**
+     * @return  the pool of precomputed encryptions
+     */
+    public RandomnessPool getRandomnessPool() {
+        return randomnessPool;
+    }
+
+    /**
+     * Sizes the pool of precomputed encryptions for a ballot (and the next), and has it start filling.
+     *
+     * @param raceGroups    the races on the ballot, as the ballot adapter gives them
+     */
+    public void reserve(List<List<String>> raceGroups) {
+        int ciphertexts = 0;
+
+        for (List<String> raceGroup : raceGroups)
+            ciphertexts += raceGroup.size();
+
+        randomnessPool.setCapacity(POOLED_BALLOTS * ciphertexts);
+        randomnessPool.resume();
+    }
+
+    /**
+     * Starts a voter's session, timing it from now.
+     *
+     * @param nonce     the nonce the voter was authorized with
+     * @param bid       the ID of the voter's ballot
+     * @return          the session
+     */
+    public Session startSession(ASExpression nonce, String bid) {
+        return new Session(nonce, bid);
+    }
+
+    /**
+     * @return  the number of sessions that have shown their first page
+     */
+    public synchronized long getSessions() {
+        return sessions;
+    }
+
+    /**
+     * @return  the mean time from authorization to first page, in milliseconds
+     */
+    public synchronized double getMeanStartupMillis() {
+        return sessions == 0 ? 0 : totalStartup / 1e6 / sessions;
+    }
+
+    /**
+     * @return  the longest time from authorization to first page, in milliseconds
+     */
+    public synchronized double getMaxStartupMillis() {
+        return maxStartup / 1e6;
+    }
+
+    /**
+     * Stops precomputing encryptions, once the election (or the booth's part in it) is over.
+     */
+    public void close() {
+        randomnessPool.close();
+    }
+
+    private synchronized void recordStartup(long nanos) {
+        sessions++;
+        totalStartup += nanos;
+        maxStartup = Math.max(maxStartup, nanos);
+    }
+
+    public String toString() {
+        return String.format("authorization to first page: %.1f ms mean, %.1f ms worst, over %d voters",
+                             getMeanStartupMillis(), getMaxStartupMillis(), getSessions());
+    }
+
+    /**
+     * One voter's use of the election's crypto.
+     */
+    public class Session {
+
+        /** The nonce the voter was authorized with */
+        private final ASExpression nonce;
+
+        /** The ID of the voter's ballot */
+        private final String bid;
+
+        /** When the voter was authorized, and how long until their first page was shown (-1 until it is) */
+        private final long authorized;
+        private long startup = -1;
+
+        private Session(ASExpression nonce, String bid) {
+            this.nonce = nonce;
+            this.bid = bid;
+            this.authorized = System.nanoTime();
+        }
+
+        /**
+         * @return  the nonce the voter was authorized with
+         */
+        public ASExpression getNonce() {
+            return nonce;
+        }
+
+        /**
+         * @return  the ID of the voter's ballot
+         */
+        public String getBid() {
+            return bid;
+        }
+
+        /**
+         * Records that the voter's first page has been shown; only the first call counts.
+         *
+         * @return  the time since the voter was authorized, in milliseconds
+         */
+        public double firstPageShown() {
+            if (startup < 0) {
+                startup = System.nanoTime() - authorized;
+                recordStartup(startup);
+            }
+
+            return getStartupMillis();
+        }
+
+        /**
+         * @return  the time from authorization to first page, in milliseconds, or -1 if it hasn't been shown
+         */
+        public double getStartupMillis() {
+            return startup < 0 ? -1 : startup / 1e6;
+        }
+
+        /**
+         * Encrypts the voter's ballot, taking precomputed encryptions from the pool, which is paused meanwhile so as
+         * not to compete with it.
+         *
+         * @param ballot    the voter's ballot
+         * @return          the ballot, encrypted
+         */
+        public Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> encrypt(Ballot<PlaintextRaceSelection> ballot) {
+            randomnessPool.pause();
+
+            try { return ballotCrypter.encrypt(ballot); }
+            catch (Exception e) { e.printStackTrace(); throw new RuntimeException("Could not encrypt the ballot because of " + e.getClass()); }
+            finally {
+                System.out.printf("Randomness pool hit rate: %.1f%% (%s)%n", 100 * randomnessPool.getHitRate(), randomnessPool);
+                randomnessPool.resume();
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@ import auditorium.Event;
 import auditorium.NetworkException;
 import crypto.*;
 import crypto.adder.AdderInteger;
+import crypto.adder.AdderPublicKey;
 import preptool.model.language.Language;
 import preptool.model.layout.manager.RenderingUtils;
 import printer.Printer;
@@ -95,7 +96,12 @@ public class VoteBox{
     private int superSerial;
     private String precinct;
     private final String launchCode;
-    private BallotCrypter<ExponentialElGamalCiphertext> ballotCrypter;
+
+    /** The election's key, crypter and precomputed encryptions; kept from one voter to the next */
+    private ElectionCrypto electionCrypto;
+
+    /** The current voter's use of it */
+    private ElectionCrypto.Session session;
 
     /** Will keep the short code - nonce pairings to send over when the polls close */
     private HashMap<ASExpression, VotePair> plaintextAuditCommits;
@@ -212,6 +218,55 @@ public class VoteBox{
         labelChangedEvent.addObserver(obs);
     }
 
+    /**
+     * @return  the crypto for the current election, loaded from the key store if it hasn't been
+     */
+    private ElectionCrypto getElectionCrypto() {
+
+        if (electionCrypto == null) {
+            try { electionCrypto = ElectionCrypto.load(_constants.getKeyStore()); }
+            catch (AuditoriumCryptoException ex) { throw new RuntimeException("Error loading the PEK from the KeyStore."); }
+        }
+
+        return electionCrypto;
+    }
+
+    /**
+     * Sets up the crypto for a new election, reading its key afresh. The old crypto (and its precomputed encryptions)
+     * is kept if the key hasn't changed. If the key can't be read yet, it is left to the first voter's authorization.
+     */
+    private void openElection() {
+
+        AdderPublicKey PEK;
+
+        try { PEK = _constants.getKeyStore().loadPEK(); }
+        catch (AuditoriumCryptoException | RuntimeException ex) {
+            System.out.println("Could not load the PEK yet, will load it when a voter is authorized: " + ex.getMessage());
+            PEK = null;
+        }
+
+        if (electionCrypto != null && !electionCrypto.getPEK().equals(PEK)) {
+            System.out.println("Closing the last election's crypto, " + electionCrypto);
+            electionCrypto.close();
+            electionCrypto = null;
+        }
+
+        if (electionCrypto == null && PEK != null)
+            electionCrypto = new ElectionCrypto(PEK);
+    }
+
+    /**
+     * Starts a voter's session with the election's crypto.
+     *
+     * @param nonce     the nonce the voter was authorized with
+     */
+    private void startSession(ASExpression nonce) {
+
+        this.nonce = nonce;
+        bid = String.valueOf(rand.nextInt(Integer.MAX_VALUE));
+        session = getElectionCrypto().startSession(nonce, bid);
+    }
+
     /**
      * Launch the VoteBox middle. Registers for events that we would want to
      * know about (such as cast ballot, so we can send the message over
@@ -226,6 +281,13 @@ public class VoteBox{
         voting = true;
         currentDriver.run();
 
+        if (session != null)
+            System.out.printf("Authorization to first page: %.1f ms (%s)%n", session.firstPageShown(), electionCrypto);
+
+        /* Precompute the encryptions for this ballot (and the next) while the voter fills it in */
+        if (electionCrypto != null && currentDriver.getBallot() != null)
+            electionCrypto.reserve(currentDriver.getBallotAdapter().getRaceGroups());
+
         /* Listen for commit UI events.  When received, send out an encrypted vote. */
         currentDriver.getView().registerForCommit(new Observer() {
 
@@ -263,8 +325,7 @@ public class VoteBox{
                 /* Encrypt Ballot */
                 Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> encBallot;
 
-                try { encBallot = ballotCrypter.encrypt(ballot); }
-                catch (Exception e) { e.printStackTrace(); throw new RuntimeException("Could not encrypt the ballot because of " + e.getClass()); }
+                encBallot = session.encrypt(ballot);
 
 
                 /* Check if provisional and choose announcement format */
@@ -389,8 +450,7 @@ public class VoteBox{
                     /* Encrypt Ballot */
                     Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> encBallot;
 
-                    try { encBallot = ballotCrypter.encrypt(ballot); }
-                    catch (Exception e) { e.printStackTrace(); throw new RuntimeException("Could not encrypt the ballot because of "+ e.getClass()); }
+                    encBallot = session.encrypt(ballot);
 
                     committedBallot = true;
 
@@ -560,6 +620,7 @@ public class VoteBox{
             public void ballotAccepted(BallotScanAcceptedEvent e){}
             public void ballotRejected(BallotScanRejectedEvent e){}
             public void uploadBallots(BallotUploadEvent ballotUploadEvent) {}
+            public void ballotChunk(BallotChunkEvent ballotChunkEvent) {}
 
             /**
              * Handler for the activated message. Look to see if this VoteBox's
@@ -648,8 +709,6 @@ public class VoteBox{
                         currentDriver = null;
                     }
 
-                    nonce = e.getNonce();
-
                     /* Current working directory TODO path construction */
                     File path   = new File(System.getProperty("user.dir"));
                     path        = new File(path, "tmp");
@@ -657,20 +716,11 @@ public class VoteBox{
                     path        = new File(path, "ballot"/* + protectedCount*/);
                     path.mkdirs();
 
-                    bid = String.valueOf(rand.nextInt(Integer.MAX_VALUE));
+                    /* The election's crypto is already set up, the voter only needs a session */
+                    startSession(e.getNonce());
                     precinct = e.getPrecinct();
 
                     System.out.println("Dealing with ballot " + bid + " in precinct " + precinct + "...");
-                    System.out.println("Initialising crypto...");
-
-                    DHExponentialElGamalCryptoType cryptoType = new DHExponentialElGamalCryptoType();
-
-                    try { cryptoType.loadPublicKey(_constants.getKeyStore().loadPEK()); }
-                    catch (AuditoriumCryptoException ex) { throw new RuntimeException("Error loading the PEK from the KeyStore."); }
-
-                    ballotCrypter = new BallotCrypter<>(cryptoType);
-
-                    System.out.println("Crypto set!");
 
                     try {
 
@@ -851,10 +901,15 @@ public class VoteBox{
 
 
             /**
-             * Handler for Polls Open. If not voting, booth prompts for pin
+             * Handler for Polls Open. Sets up the election's crypto and, if not
+             * voting, booth prompts for pin
              * @see votebox.events.PollsOpenEvent
              */
             public void pollsOpen(PollsOpenEvent e) {
+
+                /* Load the election's key now, rather than while the first voter waits */
+                openElection();
+
                 if(!voting)
                     promptForPin("Enter Authorization PIN");
             }
@@ -955,7 +1010,7 @@ public class VoteBox{
                         currentDriver = null;
                     }
 
-                    nonce = e.getNonce();
+                    startSession(e.getNonce());
 
                     /* Current working directory */
                     /* TODO path fixing */
@@ -965,8 +1020,6 @@ public class VoteBox{
                     path        = new File(path, "ballot"/* + protectedCount*/);
                     path.mkdirs();
 
-                    bid = String.valueOf(rand.nextInt(Integer.MAX_VALUE));
-
                     try {
                         _currentBallotFile = new File(path, "ballot.zip");
                         staticCurrentBallotFile = _currentBallotFile;
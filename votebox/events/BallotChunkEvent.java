@@ -0,0 +1,152 @@
+package votebox.events;
+
+import sexpression.*;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An event carrying one batch of a supervisor's ballots to Tap, as part of a chunked upload. An upload starts with a
+ * {@link StartUploadEvent} giving its manifest, then sends the ballots of each precinct, cast and then challenged, in
+ * chunks of a bounded number, numbered from 0, and ends with a {@link CompletedUploadEvent} giving the number of
+ * chunks and a digest of them all. Each chunk is its own auditorium message, so is signed (and can be forwarded) on
+ * its own.<br>
+ * <br>
+ * Format: (ballot-chunk [upload-id] [sequence] [precinct-id] [cast|challenged] ([ballot] ...))
+ *
+ * @see supervisor.model.BallotUploader
+ */
+public class BallotChunkEvent extends AAnnounceEvent {
+
+    /** The kinds of ballot a chunk can hold */
+    public static final String CAST = "cast", CHALLENGED = "challenged";
+
+    private static MatcherRule MATCHER = new MatcherRule() {
+        private ASExpression pattern = new ListExpression(StringExpression.makeString("ballot-chunk"),
+                StringWildcard.SINGLETON, StringWildcard.SINGLETON, StringWildcard.SINGLETON,
+                StringWildcard.SINGLETON, new ListWildcard(Wildcard.SINGLETON));
+
+        public IAnnounceEvent match(int serial, ASExpression sexp) {
+
+            ASExpression res = pattern.match(sexp);
+
+            if (res != NoMatch.SINGLETON) {
+
+                ListExpression lsexp = (ListExpression) sexp;
+
+                try {
+                    return new BallotChunkEvent(serial, lsexp.get(1).toString(), Integer.parseInt(lsexp.get(2).toString()),
+                                                lsexp.get(3).toString(), lsexp.get(4).toString(), (ListExpression) lsexp.get(5));
+                }
+                catch (NumberFormatException e) { return null; }
+            }
+
+            return null;
+        }
+    };
+
+    /** The upload this is part of */
+    private final String uploadID;
+
+    /** This chunk's place in the upload, from 0 */
+    private final int sequence;
+
+    /** The precinct the ballots are from */
+    private final String precinctID;
+
+    /** Whether the ballots were cast or challenged */
+    private final String kind;
+
+    /** The ballots, each as converted by ASEConverter */
+    private final ListExpression ballots;
+
+    /**
+     * @param serial        the serial of the supervisor uploading
+     * @param uploadID      the upload this is part of
+     * @param sequence      this chunk's place in the upload, from 0
+     * @param precinctID    the precinct the ballots are from
+     * @param kind          {@link #CAST} or {@link #CHALLENGED}
+     * @param ballots       the ballots
+     */
+    public BallotChunkEvent(int serial, String uploadID, int sequence, String precinctID, String kind, ListExpression ballots) {
+        super(serial);
+
+        this.uploadID = uploadID;
+        this.sequence = sequence;
+        this.precinctID = precinctID;
+        this.kind = kind;
+        this.ballots = ballots;
+    }
+
+    /**
+     * @return a MatcherRule for parsing this event type.
+     */
+    public static MatcherRule getMatcher(){
+        return MATCHER;
+    }
+
+    public String getUploadID() {
+        return uploadID;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public String getPrecinctID() {
+        return precinctID;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public ListExpression getBallots() {
+        return ballots;
+    }
+
+    /**
+     * @return  a new digest of the kind {@link CompletedUploadEvent} gives, to {@link #addTo add} chunks to
+     */
+    public static MessageDigest newDigest() {
+        try { return MessageDigest.getInstance("SHA-256"); }
+        catch (NoSuchAlgorithmException e) { throw new IllegalStateException("SHA-256 is not available", e); }
+    }
+
+    /**
+     * Adds this chunk to a digest of an upload's chunks.
+     *
+     * @param digest    a digest from {@link #newDigest()}
+     */
+    public void addTo(MessageDigest digest) {
+        digest.update(toSExp().toVerbatim());
+    }
+
+    /**
+     * @param digest    a digest of an upload's chunks
+     * @return          the digest, in hexadecimal, as {@link CompletedUploadEvent} gives it
+     */
+    public static String toHex(MessageDigest digest) {
+        return String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * @see votebox.events.IAnnounceEvent#fire(votebox.events.VoteBoxEventListener)
+     */
+    public void fire(VoteBoxEventListener l) {
+        l.ballotChunk(this);
+    }
+
+    /**
+     * @see votebox.events.IAnnounceEvent#toSExp()
+     */
+    public ASExpression toSExp() {
+        return new ListExpression(StringExpression.makeString("ballot-chunk"),
+                StringExpression.makeString(uploadID),
+                StringExpression.makeString("" + sequence),
+                StringExpression.makeString(precinctID),
+                StringExpression.makeString(kind),
+                ballots);
+    }
+}
@@ -1,13 +1,15 @@
 package votebox.events;
 
-import sexpression.ASExpression;
-import sexpression.ListExpression;
-import sexpression.NoMatch;
-import sexpression.StringExpression;
+import sexpression.*;
 
 /**
  * An event that signifies to Tap that the supervisor has finished uploading
  *
+ * At the end of a chunked upload (see {@link BallotChunkEvent}) it gives the number of chunks sent and the SHA-256
+ * digest of their s-expressions, in order, so Tap can tell that it has every chunk, unchanged.<br>
+ * <br>
+ * Format: (completed-upload) or (completed-upload [upload-id] [chunks] [digest])
+ *
  * @author Matt Bernhard
  */
 public class CompletedUploadEvent extends AAnnounceEvent {
@@ -19,6 +21,9 @@ public class CompletedUploadEvent extends AAnnounceEvent {
 
         private ASExpression pattern = new ListExpression(StringExpression.makeString("completed-upload"));
 
+        private ASExpression chunkedPattern = new ListExpression(StringExpression.makeString("completed-upload"),
+                StringWildcard.SINGLETON, StringWildcard.SINGLETON, StringWildcard.SINGLETON);
+
         public IAnnounceEvent match(int serial, ASExpression sexp) {
 
             ASExpression res = pattern.match(sexp);
@@ -26,15 +31,67 @@ public class CompletedUploadEvent extends AAnnounceEvent {
             if (res != NoMatch.SINGLETON)
                 return new CompletedUploadEvent(serial);
 
+            if (chunkedPattern.match(sexp) != NoMatch.SINGLETON) {
+
+                ListExpression lsexp = (ListExpression) sexp;
+
+                try { return new CompletedUploadEvent(serial, lsexp.get(1).toString(), Integer.parseInt(lsexp.get(2).toString()), lsexp.get(3).toString()); }
+                catch (NumberFormatException e) { return null; }
+            }
+
             return null;
         }
     };
 
+    /** The ID of the chunked upload this completes, or null if it wasn't chunked */
+    private final String uploadID;
+
+    /** The number of chunks sent */
+    private final int chunks;
+
+    /** The digest of the chunks sent */
+    private final String digest;
+
     /**
      * @see AAnnounceEvent#AAnnounceEvent(int)
      */
     public CompletedUploadEvent(int serial) {
+        this(serial, null, 0, null);
+    }
+
+    /**
+     * Completes a chunked upload.
+     *
+     * @param serial        the serial of the supervisor uploading
+     * @param uploadID      the upload's ID
+     * @param chunks        the number of chunks sent
+     * @param digest        the SHA-256 digest of the chunks' s-expressions, in order, in hexadecimal
+     */
+    public CompletedUploadEvent(int serial, String uploadID, int chunks, String digest) {
         super(serial);
+
+        this.uploadID = uploadID;
+        this.chunks = chunks;
+        this.digest = digest;
+    }
+
+    /**
+     * @return whether this completes a chunked upload
+     */
+    public boolean isChunked() {
+        return uploadID != null;
+    }
+
+    public String getUploadID() {
+        return uploadID;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public String getDigest() {
+        return digest;
     }
 
     /**
@@ -57,7 +114,11 @@ public class CompletedUploadEvent extends AAnnounceEvent {
      */
     @Override
     public ASExpression toSExp() {
-        return new ListExpression(StringExpression.make("completed-upload"));
+        if (!isChunked())
+            return new ListExpression(StringExpression.make("completed-upload"));
+
+        return new ListExpression(StringExpression.make("completed-upload"), StringExpression.make(uploadID),
+                                  StringExpression.make("" + chunks), StringExpression.make(digest));
     }
 
 
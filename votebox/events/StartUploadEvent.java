@@ -1,14 +1,16 @@
 package votebox.events;
 
-import sexpression.ASExpression;
-import sexpression.ListExpression;
-import sexpression.NoMatch;
-import sexpression.StringExpression;
+import sexpression.*;
 
 /**
  * An event that signifies to Tap that the supervisor will be sending over encrypted tallied ballots,
  * one ballot per precinct.
  *
+ * A chunked upload (see {@link BallotChunkEvent}) starts with this event carrying the upload's manifest: its ID, the
+ * number of chunks that will follow, and each precinct's ballot style and numbers of cast and challenged ballots.<br>
+ * <br>
+ * Format: (start-upload) or (start-upload [upload-id] [chunks] (([precinct-id] [ballot-file] [cast] [challenged]) ...))
+ *
  * @author Matt Bernhard
  */
 public class StartUploadEvent extends AAnnounceEvent {
@@ -17,25 +19,68 @@ public class StartUploadEvent extends AAnnounceEvent {
      * Matcher for the StartUploadEvent message
      */
     private static MatcherRule MATCHER = new MatcherRule() {
+
         private ASExpression pattern = new ListExpression(StringExpression
                 .makeString("start-upload"));
 
+        private ASExpression manifestPattern = new ListExpression(StringExpression.makeString("start-upload"),
+                StringWildcard.SINGLETON, StringWildcard.SINGLETON,
+                new ListWildcard(new ListExpression(StringWildcard.SINGLETON, StringWildcard.SINGLETON,
+                                                    StringWildcard.SINGLETON, StringWildcard.SINGLETON)));
+
         public IAnnounceEvent match(int serial, ASExpression sexp) {
+
             ASExpression res = pattern.match( sexp );
-            if (res != NoMatch.SINGLETON) {
 
+            if (res != NoMatch.SINGLETON) {
                 return new StartUploadEvent(serial);
             }
 
+            if (manifestPattern.match(sexp) != NoMatch.SINGLETON) {
+
+                ListExpression lsexp = (ListExpression) sexp;
+
+                try {
+                    return new StartUploadEvent(serial, lsexp.get(1).toString(), Integer.parseInt(lsexp.get(2).toString()),
+                                                (ListExpression) lsexp.get(3));
+                }
+                catch (NumberFormatException e) { return null; }
+            }
+
             return null;
         }
     };
 
+    /** The ID of the chunked upload this starts, or null if the ballots follow in one {@link BallotUploadEvent} */
+    private final String uploadID;
+
+    /** The number of chunks that will follow */
+    private final int chunks;
+
+    /** The precincts in the upload, as ([precinct-id] [ballot-file] [cast] [challenged]) */
+    private final ListExpression manifest;
+
     /**
      * @see AAnnounceEvent#AAnnounceEvent(int)
      */
     public StartUploadEvent(int serial) {
+        this(serial, null, 0, ListExpression.EMPTY);
+    }
+
+    /**
+     * Starts a chunked upload.
+     *
+     * @param serial        the serial of the supervisor uploading
+     * @param uploadID      the upload's ID, which each of its chunks carries
+     * @param chunks        the number of chunks that will follow
+     * @param manifest      the precincts in the upload, as ([precinct-id] [ballot-file] [cast] [challenged])
+     */
+    public StartUploadEvent(int serial, String uploadID, int chunks, ListExpression manifest) {
         super(serial);
+
+        this.uploadID = uploadID;
+        this.chunks = chunks;
+        this.manifest = manifest;
     }
 
     /**
@@ -43,6 +88,25 @@ public class StartUploadEvent extends AAnnounceEvent {
      */
     public static MatcherRule getMatcher(){ return MATCHER; }
 
+    /**
+     * @return whether the ballots will follow in chunks, rather than in one {@link BallotUploadEvent}
+     */
+    public boolean isChunked() {
+        return uploadID != null;
+    }
+
+    public String getUploadID() {
+        return uploadID;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public ListExpression getManifest() {
+        return manifest;
+    }
+
     /**
      * Fires this event on a listener
      *
@@ -58,8 +122,10 @@ public class StartUploadEvent extends AAnnounceEvent {
      */
     @Override
     public ASExpression toSExp() {
-        return new ListExpression(StringExpression.make("start-upload"));
-    }
-
+        if (!isChunked())
+            return new ListExpression(StringExpression.make("start-upload"));
 
+        return new ListExpression(StringExpression.make("start-upload"), StringExpression.make(uploadID),
+                                  StringExpression.make("" + chunks), manifest);
+    }
 }
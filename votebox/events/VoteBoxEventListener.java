@@ -282,4 +282,9 @@ public interface VoteBoxEventListener {
     void completedUpload(CompletedUploadEvent completedUploadEvent);
 
     void uploadBallots(BallotUploadEvent ballotUploadEvent);
+
+    /**
+     * @param ballotChunkEvent one batch of ballots in a supervisor's chunked upload
+     */
+    void ballotChunk(BallotChunkEvent ballotChunkEvent);
 }
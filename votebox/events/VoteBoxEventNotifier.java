@@ -90,6 +90,12 @@ public class VoteBoxEventNotifier implements VoteBoxEventListener {
             l.uploadBallots(ballotUploadEvent);
     }
 
+    @Override
+    public void ballotChunk(BallotChunkEvent ballotChunkEvent) {
+        for(VoteBoxEventListener l : listeners)
+            l.ballotChunk(ballotChunkEvent);
+    }
+
     public void joined(JoinEvent e) {
         System.out.println("Joined!");
         for (VoteBoxEventListener l : listeners)
@@ -27,6 +27,7 @@ import auditorium.SimpleKeyStore;
 import junit.framework.TestCase;
 import org.apache.commons.codec.binary.Base64;
 import sexpression.ASExpression;
+import sexpression.ListExpression;
 import sexpression.StringExpression;
 import sexpression.stream.InvalidVerbatimStreamException;
 import votebox.events.*;
@@ -66,7 +67,7 @@ public class VoteBoxEventsTest extends TestCase {
                 SpoilBallotEvent.getMatcher(), StartScannerEvent.getMatcher(),
                 StatusEvent.getMatcher(), TapMachineEvent.getMatcher(), ProvisionalBallotEvent.getMatcher(),
                 CompletedUploadEvent.getMatcher(), StartUploadEvent.getMatcher(),
-                BallotUploadEvent.getMatcher());
+                BallotUploadEvent.getMatcher(), BallotChunkEvent.getMatcher());
 
         keyStore = new SimpleKeyStore("keys");
     }
@@ -733,6 +734,32 @@ public class VoteBoxEventsTest extends TestCase {
         assertEquals(event.getSerial(), event2.getSerial());
     }
 
+    public void testChunkedUpload() {
+        ListExpression manifest = new ListExpression(new ListExpression("001", "ballot001.zip", "2", "1"));
+        StartUploadEvent start = new StartUploadEvent(0, "0-1", 2, manifest);
+
+        assertEquals("(start-upload 0-1 2 ((001 ballot001.zip 2 1)))", start.toSExp().toString());
+
+        StartUploadEvent start2 = (StartUploadEvent) matcher.match(0, start.toSExp());
+
+        assertTrue(start2.isChunked());
+        assertEquals(2, start2.getChunks());
+        assertEquals(manifest, start2.getManifest());
+
+        BallotChunkEvent chunk = new BallotChunkEvent(0, "0-1", 0, "001", BallotChunkEvent.CAST, new ListExpression(getBlob(), getBlob()));
+        BallotChunkEvent chunk2 = (BallotChunkEvent) matcher.match(0, chunk.toSExp());
+
+        assertEquals(chunk.toSExp(), chunk2.toSExp());
+        assertEquals(0, chunk2.getSequence());
+
+        CompletedUploadEvent completed = new CompletedUploadEvent(0, "0-1", 2, "00ff");
+        CompletedUploadEvent completed2 = (CompletedUploadEvent) matcher.match(0, completed.toSExp());
+
+        assertEquals("(completed-upload 0-1 2 00ff)", completed.toSExp().toString());
+        assertTrue(completed2.isChunked());
+        assertEquals("00ff", completed2.getDigest());
+    }
+
     public void testStatus(){
         StatusEvent event = new StatusEvent(0, 65, new VoteBoxEvent(0, 1, "active", 100, 0, 0));
 
@@ -0,0 +1,98 @@
+package votebox.test;
+
+import auditorium.Certificate;
+import auditorium.IKeyStore;
+import auditorium.Key;
+import crypto.EncryptedRaceSelection;
+import crypto.ExponentialElGamalCiphertext;
+import crypto.PlaintextRaceSelection;
+import crypto.adder.AdderPrivateKeyShare;
+import crypto.adder.AdderPublicKey;
+import crypto.adder.AdderPublicKeyShare;
+import junit.framework.TestCase;
+import sexpression.StringExpression;
+import supervisor.model.Ballot;
+import votebox.ElectionCrypto;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests that a booth's election crypto is set up once and shared by its voters' sessions, and that it measures the
+ * time from authorization to first page.
+ */
+public class ElectionCryptoTest extends TestCase {
+
+    private static final int VOTERS = 4, CANDIDATES = 3;
+
+    /** A key store holding just a PEK, counting how often it is read */
+    private static class CountingKeyStore implements IKeyStore {
+        private final AdderPublicKey PEK;
+        private int loads;
+
+        CountingKeyStore(AdderPublicKey PEK) { this.PEK = PEK; }
+
+        public AdderPublicKey loadPEK() { loads++; return PEK; }
+        public Key loadKey(String nodeID) { throw new UnsupportedOperationException(); }
+        public Certificate loadCert(String nodeID) { throw new UnsupportedOperationException(); }
+        public AdderPublicKeyShare loadAdderPublicKeyShare() { throw new UnsupportedOperationException(); }
+        public AdderPrivateKeyShare loadAdderPrivateKey() { throw new UnsupportedOperationException(); }
+    }
+
+    public void testSessionsShareTheElection() throws Exception {
+        AdderPublicKeyShare share = AdderPublicKeyShare.makePublicKeyShare(512);
+        share.genKeyPair();
+
+        CountingKeyStore keyStore = new CountingKeyStore(new AdderPublicKey(share.getP(), share.getG(), share.getH(), share.getF()));
+        ElectionCrypto crypto = ElectionCrypto.load(keyStore);
+
+        List<List<String>> raceGroups = new ArrayList<>();
+        List<String> race = new ArrayList<>();
+
+        for (int i = 0; i < CANDIDATES; i++)
+            race.add("Candidate" + i);
+
+        raceGroups.add(race);
+
+        try {
+            for (int voter = 0; voter < VOTERS; voter++) {
+                ElectionCrypto.Session session = crypto.startSession(StringExpression.makeString("nonce" + voter), "" + voter);
+
+                crypto.reserve(raceGroups);
+                assertTrue(session.getStartupMillis() < 0);
+
+                double startup = session.firstPageShown();
+                assertTrue(startup >= 0);
+                assertEquals(startup, session.firstPageShown());
+
+                Map<String, Integer> voteMap = new HashMap<>();
+
+                for (int i = 0; i < CANDIDATES; i++)
+                    voteMap.put("Candidate" + i, i == voter % CANDIDATES ? 1 : 0);
+
+                List<PlaintextRaceSelection> selections = new ArrayList<>();
+                selections.add(new PlaintextRaceSelection(voteMap, "Race", 1));
+
+                Ballot<EncryptedRaceSelection<ExponentialElGamalCiphertext>> ballot =
+                        session.encrypt(new Ballot<>(session.getBid(), selections, session.getNonce().toString()));
+
+                assertEquals("" + voter, ballot.getBid());
+
+                for (ExponentialElGamalCiphertext c : ballot.getRaceSelections().get(0).getRaceSelectionsMap().values())
+                    assertTrue(c.verify(0, 1, crypto.getPEK()));
+            }
+
+            /* The key was read once, however many voters there were */
+            assertEquals(1, keyStore.loads);
+            assertEquals(VOTERS, crypto.getSessions());
+            assertTrue(crypto.getMaxStartupMillis() >= crypto.getMeanStartupMillis());
+
+            System.out.println(crypto);
+        }
+        finally {
+            crypto.close();
+        }
+    }
+}